@@ -17,14 +17,17 @@ import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandi
  * This constraint forbids or allows a certain mode depending on whether a
  * certain link attribute is available for the origin and/or destination.
  * 
+ * The attribute values are compared once for the whole network (see
+ * LinkAttributeIndex), so the check for a trip only consists of two bit
+ * lookups. Several constraints can share one index with different rules.
+ * 
  * @author sebhoerl
  */
 public class LinkAttributeConstraint implements TripConstraint {
-	private final Network network;
 	private final Collection<String> restrictedModes;
 
-	private final String linkAttributeName;
-	private final String linkAttributeValue;
+	private final LinkAttributeIndex index;
+	private final int ruleIndex;
 
 	public enum Requirement {
 		ORIGIN, DESTINATION, BOTH, ANY, NONE;
@@ -34,22 +37,20 @@ public class LinkAttributeConstraint implements TripConstraint {
 
 	public LinkAttributeConstraint(Network network, Collection<String> restrictedModes, String linkAttributeName,
 			String linkAttributeValue, Requirement requirement) {
-		this.network = network;
+		this(restrictedModes, new LinkAttributeIndex(network, linkAttributeName, linkAttributeValue), 0,
+				requirement);
+	}
+
+	public LinkAttributeConstraint(Collection<String> restrictedModes, LinkAttributeIndex index, int ruleIndex,
+			Requirement requirement) {
 		this.restrictedModes = restrictedModes;
-		this.linkAttributeName = linkAttributeName;
-		this.linkAttributeValue = linkAttributeValue;
+		this.index = index;
+		this.ruleIndex = ruleIndex;
 		this.requirement = requirement;
 	}
 
 	private boolean checkAttribute(Id<Link> linkId) {
-		Link link = network.getLinks().get(linkId);
-		Object attribute = link.getAttributes().getAttribute(linkAttributeName);
-
-		if (attribute == null) {
-			return false;
-		} else {
-			return attribute.toString().equals(linkAttributeValue);
-		}
+		return index.matches(ruleIndex, linkId);
 	}
 
 	@Override
@@ -82,26 +83,32 @@ public class LinkAttributeConstraint implements TripConstraint {
 	}
 
 	static public class Factory implements TripConstraintFactory {
-		private final Network network;
 		private final Collection<String> restrictedModes;
-		private final String linkAttributeName;
-		private final String linkAttributeValue;
+		private final LinkAttributeIndex index;
+		private final int ruleIndex;
 		private final Requirement requirement;
 
 		public Factory(Network network, Collection<String> restrictedModes, String linkAttributeName,
 				String linkAttributeValue, Requirement requirement) {
-			this.network = network;
+			this(restrictedModes, new LinkAttributeIndex(network, linkAttributeName, linkAttributeValue), 0,
+					requirement);
+		}
+
+		/**
+		 * Creates constraints for one rule of a (possibly shared) LinkAttributeIndex.
+		 */
+		public Factory(Collection<String> restrictedModes, LinkAttributeIndex index, int ruleIndex,
+				Requirement requirement) {
 			this.restrictedModes = restrictedModes;
-			this.linkAttributeName = linkAttributeName;
-			this.linkAttributeValue = linkAttributeValue;
+			this.index = index;
+			this.ruleIndex = ruleIndex;
 			this.requirement = requirement;
 		}
 
 		@Override
 		public TripConstraint createConstraint(Person person, List<DiscreteModeChoiceTrip> trips,
 				Collection<String> availableModes) {
-			return new LinkAttributeConstraint(network, restrictedModes, linkAttributeName, linkAttributeValue,
-					requirement);
+			return new LinkAttributeConstraint(restrictedModes, index, ruleIndex, requirement);
 		}
 	}
 }
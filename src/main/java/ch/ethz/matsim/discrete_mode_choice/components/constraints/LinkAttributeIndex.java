@@ -0,0 +1,91 @@
+package ch.ethz.matsim.discrete_mode_choice.components.constraints;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+
+/**
+ * Immutable index that tells whether a link attribute equals a certain value
+ * (compared as strings). Several such rules can be evaluated in one scan of the
+ * network. The results are kept in one bit set per rule, so a lookup does not
+ * touch the link attributes and the index can be shared by all agents and
+ * threads.
+ *
+ * @author sebhoerl
+ */
+public final class LinkAttributeIndex {
+	private final Map<Id<Link>, Integer> linkIndices;
+	private final List<BitSet> matchingLinks;
+
+	static public class Rule {
+		private final String attributeName;
+		private final String attributeValue;
+
+		public Rule(String attributeName, String attributeValue) {
+			this.attributeName = attributeName;
+			this.attributeValue = attributeValue;
+		}
+	}
+
+	/**
+	 * Creates the index for one rule, which gets the rule index 0.
+	 */
+	public LinkAttributeIndex(Network network, String attributeName, String attributeValue) {
+		this(network, Collections.singletonList(new Rule(attributeName, attributeValue)));
+	}
+
+	/**
+	 * Creates the index for a list of rules. The rules are identified by their
+	 * position in the list.
+	 */
+	public LinkAttributeIndex(Network network, List<Rule> rules) {
+		this.linkIndices = new HashMap<>(network.getLinks().size());
+		this.matchingLinks = new ArrayList<>(rules.size());
+
+		for (int ruleIndex = 0; ruleIndex < rules.size(); ruleIndex++) {
+			matchingLinks.add(new BitSet(network.getLinks().size()));
+		}
+
+		int linkIndex = 0;
+
+		for (Link link : network.getLinks().values()) {
+			linkIndices.put(link.getId(), linkIndex);
+
+			for (int ruleIndex = 0; ruleIndex < rules.size(); ruleIndex++) {
+				Rule rule = rules.get(ruleIndex);
+				Object attribute = link.getAttributes().getAttribute(rule.attributeName);
+
+				if (attribute != null && attribute.toString().equals(rule.attributeValue)) {
+					matchingLinks.get(ruleIndex).set(linkIndex);
+				}
+			}
+
+			linkIndex++;
+		}
+	}
+
+	/**
+	 * Returns whether the attribute of the given rule has the requested value for
+	 * the link.
+	 */
+	public boolean matches(int ruleIndex, Id<Link> linkId) {
+		Integer linkIndex = linkIndices.get(linkId);
+
+		if (linkIndex == null) {
+			throw new IllegalStateException(String.format("Link %s is not part of the network", linkId));
+		}
+
+		return matchingLinks.get(ruleIndex).get(linkIndex);
+	}
+
+	public int getNumberOfRules() {
+		return matchingLinks.size();
+	}
+}
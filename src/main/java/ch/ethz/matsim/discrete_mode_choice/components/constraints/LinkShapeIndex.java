@@ -0,0 +1,103 @@
+package ch.ethz.matsim.discrete_mode_choice.components.constraints;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+
+/**
+ * Immutable index that tells whether the coordinate of a network link lies
+ * within any of a set of shapes. The result is computed once for all links when
+ * the index is created and then kept in a bit set, so a lookup does not touch
+ * any geometry and the index can be shared by all agents and threads.
+ *
+ * To compute the bit set, the link coordinates are put into an STRtree. The
+ * shapes are prepared and processed in parallel: For every shape, only the
+ * links within its envelope are tested. Prepared geometries build internal
+ * structures lazily and are not thread-safe, so every shape is only ever used
+ * by one thread.
+ *
+ * @author sebhoerl
+ */
+public final class LinkShapeIndex {
+	private final static GeometryFactory geometryFactory = new GeometryFactory();
+
+	private final Map<Id<Link>, Integer> linkIndices;
+	private final BitSet insideLinks;
+
+	public LinkShapeIndex(Network network, Collection<Geometry> shapes) {
+		List<Link> links = new ArrayList<>(network.getLinks().values());
+		this.linkIndices = new HashMap<>(links.size());
+
+		STRtree linkTree = new STRtree();
+		List<Point> points = new ArrayList<>(links.size());
+
+		for (int index = 0; index < links.size(); index++) {
+			Link link = links.get(index);
+			linkIndices.put(link.getId(), index);
+
+			Coord coord = link.getCoord();
+			Point point = geometryFactory.createPoint(new Coordinate(coord.getX(), coord.getY()));
+			points.add(point);
+
+			linkTree.insert(point.getEnvelopeInternal(), index);
+		}
+
+		// Queries are read-only once the tree is built
+		linkTree.build();
+
+		boolean[] isInside = new boolean[links.size()];
+
+		new ArrayList<>(shapes).parallelStream().forEach(shape -> {
+			PreparedGeometry preparedShape = PreparedGeometryFactory.prepare(shape);
+
+			for (Object item : linkTree.query(shape.getEnvelopeInternal())) {
+				int index = (Integer) item;
+
+				if (!isInside[index] && preparedShape.contains(points.get(index))) {
+					// Different shapes may only ever write true here
+					isInside[index] = true;
+				}
+			}
+		});
+
+		this.insideLinks = new BitSet(links.size());
+
+		for (int index = 0; index < links.size(); index++) {
+			if (isInside[index]) {
+				insideLinks.set(index);
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the coordinate of the link is inside of any of the shapes.
+	 */
+	public boolean isInside(Id<Link> linkId) {
+		Integer index = linkIndices.get(linkId);
+
+		if (index == null) {
+			throw new IllegalStateException(String.format("Link %s is not part of the network", linkId));
+		}
+
+		return insideLinks.get(index);
+	}
+
+	public int getNumberOfInsideLinks() {
+		return insideLinks.cardinality();
+	}
+}
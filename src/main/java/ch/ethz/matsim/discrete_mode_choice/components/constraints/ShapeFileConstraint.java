@@ -13,11 +13,7 @@ import org.geotools.data.DataStoreFinder;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureSource;
-import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.GeometryFactory;
-import org.locationtech.jts.geom.Point;
-import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
@@ -34,14 +30,15 @@ import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandi
  * checking whether the origin and/or destination location are within a feature
  * of a given shape file.
  * 
+ * Whether a link is inside of the shapes is computed once for the whole network
+ * (see LinkShapeIndex), so the check for a trip only consists of two bit
+ * lookups.
+ * 
  * @author sebhoerl
  */
 public class ShapeFileConstraint implements TripConstraint {
-	private final static GeometryFactory geometryFactory = new GeometryFactory();
-
-	private final Network network;
 	private final Collection<String> restrictedModes;
-	private final Set<Geometry> shapes;
+	private final LinkShapeIndex index;
 
 	public enum Requirement {
 		ORIGIN, DESTINATION, BOTH, ANY, NONE;
@@ -51,25 +48,17 @@ public class ShapeFileConstraint implements TripConstraint {
 
 	public ShapeFileConstraint(Network network, Collection<String> restrictedModes, Requirement requirement,
 			Set<Geometry> shapes) {
-		this.network = network;
+		this(restrictedModes, requirement, new LinkShapeIndex(network, shapes));
+	}
+
+	public ShapeFileConstraint(Collection<String> restrictedModes, Requirement requirement, LinkShapeIndex index) {
 		this.restrictedModes = restrictedModes;
-		this.shapes = shapes;
+		this.index = index;
 		this.requirement = requirement;
 	}
 
 	private boolean checkLinkId(Id<Link> linkId) {
-		Link link = network.getLinks().get(linkId);
-		Coord coord = link.getCoord();
-		Coordinate coordinate = new Coordinate(coord.getX(), coord.getY());
-		Point point = geometryFactory.createPoint(coordinate);
-
-		for (Geometry shape : shapes) {
-			if (shape.contains(point)) {
-				return true;
-			}
-		}
-
-		return false;
+		return index.isInside(linkId);
 	}
 
 	@Override
@@ -102,16 +91,16 @@ public class ShapeFileConstraint implements TripConstraint {
 	}
 
 	static public class Factory implements TripConstraintFactory {
-		private final Network network;
 		private final Collection<String> restrictedModes;
-		private final Set<Geometry> shapes = new HashSet<>();
+		private final LinkShapeIndex index;
 		private final Requirement requirement;
 
 		public Factory(Network network, Collection<String> restrictedModes, Requirement requirement, URL url) {
-			this.network = network;
 			this.restrictedModes = restrictedModes;
 			this.requirement = requirement;
 
+			Set<Geometry> shapes = new HashSet<>();
+
 			try {
 				DataStore dataStore = DataStoreFinder.getDataStore(Collections.singletonMap("url", url));
 
@@ -129,12 +118,14 @@ public class ShapeFileConstraint implements TripConstraint {
 			} catch (IOException e) {
 				throw new RuntimeException(e);
 			}
+
+			this.index = new LinkShapeIndex(network, shapes);
 		}
 
 		@Override
 		public TripConstraint createConstraint(Person person, List<DiscreteModeChoiceTrip> trips,
 				Collection<String> availableModes) {
-			return new ShapeFileConstraint(network, restrictedModes, requirement, shapes);
+			return new ShapeFileConstraint(restrictedModes, requirement, index);
 		}
 	}
 }
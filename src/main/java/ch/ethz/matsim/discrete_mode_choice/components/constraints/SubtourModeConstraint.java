@@ -1,17 +1,21 @@
 package ch.ethz.matsim.discrete_mode_choice.components.constraints;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.matsim.api.core.v01.BasicLocation;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Person;
 
 import ch.ethz.matsim.discrete_mode_choice.components.utils.IndexUtils;
-import ch.ethz.matsim.discrete_mode_choice.components.utils.LocationUtils;
 import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.PlanContext;
 import ch.ethz.matsim.discrete_mode_choice.model.constraints.AbstractTourConstraint;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.IndexedModeChain;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeRegistry;
 import ch.ethz.matsim.discrete_mode_choice.model.tour_based.TourConstraint;
 import ch.ethz.matsim.discrete_mode_choice.model.tour_based.TourConstraintFactory;
 
@@ -25,51 +29,168 @@ import ch.ethz.matsim.discrete_mode_choice.model.tour_based.TourConstraintFactor
  * only the "chain based" modes should be set as constrained modes. In that case
  * only those tours cannot be interrupted by other modes.
  * 
+ * If the chains are IndexedModeChains, modes are compared by their indices and
+ * the constrained modes are looked up in a bit mask.
+ * 
+ * The sub-tour structure of the plan is computed once when the constraint is
+ * created: for every trip, the index of the first following trip (including
+ * itself) that ends at its origin is stored. Validating a chain is then a
+ * single pass over the chain.
+ * 
  * @author sebhoerl
  *
  */
 public class SubtourModeConstraint extends AbstractTourConstraint {
 	private final Collection<String> constrainedModes;
-	private final List<Id<? extends BasicLocation>> originLocations;
-	private final List<Id<? extends BasicLocation>> destinationLocations;
+	private final int[] closingIndices;
+	private final int[] firstTripIndices;
+
+	private ModeRegistry cachedRegistry = null;
+	private long constrainedMask = 0L;
 
 	public SubtourModeConstraint(Collection<String> constrainedModes, List<Id<? extends BasicLocation>> originLocations,
 			List<Id<? extends BasicLocation>> destinationLocations) {
+		this(constrainedModes, computeClosingIndices(originLocations, destinationLocations));
+	}
+
+	/**
+	 * Creates the constraint from the interned locations of the PlanContext of a
+	 * plan.
+	 */
+	public SubtourModeConstraint(Collection<String> constrainedModes, PlanContext context) {
+		this(constrainedModes, computeClosingIndices(context));
+	}
+
+	private SubtourModeConstraint(Collection<String> constrainedModes, int[] closingIndices) {
 		this.constrainedModes = constrainedModes;
-		this.originLocations = originLocations;
-		this.destinationLocations = destinationLocations;
+		this.closingIndices = closingIndices;
+
+		this.firstTripIndices = new int[closingIndices.length + 1];
+		Arrays.fill(firstTripIndices, -1);
+	}
+
+	/**
+	 * Returns, for every trip, the index of the first trip at or after it whose
+	 * destination is the origin of the trip, or -1 if there is none.
+	 */
+	static private int[] computeClosingIndices(List<Id<? extends BasicLocation>> originLocations,
+			List<Id<? extends BasicLocation>> destinationLocations) {
+		int[] closingIndices = new int[originLocations.size()];
+		Map<Id<? extends BasicLocation>, Integer> nextDestinationIndices = new HashMap<>();
+
+		for (int index = originLocations.size() - 1; index >= 0; index--) {
+			nextDestinationIndices.put(destinationLocations.get(index), index);
+
+			Integer closingIndex = nextDestinationIndices.get(originLocations.get(index));
+			closingIndices[index] = closingIndex == null ? -1 : closingIndex;
+		}
+
+		return closingIndices;
+	}
+
+	static private int[] computeClosingIndices(PlanContext context) {
+		int[] closingIndices = new int[context.getNumberOfTrips()];
+
+		int[] nextDestinationIndices = new int[context.getNumberOfLocations()];
+		Arrays.fill(nextDestinationIndices, -1);
+
+		for (int index = closingIndices.length - 1; index >= 0; index--) {
+			nextDestinationIndices[context.getDestinationLocation(index)] = index;
+			closingIndices[index] = nextDestinationIndices[context.getOriginLocation(index)];
+		}
+
+		return closingIndices;
+	}
+
+	/**
+	 * The index of the first trip of a tour only depends on the sizes of the
+	 * previous tours, so it is only calculated once per tour.
+	 */
+	private int getFirstTripIndex(List<List<String>> previousModes) {
+		int tourIndex = previousModes.size();
+
+		if (firstTripIndices[tourIndex] == -1) {
+			firstTripIndices[tourIndex] = IndexUtils.getFirstTripIndex(previousModes);
+		}
+
+		return firstTripIndices[tourIndex];
+	}
+
+	/**
+	 * Checks whether the trip at testIndex may have a different mode than the trip
+	 * at index, i.e. whether they have the same mode or both are not constrained.
+	 */
+	private boolean isCompatible(List<String> modes, int index, int testIndex) {
+		if (modes instanceof IndexedModeChain) {
+			IndexedModeChain indexedModes = (IndexedModeChain) modes;
+
+			if (indexedModes.getRegistry() != cachedRegistry) {
+				cachedRegistry = indexedModes.getRegistry();
+				constrainedMask = cachedRegistry.getMask(constrainedModes);
+			}
+
+			int modeIndex = indexedModes.getModeIndex(index);
+			int testModeIndex = indexedModes.getModeIndex(testIndex);
+
+			return modeIndex == testModeIndex || (!ModeRegistry.isInMask(constrainedMask, testModeIndex)
+					&& !ModeRegistry.isInMask(constrainedMask, modeIndex));
+		}
+
+		String mode = modes.get(index);
+		String testMode = modes.get(testIndex);
+
+		return mode.equals(testMode) || (!constrainedModes.contains(testMode) && !constrainedModes.contains(mode));
 	}
 
 	@Override
 	public boolean validateBeforeEstimation(List<DiscreteModeChoiceTrip> tour, List<String> modes,
 			List<List<String>> previousModes) {
-		int tourLocationOffset = IndexUtils.getFirstTripIndex(previousModes);
+		int tourOffset = getFirstTripIndex(previousModes);
 
 		for (int index = 0; index < modes.size(); index++) {
-			// We loop over all trips
-			Id<? extends BasicLocation> startLocationId = originLocations.get(index + tourLocationOffset);
+			int closingIndex = closingIndices[index + tourOffset] - tourOffset;
+
+			if (closingIndex >= index && closingIndex < modes.size()) {
+				// The sub-tour starting at this trip is closed within the tour. Now we need to
+				// check that all modes in between are of the same type.
+				for (int testIndex = index + 1; testIndex <= closingIndex; testIndex++) {
+					if (!isCompatible(modes, index, testIndex)) {
+						return false;
+					}
+				}
+
+				index = closingIndex;
+			}
+		}
 
-			for (int offset = 0; offset + index < modes.size(); offset++) {
-				// We loop over all following destinations
+		return true;
+	}
 
-				if (destinationLocations.get(offset + index + tourLocationOffset).equals(startLocationId)) {
-					// We found a destination that has the origin location. Now we need to check
-					// that all modes in between are of the same type.
-					String mode = modes.get(index + tourLocationOffset);
+	/**
+	 * A prefix can only be checked for those sub-tours that are closed within the
+	 * prefix. As soon as a sub-tour is found that may only be closed later on, the
+	 * prefix is accepted.
+	 */
+	@Override
+	public boolean validatePrefix(List<DiscreteModeChoiceTrip> tour, List<String> prefixModes,
+			List<List<String>> previousModes) {
+		int tourOffset = getFirstTripIndex(previousModes);
 
-					for (int testIndex = index + 1; testIndex <= index + offset; testIndex++) {
-						String testMode = modes.get(testIndex);
+		for (int index = 0; index < prefixModes.size(); index++) {
+			int closingIndex = closingIndices[index + tourOffset] - tourOffset;
 
-						if (!mode.equals(testMode)
-								&& (constrainedModes.contains(testMode) || constrainedModes.contains(mode))) {
-							return false;
-						}
-					}
+			if (closingIndex < index || closingIndex >= prefixModes.size()) {
+				// The sub-tour may be closed after the end of the prefix
+				return true;
+			}
 
-					index += offset;
-					break;
+			for (int testIndex = index + 1; testIndex <= closingIndex; testIndex++) {
+				if (!isCompatible(prefixModes, index, testIndex)) {
+					return false;
 				}
 			}
+
+			index = closingIndex;
 		}
 
 		return true;
@@ -85,15 +206,7 @@ public class SubtourModeConstraint extends AbstractTourConstraint {
 		@Override
 		public TourConstraint createConstraint(Person person, List<DiscreteModeChoiceTrip> trips,
 				Collection<String> availableModes) {
-			List<Id<? extends BasicLocation>> originLocations = new ArrayList<>(trips.size());
-			List<Id<? extends BasicLocation>> destinationLocations = new ArrayList<>(trips.size());
-
-			for (int index = 0; index < trips.size(); index++) {
-				originLocations.add(LocationUtils.getLocationId(trips.get(index).getOriginActivity()));
-				destinationLocations.add(LocationUtils.getLocationId(trips.get(index).getDestinationActivity()));
-			}
-
-			return new SubtourModeConstraint(constrainedModes, originLocations, destinationLocations);
+			return new SubtourModeConstraint(constrainedModes, PlanContext.getOrCreate(trips));
 		}
 	}
 }
@@ -7,9 +7,11 @@ import org.matsim.api.core.v01.BasicLocation;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Person;
 
-import ch.ethz.matsim.discrete_mode_choice.components.utils.LocationUtils;
 import ch.ethz.matsim.discrete_mode_choice.components.utils.home_finder.HomeFinder;
 import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.PlanContext;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.IndexedModeChain;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeRegistry;
 import ch.ethz.matsim.discrete_mode_choice.model.tour_based.TourCandidate;
 import ch.ethz.matsim.discrete_mode_choice.model.tour_based.TourConstraint;
 import ch.ethz.matsim.discrete_mode_choice.model.tour_based.TourConstraintFactory;
@@ -32,15 +34,69 @@ import ch.ethz.matsim.discrete_mode_choice.model.tour_based.TourConstraintFactor
  * If a home location cannot be found in the tour, a mode must start and end at
  * the first and last location in the tour.
  * 
+ * If the chains are IndexedModeChains, the restricted modes are checked using a
+ * bit mask and integer comparisons instead of string comparisons. Locations are
+ * compared by their indices in the PlanContext of the plan.
+ * 
  * @author sebhoerl
  */
 public class VehicleTourConstraint implements TourConstraint {
+	static private final int NO_HOME = -1;
+
 	private final Collection<String> restrictedModes;
 	private final Id<? extends BasicLocation> homeLocationId;
 
+	private PlanContext context;
+	private int homeLocation;
+
+	private ModeRegistry cachedRegistry = null;
+	private long restrictedMask = 0L;
+
+	/**
+	 * Creates the constraint with the PlanContext of the tours, which must have
+	 * been created for the plan before.
+	 */
 	public VehicleTourConstraint(Collection<String> restrictedModes, Id<? extends BasicLocation> homeLocationId) {
 		this.restrictedModes = restrictedModes;
 		this.homeLocationId = homeLocationId;
+		this.context = null;
+	}
+
+	/**
+	 * Creates the constraint for a plan with a known PlanContext. The home
+	 * location is given as a location index of the context, or -1 if it is not
+	 * known.
+	 */
+	public VehicleTourConstraint(Collection<String> restrictedModes, PlanContext context, int homeLocation) {
+		this.restrictedModes = restrictedModes;
+		this.homeLocationId = homeLocation == NO_HOME ? null : context.getLocationId(homeLocation);
+		this.context = context;
+		this.homeLocation = homeLocation;
+	}
+
+	private void prepareContext(List<DiscreteModeChoiceTrip> tour) {
+		if (context == null) {
+			context = PlanContext.get(tour);
+
+			if (homeLocationId == null) {
+				homeLocation = NO_HOME;
+			} else {
+				homeLocation = context.getLocationIndex(homeLocationId);
+
+				if (homeLocation == -1) {
+					// The home location is not part of the plan, so no trip can start there
+					homeLocation = context.getNumberOfLocations();
+				}
+			}
+		}
+	}
+
+	private int getOriginLocation(List<DiscreteModeChoiceTrip> tour, int index) {
+		return context.getOriginLocation(tour.get(index).getPlanIndex());
+	}
+
+	private int getDestinationLocation(List<DiscreteModeChoiceTrip> tour, int index) {
+		return context.getDestinationLocation(tour.get(index).getPlanIndex());
 	}
 
 	private int getFirstIndex(String mode, List<String> modes) {
@@ -63,46 +119,110 @@ public class VehicleTourConstraint implements TourConstraint {
 		return -1;
 	}
 
+	private int getLastIndex(int modeIndex, IndexedModeChain modes, int endIndex) {
+		for (int i = endIndex - 1; i >= 0; i--) {
+			if (modes.getModeIndex(i) == modeIndex) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	private long getRestrictedMask(IndexedModeChain modes) {
+		if (modes.getRegistry() != cachedRegistry) {
+			cachedRegistry = modes.getRegistry();
+			restrictedMask = cachedRegistry.getMask(restrictedModes);
+		}
+
+		return restrictedMask;
+	}
+
+	/**
+	 * Checks that a vehicle that is first used at firstIndex and last used at
+	 * lastIndex departs from and returns to the home location.
+	 */
+	private boolean validateHome(List<DiscreteModeChoiceTrip> tour, int firstIndex, int lastIndex,
+			int numberOfTrips) {
+		if (homeLocation != NO_HOME) {
+			if (getOriginLocation(tour, firstIndex) != homeLocation) {
+				return false;
+			}
+
+			if (getDestinationLocation(tour, lastIndex) != homeLocation) {
+				return false;
+			}
+		} else {
+			if (firstIndex > 0 || lastIndex < numberOfTrips - 1) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
 	@Override
 	public boolean validateBeforeEstimation(List<DiscreteModeChoiceTrip> tour, List<String> modes,
 			List<List<String>> previousModes) {
+		prepareContext(tour);
+
+		if (modes instanceof IndexedModeChain) {
+			return validateBeforeEstimation(tour, (IndexedModeChain) modes);
+		}
+
 		for (String restrictedMode : restrictedModes) {
 			if (modes.contains(restrictedMode)) {
 				int firstIndex = getFirstIndex(restrictedMode, modes);
 				int lastIndex = getLastIndex(restrictedMode, modes);
 
-				if (homeLocationId != null) {
-					Id<? extends BasicLocation> startLocationId = LocationUtils
-							.getLocationId(tour.get(firstIndex).getOriginActivity());
-					Id<? extends BasicLocation> endLocationId = LocationUtils
-							.getLocationId(tour.get(lastIndex).getDestinationActivity());
-
-					if (!startLocationId.equals(homeLocationId)) {
-						return false;
-					}
-
-					if (!endLocationId.equals(homeLocationId)) {
-						return false;
-					}
-				} else {
-					if (firstIndex > 0 || lastIndex < modes.size() - 1) {
-						return false;
-					}
+				if (!validateHome(tour, firstIndex, lastIndex, modes.size())) {
+					return false;
 				}
 
-				Id<? extends BasicLocation> currentLocationId = LocationUtils
-						.getLocationId(tour.get(firstIndex).getDestinationActivity());
+				int currentLocation = getDestinationLocation(tour, firstIndex);
 
 				for (int index = firstIndex + 1; index <= lastIndex; index++) {
 					if (modes.get(index).equals(restrictedMode)) {
-						DiscreteModeChoiceTrip trip = tour.get(index);
-
-						if (!currentLocationId.equals(LocationUtils.getLocationId(trip.getOriginActivity()))) {
+						if (currentLocation != getOriginLocation(tour, index)) {
 							return false;
 						}
 
-						currentLocationId = LocationUtils.getLocationId(trip.getDestinationActivity());
+						currentLocation = getDestinationLocation(tour, index);
+					}
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private boolean validateBeforeEstimation(List<DiscreteModeChoiceTrip> tour, IndexedModeChain modes) {
+		long mask = getRestrictedMask(modes);
+		long checkedMask = 0L;
+
+		for (int firstIndex = 0; firstIndex < modes.size(); firstIndex++) {
+			int modeIndex = modes.getModeIndex(firstIndex);
+
+			if (!ModeRegistry.isInMask(mask, modeIndex) || ModeRegistry.isInMask(checkedMask, modeIndex)) {
+				continue;
+			}
+
+			checkedMask |= 1L << modeIndex;
+			int lastIndex = getLastIndex(modeIndex, modes, modes.size());
+
+			if (!validateHome(tour, firstIndex, lastIndex, modes.size())) {
+				return false;
+			}
+
+			int currentLocation = getDestinationLocation(tour, firstIndex);
+
+			for (int index = firstIndex + 1; index <= lastIndex; index++) {
+				if (modes.getModeIndex(index) == modeIndex) {
+					if (currentLocation != getOriginLocation(tour, index)) {
+						return false;
 					}
+
+					currentLocation = getDestinationLocation(tour, index);
 				}
 			}
 		}
@@ -110,6 +230,55 @@ public class VehicleTourConstraint implements TourConstraint {
 		return true;
 	}
 
+	/**
+	 * Only the start and the continuity conditions can be checked on a prefix. The
+	 * condition that the vehicle needs to be brought back is only checked for the
+	 * complete chain.
+	 */
+	@Override
+	public boolean validatePrefix(List<DiscreteModeChoiceTrip> tour, List<String> prefixModes,
+			List<List<String>> previousModes) {
+		int lastIndex = prefixModes.size() - 1;
+
+		if (lastIndex < 0) {
+			return true;
+		}
+
+		int previousIndex;
+
+		if (prefixModes instanceof IndexedModeChain) {
+			IndexedModeChain indexedModes = (IndexedModeChain) prefixModes;
+			int lastModeIndex = indexedModes.getModeIndex(lastIndex);
+
+			if (!ModeRegistry.isInMask(getRestrictedMask(indexedModes), lastModeIndex)) {
+				return true;
+			}
+
+			previousIndex = getLastIndex(lastModeIndex, indexedModes, lastIndex);
+		} else {
+			String lastMode = prefixModes.get(lastIndex);
+
+			if (!restrictedModes.contains(lastMode)) {
+				return true;
+			}
+
+			previousIndex = getLastIndex(lastMode, prefixModes.subList(0, lastIndex));
+		}
+
+		prepareContext(tour);
+
+		if (previousIndex == -1) {
+			// This is the first trip with the vehicle
+			if (homeLocation != NO_HOME) {
+				return getOriginLocation(tour, lastIndex) == homeLocation;
+			} else {
+				return lastIndex == 0;
+			}
+		}
+
+		return getDestinationLocation(tour, previousIndex) == getOriginLocation(tour, lastIndex);
+	}
+
 	@Override
 	public boolean validateAfterEstimation(List<DiscreteModeChoiceTrip> tour, TourCandidate candidate,
 			List<TourCandidate> previousCandidates) {
@@ -128,7 +297,8 @@ public class VehicleTourConstraint implements TourConstraint {
 		@Override
 		public TourConstraint createConstraint(Person person, List<DiscreteModeChoiceTrip> planTrips,
 				Collection<String> availableModes) {
-			return new VehicleTourConstraint(restrictedModes, homeFinder.getHomeLocationId(planTrips));
+			PlanContext context = PlanContext.getOrCreate(planTrips);
+			return new VehicleTourConstraint(restrictedModes, context, homeFinder.getHomeLocation(context, planTrips));
 		}
 	}
 }
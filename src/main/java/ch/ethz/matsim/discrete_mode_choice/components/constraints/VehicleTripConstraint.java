@@ -1,16 +1,22 @@
 package ch.ethz.matsim.discrete_mode_choice.components.constraints;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 import org.matsim.api.core.v01.BasicLocation;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Person;
 
-import ch.ethz.matsim.discrete_mode_choice.components.utils.LocationUtils;
 import ch.ethz.matsim.discrete_mode_choice.components.utils.home_finder.HomeFinder;
 import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.PlanContext;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.IndexedModeChain;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeRegistry;
 import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripConstraint;
 import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripConstraintFactory;
 import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
@@ -35,89 +41,215 @@ import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandi
  * the first tour. This was done in order to have easier implementation. If this
  * has an effect on the results is not clear.
  * 
+ * All location lookups are prepared when the constraint is created for a plan:
+ * Locations are compared by their indices in the PlanContext, and for every
+ * trip it is precomputed whether the agent will come back to the origin of the
+ * trip before going home. The locations of the vehicles are updated
+ * incrementally while modes are appended to the list of previous modes (as it is
+ * done by the TripBasedModel), so every check takes constant time. If the
+ * previous modes are an IndexedModeChain, the vehicles are looked up by mode
+ * index.
+ * 
  * @author Milos Balac <milos.balac@ivt.baug.ethz.ch>
  * @author Sebastian Hörl <sebastian.hoerl@ivt.baug.ethz.ch>
  */
 public class VehicleTripConstraint implements TripConstraint {
 	private final static Logger logger = Logger.getLogger(VehicleTripConstraint.class);
 
-	private final List<DiscreteModeChoiceTrip> plan;
-	private final Collection<String> restrictedModes;
-	private final Id<? extends BasicLocation> homeLocationId;
+	static private final int NO_HOME = -1;
+
+	private final PlanContext context;
+	private final Map<String, Integer> vehicleSlots = new HashMap<>();
+	private final int homeLocation;
 	private final boolean isAdvanced;
 
+	private final boolean[] returnsBeforeHome;
+
+	private final int[] vehicleLocations;
+	private final int[] numberOfVehiclesAtLocation;
+	private List<String> trackedModes = null;
+	private int numberOfTrackedModes = 0;
+	private String lastTrackedMode = null;
+
+	private ModeRegistry cachedRegistry = null;
+	private int[] cachedSlots = null;
+
 	public VehicleTripConstraint(List<DiscreteModeChoiceTrip> plan, Collection<String> restrictedModes,
 			Id<? extends BasicLocation> homeLocationId, boolean isAdvanced) {
-		this.homeLocationId = homeLocationId;
-		this.restrictedModes = restrictedModes;
+		this(PlanContext.getOrCreate(plan), restrictedModes,
+				getHomeLocation(PlanContext.getOrCreate(plan), homeLocationId), isAdvanced);
+	}
+
+	/**
+	 * Creates the constraint with the home location given as a location index of
+	 * the PlanContext of the plan, or -1 if it is not known.
+	 */
+	public VehicleTripConstraint(PlanContext context, Collection<String> restrictedModes, int homeLocation,
+			boolean isAdvanced) {
+		this.context = context;
+		this.homeLocation = homeLocation;
 		this.isAdvanced = isAdvanced;
-		this.plan = plan;
+
+		for (String restrictedMode : restrictedModes) {
+			vehicleSlots.putIfAbsent(restrictedMode, vehicleSlots.size());
+		}
+
+		this.returnsBeforeHome = computeReturnsBeforeHome(context, homeLocation);
+
+		this.vehicleLocations = new int[vehicleSlots.size()];
+		this.numberOfVehiclesAtLocation = new int[context.getNumberOfLocations() + 1];
+	}
+
+	static private int getHomeLocation(PlanContext context, Id<? extends BasicLocation> homeLocationId) {
+		if (homeLocationId == null) {
+			return NO_HOME;
+		}
+
+		int homeLocation = context.getLocationIndex(homeLocationId);
+
+		// If the home location is not part of the plan, no trip can start there
+		return homeLocation == -1 ? context.getNumberOfLocations() : homeLocation;
 	}
 
-	private Id<? extends BasicLocation> getCurrentVehicleLocationId(String mode, List<String> previousModes) {
-		int currentVehicleIndex = previousModes.lastIndexOf(mode);
-		Id<? extends BasicLocation> currentVehicleLocationId = homeLocationId;
+	/**
+	 * Checks for every trip if the agent will return to its origin location before
+	 * going home. The trips are processed backwards, keeping track of the next
+	 * trip that arrives at every location.
+	 */
+	static private boolean[] computeReturnsBeforeHome(PlanContext context, int homeLocation) {
+		int numberOfTrips = context.getNumberOfTrips();
+		boolean[] returnsBeforeHome = new boolean[numberOfTrips];
+
+		int[] nextArrivals = new int[context.getNumberOfLocations()];
+		Arrays.fill(nextArrivals, -1);
+
+		int nextHomeArrival = -1;
+
+		for (int index = numberOfTrips - 1; index >= 0; index--) {
+			int destinationLocation = context.getDestinationLocation(index);
+			nextArrivals[destinationLocation] = index;
+
+			if (destinationLocation == homeLocation) {
+				nextHomeArrival = index;
+			}
+
+			int nextReturn = nextArrivals[context.getOriginLocation(index)];
+			returnsBeforeHome[index] = nextReturn != -1 && (nextHomeArrival == -1 || nextReturn <= nextHomeArrival);
+		}
+
+		return returnsBeforeHome;
+	}
 
-		if (currentVehicleIndex > -1) {
-			currentVehicleLocationId = LocationUtils
-					.getLocationId(plan.get(currentVehicleIndex).getDestinationActivity());
+	private void moveVehicle(int slot, int location) {
+		if (vehicleLocations[slot] != NO_HOME) {
+			numberOfVehiclesAtLocation[vehicleLocations[slot]]--;
 		}
 
-		return currentVehicleLocationId;
+		vehicleLocations[slot] = location;
+
+		if (location != NO_HOME) {
+			numberOfVehiclesAtLocation[location]++;
+		}
 	}
 
 	/**
-	 * Checks if the agent will return to this location before going home
+	 * Returns the vehicle slot for every mode of the registry, or -1 if the mode is
+	 * not restricted.
 	 */
-	private boolean willReturnBeforeHome(Id<? extends BasicLocation> currentLocationId, DiscreteModeChoiceTrip trip) {
-		int currentIndex = plan.indexOf(trip);
+	private int[] getSlots(ModeRegistry registry) {
+		if (registry != cachedRegistry) {
+			cachedRegistry = registry;
+			cachedSlots = new int[registry.getNumberOfModes()];
+
+			for (int modeIndex = 0; modeIndex < cachedSlots.length; modeIndex++) {
+				Integer slot = vehicleSlots.get(registry.getMode(modeIndex));
+				cachedSlots[modeIndex] = slot == null ? -1 : slot;
+			}
+		}
+
+		return cachedSlots;
+	}
 
-		for (DiscreteModeChoiceTrip futureTrip : plan.subList(currentIndex, plan.size())) {
-			Id<? extends BasicLocation> futureLinkId = LocationUtils.getLocationId(futureTrip.getDestinationActivity());
+	/**
+	 * Brings the vehicle locations up to date with the previous modes. If the same
+	 * list has been extended since the last call, only the new modes are
+	 * processed. Otherwise, the locations are derived again from the start of the
+	 * plan. As a safeguard against lists that are changed in place (which
+	 * TripConstraint does not allow), the last mode that has been processed is
+	 * checked as well.
+	 */
+	private void updateVehicleLocations(List<String> previousModes) {
+		if (previousModes != trackedModes || previousModes.size() < numberOfTrackedModes
+				|| (numberOfTrackedModes > 0
+						&& !previousModes.get(numberOfTrackedModes - 1).equals(lastTrackedMode))) {
+			Arrays.fill(numberOfVehiclesAtLocation, 0);
+			Arrays.fill(vehicleLocations, NO_HOME);
 
-			if (futureLinkId.equals(currentLocationId)) {
-				return true;
+			for (int slot = 0; slot < vehicleLocations.length; slot++) {
+				moveVehicle(slot, homeLocation);
 			}
 
-			if (futureLinkId.equals(homeLocationId)) {
-				return false;
+			trackedModes = previousModes;
+			numberOfTrackedModes = 0;
+		}
+
+		if (previousModes.size() > numberOfTrackedModes && previousModes instanceof IndexedModeChain) {
+			IndexedModeChain indexedModes = (IndexedModeChain) previousModes;
+			int[] slots = getSlots(indexedModes.getRegistry());
+
+			for (int tripIndex = numberOfTrackedModes; tripIndex < previousModes.size(); tripIndex++) {
+				int slot = slots[indexedModes.getModeIndex(tripIndex)];
+
+				if (slot != -1) {
+					moveVehicle(slot, context.getDestinationLocation(tripIndex));
+				}
 			}
+
+			numberOfTrackedModes = previousModes.size();
+			lastTrackedMode = previousModes.get(numberOfTrackedModes - 1);
 		}
 
-		return false;
+		if (previousModes.size() > numberOfTrackedModes) {
+			ListIterator<String> iterator = previousModes.listIterator(numberOfTrackedModes);
+
+			while (iterator.hasNext()) {
+				int tripIndex = iterator.nextIndex();
+				Integer slot = vehicleSlots.get(iterator.next());
+
+				if (slot != null) {
+					moveVehicle(slot, context.getDestinationLocation(tripIndex));
+				}
+			}
+
+			numberOfTrackedModes = previousModes.size();
+			lastTrackedMode = previousModes.get(numberOfTrackedModes - 1);
+		}
 	}
 
 	@Override
 	public boolean validateBeforeEstimation(DiscreteModeChoiceTrip trip, String mode, List<String> previousModes) {
-		if (restrictedModes.contains(mode)) {
-			Id<? extends BasicLocation> currentVehicleLocationId = getCurrentVehicleLocationId(mode, previousModes);
-			Id<? extends BasicLocation> currentDepartureLocationId = LocationUtils
-					.getLocationId(trip.getOriginActivity());
+		updateVehicleLocations(previousModes);
+
+		int tripIndex = trip.getPlanIndex();
+		int departureLocation = context.getOriginLocation(tripIndex);
+		Integer slot = vehicleSlots.get(mode);
 
-			return currentDepartureLocationId.equals(currentVehicleLocationId);
+		if (slot != null) {
+			return vehicleLocations[slot] == departureLocation;
 		}
 
 		if (isAdvanced) {
-			for (String testMode : restrictedModes) {
-				Id<? extends BasicLocation> currentVehicleLocationId = getCurrentVehicleLocationId(testMode,
-						previousModes);
-				Id<? extends BasicLocation> currentDepartureLocationId = LocationUtils
-						.getLocationId(trip.getOriginActivity());
-				boolean isVehiclePresent = currentDepartureLocationId.equals(currentVehicleLocationId);
-
-				if (isVehiclePresent && !currentDepartureLocationId.equals(homeLocationId)
-						&& !willReturnBeforeHome(currentDepartureLocationId, trip)) {
-					// We enforce the constrained mode, because otherwise the vehicle cannot return
-					// home
-					return mode.equals(testMode);
-				}
+			if (numberOfVehiclesAtLocation[departureLocation] > 0 && departureLocation != homeLocation
+					&& !returnsBeforeHome[tripIndex]) {
+				// We enforce the constrained modes, because otherwise the vehicle cannot
+				// return home
+				return false;
 			}
 
 			return true;
 		}
 
 		return false;
-
 	}
 
 	@Override
@@ -142,7 +274,8 @@ public class VehicleTripConstraint implements TripConstraint {
 				Collection<String> availableModes) {
 			logger.warn("VehicleTripConstraint is not tested. Use at own risk!");
 
-			return new VehicleTripConstraint(planTrips, restrictedModes, homeFinder.getHomeLocationId(planTrips),
+			PlanContext context = PlanContext.getOrCreate(planTrips);
+			return new VehicleTripConstraint(context, restrictedModes, homeFinder.getHomeLocation(context, planTrips),
 					isAdvanced);
 		}
 	}
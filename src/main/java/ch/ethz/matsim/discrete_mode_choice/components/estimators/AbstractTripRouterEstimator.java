@@ -34,17 +34,37 @@ public abstract class AbstractTripRouterEstimator implements TripEstimator {
 	@Override
 	public final TripCandidate estimateTrip(Person person, String mode, DiscreteModeChoiceTrip trip,
 			List<TripCandidate> previousTrips) {
-		// I) Find the correct origin and destination facilities
-		
+		// 0) Check if the trip can be estimated without routing
+		TripCandidate candidate = estimateTripWithoutRouting(person, mode, trip, previousTrips);
+
+		if (candidate != null) {
+			return candidate;
+		}
+
+		// I) Perform the routing
+		List<? extends PlanElement> elements = routeTrip(person, mode, trip);
+
+		// II) Perform utility estimation
+		return estimateTripCandidate(person, mode, trip, previousTrips, elements);
+	}
+
+	/**
+	 * Routes a trip with the TripRouter of this estimator.
+	 */
+	protected List<? extends PlanElement> routeTrip(Person person, String mode, DiscreteModeChoiceTrip trip) {
 		Facility originFacility = FacilitiesUtils.toFacility(trip.getOriginActivity(), facilities);
 		Facility destinationFacility = FacilitiesUtils.toFacility(trip.getDestinationActivity(), facilities);
 
-		// II) Perform the routing
-		List<? extends PlanElement> elements = tripRouter.calcRoute(mode, originFacility, destinationFacility,
-				trip.getDepartureTime(), person);
+		return tripRouter.calcRoute(mode, originFacility, destinationFacility, trip.getDepartureTime(), person);
+	}
 
-		// III) Perform utility estimation
-		return estimateTripCandidate(person, mode, trip, previousTrips, elements);
+	/**
+	 * Implement this if some trips can be estimated without routing them, e.g.
+	 * analytically. If null is returned, the trip is routed.
+	 */
+	protected TripCandidate estimateTripWithoutRouting(Person person, String mode, DiscreteModeChoiceTrip trip,
+			List<TripCandidate> previousTrips) {
+		return null;
 	}
 
 	/**
@@ -0,0 +1,180 @@
+package ch.ethz.matsim.discrete_mode_choice.components.estimators;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.config.groups.PlansCalcRouteConfigGroup.ModeRoutingParams;
+import org.matsim.core.scoring.functions.ModeUtilityParameters;
+import org.matsim.core.scoring.functions.ScoringParameters;
+import org.matsim.core.scoring.functions.ScoringParametersForPerson;
+import org.matsim.core.utils.geometry.CoordUtils;
+import org.matsim.facilities.ActivityFacilities;
+import org.matsim.facilities.FacilitiesUtils;
+import org.matsim.facilities.Facility;
+
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.PlanContext;
+import ch.ethz.matsim.discrete_mode_choice.model.estimation.TwoStageTripEstimator;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
+
+/**
+ * Proxy estimator for the TwoStageTripEstimator that approximates the
+ * MATSimTripScoringEstimator based on the beeline distance of a trip. For
+ * teleported modes, travel time and distance are derived from the teleportation
+ * speed and beeline distance factor in the routing config. For all other modes,
+ * the travel time and network distance per beeline meter are learned from the
+ * exact estimates (see Factors). Before enough exact estimates have been
+ * observed for a mode, no proxy utility is returned for it.
+ * 
+ * Travel times change from iteration to iteration, so the factors are reset
+ * when a new iteration starts.
+ * 
+ * @author sebhoerl
+ */
+public class BeelineProxyEstimator implements TwoStageTripEstimator.ProxyEstimator {
+	private final ActivityFacilities facilities;
+	private final ScoringParametersForPerson scoringParametersForPerson;
+	private final Map<String, Double> teleportationSpeeds = new HashMap<>();
+	private final Map<String, Double> beelineDistanceFactors = new HashMap<>();
+	private final Factors factors;
+	private final long minimumObservations;
+
+	public BeelineProxyEstimator(ActivityFacilities facilities, ScoringParametersForPerson scoringParametersForPerson,
+			Map<String, ModeRoutingParams> routingParams, Factors factors, long minimumObservations) {
+		this.facilities = facilities;
+		this.scoringParametersForPerson = scoringParametersForPerson;
+		this.factors = factors;
+		this.minimumObservations = minimumObservations;
+
+		for (Map.Entry<String, ModeRoutingParams> entry : routingParams.entrySet()) {
+			Double speed = entry.getValue().getTeleportedModeSpeed();
+			Double beelineDistanceFactor = entry.getValue().getBeelineDistanceFactor();
+
+			if (speed != null && beelineDistanceFactor != null) {
+				teleportationSpeeds.put(entry.getKey(), speed);
+				beelineDistanceFactors.put(entry.getKey(), beelineDistanceFactor);
+			}
+		}
+	}
+
+	/**
+	 * Travel time and network distance per beeline meter, which are learned from
+	 * the exact estimates of all agents and threads in the current iteration.
+	 */
+	static public class Factors {
+		private final Map<String, Factor> factors = new ConcurrentHashMap<>();
+
+		/**
+		 * Forgets all observations. It must not be called while estimates are
+		 * observed, i.e. only between the replanning phases of two iterations.
+		 */
+		public void reset() {
+			factors.clear();
+		}
+
+		static private class Factor {
+			final DoubleAdder travelTimePerMeter = new DoubleAdder();
+			final DoubleAdder distancePerMeter = new DoubleAdder();
+			final LongAdder observations = new LongAdder();
+		}
+
+		void observe(String mode, double beelineDistance, double travelTime, double distance) {
+			Factor factor = factors.computeIfAbsent(mode, m -> new Factor());
+			factor.travelTimePerMeter.add(travelTime / beelineDistance);
+			factor.distancePerMeter.add(distance / beelineDistance);
+			factor.observations.increment();
+		}
+
+		long getObservations(String mode) {
+			Factor factor = factors.get(mode);
+			return factor == null ? 0 : factor.observations.sum();
+		}
+
+		double getTravelTimePerMeter(String mode) {
+			Factor factor = factors.get(mode);
+			return factor.travelTimePerMeter.sum() / factor.observations.sum();
+		}
+
+		double getDistancePerMeter(String mode) {
+			Factor factor = factors.get(mode);
+			return factor.distancePerMeter.sum() / factor.observations.sum();
+		}
+	}
+
+	private double getBeelineDistance(DiscreteModeChoiceTrip trip) {
+		PlanContext context = trip.getPlanContext();
+
+		if (context != null) {
+			double beelineDistance = context.getBeelineDistance(trip.getPlanIndex());
+
+			if (!Double.isNaN(beelineDistance)) {
+				return beelineDistance;
+			}
+		}
+
+		Facility originFacility = FacilitiesUtils.toFacility(trip.getOriginActivity(), facilities);
+		Facility destinationFacility = FacilitiesUtils.toFacility(trip.getDestinationActivity(), facilities);
+
+		Coord originCoord = originFacility.getCoord();
+		Coord destinationCoord = destinationFacility.getCoord();
+
+		if (originCoord == null || destinationCoord == null) {
+			return Double.NaN;
+		}
+
+		return CoordUtils.calcEuclideanDistance(originCoord, destinationCoord);
+	}
+
+	@Override
+	public double estimateProxyUtility(Person person, String mode, DiscreteModeChoiceTrip trip) {
+		ScoringParameters parameters = scoringParametersForPerson.getScoringParameters(person);
+		ModeUtilityParameters modeParameters = parameters.modeParams.get(mode);
+
+		if (modeParameters == null) {
+			return Double.NaN;
+		}
+
+		double beelineDistance = getBeelineDistance(trip);
+		double travelTime;
+		double distance;
+
+		if (teleportationSpeeds.containsKey(mode)) {
+			distance = beelineDistance * beelineDistanceFactors.get(mode);
+			travelTime = distance / teleportationSpeeds.get(mode);
+		} else if (factors.getObservations(mode) >= minimumObservations) {
+			distance = beelineDistance * factors.getDistancePerMeter(mode);
+			travelTime = beelineDistance * factors.getTravelTimePerMeter(mode);
+		} else {
+			return Double.NaN;
+		}
+
+		double utility = modeParameters.constant;
+		utility += modeParameters.marginalUtilityOfTraveling_s * travelTime;
+		utility += modeParameters.marginalUtilityOfDistance_m * distance;
+		utility += parameters.marginalUtilityOfMoney * modeParameters.monetaryDistanceCostRate * distance;
+		return utility;
+	}
+
+	@Override
+	public void observe(Person person, String mode, DiscreteModeChoiceTrip trip, TripCandidate candidate) {
+		if (teleportationSpeeds.containsKey(mode) || !(candidate instanceof MATSimTripCandidate)) {
+			return;
+		}
+
+		double beelineDistance = getBeelineDistance(trip);
+
+		if (!(beelineDistance > 0.0)) {
+			return;
+		}
+
+		MATSimTripCandidate matsimCandidate = (MATSimTripCandidate) candidate;
+		double distance = matsimCandidate.getDistance();
+
+		factors.observe(mode, beelineDistance, matsimCandidate.getTravelTime(), distance);
+	}
+}
@@ -1,14 +1,18 @@
 package ch.ethz.matsim.discrete_mode_choice.components.estimators;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.matsim.api.core.v01.population.Person;
 
 import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.AdditiveTourEstimator;
 import ch.ethz.matsim.discrete_mode_choice.model.tour_based.DefaultTourCandidate;
 import ch.ethz.matsim.discrete_mode_choice.model.tour_based.TourCandidate;
-import ch.ethz.matsim.discrete_mode_choice.model.tour_based.TourEstimator;
 import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripEstimator;
 import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
 
@@ -17,31 +21,105 @@ import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandi
  * in the tour is estimated by the underlying TripEstimator and utilities are
  * summed up to arrive at a total utility for the whole tour.
  * 
+ * The trips of a tour are passed to the underlying TripEstimator as one batch
+ * (see TripEstimator.estimateTrips). The algorithms that estimate trip by trip
+ * (see AdditiveTourEstimator) call the TripEstimator directly as well, so
+ * estimateTrip is final: Trip utilities are customized by the TripEstimator,
+ * and the tour utility by overriding the estimateTour method that receives the
+ * trip candidates.
+ * 
+ * Whether the trips are estimated independently of the previous trips depends
+ * on the TripEstimator, so it needs to be declared when the estimator is
+ * created (see AdditiveTourEstimator.hasIndependentTrips). By default, this is
+ * not assumed.
+ * 
+ * Optionally, a set of prefetched modes can be given. Before the alternatives
+ * of a tour are estimated, every trip of the tour is then estimated for all
+ * available prefetched modes in one batch (see TripEstimator.estimateTripModes),
+ * so that an AsyncTripEstimator can estimate them concurrently. The estimates
+ * are only kept if the TripEstimator caches them, so only cached modes (see
+ * CachedTripEstimator) should be prefetched.
+ * 
  * @author sebhoerl
  */
-public class CumulativeTourEstimator implements TourEstimator {
+public class CumulativeTourEstimator implements AdditiveTourEstimator {
 	final private TripEstimator delegate;
+	final private boolean hasIndependentTrips;
+	final private Set<String> prefetchedModes;
 
 	public CumulativeTourEstimator(TripEstimator delegate) {
+		this(delegate, false);
+	}
+
+	/**
+	 * Creates the estimator. The hasIndependentTrips flag declares whether the
+	 * delegate estimates trips independently of the previous trips.
+	 */
+	public CumulativeTourEstimator(TripEstimator delegate, boolean hasIndependentTrips) {
+		this(delegate, hasIndependentTrips, Collections.emptySet());
+	}
+
+	/**
+	 * Creates the estimator with a set of modes that are prefetched for the trips
+	 * of a tour (see prepareTour).
+	 */
+	public CumulativeTourEstimator(TripEstimator delegate, boolean hasIndependentTrips,
+			Collection<String> prefetchedModes) {
 		this.delegate = delegate;
+		this.hasIndependentTrips = hasIndependentTrips;
+		this.prefetchedModes = new HashSet<>(prefetchedModes);
+	}
+
+	@Override
+	public void prepareTour(Person person, List<String> modes, List<DiscreteModeChoiceTrip> trips,
+			List<TourCandidate> preceedingTours) {
+		List<String> tripModes = new ArrayList<>(modes.size());
+
+		for (String mode : modes) {
+			if (prefetchedModes.contains(mode)) {
+				tripModes.add(mode);
+			}
+		}
+
+		if (tripModes.size() > 0) {
+			for (DiscreteModeChoiceTrip trip : trips) {
+				delegate.estimateTripModes(person, tripModes, trip, Collections.emptyList());
+			}
+		}
 	}
 
 	@Override
 	public TourCandidate estimateTour(Person person, List<String> modes, List<DiscreteModeChoiceTrip> trips,
 			List<TourCandidate> preceedingTours) {
-		List<TripCandidate> tripCandidates = new LinkedList<>();
-		double utility = 0.0;
+		List<TripCandidate> tripCandidates = delegate.estimateTrips(person, modes, trips, Collections.emptyList());
+		return estimateTour(person, modes, trips, tripCandidates, preceedingTours);
+	}
 
-		for (int i = 0; i < modes.size(); i++) {
-			String mode = modes.get(i);
-			DiscreteModeChoiceTrip trip = trips.get(i);
+	@Override
+	public final TripCandidate estimateTrip(Person person, String mode, DiscreteModeChoiceTrip trip,
+			List<TripCandidate> previousTrips, List<TourCandidate> preceedingTours) {
+		return delegate.estimateTrip(person, mode, trip, previousTrips);
+	}
 
-			TripCandidate tripCandidate = delegate.estimateTrip(person, mode, trip, tripCandidates);
-			utility += tripCandidate.getUtility();
+	@Override
+	public TourCandidate estimateTour(Person person, List<String> modes, List<DiscreteModeChoiceTrip> trips,
+			List<TripCandidate> tripCandidates, List<TourCandidate> preceedingTours) {
+		double utility = 0.0;
 
-			tripCandidates.add(tripCandidate);
+		for (TripCandidate tripCandidate : tripCandidates) {
+			utility += tripCandidate.getUtility();
 		}
 
-		return new DefaultTourCandidate(utility, tripCandidates);
+		return new DefaultTourCandidate(utility, new ArrayList<>(tripCandidates));
+	}
+
+	@Override
+	public double estimateModeConstant(Person person, String mode) {
+		return 0.0;
+	}
+
+	@Override
+	public boolean hasIndependentTrips() {
+		return hasIndependentTrips;
 	}
 }
@@ -0,0 +1,38 @@
+package ch.ethz.matsim.discrete_mode_choice.components.estimators;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.matsim.api.core.v01.population.PlanElement;
+
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.routing.CompactRouteStore;
+
+/**
+ * Trip candidate whose routed plan elements are kept in encoded form in a
+ * CompactRouteStore. They are decoded whenever they are requested. If they
+ * have been overwritten in the store in the meantime, the trip is routed again.
+ * 
+ * @author sebhoerl
+ */
+public class EncodedRouteTripCandidate extends ReroutingTripCandidate {
+	private final CompactRouteStore store;
+	private final long handle;
+
+	public EncodedRouteTripCandidate(double utility, String mode, double travelTime, double distance,
+			CompactRouteStore store, long handle, Supplier<List<? extends PlanElement>> recipe) {
+		super(utility, mode, travelTime, distance, recipe);
+		this.store = store;
+		this.handle = handle;
+	}
+
+	@Override
+	public List<? extends PlanElement> getRoutedPlanElements() {
+		List<? extends PlanElement> elements = store.decode(handle);
+
+		if (elements == null) {
+			return super.getRoutedPlanElements();
+		}
+
+		return elements;
+	}
+}
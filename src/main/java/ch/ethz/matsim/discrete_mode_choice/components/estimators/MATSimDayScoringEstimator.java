@@ -1,5 +1,7 @@
 package ch.ethz.matsim.discrete_mode_choice.components.estimators;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -10,10 +12,11 @@ import org.matsim.core.scoring.functions.ScoringParameters;
 import org.matsim.core.scoring.functions.ScoringParametersForPerson;
 
 import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.AdditiveTourEstimator;
 import ch.ethz.matsim.discrete_mode_choice.model.tour_based.DefaultTourCandidate;
 import ch.ethz.matsim.discrete_mode_choice.model.tour_based.TourCandidate;
-import ch.ethz.matsim.discrete_mode_choice.model.tour_based.TourEstimator;
 import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripEstimator;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
 
 /**
  * This tour estimator tries to resemble the MATSim scoring functions as closely
@@ -27,32 +30,83 @@ import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripEstimator;
  * 
  * @author sebhoerl
  */
-public class MATSimDayScoringEstimator implements TourEstimator {
-	private final TourEstimator delegate;
+public class MATSimDayScoringEstimator implements AdditiveTourEstimator {
+	private final CumulativeTourEstimator delegate;
 	private final ScoringParametersForPerson scoringParametersForPerson;
 
 	public MATSimDayScoringEstimator(TripEstimator tripEstimator,
 			ScoringParametersForPerson scoringParametersForPerson) {
-		this.delegate = new CumulativeTourEstimator(tripEstimator);
+		this(tripEstimator, scoringParametersForPerson, false);
+	}
+
+	/**
+	 * Creates the estimator. The hasIndependentTrips flag declares whether the
+	 * trip estimator estimates trips independently of the previous trips (see
+	 * AdditiveTourEstimator).
+	 */
+	public MATSimDayScoringEstimator(TripEstimator tripEstimator,
+			ScoringParametersForPerson scoringParametersForPerson, boolean hasIndependentTrips) {
+		this(tripEstimator, scoringParametersForPerson, hasIndependentTrips, Collections.emptySet());
+	}
+
+	/**
+	 * Creates the estimator with a set of modes that are prefetched for the trips
+	 * of a tour (see CumulativeTourEstimator).
+	 */
+	public MATSimDayScoringEstimator(TripEstimator tripEstimator,
+			ScoringParametersForPerson scoringParametersForPerson, boolean hasIndependentTrips,
+			Collection<String> prefetchedModes) {
+		this.delegate = new CumulativeTourEstimator(tripEstimator, hasIndependentTrips, prefetchedModes);
 		this.scoringParametersForPerson = scoringParametersForPerson;
 	}
 
 	@Override
-	public TourCandidate estimateTour(Person person, List<String> modes, List<DiscreteModeChoiceTrip> trips,
+	public void prepareTour(Person person, List<String> modes, List<DiscreteModeChoiceTrip> trips,
 			List<TourCandidate> previousTours) {
-		ScoringParameters parameters = scoringParametersForPerson.getScoringParameters(person);
+		delegate.prepareTour(person, modes, trips, previousTours);
+	}
 
+	@Override
+	public TourCandidate estimateTour(Person person, List<String> modes, List<DiscreteModeChoiceTrip> trips,
+			List<TourCandidate> previousTours) {
 		// First, calculate utility from trips. They're simply summed up.
 		TourCandidate candidate = delegate.estimateTour(person, modes, trips, previousTours);
+		return addDailyConstants(person, modes, candidate);
+	}
+
+	@Override
+	public TripCandidate estimateTrip(Person person, String mode, DiscreteModeChoiceTrip trip,
+			List<TripCandidate> previousTrips, List<TourCandidate> previousTours) {
+		return delegate.estimateTrip(person, mode, trip, previousTrips, previousTours);
+	}
+
+	@Override
+	public TourCandidate estimateTour(Person person, List<String> modes, List<DiscreteModeChoiceTrip> trips,
+			List<TripCandidate> tripCandidates, List<TourCandidate> previousTours) {
+		TourCandidate candidate = delegate.estimateTour(person, modes, trips, tripCandidates, previousTours);
+		return addDailyConstants(person, modes, candidate);
+	}
+
+	@Override
+	public double estimateModeConstant(Person person, String mode) {
+		ScoringParameters parameters = scoringParametersForPerson.getScoringParameters(person);
+		ModeUtilityParameters modeParams = parameters.modeParams.get(mode);
+		return modeParams.dailyUtilityConstant + parameters.marginalUtilityOfMoney * modeParams.dailyMoneyConstant;
+	}
+
+	@Override
+	public boolean hasIndependentTrips() {
+		return delegate.hasIndependentTrips();
+	}
+
+	private TourCandidate addDailyConstants(Person person, List<String> modes, TourCandidate candidate) {
 		double utility = candidate.getUtility();
 
 		// Add daily constants for trips
 		Set<String> uniqueModes = new HashSet<>(modes);
 
 		for (String uniqueMode : uniqueModes) {
-			ModeUtilityParameters modeParams = parameters.modeParams.get(uniqueMode);
-			utility += modeParams.dailyUtilityConstant;
-			utility += parameters.marginalUtilityOfMoney * modeParams.dailyMoneyConstant;
+			utility += estimateModeConstant(person, uniqueMode);
 		}
 
 		return new DefaultTourCandidate(utility, candidate.getTripCandidates());
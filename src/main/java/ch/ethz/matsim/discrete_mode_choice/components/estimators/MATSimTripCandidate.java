@@ -2,6 +2,7 @@ package ch.ethz.matsim.discrete_mode_choice.components.estimators;
 
 import java.util.List;
 
+import org.matsim.api.core.v01.population.Leg;
 import org.matsim.api.core.v01.population.PlanElement;
 
 import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.DefaultRoutedTripCandidate;
@@ -25,4 +26,24 @@ public class MATSimTripCandidate extends DefaultRoutedTripCandidate {
 	public double getTravelTime() {
 		return travelTime;
 	}
+
+	/**
+	 * Returns the total distance of the routed legs. Candidates that do not keep
+	 * their plan elements override this to avoid creating them.
+	 */
+	public double getDistance() {
+		double distance = 0.0;
+
+		for (PlanElement element : getRoutedPlanElements()) {
+			if (element instanceof Leg) {
+				Leg leg = (Leg) element;
+
+				if (leg.getRoute() != null) {
+					distance += leg.getRoute().getDistance();
+				}
+			}
+		}
+
+		return distance;
+	}
 }
@@ -1,19 +1,39 @@
 package ch.ethz.matsim.discrete_mode_choice.components.estimators;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.TransportMode;
 import org.matsim.api.core.v01.population.Leg;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.config.groups.PlansCalcRouteConfigGroup.ModeRoutingParams;
+import org.matsim.core.population.PopulationUtils;
 import org.matsim.core.router.TripRouter;
 import org.matsim.core.scoring.functions.ModeUtilityParameters;
 import org.matsim.core.scoring.functions.ScoringParameters;
 import org.matsim.core.scoring.functions.ScoringParametersForPerson;
+import org.matsim.core.utils.geometry.CoordUtils;
 import org.matsim.facilities.ActivityFacilities;
+import org.matsim.facilities.ActivityFacilitiesFactoryImpl;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.facilities.FacilitiesUtils;
+import org.matsim.facilities.Facility;
 import org.matsim.pt.routes.ExperimentalTransitRoute;
 
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.routing.CompactNetwork;
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.routing.CompactNetworkRouter;
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.routing.CompactNetworkRouters;
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.routing.CompactRoute;
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.routing.CompactRouteStore;
 import ch.ethz.matsim.discrete_mode_choice.components.utils.PTWaitingTimeEstimator;
 import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
 import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
@@ -22,6 +42,36 @@ import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandi
  * This trip estimator tries to resemble the MATSim scoring functions as closely
  * as possible. The utility parameters are taken directly from the config file.
  * 
+ * Trips with teleported modes (for which a teleportation speed and beeline
+ * distance factor are given) are not routed. Instead, travel time and distance
+ * are calculated directly in the same way as MATSim's teleportation routing
+ * does, and the leg is only created if the candidate is chosen (see
+ * TeleportedTripCandidate).
+ * 
+ * Similarly, modes that have a CompactNetworkRouter are estimated with its
+ * routes instead of routing them with the TripRouter. These routes are only an
+ * approximation (e.g. they have no access and egress walks), so they are only
+ * used for the utility, and the chosen candidates are routed with the
+ * TripRouter when they are inserted into the plan (see ReroutingTripCandidate).
+ * Trips for which the compact router finds no route are routed with the
+ * TripRouter right away.
+ * 
+ * For the lazily routed modes, the routed plan elements are not kept in the
+ * candidates. Instead, the chosen candidates are routed again when they are
+ * inserted into the plan (see ReroutingTripCandidate). If a route store is
+ * given, the routed plan elements of all other routed modes are kept in encoded
+ * form in the store (see EncodedRouteTripCandidate).
+ * 
+ * Candidates may be materialized by another thread than the one that has
+ * estimated them, so they do not use the TripRouter of this estimator. Instead,
+ * they route with the TripRouter of the materializing thread (see
+ * ThreadLocalTripRouter). Candidates may also be kept for a long time and be
+ * handed out to other agents (see SharedTripEstimateCache), so they neither
+ * keep the person nor the trip. They only keep the origin and destination
+ * location and the departure time, and the trip is routed again for an
+ * anonymous person. Hence, the routes of rerouted modes must not depend on the
+ * person.
+ * 
  * @author sebhoerl
  *
  */
@@ -30,13 +80,146 @@ public class MATSimTripScoringEstimator extends AbstractTripRouterEstimator {
 	private final PTWaitingTimeEstimator waitingTimeEstimator;
 	private final Collection<String> ptLegModes;
 
+	private final ActivityFacilities facilities;
+	private final PopulationFactory populationFactory;
+	private final Map<String, ModeRoutingParams> teleportationParameters = new HashMap<>();
+	private final CompactNetworkRouters compactRouters;
+	private final Collection<String> lazyRoutedModes;
+	private final CompactRouteStore routeStore;
+	private final Supplier<TripRouter> reroutingTripRouter;
+	private final Person reroutingPerson = PopulationUtils.getFactory()
+			.createPerson(Id.createPersonId("dmc_rerouting"));
+
+	static private final ActivityFacilitiesFactoryImpl FACILITIES_FACTORY = new ActivityFacilitiesFactoryImpl();
+	static private final Id<ActivityFacility> REROUTING_FACILITY_ID = Id.create("dmc_rerouting",
+			ActivityFacility.class);
+
 	public MATSimTripScoringEstimator(ActivityFacilities facilities, TripRouter tripRouter,
 			PTWaitingTimeEstimator waitingTimeEstimator, ScoringParametersForPerson scoringParametersForPerson,
 			Collection<String> ptModes) {
+		this(facilities, tripRouter, waitingTimeEstimator, scoringParametersForPerson, ptModes, null,
+				Collections.emptyMap());
+	}
+
+	public MATSimTripScoringEstimator(ActivityFacilities facilities, TripRouter tripRouter,
+			PTWaitingTimeEstimator waitingTimeEstimator, ScoringParametersForPerson scoringParametersForPerson,
+			Collection<String> ptModes, PopulationFactory populationFactory,
+			Map<String, ModeRoutingParams> routingParameters) {
+		this(facilities, tripRouter, waitingTimeEstimator, scoringParametersForPerson, ptModes, populationFactory,
+				routingParameters, new CompactNetworkRouters());
+	}
+
+	public MATSimTripScoringEstimator(ActivityFacilities facilities, TripRouter tripRouter,
+			PTWaitingTimeEstimator waitingTimeEstimator, ScoringParametersForPerson scoringParametersForPerson,
+			Collection<String> ptModes, PopulationFactory populationFactory,
+			Map<String, ModeRoutingParams> routingParameters, CompactNetworkRouters compactRouters) {
+		this(facilities, tripRouter, waitingTimeEstimator, scoringParametersForPerson, ptModes, populationFactory,
+				routingParameters, compactRouters, Collections.emptySet(), null, () -> tripRouter);
+	}
+
+	/**
+	 * @param reroutingTripRouter Provides the TripRouter with which candidates
+	 *                            route their trip again. It is called by the
+	 *                            thread that materializes a candidate.
+	 */
+	public MATSimTripScoringEstimator(ActivityFacilities facilities, TripRouter tripRouter,
+			PTWaitingTimeEstimator waitingTimeEstimator, ScoringParametersForPerson scoringParametersForPerson,
+			Collection<String> ptModes, PopulationFactory populationFactory,
+			Map<String, ModeRoutingParams> routingParameters, CompactNetworkRouters compactRouters,
+			Collection<String> lazyRoutedModes, CompactRouteStore routeStore,
+			Supplier<TripRouter> reroutingTripRouter) {
 		super(tripRouter, facilities);
 		this.waitingTimeEstimator = waitingTimeEstimator;
 		this.scoringParametersForPerson = scoringParametersForPerson;
 		this.ptLegModes = ptModes;
+		this.facilities = facilities;
+		this.populationFactory = populationFactory;
+		this.compactRouters = compactRouters;
+		this.lazyRoutedModes = new HashSet<>(lazyRoutedModes);
+		this.routeStore = routeStore;
+		this.reroutingTripRouter = reroutingTripRouter;
+
+		for (Map.Entry<String, ModeRoutingParams> entry : routingParameters.entrySet()) {
+			ModeRoutingParams parameters = entry.getValue();
+
+			if (parameters.getTeleportedModeSpeed() != null && parameters.getBeelineDistanceFactor() != null
+					&& !ptModes.contains(entry.getKey())) {
+				teleportationParameters.put(entry.getKey(), parameters);
+			}
+		}
+	}
+
+	@Override
+	protected TripCandidate estimateTripWithoutRouting(Person person, String mode, DiscreteModeChoiceTrip trip,
+			List<TripCandidate> previousTrips) {
+		ModeRoutingParams routingParameters = teleportationParameters.get(mode);
+
+		if (routingParameters == null) {
+			return estimateTripWithCompactRouter(person, mode, trip);
+		}
+
+		Facility originFacility = FacilitiesUtils.toFacility(trip.getOriginActivity(), facilities);
+		Facility destinationFacility = FacilitiesUtils.toFacility(trip.getDestinationActivity(), facilities);
+
+		Coord originCoord = originFacility.getCoord();
+		Coord destinationCoord = destinationFacility.getCoord();
+
+		if (originCoord == null || destinationCoord == null) {
+			return null;
+		}
+
+		ScoringParameters parameters = scoringParametersForPerson.getScoringParameters(person);
+
+		if (parameters.modeParams.get(mode) == null) {
+			throw new IllegalStateException("Encountered mode for which no scoring parameters are defined: " + mode);
+		}
+
+		// Same as in MATSim's TeleportationRoutingModule
+		double distance = CoordUtils.calcEuclideanDistance(originCoord, destinationCoord)
+				* routingParameters.getBeelineDistanceFactor();
+		double travelTime = (int) (distance / routingParameters.getTeleportedModeSpeed());
+
+		double utility = computeLegUtility(parameters, mode, travelTime, distance);
+
+		return new TeleportedTripCandidate(utility, mode, trip.getDepartureTime(), travelTime, distance,
+				originFacility.getLinkId(), destinationFacility.getLinkId(), populationFactory);
+	}
+
+	private TripCandidate estimateTripWithCompactRouter(Person person, String mode, DiscreteModeChoiceTrip trip) {
+		CompactNetworkRouter router = compactRouters.getRouter(mode);
+
+		if (router == null) {
+			return null;
+		}
+
+		Facility originFacility = FacilitiesUtils.toFacility(trip.getOriginActivity(), facilities);
+		Facility destinationFacility = FacilitiesUtils.toFacility(trip.getDestinationActivity(), facilities);
+
+		CompactNetwork network = router.getNetwork();
+		int originLink = originFacility.getLinkId() == null ? -1 : network.getLinkIndex(originFacility.getLinkId());
+		int destinationLink = destinationFacility.getLinkId() == null ? -1
+				: network.getLinkIndex(destinationFacility.getLinkId());
+
+		if (originLink == -1 || destinationLink == -1) {
+			return null;
+		}
+
+		CompactRoute route = router.getSearch().route(originLink, destinationLink, trip.getDepartureTime());
+
+		if (route == null) {
+			return null;
+		}
+
+		ScoringParameters parameters = scoringParametersForPerson.getScoringParameters(person);
+
+		if (parameters.modeParams.get(mode) == null) {
+			throw new IllegalStateException("Encountered mode for which no scoring parameters are defined: " + mode);
+		}
+
+		double utility = computeLegUtility(parameters, mode, route.getTravelTime(), route.getDistance());
+
+		return new ReroutingTripCandidate(utility, mode, route.getTravelTime(), route.getDistance(),
+				createRerouteRecipe(mode, trip));
 	}
 
 	@Override
@@ -56,15 +239,61 @@ public class MATSimTripScoringEstimator extends AbstractTripRouterEstimator {
 			result = computeStandardTrip(parameters, elements);
 		}
 
+		if (lazyRoutedModes.contains(mode)) {
+			return new ReroutingTripCandidate(result.utility, mode, result.travelTime, result.distance,
+					createRerouteRecipe(mode, trip));
+		}
+
+		if (routeStore != null) {
+			long handle = routeStore.encode(elements);
+
+			if (handle != -1) {
+				return new EncodedRouteTripCandidate(result.utility, mode, result.travelTime, result.distance,
+						routeStore, handle, createRerouteRecipe(mode, trip));
+			}
+		}
+
 		return new MATSimTripCandidate(result.utility, mode, elements, result.travelTime);
 	}
 
+	/**
+	 * Creates the recipe with which a candidate routes its trip again. It only
+	 * captures plain values, so neither the person, the trip nor this estimator
+	 * are kept alive by the candidate.
+	 */
+	private Supplier<List<? extends PlanElement>> createRerouteRecipe(String mode, DiscreteModeChoiceTrip trip) {
+		Facility originFacility = copyFacility(FacilitiesUtils.toFacility(trip.getOriginActivity(), facilities));
+		Facility destinationFacility = copyFacility(
+				FacilitiesUtils.toFacility(trip.getDestinationActivity(), facilities));
+		double departureTime = trip.getDepartureTime();
+
+		Supplier<TripRouter> tripRouter = reroutingTripRouter;
+		Person person = reroutingPerson;
+
+		return () -> tripRouter.get().calcRoute(mode, originFacility, destinationFacility, departureTime, person);
+	}
+
+	/**
+	 * Facilities of the scenario are kept as they are, while facilities that wrap
+	 * an activity of the plan are replaced by a copy of their location.
+	 */
+	static private Facility copyFacility(Facility facility) {
+		if (facility instanceof ActivityFacility) {
+			return facility;
+		}
+
+		return FACILITIES_FACTORY.createActivityFacility(REROUTING_FACILITY_ID, facility.getCoord(),
+				facility.getLinkId());
+	}
+
 	private class ComputationResult {
 		double travelTime;
+		double distance;
 		double utility;
 
-		ComputationResult(double travelTime, double utility) {
+		ComputationResult(double travelTime, double distance, double utility) {
 			this.travelTime = travelTime;
+			this.distance = distance;
 			this.utility = utility;
 		}
 	}
@@ -91,18 +320,20 @@ public class MATSimTripScoringEstimator extends AbstractTripRouterEstimator {
 	private ComputationResult computeStandardTrip(ScoringParameters parameters, List<? extends PlanElement> elements) {
 		double utility = 0.0;
 		double travelTime = 0.0;
+		double distance = 0.0;
 
 		for (PlanElement element : elements) {
 			if (element instanceof Leg) {
 				Leg leg = (Leg) element;
 
 				travelTime += leg.getTravelTime();
+				distance += leg.getRoute().getDistance();
 				utility += computeLegUtility(parameters, leg.getMode(), leg.getTravelTime(),
 						leg.getRoute().getDistance());
 			}
 		}
 
-		return new ComputationResult(travelTime, utility);
+		return new ComputationResult(travelTime, distance, utility);
 	}
 
 	private ComputationResult computePtTrip(ScoringParameters parameters, List<? extends PlanElement> elements,
@@ -0,0 +1,39 @@
+package ch.ethz.matsim.discrete_mode_choice.components.estimators;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.matsim.api.core.v01.population.PlanElement;
+
+/**
+ * Trip candidate that only keeps the scalar results of the estimation. The
+ * routed plan elements are dropped after estimation and the trip is routed
+ * again (with the given recipe) whenever the plan elements are requested,
+ * which is usually only the case if the candidate is chosen.
+ * 
+ * Note that components that inspect the routes of all candidates (e.g. the
+ * TransitWalk constraint) will cause the trip to be routed again as well.
+ * 
+ * @author sebhoerl
+ */
+public class ReroutingTripCandidate extends MATSimTripCandidate {
+	private final double distance;
+	private final Supplier<List<? extends PlanElement>> recipe;
+
+	public ReroutingTripCandidate(double utility, String mode, double travelTime, double distance,
+			Supplier<List<? extends PlanElement>> recipe) {
+		super(utility, mode, null, travelTime);
+		this.distance = distance;
+		this.recipe = recipe;
+	}
+
+	@Override
+	public double getDistance() {
+		return distance;
+	}
+
+	@Override
+	public List<? extends PlanElement> getRoutedPlanElements() {
+		return recipe.get();
+	}
+}
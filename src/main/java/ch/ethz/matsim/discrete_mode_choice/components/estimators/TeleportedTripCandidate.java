@@ -0,0 +1,67 @@
+package ch.ethz.matsim.discrete_mode_choice.components.estimators;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.router.TripStructureUtils;
+
+/**
+ * Trip candidate for a teleported mode that has been estimated analytically by
+ * the MATSimTripScoringEstimator. The leg and its route are only created once
+ * the plan elements are requested, which is usually only the case if the
+ * candidate is chosen.
+ * 
+ * @author sebhoerl
+ */
+public class TeleportedTripCandidate extends MATSimTripCandidate {
+	private final PopulationFactory populationFactory;
+	private final double departureTime;
+	private final double distance;
+	private final Id<Link> originLinkId;
+	private final Id<Link> destinationLinkId;
+
+	private volatile List<? extends PlanElement> routedPlanElements = null;
+
+	public TeleportedTripCandidate(double utility, String mode, double departureTime, double travelTime,
+			double distance, Id<Link> originLinkId, Id<Link> destinationLinkId, PopulationFactory populationFactory) {
+		super(utility, mode, null, travelTime);
+		this.populationFactory = populationFactory;
+		this.departureTime = departureTime;
+		this.distance = distance;
+		this.originLinkId = originLinkId;
+		this.destinationLinkId = destinationLinkId;
+	}
+
+	@Override
+	public double getDistance() {
+		return distance;
+	}
+
+	@Override
+	public List<? extends PlanElement> getRoutedPlanElements() {
+		if (routedPlanElements == null) {
+			// Candidates may be shared between threads, but creating the leg twice does
+			// no harm
+			Route route = populationFactory.getRouteFactories().createRoute(Route.class, originLinkId,
+					destinationLinkId);
+			route.setTravelTime(getTravelTime());
+			route.setDistance(distance);
+
+			Leg leg = populationFactory.createLeg(getMode());
+			leg.setDepartureTime(departureTime);
+			leg.setTravelTime(getTravelTime());
+			leg.setRoute(route);
+			TripStructureUtils.setRoutingMode(leg, getMode());
+
+			routedPlanElements = Collections.singletonList(leg);
+		}
+
+		return routedPlanElements;
+	}
+}
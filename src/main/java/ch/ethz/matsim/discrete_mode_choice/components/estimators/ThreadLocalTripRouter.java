@@ -0,0 +1,30 @@
+package ch.ethz.matsim.discrete_mode_choice.components.estimators;
+
+import java.util.function.Supplier;
+
+import org.matsim.core.router.TripRouter;
+
+/**
+ * Returns the TripRouter of the calling thread. A TripRouter is not
+ * thread-safe, but candidates that route their trip only later on (see
+ * ReroutingTripCandidate) may be materialized by a different thread than the
+ * one that has estimated them, e.g. if they are shared by the
+ * SharedTripEstimateCache or estimated by the AsyncTripEstimator. Such
+ * candidates therefore resolve the router only when they are materialized.
+ * 
+ * The routers are created on demand and kept for the lifetime of the thread.
+ * 
+ * @author sebhoerl
+ */
+public class ThreadLocalTripRouter implements Supplier<TripRouter> {
+	private final ThreadLocal<TripRouter> tripRouters;
+
+	public ThreadLocalTripRouter(Supplier<TripRouter> tripRouterSupplier) {
+		this.tripRouters = ThreadLocal.withInitial(tripRouterSupplier);
+	}
+
+	@Override
+	public TripRouter get() {
+		return tripRouters.get();
+	}
+}
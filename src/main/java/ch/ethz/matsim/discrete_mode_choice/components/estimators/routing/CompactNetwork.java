@@ -0,0 +1,163 @@
+package ch.ethz.matsim.discrete_mode_choice.components.estimators.routing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+
+/**
+ * Network representation for estimation routing. Nodes and links are numbered
+ * densely and the outgoing and incoming links of every node are kept in
+ * compressed sparse row arrays, i.e. the outgoing links of node n are
+ * outgoingLinks[outgoingOffsets[n]] to outgoingLinks[outgoingOffsets[n + 1] -
+ * 1]. The structure is immutable and can be shared by all threads.
+ * 
+ * @author sebhoerl
+ */
+public class CompactNetwork {
+	private final int numberOfNodes;
+	private final int numberOfLinks;
+
+	private final int[] outgoingOffsets;
+	private final int[] outgoingLinks;
+	private final int[] incomingOffsets;
+	private final int[] incomingLinks;
+
+	private final int[] linkFromNodes;
+	private final int[] linkToNodes;
+	private final double[] linkLengths;
+	private final double[] freeSpeedTravelTimes;
+
+	private final Link[] links;
+	private final Map<Id<Link>, Integer> linkIndices;
+	private final Map<Id<Node>, Integer> nodeIndices;
+
+	public CompactNetwork(Network network) {
+		List<Node> nodes = new ArrayList<>(network.getNodes().values());
+		this.nodeIndices = new HashMap<>(nodes.size());
+
+		for (int index = 0; index < nodes.size(); index++) {
+			nodeIndices.put(nodes.get(index).getId(), index);
+		}
+
+		this.numberOfNodes = nodes.size();
+		this.numberOfLinks = network.getLinks().size();
+
+		this.links = new Link[numberOfLinks];
+		this.linkIndices = new HashMap<>(numberOfLinks);
+		this.linkFromNodes = new int[numberOfLinks];
+		this.linkToNodes = new int[numberOfLinks];
+		this.linkLengths = new double[numberOfLinks];
+		this.freeSpeedTravelTimes = new double[numberOfLinks];
+
+		int linkIndex = 0;
+
+		for (Link link : network.getLinks().values()) {
+			links[linkIndex] = link;
+			linkIndices.put(link.getId(), linkIndex);
+			linkFromNodes[linkIndex] = nodeIndices.get(link.getFromNode().getId());
+			linkToNodes[linkIndex] = nodeIndices.get(link.getToNode().getId());
+			linkLengths[linkIndex] = link.getLength();
+			freeSpeedTravelTimes[linkIndex] = link.getLength() / link.getFreespeed();
+			linkIndex++;
+		}
+
+		this.outgoingOffsets = new int[numberOfNodes + 1];
+		this.outgoingLinks = new int[numberOfLinks];
+		this.incomingOffsets = new int[numberOfNodes + 1];
+		this.incomingLinks = new int[numberOfLinks];
+
+		fillRows(linkFromNodes, outgoingOffsets, outgoingLinks);
+		fillRows(linkToNodes, incomingOffsets, incomingLinks);
+	}
+
+	static private void fillRows(int[] linkNodes, int[] offsets, int[] rowLinks) {
+		for (int node : linkNodes) {
+			offsets[node + 1]++;
+		}
+
+		for (int node = 0; node < offsets.length - 1; node++) {
+			offsets[node + 1] += offsets[node];
+		}
+
+		int[] positions = new int[offsets.length - 1];
+		System.arraycopy(offsets, 0, positions, 0, positions.length);
+
+		for (int link = 0; link < linkNodes.length; link++) {
+			rowLinks[positions[linkNodes[link]]++] = link;
+		}
+	}
+
+	public int getNumberOfNodes() {
+		return numberOfNodes;
+	}
+
+	public int getNumberOfLinks() {
+		return numberOfLinks;
+	}
+
+	public int getOutgoingStart(int node) {
+		return outgoingOffsets[node];
+	}
+
+	public int getOutgoingEnd(int node) {
+		return outgoingOffsets[node + 1];
+	}
+
+	public int getOutgoingLink(int position) {
+		return outgoingLinks[position];
+	}
+
+	public int getIncomingStart(int node) {
+		return incomingOffsets[node];
+	}
+
+	public int getIncomingEnd(int node) {
+		return incomingOffsets[node + 1];
+	}
+
+	public int getIncomingLink(int position) {
+		return incomingLinks[position];
+	}
+
+	public int getFromNode(int link) {
+		return linkFromNodes[link];
+	}
+
+	public int getToNode(int link) {
+		return linkToNodes[link];
+	}
+
+	public double getLength(int link) {
+		return linkLengths[link];
+	}
+
+	public double getFreeSpeedTravelTime(int link) {
+		return freeSpeedTravelTimes[link];
+	}
+
+	public Link getLink(int link) {
+		return links[link];
+	}
+
+	/**
+	 * Returns the index of a link or -1 if the link is not part of the network.
+	 */
+	public int getLinkIndex(Id<Link> linkId) {
+		Integer index = linkIndices.get(linkId);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Returns the index of a node or -1 if the node is not part of the network.
+	 */
+	public int getNodeIndex(Id<Node> nodeId) {
+		Integer index = nodeIndices.get(nodeId);
+		return index == null ? -1 : index;
+	}
+}
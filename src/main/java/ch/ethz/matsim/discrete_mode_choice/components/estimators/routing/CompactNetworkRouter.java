@@ -0,0 +1,246 @@
+package ch.ethz.matsim.discrete_mode_choice.components.estimators.routing;
+
+import java.util.Arrays;
+
+import org.matsim.core.router.util.TravelTime;
+
+/**
+ * Router for estimation on a CompactNetwork. Routes are calculated with
+ * time-dependent ALT searches on the current TravelTimeSnapshot, which is
+ * replaced as a whole when the travel times are updated. Network, landmarks and
+ * snapshot can be shared by all threads, while every thread uses its own
+ * Search (see getSearch).
+ * 
+ * The routes minimize the travel time and do not contain access and egress
+ * walks, so they are only an approximation of MATSim's network routing and
+ * should only be used for estimation.
+ * 
+ * As in MATSim's network routing, the search starts at the end of the origin
+ * link at the departure time and ends at the start of the destination link. The
+ * distance includes the length of the destination link.
+ * 
+ * @author sebhoerl
+ */
+public class CompactNetworkRouter {
+	private final CompactNetwork network;
+	private final Landmarks landmarks;
+	private final double binSize;
+	private final double endTime;
+
+	private volatile TravelTimeSnapshot snapshot;
+
+	private final ThreadLocal<Search> searches = ThreadLocal.withInitial(Search::new);
+
+	public CompactNetworkRouter(CompactNetwork network, Landmarks landmarks, double binSize, double endTime) {
+		this.network = network;
+		this.landmarks = landmarks;
+		this.binSize = binSize;
+		this.endTime = endTime;
+		this.snapshot = TravelTimeSnapshot.create(network, null, binSize, endTime);
+	}
+
+	public CompactNetwork getNetwork() {
+		return network;
+	}
+
+	/**
+	 * Replaces the travel times that are used by all searches that start
+	 * afterwards.
+	 */
+	public void updateTravelTimes(TravelTime travelTime) {
+		snapshot = TravelTimeSnapshot.create(network, travelTime, binSize, endTime);
+	}
+
+	/**
+	 * Returns the search of the calling thread. It is kept for the lifetime of
+	 * the router, so the node arrays are only allocated once per thread and mode.
+	 */
+	public Search getSearch() {
+		return searches.get();
+	}
+
+	/**
+	 * Search state of one thread. The arrays are only reset lazily by comparing
+	 * the stamp of a node with the current search.
+	 */
+	public class Search {
+		private final double[] arrivalTimes = new double[network.getNumberOfNodes()];
+		private final double[] distances = new double[network.getNumberOfNodes()];
+		private final int[] previousLinks = new int[network.getNumberOfNodes()];
+		private final int[] stamps = new int[network.getNumberOfNodes()];
+		private final boolean[] settled = new boolean[network.getNumberOfNodes()];
+		private final NodeHeap heap = new NodeHeap();
+		private int stamp = 0;
+
+		private Search() {
+		}
+
+		private void visit(int node) {
+			if (stamps[node] != stamp) {
+				stamps[node] = stamp;
+				arrivalTimes[node] = Double.POSITIVE_INFINITY;
+				distances[node] = Double.POSITIVE_INFINITY;
+				previousLinks[node] = -1;
+				settled[node] = false;
+			}
+		}
+
+		private void startSearch() {
+			stamp++;
+
+			if (stamp == Integer.MAX_VALUE) {
+				Arrays.fill(stamps, 0);
+				stamp = 1;
+			}
+
+			heap.clear();
+		}
+
+		/**
+		 * Returns the route between two link indices or null if the destination
+		 * cannot be reached.
+		 */
+		public CompactRoute route(int originLink, int destinationLink, double departureTime) {
+			if (originLink == destinationLink) {
+				return new CompactRoute(0.0, 0.0, new int[0]);
+			}
+
+			TravelTimeSnapshot snapshot = CompactNetworkRouter.this.snapshot;
+
+			int origin = network.getToNode(originLink);
+			int target = network.getFromNode(destinationLink);
+
+			startSearch();
+
+			visit(origin);
+			arrivalTimes[origin] = departureTime;
+			heap.add(origin, departureTime + landmarks.getLowerBound(origin, target));
+
+			boolean found = false;
+
+			while (!heap.isEmpty()) {
+				int node = heap.poll();
+
+				if (settled[node]) {
+					continue;
+				}
+
+				settled[node] = true;
+
+				if (node == target) {
+					found = true;
+					break;
+				}
+
+				double time = arrivalTimes[node];
+
+				for (int position = network.getOutgoingStart(node); position < network
+						.getOutgoingEnd(node); position++) {
+					int link = network.getOutgoingLink(position);
+					int nextNode = network.getToNode(link);
+
+					visit(nextNode);
+
+					if (settled[nextNode]) {
+						continue;
+					}
+
+					double arrivalTime = time + snapshot.getTravelTime(link, time);
+
+					if (arrivalTime < arrivalTimes[nextNode]) {
+						arrivalTimes[nextNode] = arrivalTime;
+						previousLinks[nextNode] = link;
+						heap.add(nextNode, arrivalTime + landmarks.getLowerBound(nextNode, target));
+					}
+				}
+			}
+
+			if (!found) {
+				return null;
+			}
+
+			int numberOfLinks = 0;
+
+			for (int node = target; node != origin; node = network.getFromNode(previousLinks[node])) {
+				numberOfLinks++;
+			}
+
+			int[] links = new int[numberOfLinks];
+			double distance = network.getLength(destinationLink);
+
+			int index = numberOfLinks - 1;
+
+			for (int node = target; node != origin; node = network.getFromNode(previousLinks[node])) {
+				links[index--] = previousLinks[node];
+				distance += network.getLength(previousLinks[node]);
+			}
+
+			return new CompactRoute(arrivalTimes[target] - departureTime, distance, links);
+		}
+
+		/**
+		 * Calculates the earliest arrival times at all nodes for a departure from a
+		 * node (one-to-all search). The distances are summed up along the links that
+		 * are actually used by the tree. Results can be obtained with getArrivalTime
+		 * and getDistance until the next search of this thread.
+		 */
+		public void calculateTree(int origin, double departureTime) {
+			TravelTimeSnapshot snapshot = CompactNetworkRouter.this.snapshot;
+
+			startSearch();
+
+			visit(origin);
+			arrivalTimes[origin] = departureTime;
+			distances[origin] = 0.0;
+			heap.add(origin, departureTime);
+
+			while (!heap.isEmpty()) {
+				int node = heap.poll();
+
+				if (settled[node]) {
+					continue;
+				}
+
+				settled[node] = true;
+				double time = arrivalTimes[node];
+
+				for (int position = network.getOutgoingStart(node); position < network
+						.getOutgoingEnd(node); position++) {
+					int link = network.getOutgoingLink(position);
+					int nextNode = network.getToNode(link);
+
+					visit(nextNode);
+
+					if (settled[nextNode]) {
+						continue;
+					}
+
+					double arrivalTime = time + snapshot.getTravelTime(link, time);
+
+					if (arrivalTime < arrivalTimes[nextNode]) {
+						arrivalTimes[nextNode] = arrivalTime;
+						distances[nextNode] = distances[node] + network.getLength(link);
+						previousLinks[nextNode] = link;
+						heap.add(nextNode, arrivalTime);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Returns the arrival time at a node in the last tree or infinity if the
+		 * node cannot be reached.
+		 */
+		public double getArrivalTime(int node) {
+			return stamps[node] == stamp && settled[node] ? arrivalTimes[node] : Double.POSITIVE_INFINITY;
+		}
+
+		/**
+		 * Returns the distance to a node in the last tree or infinity if the node
+		 * cannot be reached.
+		 */
+		public double getDistance(int node) {
+			return stamps[node] == stamp && settled[node] ? distances[node] : Double.POSITIVE_INFINITY;
+		}
+	}
+}
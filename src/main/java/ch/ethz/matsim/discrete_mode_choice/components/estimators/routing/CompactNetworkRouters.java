@@ -0,0 +1,68 @@
+package ch.ethz.matsim.discrete_mode_choice.components.estimators.routing;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.network.algorithms.TransportModeNetworkFilter;
+import org.matsim.core.router.util.TravelTime;
+
+/**
+ * Holds one CompactNetworkRouter per mode, each on the part of the network
+ * that is available to the mode.
+ * 
+ * @author sebhoerl
+ */
+public class CompactNetworkRouters {
+	final private static Logger logger = Logger.getLogger(CompactNetworkRouters.class);
+
+	private final Map<String, CompactNetworkRouter> routers = new HashMap<>();
+
+	public CompactNetworkRouters() {
+	}
+
+	public CompactNetworkRouters(Network network, Collection<String> modes, int numberOfLandmarks, double binSize,
+			double endTime) {
+		for (String mode : modes) {
+			Network modeNetwork = NetworkUtils.createNetwork();
+			new TransportModeNetworkFilter(network).filter(modeNetwork, Collections.singleton(mode));
+
+			CompactNetwork compactNetwork = new CompactNetwork(modeNetwork);
+			Landmarks landmarks = Landmarks.create(compactNetwork, numberOfLandmarks);
+
+			logger.info(String.format("Created compact network for mode '%s' with %d nodes, %d links and %d landmarks",
+					mode, compactNetwork.getNumberOfNodes(), compactNetwork.getNumberOfLinks(),
+					landmarks.getNumberOfLandmarks()));
+
+			routers.put(mode, new CompactNetworkRouter(compactNetwork, landmarks, binSize, endTime));
+		}
+	}
+
+	/**
+	 * Returns the router for a mode or null if the mode is not routed compactly.
+	 */
+	public CompactNetworkRouter getRouter(String mode) {
+		return routers.get(mode);
+	}
+
+	public Collection<String> getModes() {
+		return routers.keySet();
+	}
+
+	public void updateTravelTimes(Map<String, TravelTime> travelTimes) {
+		for (Map.Entry<String, CompactNetworkRouter> entry : routers.entrySet()) {
+			TravelTime travelTime = travelTimes.get(entry.getKey());
+
+			if (travelTime == null) {
+				throw new IllegalStateException(
+						String.format("No TravelTime is available for network mode '%s'", entry.getKey()));
+			}
+
+			entry.getValue().updateTravelTimes(travelTime);
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package ch.ethz.matsim.discrete_mode_choice.components.estimators.routing;
+
+/**
+ * Result of a search of the CompactNetworkRouter: travel time, distance and the
+ * indices of the links that are traversed between the origin and destination
+ * link.
+ * 
+ * @author sebhoerl
+ */
+public class CompactRoute {
+	private final double travelTime;
+	private final double distance;
+	private final int[] links;
+
+	public CompactRoute(double travelTime, double distance, int[] links) {
+		this.travelTime = travelTime;
+		this.distance = distance;
+		this.links = links;
+	}
+
+	public double getTravelTime() {
+		return travelTime;
+	}
+
+	public double getDistance() {
+		return distance;
+	}
+
+	public int[] getLinks() {
+		return links;
+	}
+}
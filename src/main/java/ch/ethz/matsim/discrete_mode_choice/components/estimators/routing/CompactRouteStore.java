@@ -0,0 +1,537 @@
+package ch.ethz.matsim.discrete_mode_choice.components.estimators.routing;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.GenericRouteImpl;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.utils.misc.Time;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.pt.routes.ExperimentalTransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitSchedule;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+
+/**
+ * Stores routed plan elements in a compact binary form in a fixed amount of
+ * off-heap memory. Network routes are encoded as variable-length deltas of
+ * dense link indices, transit routes as indices of their stops, line and route,
+ * and strings and other ids are interned.
+ *
+ * The memory is used as a ring buffer: once it is full, writing continues at
+ * the beginning and the oldest routes are overwritten. Decoding such a route
+ * returns null, so the caller needs to be able to route the trip again. Only
+ * legs with network, transit and generic routes and activities can be encoded,
+ * otherwise encoding fails and the plan elements should be kept as they are.
+ * The same happens if a leg has other attributes than its routing mode or an
+ * activity has any attributes, so that decoding gives the same plan elements
+ * as the ones that have been encoded.
+ *
+ * @author sebhoerl
+ */
+public class CompactRouteStore {
+	static private final int ACTIVITY = 0;
+	static private final int LEG = 1;
+
+	static private final int NO_ROUTE = 0;
+	static private final int GENERIC_ROUTE = 1;
+	static private final int NETWORK_ROUTE = 2;
+	static private final int TRANSIT_ROUTE = 3;
+
+	// Attribute in which TripStructureUtils keeps the routing mode
+	static private final String ROUTING_MODE_ATTRIBUTE = "routingMode";
+
+	private final PopulationFactory populationFactory;
+	private final TransitSchedule schedule;
+
+	private final Map<Id<Link>, Integer> linkIndices = new HashMap<>();
+	private final List<Id<Link>> linkIds = new ArrayList<>();
+
+	private final Map<Object, Integer> internedIndices = new ConcurrentHashMap<>();
+	private final List<Object> internedObjects = new ArrayList<>();
+
+	private final ByteBuffer memory;
+	private int writePosition = 0;
+	private int generation = 0;
+
+	private final ThreadLocal<EncodingBuffer> encodingBuffers = ThreadLocal.withInitial(EncodingBuffer::new);
+
+	// Views with their own position for bulk copies
+	private final ThreadLocal<ByteBuffer> memoryViews;
+
+	/**
+	 * @param schedule May be null if there is no transit.
+	 */
+	public CompactRouteStore(Network network, TransitSchedule schedule, PopulationFactory populationFactory,
+			int capacity) {
+		this.populationFactory = populationFactory;
+		this.schedule = schedule;
+		this.memory = ByteBuffer.allocateDirect(capacity);
+		this.memoryViews = ThreadLocal.withInitial(memory::duplicate);
+
+		for (Id<Link> linkId : network.getLinks().keySet()) {
+			linkIndices.put(linkId, linkIds.size());
+			linkIds.add(linkId);
+		}
+
+		internedObjects.add(null);
+	}
+
+	/**
+	 * Encodes the plan elements and returns a handle to them, or -1 if they
+	 * cannot be encoded.
+	 */
+	public long encode(List<? extends PlanElement> elements) {
+		EncodingBuffer buffer = encodingBuffers.get();
+		buffer.reset();
+
+		if (!encodeElements(buffer, elements) || buffer.size + Integer.BYTES > memory.capacity()) {
+			return -1;
+		}
+
+		ByteBuffer view = memoryViews.get();
+
+		synchronized (this) {
+			if (writePosition + Integer.BYTES + buffer.size > memory.capacity()) {
+				writePosition = 0;
+				generation++;
+			}
+
+			int offset = writePosition;
+			memory.putInt(offset, buffer.size);
+
+			view.position(offset + Integer.BYTES);
+			view.put(buffer.data, 0, buffer.size);
+
+			writePosition += Integer.BYTES + buffer.size;
+			return ((long) generation << 32) | offset;
+		}
+	}
+
+	/**
+	 * Returns the plan elements of a handle or null if they have been overwritten
+	 * in the meantime.
+	 */
+	public List<PlanElement> decode(long handle) {
+		int handleGeneration = (int) (handle >>> 32);
+		int offset = (int) handle;
+		byte[] data;
+		ByteBuffer view = memoryViews.get();
+
+		synchronized (this) {
+			boolean isCurrent = handleGeneration == generation;
+			boolean isPrevious = handleGeneration == generation - 1 && offset >= writePosition;
+
+			if (!isCurrent && !isPrevious) {
+				return null;
+			}
+
+			data = new byte[memory.getInt(offset)];
+
+			view.position(offset + Integer.BYTES);
+			view.get(data);
+		}
+
+		return decodeElements(new DecodingBuffer(data));
+	}
+
+	private int intern(Object object) {
+		if (object == null) {
+			return 0;
+		}
+
+		Integer index = internedIndices.get(object);
+
+		if (index == null) {
+			synchronized (internedObjects) {
+				index = internedIndices.get(object);
+
+				if (index == null) {
+					index = internedObjects.size();
+					internedObjects.add(object);
+					internedIndices.put(object, index);
+				}
+			}
+		}
+
+		return index;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T getInterned(int index) {
+		synchronized (internedObjects) {
+			return (T) internedObjects.get(index);
+		}
+	}
+
+	private int getLinkIndex(Id<Link> linkId) {
+		if (linkId == null) {
+			return 0;
+		}
+
+		Integer index = linkIndices.get(linkId);
+		return index == null ? -1 : index + 1;
+	}
+
+	private Id<Link> getLinkId(int index) {
+		return index == 0 ? null : linkIds.get(index - 1);
+	}
+
+	private boolean encodeElements(EncodingBuffer buffer, List<? extends PlanElement> elements) {
+		buffer.writeVarInt(elements.size());
+
+		for (PlanElement element : elements) {
+			if (element instanceof Activity) {
+				Activity activity = (Activity) element;
+
+				int linkIndex = getLinkIndex(activity.getLinkId());
+
+				if (linkIndex == -1 || !activity.getAttributes().getAsMap().isEmpty()) {
+					return false;
+				}
+
+				buffer.writeVarInt(ACTIVITY);
+				buffer.writeVarInt(intern(activity.getType()));
+				buffer.writeVarInt(linkIndex);
+				buffer.writeVarInt(intern(activity.getFacilityId()));
+
+				if (activity.getCoord() == null) {
+					buffer.writeVarInt(0);
+				} else {
+					buffer.writeVarInt(1);
+					buffer.writeDouble(activity.getCoord().getX());
+					buffer.writeDouble(activity.getCoord().getY());
+				}
+
+				buffer.writeDouble(activity.getStartTime());
+				buffer.writeDouble(activity.getEndTime());
+				buffer.writeDouble(activity.getMaximumDuration());
+			} else if (element instanceof Leg) {
+				Leg leg = (Leg) element;
+
+				if (!hasOnlyRoutingMode(leg.getAttributes())) {
+					return false;
+				}
+
+				buffer.writeVarInt(LEG);
+				buffer.writeVarInt(intern(leg.getMode()));
+				buffer.writeVarInt(intern(TripStructureUtils.getRoutingMode(leg)));
+				buffer.writeDouble(leg.getDepartureTime());
+				buffer.writeDouble(leg.getTravelTime());
+
+				if (!encodeRoute(buffer, leg.getRoute())) {
+					return false;
+				}
+			} else {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	static private boolean hasOnlyRoutingMode(Attributes attributes) {
+		for (String name : attributes.getAsMap().keySet()) {
+			if (!name.equals(ROUTING_MODE_ATTRIBUTE)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private boolean encodeRoute(EncodingBuffer buffer, Route route) {
+		if (route == null) {
+			buffer.writeVarInt(NO_ROUTE);
+			return true;
+		}
+
+		int startLinkIndex = getLinkIndex(route.getStartLinkId());
+		int endLinkIndex = getLinkIndex(route.getEndLinkId());
+
+		if (startLinkIndex == -1 || endLinkIndex == -1) {
+			return false;
+		}
+
+		if (route instanceof NetworkRoute) {
+			buffer.writeVarInt(NETWORK_ROUTE);
+		} else if (route instanceof ExperimentalTransitRoute && schedule != null) {
+			buffer.writeVarInt(TRANSIT_ROUTE);
+		} else if (route.getClass().equals(GenericRouteImpl.class)) {
+			buffer.writeVarInt(GENERIC_ROUTE);
+		} else {
+			return false;
+		}
+
+		buffer.writeVarInt(startLinkIndex);
+		buffer.writeVarInt(endLinkIndex);
+		buffer.writeDouble(route.getTravelTime());
+		buffer.writeDouble(route.getDistance());
+
+		if (route instanceof NetworkRoute) {
+			List<Id<Link>> routeLinkIds = ((NetworkRoute) route).getLinkIds();
+			buffer.writeVarInt(routeLinkIds.size());
+
+			int previousIndex = startLinkIndex;
+
+			for (Id<Link> linkId : routeLinkIds) {
+				int linkIndex = getLinkIndex(linkId);
+
+				if (linkIndex <= 0) {
+					return false;
+				}
+
+				buffer.writeVarInt(zigZag(linkIndex - previousIndex));
+				previousIndex = linkIndex;
+			}
+
+			NetworkRoute networkRoute = (NetworkRoute) route;
+			buffer.writeDouble(networkRoute.getTravelCost());
+			buffer.writeVarInt(intern(networkRoute.getVehicleId()));
+		} else if (route instanceof ExperimentalTransitRoute) {
+			ExperimentalTransitRoute transitRoute = (ExperimentalTransitRoute) route;
+			buffer.writeVarInt(intern(transitRoute.getAccessStopId()));
+			buffer.writeVarInt(intern(transitRoute.getLineId()));
+			buffer.writeVarInt(intern(transitRoute.getRouteId()));
+			buffer.writeVarInt(intern(transitRoute.getEgressStopId()));
+		} else {
+			buffer.writeString(route.getRouteDescription());
+		}
+
+		return true;
+	}
+
+	private List<PlanElement> decodeElements(DecodingBuffer buffer) {
+		int numberOfElements = buffer.readVarInt();
+		List<PlanElement> elements = new ArrayList<>(numberOfElements);
+
+		for (int k = 0; k < numberOfElements; k++) {
+			if (buffer.readVarInt() == ACTIVITY) {
+				String type = getInterned(buffer.readVarInt());
+				Id<Link> linkId = getLinkId(buffer.readVarInt());
+				Id<ActivityFacility> facilityId = getInterned(buffer.readVarInt());
+
+				Activity activity;
+
+				if (buffer.readVarInt() == 1) {
+					Coord coord = new Coord(buffer.readDouble(), buffer.readDouble());
+					activity = PopulationUtils.createActivityFromCoordAndLinkId(type, coord, linkId);
+				} else {
+					activity = PopulationUtils.createActivityFromLinkId(type, linkId);
+				}
+
+				activity.setFacilityId(facilityId);
+
+				double startTime = buffer.readDouble();
+				double endTime = buffer.readDouble();
+				double maximumDuration = buffer.readDouble();
+
+				if (!Time.isUndefinedTime(startTime)) {
+					activity.setStartTime(startTime);
+				}
+
+				if (!Time.isUndefinedTime(endTime)) {
+					activity.setEndTime(endTime);
+				}
+
+				if (!Time.isUndefinedTime(maximumDuration)) {
+					activity.setMaximumDuration(maximumDuration);
+				}
+
+				elements.add(activity);
+			} else {
+				Leg leg = populationFactory.createLeg(getInterned(buffer.readVarInt()));
+				String routingMode = getInterned(buffer.readVarInt());
+
+				if (routingMode != null) {
+					TripStructureUtils.setRoutingMode(leg, routingMode);
+				}
+
+				leg.setDepartureTime(buffer.readDouble());
+				leg.setTravelTime(buffer.readDouble());
+				leg.setRoute(decodeRoute(buffer));
+
+				elements.add(leg);
+			}
+		}
+
+		return elements;
+	}
+
+	private Route decodeRoute(DecodingBuffer buffer) {
+		int routeType = buffer.readVarInt();
+
+		if (routeType == NO_ROUTE) {
+			return null;
+		}
+
+		int startLinkIndex = buffer.readVarInt();
+		Id<Link> startLinkId = getLinkId(startLinkIndex);
+		Id<Link> endLinkId = getLinkId(buffer.readVarInt());
+		double travelTime = buffer.readDouble();
+		double distance = buffer.readDouble();
+
+		Route route;
+
+		if (routeType == NETWORK_ROUTE) {
+			int numberOfLinks = buffer.readVarInt();
+			List<Id<Link>> routeLinkIds = new ArrayList<>(numberOfLinks);
+			int linkIndex = startLinkIndex;
+
+			for (int i = 0; i < numberOfLinks; i++) {
+				linkIndex += unZigZag(buffer.readVarInt());
+				routeLinkIds.add(getLinkId(linkIndex));
+			}
+
+			NetworkRoute networkRoute = populationFactory.getRouteFactories().createRoute(NetworkRoute.class,
+					startLinkId, endLinkId);
+			networkRoute.setLinkIds(startLinkId, routeLinkIds, endLinkId);
+			networkRoute.setTravelCost(buffer.readDouble());
+			networkRoute.setVehicleId(getInterned(buffer.readVarInt()));
+			route = networkRoute;
+		} else if (routeType == TRANSIT_ROUTE) {
+			TransitStopFacility accessStop = schedule.getFacilities().get(getInterned(buffer.readVarInt()));
+			TransitLine line = schedule.getTransitLines().get(getInterned(buffer.readVarInt()));
+			TransitRoute transitRoute = line.getRoutes().get(getInterned(buffer.readVarInt()));
+			TransitStopFacility egressStop = schedule.getFacilities().get(getInterned(buffer.readVarInt()));
+
+			route = new ExperimentalTransitRoute(accessStop, line, transitRoute, egressStop);
+			route.setStartLinkId(startLinkId);
+			route.setEndLinkId(endLinkId);
+		} else {
+			route = populationFactory.getRouteFactories().createRoute(Route.class, startLinkId, endLinkId);
+			String description = buffer.readString();
+
+			if (description != null) {
+				route.setRouteDescription(description);
+			}
+		}
+
+		route.setTravelTime(travelTime);
+		route.setDistance(distance);
+
+		return route;
+	}
+
+	static private int zigZag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	static private int unZigZag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	static private class EncodingBuffer {
+		byte[] data = new byte[256];
+		int size = 0;
+
+		void reset() {
+			size = 0;
+		}
+
+		private void ensureCapacity(int additionalSize) {
+			if (size + additionalSize > data.length) {
+				data = Arrays.copyOf(data, Math.max(data.length * 2, size + additionalSize));
+			}
+		}
+
+		void writeVarInt(int value) {
+			ensureCapacity(5);
+
+			while ((value & ~0x7F) != 0) {
+				data[size++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+
+			data[size++] = (byte) value;
+		}
+
+		void writeDouble(double value) {
+			ensureCapacity(Double.BYTES);
+			long bits = Double.doubleToRawLongBits(value);
+
+			for (int i = 0; i < Double.BYTES; i++) {
+				data[size++] = (byte) (bits >>> (8 * i));
+			}
+		}
+
+		/**
+		 * Writes the length plus one (zero for null) and the UTF-8 bytes.
+		 */
+		void writeString(String value) {
+			if (value == null) {
+				writeVarInt(0);
+			} else {
+				byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+				writeVarInt(bytes.length + 1);
+				ensureCapacity(bytes.length);
+				System.arraycopy(bytes, 0, data, size, bytes.length);
+				size += bytes.length;
+			}
+		}
+	}
+
+	static private class DecodingBuffer {
+		final byte[] data;
+		int position = 0;
+
+		DecodingBuffer(byte[] data) {
+			this.data = data;
+		}
+
+		int readVarInt() {
+			int value = 0;
+			int shift = 0;
+			byte current;
+
+			do {
+				current = data[position++];
+				value |= (current & 0x7F) << shift;
+				shift += 7;
+			} while ((current & 0x80) != 0);
+
+			return value;
+		}
+
+		double readDouble() {
+			long bits = 0;
+
+			for (int i = 0; i < Double.BYTES; i++) {
+				bits |= (data[position++] & 0xFFL) << (8 * i);
+			}
+
+			return Double.longBitsToDouble(bits);
+		}
+
+		String readString() {
+			int length = readVarInt() - 1;
+
+			if (length == -1) {
+				return null;
+			}
+
+			String value = new String(data, position, length, StandardCharsets.UTF_8);
+			position += length;
+			return value;
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package ch.ethz.matsim.discrete_mode_choice.components.estimators.routing;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Landmarks for ALT (A*, landmarks and triangle inequality) searches. For every
+ * landmark, the free speed travel times from the landmark to all nodes and from
+ * all nodes to the landmark are stored. By the triangle inequality they give a
+ * lower bound for the travel time between any two nodes. Landmarks are chosen
+ * one after another as the node that is farthest away from all landmarks that
+ * have been chosen before.
+ * 
+ * @author sebhoerl
+ */
+public class Landmarks {
+	// Compensates for the rounding of the stored bounds
+	static private final double BOUND_FACTOR = 0.999;
+
+	private final int numberOfNodes;
+	private final int numberOfLandmarks;
+	private final float[] fromLandmark;
+	private final float[] toLandmark;
+
+	private Landmarks(int numberOfNodes, int numberOfLandmarks, float[] fromLandmark, float[] toLandmark) {
+		this.numberOfNodes = numberOfNodes;
+		this.numberOfLandmarks = numberOfLandmarks;
+		this.fromLandmark = fromLandmark;
+		this.toLandmark = toLandmark;
+	}
+
+	/**
+	 * Returns a lower bound for the travel time from a node to the target node.
+	 */
+	public double getLowerBound(int node, int target) {
+		double bound = 0.0;
+
+		for (int landmark = 0; landmark < numberOfLandmarks; landmark++) {
+			int offset = landmark * numberOfNodes;
+
+			// Unreachable nodes are marked with infinity and do not give a bound
+			double toNode = toLandmark[offset + node];
+			double toTarget = toLandmark[offset + target];
+
+			if (toNode < Float.POSITIVE_INFINITY && toTarget < Float.POSITIVE_INFINITY) {
+				bound = Math.max(bound, toNode - toTarget);
+			}
+
+			double fromNode = fromLandmark[offset + node];
+			double fromTarget = fromLandmark[offset + target];
+
+			if (fromNode < Float.POSITIVE_INFINITY && fromTarget < Float.POSITIVE_INFINITY) {
+				bound = Math.max(bound, fromTarget - fromNode);
+			}
+		}
+
+		return bound;
+	}
+
+	public int getNumberOfLandmarks() {
+		return numberOfLandmarks;
+	}
+
+	static public Landmarks create(CompactNetwork network, int numberOfLandmarks) {
+		int numberOfNodes = network.getNumberOfNodes();
+		numberOfLandmarks = Math.min(numberOfLandmarks, numberOfNodes);
+
+		if (numberOfLandmarks == 0) {
+			// Plain Dijkstra searches, e.g. for one-to-all trees
+			return new Landmarks(numberOfNodes, 0, new float[0], new float[0]);
+		}
+
+		int[] landmarks = new int[numberOfLandmarks];
+		double[] minimumDistances = new double[numberOfNodes];
+		Arrays.fill(minimumDistances, Double.POSITIVE_INFINITY);
+
+		// Start with the node that is farthest away from an arbitrary node
+		double[] distances = computeFreeSpeedTravelTimes(network, 0, true);
+
+		for (int index = 0; index < numberOfLandmarks; index++) {
+			int landmark = 0;
+			double maximumDistance = -1.0;
+
+			for (int node = 0; node < numberOfNodes; node++) {
+				double distance = Math.min(minimumDistances[node], distances[node]);
+
+				if (index > 0) {
+					minimumDistances[node] = distance;
+				}
+
+				if (distance < Double.POSITIVE_INFINITY && distance > maximumDistance) {
+					maximumDistance = distance;
+					landmark = node;
+				}
+			}
+
+			landmarks[index] = landmark;
+
+			if (index < numberOfLandmarks - 1) {
+				distances = computeFreeSpeedTravelTimes(network, landmark, true);
+			}
+		}
+
+		float[] fromLandmark = new float[numberOfLandmarks * numberOfNodes];
+		float[] toLandmark = new float[numberOfLandmarks * numberOfNodes];
+
+		IntStream.range(0, numberOfLandmarks).parallel().forEach(index -> {
+			double[] forward = computeFreeSpeedTravelTimes(network, landmarks[index], true);
+			double[] backward = computeFreeSpeedTravelTimes(network, landmarks[index], false);
+
+			for (int node = 0; node < numberOfNodes; node++) {
+				fromLandmark[index * numberOfNodes + node] = (float) (forward[node] * BOUND_FACTOR);
+				toLandmark[index * numberOfNodes + node] = (float) (backward[node] * BOUND_FACTOR);
+			}
+		});
+
+		return new Landmarks(numberOfNodes, numberOfLandmarks, fromLandmark, toLandmark);
+	}
+
+	/**
+	 * Dijkstra search on free speed travel times from (forward) or to (backward)
+	 * the given node.
+	 */
+	static private double[] computeFreeSpeedTravelTimes(CompactNetwork network, int origin, boolean forward) {
+		double[] travelTimes = new double[network.getNumberOfNodes()];
+		Arrays.fill(travelTimes, Double.POSITIVE_INFINITY);
+
+		boolean[] settled = new boolean[network.getNumberOfNodes()];
+		NodeHeap heap = new NodeHeap();
+
+		travelTimes[origin] = 0.0;
+		heap.add(origin, 0.0);
+
+		while (!heap.isEmpty()) {
+			int node = heap.poll();
+
+			if (settled[node]) {
+				continue;
+			}
+
+			settled[node] = true;
+
+			int start = forward ? network.getOutgoingStart(node) : network.getIncomingStart(node);
+			int end = forward ? network.getOutgoingEnd(node) : network.getIncomingEnd(node);
+
+			for (int position = start; position < end; position++) {
+				int link = forward ? network.getOutgoingLink(position) : network.getIncomingLink(position);
+				int nextNode = forward ? network.getToNode(link) : network.getFromNode(link);
+				double travelTime = travelTimes[node] + network.getFreeSpeedTravelTime(link);
+
+				if (travelTime < travelTimes[nextNode]) {
+					travelTimes[nextNode] = travelTime;
+					heap.add(nextNode, travelTime);
+				}
+			}
+		}
+
+		return travelTimes;
+	}
+}
@@ -0,0 +1,85 @@
+package ch.ethz.matsim.discrete_mode_choice.components.estimators.routing;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of node indices with primitive keys. Nodes are not updated in
+ * place but inserted again with a lower key, so the caller needs to skip
+ * entries of nodes that have already been settled.
+ * 
+ * @author sebhoerl
+ */
+class NodeHeap {
+	private int[] nodes = new int[1024];
+	private double[] keys = new double[1024];
+	private int size = 0;
+
+	public void clear() {
+		size = 0;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void add(int node, double key) {
+		if (size == nodes.length) {
+			nodes = Arrays.copyOf(nodes, size * 2);
+			keys = Arrays.copyOf(keys, size * 2);
+		}
+
+		int position = size++;
+
+		while (position > 0) {
+			int parent = (position - 1) / 2;
+
+			if (keys[parent] <= key) {
+				break;
+			}
+
+			nodes[position] = nodes[parent];
+			keys[position] = keys[parent];
+			position = parent;
+		}
+
+		nodes[position] = node;
+		keys[position] = key;
+	}
+
+	/**
+	 * Removes the node with the lowest key and returns it.
+	 */
+	public int poll() {
+		int result = nodes[0];
+
+		size--;
+		int node = nodes[size];
+		double key = keys[size];
+		int position = 0;
+
+		while (true) {
+			int child = 2 * position + 1;
+
+			if (child >= size) {
+				break;
+			}
+
+			if (child + 1 < size && keys[child + 1] < keys[child]) {
+				child++;
+			}
+
+			if (keys[child] >= key) {
+				break;
+			}
+
+			nodes[position] = nodes[child];
+			keys[position] = keys[child];
+			position = child;
+		}
+
+		nodes[position] = node;
+		keys[position] = key;
+
+		return result;
+	}
+}
@@ -0,0 +1,61 @@
+package ch.ethz.matsim.discrete_mode_choice.components.estimators.routing;
+
+import java.util.stream.IntStream;
+
+import org.matsim.core.router.util.TravelTime;
+
+/**
+ * Immutable link travel times for a number of time bins, which are copied from
+ * a TravelTime into one primitive array (e.g. once per iteration). Hence, it
+ * can be read by all threads without synchronization. Travel times are never
+ * below the free speed travel time, so that the landmark bounds stay valid.
+ * 
+ * @author sebhoerl
+ */
+public class TravelTimeSnapshot {
+	private final float[] travelTimes;
+	private final int numberOfLinks;
+	private final int numberOfBins;
+	private final double binSize;
+
+	private TravelTimeSnapshot(float[] travelTimes, int numberOfLinks, int numberOfBins, double binSize) {
+		this.travelTimes = travelTimes;
+		this.numberOfLinks = numberOfLinks;
+		this.numberOfBins = numberOfBins;
+		this.binSize = binSize;
+	}
+
+	public double getTravelTime(int link, double time) {
+		int bin = Math.max(0, Math.min(numberOfBins - 1, (int) (time / binSize)));
+		return travelTimes[bin * numberOfLinks + link];
+	}
+
+	static public TravelTimeSnapshot create(CompactNetwork network, TravelTime travelTime, double binSize,
+			double endTime) {
+		int numberOfLinks = network.getNumberOfLinks();
+		int numberOfBins = Math.max(1, (int) Math.ceil(endTime / binSize));
+
+		if ((long) numberOfLinks * numberOfBins > Integer.MAX_VALUE) {
+			throw new IllegalStateException(String.format(
+					"Too many links (%d) and time bins (%d) for a travel time snapshot", numberOfLinks, numberOfBins));
+		}
+
+		float[] travelTimes = new float[numberOfLinks * numberOfBins];
+
+		IntStream.range(0, numberOfLinks).parallel().forEach(link -> {
+			double freeSpeedTravelTime = network.getFreeSpeedTravelTime(link);
+
+			for (int bin = 0; bin < numberOfBins; bin++) {
+				double value = freeSpeedTravelTime;
+
+				if (travelTime != null) {
+					value = travelTime.getLinkTravelTime(network.getLink(link), (bin + 0.5) * binSize, null, null);
+				}
+
+				travelTimes[bin * numberOfLinks + link] = (float) Math.max(value, freeSpeedTravelTime);
+			}
+		});
+
+		return new TravelTimeSnapshot(travelTimes, numberOfLinks, numberOfBins, binSize);
+	}
+}
@@ -0,0 +1,294 @@
+package ch.ethz.matsim.discrete_mode_choice.components.estimators.skims;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.core.utils.collections.QuadTree;
+import org.matsim.core.utils.geometry.CoordUtils;
+import org.matsim.facilities.ActivityFacilitiesFactoryImpl;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.facilities.Facility;
+import org.matsim.pt.transitSchedule.api.TransitSchedule;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.routing.CompactNetwork;
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.routing.CompactNetworkRouter;
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.routing.Landmarks;
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptor;
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorCore.TravelInfo;
+
+/**
+ * Builds skim matrices for a set of zones. Every period is skimmed at its
+ * midpoint with one tree search per origin zone.
+ * 
+ * Network modes are skimmed with a one-to-all search on a CompactNetwork, using
+ * the current travel times. Zones are connected to the closest node of the
+ * network and the distances are summed up along the links of the tree. Public
+ * transport is skimmed with one stop tree per origin zone (see StopTreeRouter),
+ * from which the destination zones are reached by walking from the stops
+ * around their centroids. Since the stop tree does not provide the distances
+ * in the vehicles, the distance of public transport is the beeline distance
+ * between the centroids. The origin zones are distributed over a number of
+ * threads, which write their results directly into the mapped file.
+ * 
+ * Unreachable zone pairs receive an infinite travel time.
+ * 
+ * @author sebhoerl
+ */
+public class SkimBuilder {
+	final private static Logger logger = Logger.getLogger(SkimBuilder.class);
+
+	static private final double TRAVEL_TIME_BIN_SIZE = 900.0;
+
+	private final List<Coord> centroids;
+	private final int numberOfPeriods;
+	private final double periodDuration;
+	private final int numberOfThreads;
+
+	public SkimBuilder(List<Coord> centroids, int numberOfPeriods, double periodDuration, int numberOfThreads) {
+		this.centroids = centroids;
+		this.numberOfPeriods = numberOfPeriods;
+		this.periodDuration = periodDuration;
+		this.numberOfThreads = Math.max(1, numberOfThreads);
+	}
+
+	/**
+	 * Creates square zones of the given size that cover all nodes of the network.
+	 * Only zones that contain at least one node are kept.
+	 */
+	static public List<Coord> createGridCentroids(Network network, double zoneSize) {
+		Set<Coord> centroids = new HashSet<>();
+
+		for (Node node : network.getNodes().values()) {
+			double x = (Math.floor(node.getCoord().getX() / zoneSize) + 0.5) * zoneSize;
+			double y = (Math.floor(node.getCoord().getY() / zoneSize) + 0.5) * zoneSize;
+			centroids.add(new Coord(x, y));
+		}
+
+		List<Coord> sortedCentroids = new ArrayList<>(centroids);
+		sortedCentroids.sort((a, b) -> a.getY() == b.getY() ? Double.compare(a.getX(), b.getX())
+				: Double.compare(a.getY(), b.getY()));
+		return sortedCentroids;
+	}
+
+	/**
+	 * Skims a network mode into the writer, which must have been created for the
+	 * centroids and periods of this builder. The network should only contain the
+	 * links of the mode.
+	 */
+	public void buildNetworkSkim(SkimMatrix.Writer writer, Network network, TravelTime travelTime) {
+		CompactNetwork compactNetwork = new CompactNetwork(network);
+		CompactNetworkRouter router = new CompactNetworkRouter(compactNetwork, Landmarks.create(compactNetwork, 0),
+				TRAVEL_TIME_BIN_SIZE, numberOfPeriods * periodDuration);
+		router.updateTravelTimes(travelTime);
+
+		int[] zoneNodes = new int[centroids.size()];
+
+		for (int zone = 0; zone < centroids.size(); zone++) {
+			Node node = NetworkUtils.getNearestNode(network, centroids.get(zone));
+			zoneNodes[zone] = compactNetwork.getNodeIndex(node.getId());
+		}
+
+		build(writer, () -> {
+			CompactNetworkRouter.Search search = router.getSearch();
+
+			return (period, originZone) -> {
+				double departureTime = (period + 0.5) * periodDuration;
+				search.calculateTree(zoneNodes[originZone], departureTime);
+
+				for (int destinationZone = 0; destinationZone < centroids.size(); destinationZone++) {
+					int destinationNode = zoneNodes[destinationZone];
+
+					writer.setValues(period, originZone, destinationZone,
+							search.getArrivalTime(destinationNode) - departureTime, search.getDistance(destinationNode),
+							0.0);
+				}
+			};
+		});
+	}
+
+	/**
+	 * Calculates the earliest arrival times at all reachable stops for a departure
+	 * from a facility, including access and transfer walks.
+	 */
+	public interface StopTreeRouter {
+		Map<Id<TransitStopFacility>, Double> calculateArrivalTimes(Facility originFacility, double departureTime);
+	}
+
+	/**
+	 * Creates a StopTreeRouter from the stop tree of SwissRailRaptor.
+	 */
+	static public StopTreeRouter createRaptorTreeRouter(SwissRailRaptor raptor, Person person) {
+		return (originFacility, departureTime) -> {
+			Map<Id<TransitStopFacility>, TravelInfo> tree = raptor.calcTree(originFacility, departureTime, person);
+			Map<Id<TransitStopFacility>, Double> arrivalTimes = new HashMap<>(tree.size());
+
+			for (Map.Entry<Id<TransitStopFacility>, TravelInfo> entry : tree.entrySet()) {
+				arrivalTimes.put(entry.getKey(), entry.getValue().ptArrivalTime);
+			}
+
+			return arrivalTimes;
+		};
+	}
+
+	/**
+	 * Skims public transport into the writer, which must have been created for
+	 * the centroids and periods of this builder. Every thread obtains its own
+	 * StopTreeRouter from the supplier. A destination zone is reached by walking
+	 * from the stops within the egress radius around its centroid or, if there
+	 * are none, from the closest stop.
+	 */
+	public void buildTransitSkim(SkimMatrix.Writer writer, TransitSchedule schedule,
+			Supplier<StopTreeRouter> routerSupplier, double egressRadius, double egressWalkSpeed) {
+		List<List<Id<TransitStopFacility>>> egressStops = new ArrayList<>(centroids.size());
+		List<double[]> egressTimes = new ArrayList<>(centroids.size());
+
+		QuadTree<TransitStopFacility> stopIndex = createStopIndex(schedule.getFacilities().values());
+
+		for (Coord centroid : centroids) {
+			Collection<TransitStopFacility> stops = stopIndex.getDisk(centroid.getX(), centroid.getY(), egressRadius);
+
+			if (stops.isEmpty()) {
+				stops = new ArrayList<>(1);
+				stops.add(stopIndex.getClosest(centroid.getX(), centroid.getY()));
+			}
+
+			List<Id<TransitStopFacility>> zoneStops = new ArrayList<>(stops.size());
+			double[] zoneTimes = new double[stops.size()];
+
+			for (TransitStopFacility stop : stops) {
+				zoneTimes[zoneStops.size()] = CoordUtils.calcEuclideanDistance(stop.getCoord(), centroid)
+						/ egressWalkSpeed;
+				zoneStops.add(stop.getId());
+			}
+
+			egressStops.add(zoneStops);
+			egressTimes.add(zoneTimes);
+		}
+
+		ActivityFacilitiesFactoryImpl facilitiesFactory = new ActivityFacilitiesFactoryImpl();
+		List<Facility> zoneFacilities = new ArrayList<>(centroids.size());
+
+		for (int zone = 0; zone < centroids.size(); zone++) {
+			zoneFacilities.add(facilitiesFactory
+					.createActivityFacility(Id.create("skim_zone_" + zone, ActivityFacility.class), centroids.get(zone)));
+		}
+
+		build(writer, () -> {
+			StopTreeRouter router = routerSupplier.get();
+
+			return (period, originZone) -> {
+				double departureTime = (period + 0.5) * periodDuration;
+				Map<Id<TransitStopFacility>, Double> arrivalTimes = router
+						.calculateArrivalTimes(zoneFacilities.get(originZone), departureTime);
+
+				for (int destinationZone = 0; destinationZone < centroids.size(); destinationZone++) {
+					List<Id<TransitStopFacility>> zoneStops = egressStops.get(destinationZone);
+					double[] zoneTimes = egressTimes.get(destinationZone);
+
+					double arrivalTime = Double.POSITIVE_INFINITY;
+
+					for (int index = 0; index < zoneStops.size(); index++) {
+						Double stopArrivalTime = arrivalTimes.get(zoneStops.get(index));
+
+						if (stopArrivalTime != null) {
+							arrivalTime = Math.min(arrivalTime, stopArrivalTime + zoneTimes[index]);
+						}
+					}
+
+					double distance = CoordUtils.calcEuclideanDistance(centroids.get(originZone),
+							centroids.get(destinationZone));
+
+					writer.setValues(period, originZone, destinationZone, arrivalTime - departureTime,
+							Double.isFinite(arrivalTime) ? distance : Double.POSITIVE_INFINITY, 0.0);
+				}
+			};
+		});
+	}
+
+	static private QuadTree<TransitStopFacility> createStopIndex(Collection<TransitStopFacility> stops) {
+		if (stops.isEmpty()) {
+			throw new IllegalStateException("Cannot skim public transport without transit stops");
+		}
+
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+
+		for (TransitStopFacility stop : stops) {
+			minX = Math.min(minX, stop.getCoord().getX());
+			minY = Math.min(minY, stop.getCoord().getY());
+			maxX = Math.max(maxX, stop.getCoord().getX());
+			maxY = Math.max(maxY, stop.getCoord().getY());
+		}
+
+		QuadTree<TransitStopFacility> index = new QuadTree<>(minX, minY, maxX, maxY);
+
+		for (TransitStopFacility stop : stops) {
+			index.put(stop.getCoord().getX(), stop.getCoord().getY(), stop);
+		}
+
+		return index;
+	}
+
+	private interface OriginSkimmer {
+		void skim(int period, int originZone);
+	}
+
+	private void build(SkimMatrix.Writer writer, Supplier<OriginSkimmer> skimmerSupplier) {
+		logger.info(String.format("Building skims for %d zones and %d periods", centroids.size(), numberOfPeriods));
+
+		int numberOfTasks = Math.min(numberOfThreads, centroids.size());
+		List<Callable<Void>> tasks = new ArrayList<>(numberOfTasks);
+
+		for (int taskIndex = 0; taskIndex < numberOfTasks; taskIndex++) {
+			int offset = taskIndex;
+
+			tasks.add(() -> {
+				OriginSkimmer skimmer = skimmerSupplier.get();
+
+				for (int period = 0; period < numberOfPeriods; period++) {
+					for (int originZone = offset; originZone < centroids.size(); originZone += numberOfTasks) {
+						skimmer.skim(period, originZone);
+					}
+				}
+
+				return null;
+			});
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(numberOfTasks);
+
+		try {
+			for (Future<Void> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			executor.shutdown();
+		}
+
+		writer.flush();
+	}
+}
@@ -0,0 +1,252 @@
+package ch.ethz.matsim.discrete_mode_choice.components.estimators.skims;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.matsim.api.core.v01.Coord;
+
+/**
+ * Zone-to-zone travel times, distances and costs of one mode for a number of
+ * time periods, which are read from a memory-mapped binary file. Hence, the
+ * values are kept off-heap and read directly from the file when they are
+ * requested.
+ * 
+ * The file consists of a header and one block per period:
+ * 
+ * <ul>
+ * <li>Header: magic number, version, number of zones, number of periods (all
+ * int), period duration (double), x and y coordinates of the zone centroids
+ * (double)</li>
+ * <li>Period block: travel time [s], distance [m] and cost (all float) for
+ * every origin and destination zone, ordered by origin zone</li>
+ * </ul>
+ * 
+ * Every period block is mapped separately, so one block may not exceed 2 GB
+ * (i.e. around 13000 zones).
+ * 
+ * A matrix that is obtained from a Writer shares the mapping of the writer, so
+ * values that are written later on (e.g. when skimming again with new travel
+ * times) are visible in the matrix without mapping the file again. Values must
+ * not be written while the matrix is read.
+ * 
+ * @author sebhoerl
+ */
+public class SkimMatrix {
+	static public final int MAGIC_NUMBER = 0x444D4353;
+	static public final int VERSION = 1;
+
+	static public final int TRAVEL_TIME = 0;
+	static public final int DISTANCE = 1;
+	static public final int COST = 2;
+
+	static private final int NUMBER_OF_VALUES = 3;
+	static private final int VALUE_SIZE = Float.BYTES;
+
+	private final List<Coord> centroids;
+	private final int numberOfZones;
+	private final int numberOfPeriods;
+	private final double periodDuration;
+	private final MappedByteBuffer[] periodBuffers;
+	private final ZoneIndex zoneIndex;
+
+	private SkimMatrix(List<Coord> centroids, int numberOfPeriods, double periodDuration,
+			MappedByteBuffer[] periodBuffers) {
+		this.centroids = centroids;
+		this.numberOfZones = centroids.size();
+		this.numberOfPeriods = numberOfPeriods;
+		this.periodDuration = periodDuration;
+		this.periodBuffers = periodBuffers;
+		this.zoneIndex = new ZoneIndex(centroids);
+	}
+
+	public ZoneIndex getZoneIndex() {
+		return zoneIndex;
+	}
+
+	public List<Coord> getCentroids() {
+		return centroids;
+	}
+
+	public int getNumberOfPeriods() {
+		return numberOfPeriods;
+	}
+
+	public double getPeriodDuration() {
+		return periodDuration;
+	}
+
+	public int getPeriod(double departureTime) {
+		int period = (int) Math.floor(departureTime / periodDuration);
+		return Math.max(0, Math.min(numberOfPeriods - 1, period));
+	}
+
+	/**
+	 * Returns one of TRAVEL_TIME, DISTANCE or COST for the given zones and period.
+	 */
+	public double getValue(int period, int originZone, int destinationZone, int value) {
+		return periodBuffers[period].getFloat(getOffset(numberOfZones, originZone, destinationZone, value));
+	}
+
+	static private int getOffset(int numberOfZones, int originZone, int destinationZone, int value) {
+		return ((originZone * numberOfZones + destinationZone) * NUMBER_OF_VALUES + value) * VALUE_SIZE;
+	}
+
+	static private long getHeaderSize(int numberOfZones) {
+		return 4 * Integer.BYTES + Double.BYTES + 2L * numberOfZones * Double.BYTES;
+	}
+
+	static private long getPeriodSize(int numberOfZones) {
+		long periodSize = (long) numberOfZones * numberOfZones * NUMBER_OF_VALUES * VALUE_SIZE;
+
+		if (periodSize > Integer.MAX_VALUE) {
+			throw new IllegalStateException(
+					String.format("Too many zones (%d) for one period of a skim matrix", numberOfZones));
+		}
+
+		return periodSize;
+	}
+
+	/**
+	 * Maps an existing skim file.
+	 */
+	static public SkimMatrix read(File file) throws IOException {
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+			FileChannel channel = randomAccessFile.getChannel();
+
+			ByteBuffer header = ByteBuffer.allocate(4 * Integer.BYTES + Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, header, 0);
+
+			if (header.getInt(0) != MAGIC_NUMBER || header.getInt(4) != VERSION) {
+				throw new IllegalStateException("Not a valid skim file: " + file);
+			}
+
+			int numberOfZones = header.getInt(8);
+			int numberOfPeriods = header.getInt(12);
+			double periodDuration = header.getDouble(16);
+
+			ByteBuffer centroidBuffer = ByteBuffer.allocate(2 * numberOfZones * Double.BYTES)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, centroidBuffer, header.capacity());
+
+			List<Coord> centroids = new ArrayList<>(numberOfZones);
+
+			for (int zone = 0; zone < numberOfZones; zone++) {
+				centroids.add(new Coord(centroidBuffer.getDouble(2 * zone * Double.BYTES),
+						centroidBuffer.getDouble((2 * zone + 1) * Double.BYTES)));
+			}
+
+			long headerSize = getHeaderSize(numberOfZones);
+			long periodSize = getPeriodSize(numberOfZones);
+
+			if (channel.size() != headerSize + numberOfPeriods * periodSize) {
+				throw new IllegalStateException("Skim file has an unexpected size: " + file);
+			}
+
+			MappedByteBuffer[] periodBuffers = new MappedByteBuffer[numberOfPeriods];
+
+			for (int period = 0; period < numberOfPeriods; period++) {
+				periodBuffers[period] = channel.map(MapMode.READ_ONLY, headerSize + period * periodSize, periodSize);
+				periodBuffers[period].order(ByteOrder.LITTLE_ENDIAN);
+			}
+
+			// The mappings stay valid after the channel has been closed
+			return new SkimMatrix(centroids, numberOfPeriods, periodDuration, periodBuffers);
+		}
+	}
+
+	static private void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of skim file");
+			}
+		}
+	}
+
+	/**
+	 * Creates a skim file with all values set to zero. The values can then be
+	 * filled in with a Writer, possibly from several threads at once, as long as
+	 * every thread writes different origin zones. The file is mapped only once
+	 * and stays mapped as long as the writer or its matrix are referenced.
+	 */
+	static public Writer create(File file, List<Coord> centroids, int numberOfPeriods, double periodDuration)
+			throws IOException {
+		int numberOfZones = centroids.size();
+		long headerSize = getHeaderSize(numberOfZones);
+		long periodSize = getPeriodSize(numberOfZones);
+
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			randomAccessFile.setLength(0);
+			randomAccessFile.setLength(headerSize + numberOfPeriods * periodSize);
+
+			FileChannel channel = randomAccessFile.getChannel();
+
+			MappedByteBuffer header = channel.map(MapMode.READ_WRITE, 0, headerSize);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC_NUMBER);
+			header.putInt(VERSION);
+			header.putInt(numberOfZones);
+			header.putInt(numberOfPeriods);
+			header.putDouble(periodDuration);
+
+			for (Coord centroid : centroids) {
+				header.putDouble(centroid.getX());
+				header.putDouble(centroid.getY());
+			}
+
+			header.force();
+
+			MappedByteBuffer[] periodBuffers = new MappedByteBuffer[numberOfPeriods];
+
+			for (int period = 0; period < numberOfPeriods; period++) {
+				periodBuffers[period] = channel.map(MapMode.READ_WRITE, headerSize + period * periodSize, periodSize);
+				periodBuffers[period].order(ByteOrder.LITTLE_ENDIAN);
+			}
+
+			return new Writer(new SkimMatrix(centroids, numberOfPeriods, periodDuration, periodBuffers));
+		}
+	}
+
+	static public class Writer {
+		private final SkimMatrix matrix;
+		private final int numberOfZones;
+		private final MappedByteBuffer[] periodBuffers;
+
+		private Writer(SkimMatrix matrix) {
+			this.matrix = matrix;
+			this.numberOfZones = matrix.numberOfZones;
+			this.periodBuffers = matrix.periodBuffers;
+		}
+
+		/**
+		 * Returns the matrix that reads from the mapping of this writer.
+		 */
+		public SkimMatrix getMatrix() {
+			return matrix;
+		}
+
+		public void setValues(int period, int originZone, int destinationZone, double travelTime, double distance,
+				double cost) {
+			ByteBuffer buffer = periodBuffers[period];
+			buffer.putFloat(getOffset(numberOfZones, originZone, destinationZone, TRAVEL_TIME), (float) travelTime);
+			buffer.putFloat(getOffset(numberOfZones, originZone, destinationZone, DISTANCE), (float) distance);
+			buffer.putFloat(getOffset(numberOfZones, originZone, destinationZone, COST), (float) cost);
+		}
+
+		/**
+		 * Writes all values to the file. The writer can still be used afterwards.
+		 */
+		public void flush() {
+			for (MappedByteBuffer buffer : periodBuffers) {
+				buffer.force();
+			}
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package ch.ethz.matsim.discrete_mode_choice.components.estimators.skims;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds the current skim matrix of every skimmed mode. Matrices can be replaced
+ * while estimators are reading from them (e.g. after re-skimming). Estimators
+ * that already hold a matrix keep on using it for their current trip.
+ * 
+ * @author sebhoerl
+ */
+public class SkimRepository {
+	private volatile Map<String, SkimMatrix> matrices = Collections.emptyMap();
+
+	public SkimMatrix getMatrix(String mode) {
+		return matrices.get(mode);
+	}
+
+	public synchronized void setMatrix(String mode, SkimMatrix matrix) {
+		Map<String, SkimMatrix> updated = new HashMap<>(matrices);
+		updated.put(mode, matrix);
+		matrices = Collections.unmodifiableMap(updated);
+	}
+}
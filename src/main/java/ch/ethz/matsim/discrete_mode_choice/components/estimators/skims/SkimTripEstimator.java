@@ -0,0 +1,114 @@
+package ch.ethz.matsim.discrete_mode_choice.components.estimators.skims;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.scoring.functions.ModeUtilityParameters;
+import org.matsim.core.scoring.functions.ScoringParameters;
+import org.matsim.core.scoring.functions.ScoringParametersForPerson;
+import org.matsim.facilities.ActivityFacilities;
+import org.matsim.facilities.FacilitiesUtils;
+
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripEstimator;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.DefaultTripCandidate;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
+
+/**
+ * This trip estimator looks up travel time, distance and cost of a trip in the
+ * skim matrix of its mode, for the zones of the origin and destination and the
+ * period of the departure time. The utility is then calculated with the MATSim
+ * scoring parameters in the same way as in MATSimTripScoringEstimator, while
+ * the skimmed cost is added as monetary cost.
+ * 
+ * Modes without skims, intrazonal trips, trips without coordinates and
+ * unreachable zones are estimated by the fallback estimator.
+ * 
+ * Since the candidates are not routed, the trips need to be rerouted after
+ * mode choice (see performReroute).
+ * 
+ * @author sebhoerl
+ */
+public class SkimTripEstimator implements TripEstimator {
+	private final SkimRepository repository;
+	private final Set<String> skimmedModes;
+	private final ScoringParametersForPerson scoringParametersForPerson;
+	private final TripEstimator fallbackEstimator;
+	private final ActivityFacilities facilities;
+
+	public SkimTripEstimator(SkimRepository repository, Collection<String> skimmedModes,
+			ScoringParametersForPerson scoringParametersForPerson, TripEstimator fallbackEstimator,
+			ActivityFacilities facilities) {
+		this.repository = repository;
+		this.skimmedModes = new HashSet<>(skimmedModes);
+		this.scoringParametersForPerson = scoringParametersForPerson;
+		this.fallbackEstimator = fallbackEstimator;
+		this.facilities = facilities;
+	}
+
+	@Override
+	public TripCandidate estimateTrip(Person person, String mode, DiscreteModeChoiceTrip trip,
+			List<TripCandidate> previousTrips) {
+		TripCandidate candidate = null;
+
+		if (skimmedModes.contains(mode)) {
+			candidate = estimateSkimmedTrip(person, mode, trip);
+		}
+
+		if (candidate == null) {
+			candidate = fallbackEstimator.estimateTrip(person, mode, trip, previousTrips);
+		}
+
+		return candidate;
+	}
+
+	private TripCandidate estimateSkimmedTrip(Person person, String mode, DiscreteModeChoiceTrip trip) {
+		SkimMatrix matrix = repository.getMatrix(mode);
+
+		if (matrix == null) {
+			return null;
+		}
+
+		Coord originCoord = FacilitiesUtils.toFacility(trip.getOriginActivity(), facilities).getCoord();
+		Coord destinationCoord = FacilitiesUtils.toFacility(trip.getDestinationActivity(), facilities).getCoord();
+
+		if (originCoord == null || destinationCoord == null) {
+			return null;
+		}
+
+		int originZone = matrix.getZoneIndex().getZone(originCoord);
+		int destinationZone = matrix.getZoneIndex().getZone(destinationCoord);
+
+		if (originZone == destinationZone) {
+			return null;
+		}
+
+		int period = matrix.getPeriod(trip.getDepartureTime());
+		double travelTime = matrix.getValue(period, originZone, destinationZone, SkimMatrix.TRAVEL_TIME);
+		double distance = matrix.getValue(period, originZone, destinationZone, SkimMatrix.DISTANCE);
+		double cost = matrix.getValue(period, originZone, destinationZone, SkimMatrix.COST);
+
+		if (!Double.isFinite(travelTime) || !Double.isFinite(distance) || !Double.isFinite(cost)) {
+			return null;
+		}
+
+		ScoringParameters parameters = scoringParametersForPerson.getScoringParameters(person);
+		ModeUtilityParameters modeParams = parameters.modeParams.get(mode);
+
+		if (modeParams == null) {
+			throw new IllegalStateException("Encountered mode for which no scoring parameters are defined: " + mode);
+		}
+
+		double utility = modeParams.constant;
+		utility += modeParams.marginalUtilityOfTraveling_s * travelTime;
+		utility += modeParams.marginalUtilityOfDistance_m * distance;
+		utility += parameters.marginalUtilityOfMoney * modeParams.monetaryDistanceCostRate * distance;
+		utility -= parameters.marginalUtilityOfMoney * cost;
+
+		return new DefaultTripCandidate(utility, mode);
+	}
+}
@@ -0,0 +1,50 @@
+package ch.ethz.matsim.discrete_mode_choice.components.estimators.skims;
+
+import java.util.List;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.core.utils.collections.QuadTree;
+
+/**
+ * Spatial index that maps locations to the zone with the closest centroid.
+ * 
+ * @author sebhoerl
+ */
+public class ZoneIndex {
+	private final QuadTree<Integer> index;
+	private final int numberOfZones;
+
+	public ZoneIndex(List<Coord> centroids) {
+		if (centroids.size() == 0) {
+			throw new IllegalStateException("Cannot create a zone index without zones");
+		}
+
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+
+		for (Coord centroid : centroids) {
+			minX = Math.min(minX, centroid.getX());
+			minY = Math.min(minY, centroid.getY());
+			maxX = Math.max(maxX, centroid.getX());
+			maxY = Math.max(maxY, centroid.getY());
+		}
+
+		this.index = new QuadTree<>(minX, minY, maxX, maxY);
+		this.numberOfZones = centroids.size();
+
+		for (int zone = 0; zone < centroids.size(); zone++) {
+			Coord centroid = centroids.get(zone);
+			index.put(centroid.getX(), centroid.getY(), zone);
+		}
+	}
+
+	public int getZone(Coord coord) {
+		return index.getClosest(coord.getX(), coord.getY());
+	}
+
+	public int getNumberOfZones() {
+		return numberOfZones;
+	}
+}
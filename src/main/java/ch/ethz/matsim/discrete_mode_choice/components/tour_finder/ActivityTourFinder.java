@@ -9,6 +9,7 @@ import java.util.Set;
 import java.util.stream.Collectors;
 
 import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.PlanContext;
 
 /**
  * This TourFinder creates tours between activities of a certain type. For
@@ -30,14 +31,17 @@ public class ActivityTourFinder implements TourFinder {
 	public List<List<DiscreteModeChoiceTrip>> findTours(List<DiscreteModeChoiceTrip> trips) {
 		Set<Integer> relevantActivityIndices = new HashSet<>();
 
-		for (int index = 0; index < trips.size(); index++) {
-			DiscreteModeChoiceTrip trip = trips.get(index);
+		PlanContext context = PlanContext.getOrCreate(trips);
+		int activityTypeCode = context.getActivityTypeCode(activityType);
 
-			if (trip.getOriginActivity().getType().equals(activityType)) {
+		for (int index = 0; index < trips.size() && activityTypeCode != -1; index++) {
+			int planIndex = trips.get(index).getPlanIndex();
+
+			if (context.getOriginActivityType(planIndex) == activityTypeCode) {
 				relevantActivityIndices.add(index);
 			}
 
-			if (trip.getDestinationActivity().getType().equals(activityType)) {
+			if (context.getDestinationActivityType(planIndex) == activityTypeCode) {
 				relevantActivityIndices.add(index + 1);
 			}
 		}
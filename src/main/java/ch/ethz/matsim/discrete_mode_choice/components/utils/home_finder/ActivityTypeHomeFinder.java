@@ -7,6 +7,7 @@ import org.matsim.api.core.v01.Id;
 
 import ch.ethz.matsim.discrete_mode_choice.components.utils.LocationUtils;
 import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.PlanContext;
 
 /**
  * This HomeFinder implementation searches for a configurable activity type in
@@ -37,4 +38,9 @@ public class ActivityTypeHomeFinder implements HomeFinder {
 
 		return null;
 	}
+
+	@Override
+	public int getHomeLocation(PlanContext context, List<DiscreteModeChoiceTrip> planTrips) {
+		return context.getFirstLocationOfType(activityType);
+	}
 }
@@ -7,6 +7,7 @@ import org.matsim.api.core.v01.Id;
 
 import ch.ethz.matsim.discrete_mode_choice.components.utils.LocationUtils;
 import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.PlanContext;
 
 /**
  * This implementation of HomeFinder takes the first activity in an agent's plan
@@ -23,4 +24,13 @@ public class FirstActivityHomeFinder implements HomeFinder {
 			return null;
 		}
 	}
+
+	@Override
+	public int getHomeLocation(PlanContext context, List<DiscreteModeChoiceTrip> planTrips) {
+		if (planTrips.size() > 0) {
+			return context.getOriginLocation(planTrips.get(0).getPlanIndex());
+		} else {
+			return -1;
+		}
+	}
 }
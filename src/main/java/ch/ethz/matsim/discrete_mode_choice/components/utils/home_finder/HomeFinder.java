@@ -6,6 +6,7 @@ import org.matsim.api.core.v01.BasicLocation;
 import org.matsim.api.core.v01.Id;
 
 import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.PlanContext;
 
 /**
  * This interface is used by the vehicle constraints to find the home location
@@ -15,4 +16,13 @@ import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
  */
 public interface HomeFinder {
 	Id<? extends BasicLocation> getHomeLocationId(List<DiscreteModeChoiceTrip> trips);
+
+	/**
+	 * Returns the home location as a location index of the PlanContext of the
+	 * plan, or -1 if no home location is found.
+	 */
+	default int getHomeLocation(PlanContext context, List<DiscreteModeChoiceTrip> planTrips) {
+		Id<? extends BasicLocation> homeLocationId = getHomeLocationId(planTrips);
+		return homeLocationId == null ? -1 : context.getLocationIndex(homeLocationId);
+	}
 }
@@ -21,6 +21,9 @@ public final class DiscreteModeChoiceTrip {
 
 	private final int hashCode;
 
+	private PlanContext planContext = null;
+	private int planIndex = -1;
+
 	public DiscreteModeChoiceTrip(Activity originActivity, Activity destinationActivity, String initialMode,
 			List<? extends PlanElement> initialElements, double departureTime, int personHash, int tripHash) {
 		this.originActivity = originActivity;
@@ -55,6 +58,26 @@ public final class DiscreteModeChoiceTrip {
 		return initialElements;
 	}
 
+	/**
+	 * Returns the PlanContext of the plan that this trip belongs to, or null if it
+	 * has not been created.
+	 */
+	public PlanContext getPlanContext() {
+		return planContext;
+	}
+
+	/**
+	 * Returns the index of this trip in its plan (and PlanContext).
+	 */
+	public int getPlanIndex() {
+		return planIndex;
+	}
+
+	void setPlanContext(PlanContext planContext, int planIndex) {
+		this.planContext = planContext;
+		this.planIndex = planIndex;
+	}
+
 	@Override
 	public int hashCode() {
 		return hashCode;
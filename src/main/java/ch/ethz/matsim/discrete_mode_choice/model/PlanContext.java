@@ -0,0 +1,257 @@
+package ch.ethz.matsim.discrete_mode_choice.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.matsim.api.core.v01.BasicLocation;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.core.utils.geometry.CoordUtils;
+
+import ch.ethz.matsim.discrete_mode_choice.components.utils.LocationUtils;
+
+/**
+ * Compact, per-plan representation of the trips of an agent. It is created
+ * once for a plan and holds the information that constraints, filters and
+ * estimators otherwise extract again and again from the MATSim activities:
+ *
+ * <ul>
+ * <li>Location ids (facility or link, see LocationUtils) interned to dense
+ * integers, starting at zero for the first location of the plan. Asking for the
+ * location of an activity without facility and link fails, as in
+ * LocationUtils.</li>
+ * <li>Activity types interned to dense integer codes.</li>
+ * <li>Departure times and beeline distances of the trips (NaN if the activities
+ * have no coordinates).</li>
+ * </ul>
+ *
+ * Every DiscreteModeChoiceTrip of the plan references its context and knows its
+ * index in the plan, so tours (which are sub-lists of the plan trips) can access
+ * the plan-level arrays. The context is created by the TripListConverter, or
+ * lazily by getOrCreate() for plan trips that have been created otherwise.
+ * Since the indices refer to the plan, a context can only be created from all
+ * trips of a plan, and get() fails for trips without a context.
+ *
+ * @author sebhoerl
+ */
+public final class PlanContext {
+	static private final int NO_LOCATION = -1;
+
+	private final int numberOfTrips;
+
+	private final int[] originLocations;
+	private final int[] destinationLocations;
+	private final List<Id<? extends BasicLocation>> locationIds;
+	private final Map<Id<? extends BasicLocation>, Integer> locationIndices;
+
+	private final int[] originActivityTypes;
+	private final int[] destinationActivityTypes;
+	private final Map<String, Integer> activityTypeCodes;
+
+	private final double[] departureTimes;
+	private final double[] beelineDistances;
+
+	private PlanContext(List<DiscreteModeChoiceTrip> trips) {
+		this.numberOfTrips = trips.size();
+
+		this.originLocations = new int[numberOfTrips];
+		this.destinationLocations = new int[numberOfTrips];
+		this.locationIds = new ArrayList<>();
+		this.locationIndices = new HashMap<>();
+
+		this.originActivityTypes = new int[numberOfTrips];
+		this.destinationActivityTypes = new int[numberOfTrips];
+		this.activityTypeCodes = new HashMap<>();
+
+		this.departureTimes = new double[numberOfTrips];
+		this.beelineDistances = new double[numberOfTrips];
+
+		for (int index = 0; index < numberOfTrips; index++) {
+			DiscreteModeChoiceTrip trip = trips.get(index);
+			Activity originActivity = trip.getOriginActivity();
+			Activity destinationActivity = trip.getDestinationActivity();
+
+			originLocations[index] = internLocation(originActivity);
+			destinationLocations[index] = internLocation(destinationActivity);
+
+			originActivityTypes[index] = internActivityType(originActivity.getType());
+			destinationActivityTypes[index] = internActivityType(destinationActivity.getType());
+
+			departureTimes[index] = trip.getDepartureTime();
+			beelineDistances[index] = calculateBeelineDistance(originActivity.getCoord(),
+					destinationActivity.getCoord());
+		}
+	}
+
+	private int internLocation(Activity activity) {
+		if (activity.getFacilityId() == null && activity.getLinkId() == null) {
+			return NO_LOCATION;
+		}
+
+		Id<? extends BasicLocation> locationId = LocationUtils.getLocationId(activity);
+		Integer locationIndex = locationIndices.get(locationId);
+
+		if (locationIndex == null) {
+			locationIndex = locationIds.size();
+			locationIndices.put(locationId, locationIndex);
+			locationIds.add(locationId);
+		}
+
+		return locationIndex;
+	}
+
+	private int internActivityType(String activityType) {
+		Integer code = activityTypeCodes.get(activityType);
+
+		if (code == null) {
+			code = activityTypeCodes.size();
+			activityTypeCodes.put(activityType, code);
+		}
+
+		return code;
+	}
+
+	static private double calculateBeelineDistance(Coord originCoord, Coord destinationCoord) {
+		if (originCoord == null || destinationCoord == null) {
+			return Double.NaN;
+		}
+
+		return CoordUtils.calcEuclideanDistance(originCoord, destinationCoord);
+	}
+
+	/**
+	 * Creates the context for the trips of a plan and attaches it to the trips.
+	 */
+	public static PlanContext create(List<DiscreteModeChoiceTrip> planTrips) {
+		PlanContext context = new PlanContext(planTrips);
+
+		for (int index = 0; index < planTrips.size(); index++) {
+			planTrips.get(index).setPlanContext(context, index);
+		}
+
+		return context;
+	}
+
+	/**
+	 * Returns the context of the given trips, which may be any sub-list of the
+	 * plan trips (e.g. a tour). The trips must already have a context.
+	 */
+	public static PlanContext get(List<DiscreteModeChoiceTrip> trips) {
+		if (trips.size() == 0) {
+			return create(trips);
+		}
+
+		PlanContext context = trips.get(0).getPlanContext();
+
+		if (context == null) {
+			throw new IllegalStateException(
+					"Trips have no PlanContext. It must be created from the trips of the whole plan first (see getOrCreate).");
+		}
+
+		return context;
+	}
+
+	/**
+	 * Returns the context of the given plan trips. If the trips do not have a
+	 * context yet, it is created. The list must contain all trips of the plan.
+	 */
+	public static PlanContext getOrCreate(List<DiscreteModeChoiceTrip> planTrips) {
+		if (planTrips.size() > 0 && planTrips.get(0).getPlanContext() != null) {
+			return planTrips.get(0).getPlanContext();
+		}
+
+		return create(planTrips);
+	}
+
+	public int getNumberOfTrips() {
+		return numberOfTrips;
+	}
+
+	/**
+	 * Number of distinct locations in the plan. Location indices are in [0,
+	 * getNumberOfLocations()).
+	 */
+	public int getNumberOfLocations() {
+		return locationIds.size();
+	}
+
+	public int getOriginLocation(int tripIndex) {
+		return verifyLocation(originLocations[tripIndex], tripIndex);
+	}
+
+	public int getDestinationLocation(int tripIndex) {
+		return verifyLocation(destinationLocations[tripIndex], tripIndex);
+	}
+
+	static private int verifyLocation(int location, int tripIndex) {
+		if (location == NO_LOCATION) {
+			throw new IllegalStateException(
+					String.format("Activity of trip %d has neither a facility nor a link", tripIndex));
+		}
+
+		return location;
+	}
+
+	public Id<? extends BasicLocation> getLocationId(int locationIndex) {
+		return locationIds.get(locationIndex);
+	}
+
+	/**
+	 * Returns the index of a location or -1 if the location is not part of the
+	 * plan.
+	 */
+	public int getLocationIndex(Id<? extends BasicLocation> locationId) {
+		Integer locationIndex = locationIndices.get(locationId);
+		return locationIndex == null ? -1 : locationIndex;
+	}
+
+	public int getOriginActivityType(int tripIndex) {
+		return originActivityTypes[tripIndex];
+	}
+
+	public int getDestinationActivityType(int tripIndex) {
+		return destinationActivityTypes[tripIndex];
+	}
+
+	/**
+	 * Returns the code of an activity type or -1 if no activity of this type is
+	 * part of the plan.
+	 */
+	public int getActivityTypeCode(String activityType) {
+		Integer code = activityTypeCodes.get(activityType);
+		return code == null ? -1 : code;
+	}
+
+	public double getDepartureTime(int tripIndex) {
+		return departureTimes[tripIndex];
+	}
+
+	public double getBeelineDistance(int tripIndex) {
+		return beelineDistances[tripIndex];
+	}
+
+	/**
+	 * Returns the location of the first activity of the given type in the plan or
+	 * -1 if there is none.
+	 */
+	public int getFirstLocationOfType(String activityType) {
+		int code = getActivityTypeCode(activityType);
+
+		if (code != -1) {
+			for (int index = 0; index < numberOfTrips; index++) {
+				if (originActivityTypes[index] == code) {
+					return getOriginLocation(index);
+				}
+
+				if (destinationActivityTypes[index] == code) {
+					return getDestinationLocation(index);
+				}
+			}
+		}
+
+		return -1;
+	}
+}
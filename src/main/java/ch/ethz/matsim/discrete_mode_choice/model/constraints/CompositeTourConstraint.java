@@ -33,6 +33,18 @@ public class CompositeTourConstraint implements TourConstraint {
 		return true;
 	}
 
+	@Override
+	public boolean validatePrefix(List<DiscreteModeChoiceTrip> tour, List<String> prefixModes,
+			List<List<String>> previousModes) {
+		for (TourConstraint constraint : constraints) {
+			if (!constraint.validatePrefix(tour, prefixModes, previousModes)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
 	@Override
 	public boolean validateAfterEstimation(List<DiscreteModeChoiceTrip> tour, TourCandidate candidate,
 			List<TourCandidate> previousCandidates) {
@@ -1,5 +1,6 @@
 package ch.ethz.matsim.discrete_mode_choice.model.constraints;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -19,6 +20,11 @@ import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandi
 public class TourFromTripConstraint implements TourConstraint {
 	private final TripConstraint constraint;
 
+	// Previous trip modes for validatePrefix, kept between calls
+	private final List<String> prefixTripModes = new ArrayList<>();
+	private List<List<String>> prefixPreviousTourModes = null;
+	private int numberOfPreviousTripModes = -1;
+
 	TourFromTripConstraint(TripConstraint constraint) {
 		this.constraint = constraint;
 	}
@@ -41,6 +47,59 @@ public class TourFromTripConstraint implements TourConstraint {
 		return true;
 	}
 
+	/**
+	 * Since prefixes are only extended if they have been accepted before, only the
+	 * last trip of the prefix needs to be checked here.
+	 * 
+	 * The previous trip modes are kept in one list between calls. Only the modes
+	 * after the part that the prefix shares with the last one are replaced, so
+	 * while a prefix is extended, the wrapped constraint sees the same list with
+	 * one more mode and does not need to process the whole chain again.
+	 */
+	@Override
+	public boolean validatePrefix(List<DiscreteModeChoiceTrip> currentTourTrips, List<String> prefixModes,
+			List<List<String>> previousTourModes) {
+		int lastIndex = prefixModes.size() - 1;
+
+		if (lastIndex < 0) {
+			return true;
+		}
+
+		updatePrefixTripModes(prefixModes.subList(0, lastIndex), previousTourModes);
+
+		return constraint.validateBeforeEstimation(currentTourTrips.get(lastIndex), prefixModes.get(lastIndex),
+				prefixTripModes);
+	}
+
+	private void updatePrefixTripModes(List<String> prefixModes, List<List<String>> previousTourModes) {
+		int numberOfPreviousTripModes = 0;
+
+		for (List<String> tourModes : previousTourModes) {
+			numberOfPreviousTripModes += tourModes.size();
+		}
+
+		if (previousTourModes != prefixPreviousTourModes
+				|| numberOfPreviousTripModes != this.numberOfPreviousTripModes) {
+			prefixTripModes.clear();
+			previousTourModes.forEach(prefixTripModes::addAll);
+
+			prefixPreviousTourModes = previousTourModes;
+			this.numberOfPreviousTripModes = numberOfPreviousTripModes;
+		}
+
+		// Keep the modes that are shared with the last prefix and replace the rest
+		int numberOfKeptModes = 0;
+		int maximumKeptModes = Math.min(prefixTripModes.size() - numberOfPreviousTripModes, prefixModes.size());
+
+		while (numberOfKeptModes < maximumKeptModes && prefixTripModes
+				.get(numberOfPreviousTripModes + numberOfKeptModes).equals(prefixModes.get(numberOfKeptModes))) {
+			numberOfKeptModes++;
+		}
+
+		prefixTripModes.subList(numberOfPreviousTripModes + numberOfKeptModes, prefixTripModes.size()).clear();
+		prefixTripModes.addAll(prefixModes.subList(numberOfKeptModes, prefixModes.size()));
+	}
+
 	@Override
 	public boolean validateAfterEstimation(List<DiscreteModeChoiceTrip> currentTourTrips,
 			TourCandidate currentTourCandidate, List<TourCandidate> previousTourCandidates) {
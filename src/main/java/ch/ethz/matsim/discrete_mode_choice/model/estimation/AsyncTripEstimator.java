@@ -0,0 +1,89 @@
+package ch.ethz.matsim.discrete_mode_choice.model.estimation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import org.matsim.api.core.v01.population.Person;
+
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripEstimator;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
+
+/**
+ * This trip estimator estimates the modes of one trip concurrently. If several
+ * modes are requested in one batch (see TripEstimator.estimateTripModes), all
+ * but the first mode are submitted to an EstimationExecutor, while the first
+ * mode is estimated by the calling thread. The candidates are returned in the
+ * order of the modes once all of them are available.
+ * 
+ * Estimators that route trips (e.g. using the TripRouter) are not thread-safe.
+ * Hence, every worker thread uses its own estimator, while the calling thread
+ * uses the delegate. The worker estimators are kept by the EstimationExecutor
+ * under the given name, so all AsyncTripEstimators with the same name share
+ * one estimator per worker thread. The supplier is only called if a worker
+ * thread does not have an estimator with this name yet.
+ * 
+ * Only batches of modes are distributed. The tour-based model requests such
+ * batches before it estimates the alternatives of a tour (see
+ * TourEstimator.prepareTour).
+ * 
+ * @author sebhoerl
+ */
+public class AsyncTripEstimator implements TripEstimator {
+	private final TripEstimator delegate;
+	private final EstimationExecutor executor;
+	private final String workerEstimatorName;
+	private final Supplier<TripEstimator> workerEstimatorSupplier;
+
+	public AsyncTripEstimator(TripEstimator delegate, String workerEstimatorName,
+			Supplier<TripEstimator> workerEstimatorSupplier, EstimationExecutor executor) {
+		this.delegate = delegate;
+		this.executor = executor;
+		this.workerEstimatorName = workerEstimatorName;
+		this.workerEstimatorSupplier = workerEstimatorSupplier;
+	}
+
+	@Override
+	public TripCandidate estimateTrip(Person person, String mode, DiscreteModeChoiceTrip trip,
+			List<TripCandidate> previousTrips) {
+		return delegate.estimateTrip(person, mode, trip, previousTrips);
+	}
+
+	@Override
+	public List<TripCandidate> estimateTripModes(Person person, List<String> modes, DiscreteModeChoiceTrip trip,
+			List<TripCandidate> previousTrips) {
+		if (modes.size() < 2) {
+			return delegate.estimateTripModes(person, modes, trip, previousTrips);
+		}
+
+		List<Future<TripCandidate>> futures = new ArrayList<>(modes.size() - 1);
+
+		for (String mode : modes.subList(1, modes.size())) {
+			futures.add(executor.submit(() -> executor.getWorkerEstimator(workerEstimatorName, workerEstimatorSupplier)
+					.estimateTrip(person, mode, trip, previousTrips)));
+		}
+
+		List<TripCandidate> candidates = new ArrayList<>(modes.size());
+		candidates.add(delegate.estimateTrip(person, modes.get(0), trip, previousTrips));
+
+		try {
+			for (Future<TripCandidate> future : futures) {
+				candidates.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+
+			throw new IllegalStateException(e.getCause());
+		}
+
+		return candidates;
+	}
+}
@@ -1,5 +1,6 @@
 package ch.ethz.matsim.discrete_mode_choice.model.estimation;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -17,6 +18,9 @@ import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandi
  * trip would be estimates many times, e.g. in a tour-based model, one makes
  * sure that this only happens once.
  * 
+ * Batch requests are answered from the cache as far as possible, and the
+ * remaining trips are passed on to the delegate as one batch.
+ * 
  * @author sebhoerl
  */
 public class CachedTripEstimator implements TripEstimator {
@@ -49,4 +53,83 @@ public class CachedTripEstimator implements TripEstimator {
 			return delegate.estimateTrip(person, mode, trip, preceedingTrips);
 		}
 	}
+
+	@Override
+	public List<TripCandidate> estimateTripModes(Person person, List<String> modes, DiscreteModeChoiceTrip trip,
+			List<TripCandidate> preceedingTrips) {
+		List<TripCandidate> candidates = new ArrayList<>(modes.size());
+		List<String> missingModes = new ArrayList<>(modes.size());
+		List<Integer> missingIndices = new ArrayList<>(modes.size());
+
+		for (String mode : modes) {
+			TripCandidate candidate = getCachedCandidate(mode, trip);
+
+			if (candidate == null) {
+				missingModes.add(mode);
+				missingIndices.add(candidates.size());
+			}
+
+			candidates.add(candidate);
+		}
+
+		if (missingModes.size() > 0) {
+			List<TripCandidate> estimates = delegate.estimateTripModes(person, missingModes, trip, preceedingTrips);
+
+			for (int k = 0; k < missingModes.size(); k++) {
+				TripCandidate candidate = estimates.get(k);
+				candidates.set(missingIndices.get(k), candidate);
+				putCachedCandidate(missingModes.get(k), trip, candidate);
+			}
+		}
+
+		return candidates;
+	}
+
+	@Override
+	public List<TripCandidate> estimateTrips(Person person, List<String> modes, List<DiscreteModeChoiceTrip> trips,
+			List<TripCandidate> preceedingTrips) {
+		List<TripCandidate> chainTrips = new ArrayList<>(preceedingTrips.size() + trips.size());
+		chainTrips.addAll(preceedingTrips);
+
+		// Consecutive trips that are not cached are estimated as one batch
+		int batchStart = 0;
+
+		for (int i = 0; i <= trips.size(); i++) {
+			TripCandidate candidate = i < trips.size() ? getCachedCandidate(modes.get(i), trips.get(i)) : null;
+
+			if (candidate != null || i == trips.size()) {
+				if (batchStart < i) {
+					List<TripCandidate> estimates = delegate.estimateTrips(person, modes.subList(batchStart, i),
+							trips.subList(batchStart, i), chainTrips);
+
+					for (int k = 0; k < estimates.size(); k++) {
+						putCachedCandidate(modes.get(batchStart + k), trips.get(batchStart + k), estimates.get(k));
+					}
+
+					chainTrips.addAll(estimates);
+				}
+
+				if (candidate != null) {
+					chainTrips.add(candidate);
+				}
+
+				batchStart = i + 1;
+			}
+		}
+
+		return new ArrayList<>(chainTrips.subList(preceedingTrips.size(), chainTrips.size()));
+	}
+
+	private TripCandidate getCachedCandidate(String mode, DiscreteModeChoiceTrip trip) {
+		Map<DiscreteModeChoiceTrip, TripCandidate> modeCache = cache.get(mode);
+		return modeCache == null ? null : modeCache.get(trip);
+	}
+
+	private void putCachedCandidate(String mode, DiscreteModeChoiceTrip trip, TripCandidate candidate) {
+		Map<DiscreteModeChoiceTrip, TripCandidate> modeCache = cache.get(mode);
+
+		if (modeCache != null) {
+			modeCache.put(trip, candidate);
+		}
+	}
 }
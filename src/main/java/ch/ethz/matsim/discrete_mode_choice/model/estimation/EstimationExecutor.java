@@ -0,0 +1,74 @@
+package ch.ethz.matsim.discrete_mode_choice.model.estimation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripEstimator;
+
+/**
+ * A bounded pool of worker threads that is shared by all AsyncTripEstimators
+ * and the SharedTripCachePrepass.
+ * If all workers are busy and the queue is full, a task is run by the thread
+ * that submits it, so the submitting threads are slowed down instead of
+ * queueing an unbounded number of requests.
+ * 
+ * Estimators are not thread-safe, so every worker thread keeps its own
+ * estimators, which are shared by all AsyncTripEstimators of the same kind
+ * (see getWorkerEstimator).
+ * 
+ * @author sebhoerl
+ */
+public class EstimationExecutor {
+	private final ThreadPoolExecutor executor;
+	private final int numberOfThreads;
+
+	private final ThreadLocal<Map<String, TripEstimator>> workerEstimators = ThreadLocal.withInitial(HashMap::new);
+
+	public EstimationExecutor(int numberOfThreads, int queueSize) {
+		this.numberOfThreads = numberOfThreads;
+
+		AtomicInteger threadIndex = new AtomicInteger();
+
+		this.executor = new ThreadPoolExecutor(numberOfThreads, numberOfThreads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueSize), runnable -> {
+					Thread thread = new Thread(runnable, "DMC estimation " + threadIndex.getAndIncrement());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	public <T> Future<T> submit(Callable<T> task) {
+		return executor.submit(task);
+	}
+
+	/**
+	 * Returns the estimator with the given name of the calling thread. If the
+	 * thread does not have such an estimator yet, it is created by the supplier.
+	 */
+	public TripEstimator getWorkerEstimator(String name, Supplier<TripEstimator> supplier) {
+		Map<String, TripEstimator> estimators = workerEstimators.get();
+		TripEstimator estimator = estimators.get(name);
+
+		if (estimator == null) {
+			estimator = supplier.get();
+			estimators.put(name, estimator);
+		}
+
+		return estimator;
+	}
+
+	public int getNumberOfThreads() {
+		return numberOfThreads;
+	}
+
+	public void shutdown() {
+		executor.shutdown();
+	}
+}
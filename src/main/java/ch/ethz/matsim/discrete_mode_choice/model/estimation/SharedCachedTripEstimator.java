@@ -0,0 +1,89 @@
+package ch.ethz.matsim.discrete_mode_choice.model.estimation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.matsim.api.core.v01.population.Person;
+
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripEstimator;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
+
+/**
+ * This trip estimator wraps another TripEstimator and looks up the estimates
+ * for the configured modes in a SharedTripEstimateCache, so that the same trip
+ * is only estimated once for all agents.
+ * 
+ * For batch requests with several modes, the estimates that are not cached are
+ * requested from the delegate as one batch.
+ * 
+ * @author sebhoerl
+ */
+public class SharedCachedTripEstimator implements TripEstimator {
+	final private TripEstimator delegate;
+	final private SharedTripEstimateCache cache;
+	final private Set<String> cachedModes;
+
+	public SharedCachedTripEstimator(TripEstimator delegate, SharedTripEstimateCache cache,
+			Collection<String> cachedModes) {
+		this.delegate = delegate;
+		this.cache = cache;
+		this.cachedModes = new HashSet<>(cachedModes);
+	}
+
+	@Override
+	public TripCandidate estimateTrip(Person person, String mode, DiscreteModeChoiceTrip trip,
+			List<TripCandidate> preceedingTrips) {
+		if (cachedModes.contains(mode)) {
+			return cache.getOrEstimate(person, mode, trip,
+					() -> delegate.estimateTrip(person, mode, trip, preceedingTrips));
+		} else {
+			return delegate.estimateTrip(person, mode, trip, preceedingTrips);
+		}
+	}
+
+	@Override
+	public List<TripCandidate> estimateTripModes(Person person, List<String> modes, DiscreteModeChoiceTrip trip,
+			List<TripCandidate> preceedingTrips) {
+		List<TripCandidate> candidates = new ArrayList<>(modes.size());
+		List<String> missingModes = new ArrayList<>(modes.size());
+		List<Integer> missingIndices = new ArrayList<>(modes.size());
+
+		for (String mode : modes) {
+			TripCandidate candidate = null;
+
+			if (cachedModes.contains(mode)) {
+				candidate = cache.getIfPresent(person, mode, trip);
+			}
+
+			if (candidate == null) {
+				missingModes.add(mode);
+				missingIndices.add(candidates.size());
+			}
+
+			candidates.add(candidate);
+		}
+
+		if (missingModes.size() > 0) {
+			List<TripCandidate> estimates = delegate.estimateTripModes(person, missingModes, trip, preceedingTrips);
+
+			for (int k = 0; k < missingModes.size(); k++) {
+				String mode = missingModes.get(k);
+				TripCandidate estimate = estimates.get(k);
+				TripCandidate candidate = estimate;
+
+				if (cachedModes.contains(mode)) {
+					// Another thread may have cached the same trip in the meantime
+					candidate = cache.getOrEstimate(person, mode, trip, () -> estimate);
+				}
+
+				candidates.set(missingIndices.get(k), candidate);
+			}
+		}
+
+		return candidates;
+	}
+}
@@ -0,0 +1,145 @@
+package ch.ethz.matsim.discrete_mode_choice.model.estimation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.population.Person;
+
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.estimation.SharedTripEstimateCache.TripKey;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_availability.ModeAvailability;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripEstimator;
+
+/**
+ * Fills the SharedTripEstimateCache for a set of agents before mode choice is
+ * performed for them. First, the trips of all agents are added and the distinct
+ * requests (as identified by the cache) are collected for the available modes
+ * that are cached. Then every distinct request that is not cached yet is
+ * estimated once. The requests are distributed evenly over the worker threads
+ * of the EstimationExecutor. Every worker thread creates one estimator from
+ * the estimator supplier and keeps it for all later runs. During mode choice,
+ * the estimates for these trips are then only looked up in the cache.
+ *
+ * The estimators need to write their estimates into the same cache, i.e. the
+ * cached modes must be estimated through a SharedCachedTripEstimator. Since
+ * they are kept across iterations, they should not hold per-agent state such
+ * as a CachedTripEstimator.
+ *
+ * @author sebhoerl
+ */
+public class SharedTripCachePrepass {
+	final private static Logger logger = Logger.getLogger(SharedTripCachePrepass.class);
+
+	private final SharedTripEstimateCache cache;
+	private final Set<String> cachedModes;
+	private final ModeAvailability modeAvailability;
+	private final ThreadLocal<TripEstimator> estimators;
+	private final EstimationExecutor executor;
+
+	private final Map<TripKey, Request> requests = new LinkedHashMap<>();
+	private long numberOfRawRequests = 0;
+
+	public SharedTripCachePrepass(SharedTripEstimateCache cache, Collection<String> cachedModes,
+			ModeAvailability modeAvailability, Supplier<TripEstimator> estimatorSupplier,
+			EstimationExecutor executor) {
+		this.cache = cache;
+		this.cachedModes = new HashSet<>(cachedModes);
+		this.modeAvailability = modeAvailability;
+		this.estimators = ThreadLocal.withInitial(estimatorSupplier);
+		this.executor = executor;
+	}
+
+	static private class Request {
+		final Person person;
+		final String mode;
+		final DiscreteModeChoiceTrip trip;
+
+		Request(Person person, String mode, DiscreteModeChoiceTrip trip) {
+			this.person = person;
+			this.mode = mode;
+			this.trip = trip;
+		}
+	}
+
+	/**
+	 * Adds the requests of the trips of one agent for all available modes that
+	 * are cached.
+	 */
+	public void addTrips(Person person, List<DiscreteModeChoiceTrip> trips) {
+		for (String mode : modeAvailability.getAvailableModes(person, trips)) {
+			if (!cachedModes.contains(mode)) {
+				continue;
+			}
+
+			for (DiscreteModeChoiceTrip trip : trips) {
+				TripKey key = cache.createKey(person, mode, trip);
+
+				if (key != null) {
+					numberOfRawRequests++;
+
+					if (!requests.containsKey(key) && !cache.containsKey(key)) {
+						requests.put(key, new Request(person, mode, trip));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Estimates all distinct requests that have been added and returns their
+	 * number. Afterwards, the requests are cleared.
+	 */
+	public int run() {
+		List<Request> distinctRequests = new ArrayList<>(requests.values());
+
+		logger.info(String.format("Estimating %d distinct out of %d trip requests for the shared cache.",
+				distinctRequests.size(), numberOfRawRequests));
+
+		requests.clear();
+		numberOfRawRequests = 0;
+
+		if (distinctRequests.size() > 0) {
+			estimateRequests(distinctRequests);
+		}
+
+		return distinctRequests.size();
+	}
+
+	private void estimateRequests(List<Request> requests) {
+		int numberOfTasks = Math.min(executor.getNumberOfThreads(), requests.size());
+		List<Future<Void>> futures = new ArrayList<>(numberOfTasks);
+
+		for (int taskIndex = 0; taskIndex < numberOfTasks; taskIndex++) {
+			int offset = taskIndex;
+
+			futures.add(executor.submit(() -> {
+				TripEstimator estimator = estimators.get();
+
+				for (int index = offset; index < requests.size(); index += numberOfTasks) {
+					Request request = requests.get(index);
+					estimator.estimateTrip(request.person, request.mode, request.trip, Collections.emptyList());
+				}
+
+				return null;
+			}));
+		}
+
+		try {
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,232 @@
+package ch.ethz.matsim.discrete_mode_choice.model.estimation;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.matsim.api.core.v01.BasicLocation;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+
+import ch.ethz.matsim.discrete_mode_choice.components.utils.LocationUtils;
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
+
+/**
+ * A cache of trip estimates that is shared by all agents, threads and
+ * iterations. In contrast to the CachedTripEstimator, which only avoids
+ * estimating the same trip of one agent twice, estimates are identified by
+ * their content: the origin and destination location, the mode, the departure
+ * time bin and a person class (the value of a person attribute). Hence, the
+ * cache must only be used for modes whose estimates depend on nothing else.
+ *
+ * The cache is backed by a ConcurrentHashMap, so reading is lock-free. If the
+ * maximum size is exceeded, the entries that have not been used for the longest
+ * time are removed by one thread while the others continue. At the beginning of
+ * every iteration, the estimates of the invalidated modes (e.g. those with
+ * congested travel times) and those that are older than the maximum age are
+ * removed.
+ *
+ * Cached candidates are handed out to several agents. They must not be changed
+ * afterwards, and plan elements of routed candidates need to be copied before
+ * they are inserted into a plan (as done in the DiscreteModeChoiceAlgorithm).
+ *
+ * @author sebhoerl
+ */
+public class SharedTripEstimateCache {
+	private final Map<TripKey, CacheEntry> entries = new ConcurrentHashMap<>();
+
+	private final Set<String> invalidatedModes;
+	private final double timeBinSize;
+	private final int maximumSize;
+	private final int maximumAge;
+	private final String personClassAttribute;
+
+	private final AtomicLong clock = new AtomicLong();
+	private final AtomicBoolean isEvicting = new AtomicBoolean(false);
+	private volatile int iteration = 0;
+
+	/**
+	 * @param maximumAge Number of iterations after which an estimate is removed or
+	 *                   zero if estimates should be kept.
+	 */
+	public SharedTripEstimateCache(Collection<String> invalidatedModes, double timeBinSize, int maximumSize,
+			int maximumAge, String personClassAttribute) {
+		this.invalidatedModes = new HashSet<>(invalidatedModes);
+		this.timeBinSize = timeBinSize;
+		this.maximumSize = maximumSize;
+		this.maximumAge = maximumAge;
+		this.personClassAttribute = personClassAttribute;
+	}
+
+	static class TripKey {
+		final Id<? extends BasicLocation> originId;
+		final Id<? extends BasicLocation> destinationId;
+		final String mode;
+		final int timeBin;
+		final Object personClass;
+		final int hashCode;
+
+		TripKey(Id<? extends BasicLocation> originId, Id<? extends BasicLocation> destinationId, String mode,
+				int timeBin, Object personClass) {
+			this.originId = originId;
+			this.destinationId = destinationId;
+			this.mode = mode;
+			this.timeBin = timeBin;
+			this.personClass = personClass;
+			this.hashCode = Objects.hash(originId, destinationId, mode, timeBin, personClass);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof TripKey)) {
+				return false;
+			}
+
+			TripKey otherKey = (TripKey) other;
+			return timeBin == otherKey.timeBin && mode.equals(otherKey.mode) && originId.equals(otherKey.originId)
+					&& destinationId.equals(otherKey.destinationId)
+					&& Objects.equals(personClass, otherKey.personClass);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+
+	static private class CacheEntry {
+		final TripCandidate candidate;
+		final String mode;
+		final int iteration;
+		volatile long lastAccess;
+
+		CacheEntry(TripCandidate candidate, String mode, int iteration, long lastAccess) {
+			this.candidate = candidate;
+			this.mode = mode;
+			this.iteration = iteration;
+			this.lastAccess = lastAccess;
+		}
+	}
+
+	static private boolean hasLocation(Activity activity) {
+		return activity.getFacilityId() != null || activity.getLinkId() != null;
+	}
+
+	TripKey createKey(Person person, String mode, DiscreteModeChoiceTrip trip) {
+		if (!hasLocation(trip.getOriginActivity()) || !hasLocation(trip.getDestinationActivity())) {
+			return null;
+		}
+
+		Id<? extends BasicLocation> originId = LocationUtils.getLocationId(trip.getOriginActivity());
+		Id<? extends BasicLocation> destinationId = LocationUtils.getLocationId(trip.getDestinationActivity());
+
+		int timeBin = (int) Math.floor(trip.getDepartureTime() / timeBinSize);
+		Object personClass = person.getAttributes().getAttribute(personClassAttribute);
+
+		return new TripKey(originId, destinationId, mode, timeBin, personClass);
+	}
+
+	/**
+	 * Returns the cached estimate for the trip or estimates it with the given
+	 * supplier. Trips without a location for origin or destination are not
+	 * cached.
+	 */
+	public TripCandidate getOrEstimate(Person person, String mode, DiscreteModeChoiceTrip trip,
+			Supplier<TripCandidate> estimator) {
+		TripKey key = createKey(person, mode, trip);
+
+		if (key == null) {
+			return estimator.get();
+		}
+
+		long time = clock.incrementAndGet();
+		CacheEntry entry = entries.get(key);
+
+		if (entry == null) {
+			// Two threads may estimate the same trip at the same time, but without
+			// holding a lock during the (potentially slow) estimation
+			entry = new CacheEntry(estimator.get(), mode, iteration, time);
+			CacheEntry existingEntry = entries.putIfAbsent(key, entry);
+
+			if (existingEntry != null) {
+				entry = existingEntry;
+			} else if (entries.size() > maximumSize) {
+				evict(time);
+			}
+		}
+
+		entry.lastAccess = time;
+		return entry.candidate;
+	}
+
+	/**
+	 * Returns the cached estimate for the trip or null if there is none.
+	 */
+	public TripCandidate getIfPresent(Person person, String mode, DiscreteModeChoiceTrip trip) {
+		TripKey key = createKey(person, mode, trip);
+
+		if (key == null) {
+			return null;
+		}
+
+		CacheEntry entry = entries.get(key);
+
+		if (entry == null) {
+			return null;
+		}
+
+		entry.lastAccess = clock.incrementAndGet();
+		return entry.candidate;
+	}
+
+	/**
+	 * Removes the entries that have not been used within the last maximumSize / 2
+	 * requests.
+	 */
+	private void evict(long time) {
+		if (isEvicting.compareAndSet(false, true)) {
+			try {
+				long threshold = time - maximumSize / 2;
+				entries.values().removeIf(entry -> entry.lastAccess < threshold);
+			} finally {
+				isEvicting.set(false);
+			}
+		}
+	}
+
+	boolean containsKey(TripKey key) {
+		return entries.containsKey(key);
+	}
+
+	/**
+	 * Needs to be called at the beginning of every iteration.
+	 */
+	public void startIteration(int iteration) {
+		this.iteration = iteration;
+
+		Iterator<CacheEntry> iterator = entries.values().iterator();
+
+		while (iterator.hasNext()) {
+			CacheEntry entry = iterator.next();
+
+			if (invalidatedModes.contains(entry.mode)) {
+				iterator.remove();
+			} else if (maximumAge > 0 && iteration - entry.iteration >= maximumAge) {
+				iterator.remove();
+			}
+		}
+	}
+
+	public int size() {
+		return entries.size();
+	}
+}
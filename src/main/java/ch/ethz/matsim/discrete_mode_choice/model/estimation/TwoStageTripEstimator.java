@@ -0,0 +1,159 @@
+package ch.ethz.matsim.discrete_mode_choice.model.estimation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.matsim.api.core.v01.population.Person;
+
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripEstimator;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.PrunedTripCandidate;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
+
+/**
+ * This trip estimator avoids the exact estimation of modes that are clearly
+ * dominated. If several modes of a trip are requested in one batch (see
+ * TripEstimator.estimateTripModes), a cheap proxy utility is calculated for
+ * every mode first. Modes from the list of pruned modes whose proxy utility is
+ * more than the margin below the best proxy utility are not passed to the
+ * delegate, instead a PrunedTripCandidate is returned for them. All other
+ * modes are estimated exactly by the delegate.
+ * 
+ * Single estimates (see TripEstimator.estimateTrip) are always exact. Since
+ * pruning depends on the other modes of a batch, this estimator should wrap
+ * any caches.
+ * 
+ * The proxy estimator may learn from the exact estimates. A cached estimate
+ * should only be learned from once, so the estimates are not observed here,
+ * but by an ObservingEstimator inside of the caches.
+ * 
+ * @author sebhoerl
+ */
+public class TwoStageTripEstimator implements TripEstimator {
+	/**
+	 * Calculates a cheap approximation of the utility of a trip.
+	 */
+	public interface ProxyEstimator {
+		/**
+		 * Returns the proxy utility or NaN if it cannot be calculated. In that case,
+		 * the mode is never pruned.
+		 */
+		double estimateProxyUtility(Person person, String mode, DiscreteModeChoiceTrip trip);
+
+		/**
+		 * Is called for every exact estimate by the ObservingEstimator.
+		 */
+		default void observe(Person person, String mode, DiscreteModeChoiceTrip trip, TripCandidate candidate) {
+		}
+	}
+
+	private final TripEstimator delegate;
+	private final ProxyEstimator proxyEstimator;
+	private final Set<String> prunedModes;
+	private final double margin;
+
+	public TwoStageTripEstimator(TripEstimator delegate, ProxyEstimator proxyEstimator,
+			Collection<String> prunedModes, double margin) {
+		this.delegate = delegate;
+		this.proxyEstimator = proxyEstimator;
+		this.prunedModes = new HashSet<>(prunedModes);
+		this.margin = margin;
+	}
+
+	@Override
+	public TripCandidate estimateTrip(Person person, String mode, DiscreteModeChoiceTrip trip,
+			List<TripCandidate> previousTrips) {
+		return delegate.estimateTrip(person, mode, trip, previousTrips);
+	}
+
+	@Override
+	public List<TripCandidate> estimateTripModes(Person person, List<String> modes, DiscreteModeChoiceTrip trip,
+			List<TripCandidate> previousTrips) {
+		double[] proxyUtilities = new double[modes.size()];
+		double bestProxyUtility = Double.NEGATIVE_INFINITY;
+
+		for (int i = 0; i < modes.size(); i++) {
+			proxyUtilities[i] = proxyEstimator.estimateProxyUtility(person, modes.get(i), trip);
+
+			if (Double.isFinite(proxyUtilities[i])) {
+				bestProxyUtility = Math.max(bestProxyUtility, proxyUtilities[i]);
+			}
+		}
+
+		List<TripCandidate> candidates = new ArrayList<>(modes.size());
+		List<String> exactModes = new ArrayList<>(modes.size());
+		List<Integer> exactIndices = new ArrayList<>(modes.size());
+
+		for (int i = 0; i < modes.size(); i++) {
+			String mode = modes.get(i);
+
+			if (prunedModes.contains(mode) && proxyUtilities[i] < bestProxyUtility - margin) {
+				candidates.add(new PrunedTripCandidate(mode));
+			} else {
+				candidates.add(null);
+				exactModes.add(mode);
+				exactIndices.add(i);
+			}
+		}
+
+		if (exactModes.size() > 0) {
+			List<TripCandidate> exactCandidates = delegate.estimateTripModes(person, exactModes, trip, previousTrips);
+
+			for (int k = 0; k < exactModes.size(); k++) {
+				candidates.set(exactIndices.get(k), exactCandidates.get(k));
+			}
+		}
+
+		return candidates;
+	}
+
+	/**
+	 * Passes every estimate of the delegate to the proxy estimator. It should
+	 * directly wrap the exact estimator, so that cached estimates are not observed
+	 * again.
+	 */
+	static public class ObservingEstimator implements TripEstimator {
+		private final TripEstimator delegate;
+		private final ProxyEstimator proxyEstimator;
+
+		public ObservingEstimator(TripEstimator delegate, ProxyEstimator proxyEstimator) {
+			this.delegate = delegate;
+			this.proxyEstimator = proxyEstimator;
+		}
+
+		@Override
+		public TripCandidate estimateTrip(Person person, String mode, DiscreteModeChoiceTrip trip,
+				List<TripCandidate> previousTrips) {
+			TripCandidate candidate = delegate.estimateTrip(person, mode, trip, previousTrips);
+			proxyEstimator.observe(person, mode, trip, candidate);
+			return candidate;
+		}
+
+		@Override
+		public List<TripCandidate> estimateTripModes(Person person, List<String> modes, DiscreteModeChoiceTrip trip,
+				List<TripCandidate> previousTrips) {
+			List<TripCandidate> candidates = delegate.estimateTripModes(person, modes, trip, previousTrips);
+
+			for (int i = 0; i < modes.size(); i++) {
+				proxyEstimator.observe(person, modes.get(i), trip, candidates.get(i));
+			}
+
+			return candidates;
+		}
+
+		@Override
+		public List<TripCandidate> estimateTrips(Person person, List<String> modes,
+				List<DiscreteModeChoiceTrip> trips, List<TripCandidate> previousTrips) {
+			List<TripCandidate> candidates = delegate.estimateTrips(person, modes, trips, previousTrips);
+
+			for (int i = 0; i < trips.size(); i++) {
+				proxyEstimator.observe(person, modes.get(i), trips.get(i), candidates.get(i));
+			}
+
+			return candidates;
+		}
+	}
+}
@@ -6,6 +6,7 @@ import java.util.List;
 import org.matsim.api.core.v01.population.Person;
 
 import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeRegistry;
 
 /**
  * This class is used as a filter to define which more are available for a
@@ -16,4 +17,14 @@ import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
  */
 public interface ModeAvailability {
 	Collection<String> getAvailableModes(Person person, List<DiscreteModeChoiceTrip> trips);
+
+	/**
+	 * Returns the available modes interned into a ModeRegistry, which is used by
+	 * the choice models to represent chosen modes by their indices. The default
+	 * implementation creates a new registry for every call, implementations with
+	 * a fixed set of modes may return a shared one.
+	 */
+	default ModeRegistry getAvailableModeRegistry(Person person, List<DiscreteModeChoiceTrip> trips) {
+		return new ModeRegistry(getAvailableModes(person, trips));
+	}
 }
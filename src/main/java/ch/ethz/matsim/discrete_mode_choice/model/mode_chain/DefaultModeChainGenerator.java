@@ -4,7 +4,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
-import org.apache.commons.math3.util.ArithmeticUtils;
 import org.matsim.api.core.v01.population.Person;
 
 import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
@@ -21,6 +20,9 @@ import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
  * corresponding to that integer is created. This way this generator has a very
  * low memory footprint.
  * 
+ * The counter is a long. If modes ^ trips exceeds its range, only the first
+ * Long.MAX_VALUE chains are generated, which in practice is never reached.
+ * 
  * @author sebhoerl
  *
  */
@@ -30,19 +32,37 @@ public class DefaultModeChainGenerator implements ModeChainGenerator {
 	final private int numberOfTrips;
 	final private int numberOfModes;
 
-	final private int maximumAlternatives;
+	final private long maximumAlternatives;
 
-	private int index = 0;
+	private long index = 0;
 
 	public DefaultModeChainGenerator(Collection<String> availableModes, int numberOfTrips) {
 		this.availableModes = new ArrayList<>(availableModes);
 		this.numberOfModes = availableModes.size();
 		this.numberOfTrips = numberOfTrips;
-		this.maximumAlternatives = ArithmeticUtils.pow(numberOfModes, numberOfTrips);
+		this.maximumAlternatives = computeNumberOfAlternatives(numberOfModes, numberOfTrips);
+	}
+
+	static private long computeNumberOfAlternatives(int numberOfModes, int numberOfTrips) {
+		long alternatives = 1;
+
+		for (int k = 0; k < numberOfTrips; k++) {
+			if (numberOfModes > 0 && alternatives > Long.MAX_VALUE / numberOfModes) {
+				return Long.MAX_VALUE;
+			}
+
+			alternatives *= numberOfModes;
+		}
+
+		return alternatives;
 	}
 
+	/**
+	 * Returns the number of chains (modes ^ trips) or Integer.MAX_VALUE if this
+	 * number exceeds the range of an integer.
+	 */
 	public int getNumberOfAlternatives() {
-		return maximumAlternatives;
+		return (int) Math.min(maximumAlternatives, Integer.MAX_VALUE);
 	}
 
 	@Override
@@ -57,10 +77,10 @@ public class DefaultModeChainGenerator implements ModeChainGenerator {
 		}
 
 		List<String> chain = new ArrayList<>(numberOfTrips);
-		int copy = index;
+		long copy = index;
 
 		for (int k = 0; k < numberOfTrips; k++) {
-			chain.add(availableModes.get(copy % numberOfModes));
+			chain.add(availableModes.get((int) (copy % numberOfModes)));
 			copy -= copy % numberOfModes;
 			copy /= numberOfModes;
 		}
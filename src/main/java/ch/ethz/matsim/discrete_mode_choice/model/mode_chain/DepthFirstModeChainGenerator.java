@@ -0,0 +1,234 @@
+package ch.ethz.matsim.discrete_mode_choice.model.mode_chain;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.matsim.api.core.v01.population.Person;
+
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+
+/**
+ * This mode chain generator constructs chains trip by trip in a depth-first
+ * manner. After a mode has been appended to a chain, the resulting prefix is
+ * passed to a prefix filter. If the filter rejects the prefix, none of the
+ * chains that start with this prefix are generated. This way, whole subtrees of
+ * infeasible chains are cut as soon as they are detected and the number of
+ * generated chains scales with the number of feasible chains rather than with
+ * modes ^ trips.
+ * 
+ * The filter is only called for prefixes that are shorter than the chain, and a
+ * prefix is only extended after it has been accepted. Complete chains need to
+ * be validated by the caller.
+ * 
+ * Consecutive chains share the longest possible prefix, i.e. the first trip
+ * changes least often.
+ * 
+ * The generator can be started at a fixed prefix. Then, only the chains with
+ * this prefix are constructed, so the chains of a tour can be split into parts
+ * without enumerating the other parts.
+ * 
+ * Chains are written into one integer buffer of mode indices (see
+ * ModeRegistry). The prefixes that are passed to the filter are views on this
+ * buffer (see IndexedModeChain), so they change while the generator advances
+ * and must be copied if the filter keeps them. The chains that are returned by
+ * next() are independent copies, so estimators, candidates and selectors can
+ * keep them.
+ * 
+ * @author sebhoerl
+ */
+public class DepthFirstModeChainGenerator implements ModeChainGenerator {
+	final private ModeRegistry registry;
+	final private Predicate<List<String>> prefixFilter;
+
+	final private int numberOfTrips;
+	final private int numberOfModes;
+	final private int fixedLength;
+
+	final private int[] chainIndices;
+	final private IndexedModeChain chain;
+	final private int[] nextModeIndices;
+
+	private int chainLength = 0;
+	private boolean hasPendingChain = false;
+	private boolean isFinished = false;
+
+	public DepthFirstModeChainGenerator(ModeRegistry registry, int numberOfTrips,
+			Predicate<List<String>> prefixFilter) {
+		this(registry, numberOfTrips, Collections.emptyList(), prefixFilter);
+	}
+
+	/**
+	 * Creates a generator that only constructs the chains which start with the
+	 * fixed prefix. The prefixes of the fixed prefix are passed to the filter as
+	 * well. If one of them is rejected, no chain is generated.
+	 */
+	public DepthFirstModeChainGenerator(ModeRegistry registry, int numberOfTrips, List<String> fixedPrefix,
+			Predicate<List<String>> prefixFilter) {
+		if (fixedPrefix.size() > numberOfTrips) {
+			throw new IllegalStateException(String.format("Prefix of length %d is longer than the chain (%d trips)",
+					fixedPrefix.size(), numberOfTrips));
+		}
+
+		this.registry = registry;
+		this.numberOfModes = registry.getNumberOfModes();
+		this.numberOfTrips = numberOfTrips;
+		this.fixedLength = fixedPrefix.size();
+		this.prefixFilter = prefixFilter;
+
+		this.chainIndices = new int[numberOfTrips];
+		this.chain = new IndexedModeChain(registry, chainIndices, 0);
+		this.nextModeIndices = new int[numberOfTrips];
+
+		for (int k = 0; k < fixedLength; k++) {
+			int modeIndex = registry.getIndex(fixedPrefix.get(k));
+
+			if (modeIndex == -1) {
+				throw new IllegalStateException(
+						String.format("Mode '%s' of the prefix is not registered", fixedPrefix.get(k)));
+			}
+
+			chainIndices[k] = modeIndex;
+			setChainLength(k + 1);
+
+			if (k + 1 < numberOfTrips && !prefixFilter.test(chain)) {
+				isFinished = true;
+			}
+		}
+	}
+
+	public DepthFirstModeChainGenerator(Collection<String> availableModes, int numberOfTrips,
+			Predicate<List<String>> prefixFilter) {
+		this(new ModeRegistry(availableModes), numberOfTrips, prefixFilter);
+	}
+
+	public DepthFirstModeChainGenerator(Collection<String> availableModes, int numberOfTrips) {
+		this(availableModes, numberOfTrips, prefix -> true);
+	}
+
+	public ModeRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * Returns the number of chains without pruning (modes ^ trips, not counting the
+	 * trips of a fixed prefix) or Integer.MAX_VALUE if this number exceeds the
+	 * range of an integer.
+	 */
+	@Override
+	public int getNumberOfAlternatives() {
+		long alternatives = 1;
+
+		for (int k = fixedLength; k < numberOfTrips; k++) {
+			alternatives *= numberOfModes;
+
+			if (alternatives > Integer.MAX_VALUE) {
+				return Integer.MAX_VALUE;
+			}
+		}
+
+		return (int) alternatives;
+	}
+
+	private void setChainLength(int length) {
+		chainLength = length;
+		chain.setSize(length);
+	}
+
+	private boolean findNextChain() {
+		if (numberOfTrips == fixedLength) {
+			// There is exactly one chain (the prefix or the empty chain)
+			return !isFinished;
+		}
+
+		int level = chainLength;
+
+		if (level == numberOfTrips) {
+			// The last chain has been returned, so we go back one level
+			level--;
+		}
+
+		while (true) {
+			if (nextModeIndices[level] == numberOfModes) {
+				// All modes have been tested on this level, so we go back one level
+				nextModeIndices[level] = 0;
+
+				if (level == fixedLength) {
+					setChainLength(fixedLength);
+					return false;
+				}
+
+				level--;
+				continue;
+			}
+
+			chainIndices[level] = nextModeIndices[level];
+			nextModeIndices[level]++;
+			setChainLength(level + 1);
+
+			if (level + 1 == numberOfTrips) {
+				return true;
+			}
+
+			if (prefixFilter.test(chain)) {
+				level++;
+			}
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (!hasPendingChain && !isFinished) {
+			hasPendingChain = findNextChain();
+			isFinished = !hasPendingChain;
+		}
+
+		return hasPendingChain;
+	}
+
+	/**
+	 * Returns a copy of the current chain, which stays valid when the generator is
+	 * advanced.
+	 */
+	@Override
+	public List<String> next() {
+		if (!hasNext()) {
+			throw new IllegalStateException();
+		}
+
+		hasPendingChain = false;
+
+		if (numberOfTrips == fixedLength) {
+			isFinished = true;
+		}
+
+		return chain.copy();
+	}
+
+	static public class Factory implements ModeChainGeneratorFactory {
+		@Override
+		public ModeChainGenerator createModeChainGenerator(Collection<String> modes, Person person,
+				List<DiscreteModeChoiceTrip> trips) {
+			return new DepthFirstModeChainGenerator(modes, trips.size());
+		}
+
+		@Override
+		public ModeChainGenerator createModeChainGenerator(Collection<String> modes, Person person,
+				List<DiscreteModeChoiceTrip> trips, Predicate<List<String>> prefixFilter) {
+			return new DepthFirstModeChainGenerator(modes, trips.size(), prefixFilter);
+		}
+
+		@Override
+		public ModeChainGenerator createModeChainGenerator(ModeRegistry registry, Person person,
+				List<DiscreteModeChoiceTrip> trips, Predicate<List<String>> prefixFilter) {
+			return new DepthFirstModeChainGenerator(registry, trips.size(), prefixFilter);
+		}
+
+		@Override
+		public ModeChainGenerator createModeChainGenerator(ModeRegistry registry, Person person,
+				List<DiscreteModeChoiceTrip> trips, List<String> fixedPrefix, Predicate<List<String>> prefixFilter) {
+			return new DepthFirstModeChainGenerator(registry, trips.size(), fixedPrefix, prefixFilter);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package ch.ethz.matsim.discrete_mode_choice.model.mode_chain;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A read-only chain of modes that is backed by an integer buffer of mode
+ * indices from a ModeRegistry. It can be passed wherever a List<String> is
+ * expected, while components that know about it can work on the indices
+ * directly (see getModeIndex and getRegistry).
+ *
+ * Prefixes that are passed to the prefix filter of a mode chain generator are
+ * views on the buffer of the generator and change while it advances. The chains
+ * that are returned by the generators are independent copies.
+ *
+ * @author sebhoerl
+ */
+public class IndexedModeChain extends AbstractList<String> implements RandomAccess {
+	private final ModeRegistry registry;
+	private final int[] indices;
+	private int size;
+
+	public IndexedModeChain(ModeRegistry registry, int[] indices, int size) {
+		this.registry = registry;
+		this.indices = indices;
+		this.size = size;
+	}
+
+	/**
+	 * Updates the length of the chain. Used by the mode chain generators and
+	 * buffers of this package that fill the underlying buffer directly.
+	 */
+	void setSize(int size) {
+		this.size = size;
+	}
+
+	public ModeRegistry getRegistry() {
+		return registry;
+	}
+
+	public int getModeIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException(String.valueOf(index));
+		}
+
+		return indices[index];
+	}
+
+	@Override
+	public String get(int index) {
+		return registry.getMode(getModeIndex(index));
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Creates an independent copy of the chain with its own buffer.
+	 */
+	public IndexedModeChain copy() {
+		return new IndexedModeChain(registry, Arrays.copyOf(indices, size), size);
+	}
+
+	/**
+	 * Creates a read-only copy of a list of modes. If all modes are part of the
+	 * registry, the copy is an indexed chain. Otherwise (e.g. for initial modes
+	 * that are not available anymore), a plain list is returned.
+	 */
+	static public List<String> copyOf(ModeRegistry registry, List<String> modes) {
+		int[] indices = new int[modes.size()];
+
+		for (int i = 0; i < modes.size(); i++) {
+			indices[i] = registry.getIndex(modes.get(i));
+
+			if (indices[i] == -1) {
+				return Collections.unmodifiableList(new ArrayList<>(modes));
+			}
+		}
+
+		return new IndexedModeChain(registry, indices, indices.length);
+	}
+
+	/**
+	 * Creates an indexed chain for a list of modes. If the list is already an
+	 * indexed chain for the same registry, it is returned as is.
+	 */
+	static public IndexedModeChain of(ModeRegistry registry, List<String> modes) {
+		if (modes instanceof IndexedModeChain && ((IndexedModeChain) modes).getRegistry() == registry) {
+			return (IndexedModeChain) modes;
+		}
+
+		int[] indices = new int[modes.size()];
+
+		for (int i = 0; i < modes.size(); i++) {
+			indices[i] = registry.getIndex(modes.get(i));
+
+			if (indices[i] == -1) {
+				throw new IllegalStateException("Mode is not registered: " + modes.get(i));
+			}
+		}
+
+		return new IndexedModeChain(registry, indices, indices.length);
+	}
+}
@@ -0,0 +1,55 @@
+package ch.ethz.matsim.discrete_mode_choice.model.mode_chain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A chain of modes that grows one mode at a time, such as the modes that have
+ * been chosen so far for the trips of a plan. As long as all modes are part of
+ * the registry, the chain is kept as an IndexedModeChain, so components can
+ * work on the mode indices. If a mode is added that is not registered (e.g. an
+ * initial mode that is not available anymore), the chain falls back to a list
+ * of strings.
+ *
+ * getChain returns a read-only view on the chain, which reflects later
+ * additions.
+ *
+ * @author sebhoerl
+ */
+public class ModeChainBuffer {
+	private final ModeRegistry registry;
+	private final int[] indices;
+	private final IndexedModeChain indexedChain;
+
+	private List<String> fallbackChain = null;
+	private List<String> fallbackView = null;
+
+	public ModeChainBuffer(ModeRegistry registry, int capacity) {
+		this.registry = registry;
+		this.indices = new int[capacity];
+		this.indexedChain = new IndexedModeChain(registry, indices, 0);
+	}
+
+	public void add(String mode) {
+		if (fallbackChain == null) {
+			int index = registry.getIndex(mode);
+			int size = indexedChain.size();
+
+			if (index != -1 && size < indices.length) {
+				indices[size] = index;
+				indexedChain.setSize(size + 1);
+				return;
+			}
+
+			fallbackChain = new ArrayList<>(indexedChain);
+			fallbackView = Collections.unmodifiableList(fallbackChain);
+		}
+
+		fallbackChain.add(mode);
+	}
+
+	public List<String> getChain() {
+		return fallbackChain == null ? indexedChain : fallbackView;
+	}
+}
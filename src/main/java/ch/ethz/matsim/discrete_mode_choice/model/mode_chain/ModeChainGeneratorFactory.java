@@ -2,6 +2,7 @@ package ch.ethz.matsim.discrete_mode_choice.model.mode_chain;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Predicate;
 
 import org.matsim.api.core.v01.population.Person;
 
@@ -15,4 +16,40 @@ import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
 public interface ModeChainGeneratorFactory {
 	ModeChainGenerator createModeChainGenerator(Collection<String> availableModes, Person person,
 			List<DiscreteModeChoiceTrip> trips);
+
+	/**
+	 * Creates a ModeChainGenerator that is allowed to skip all chains that start
+	 * with a prefix which is rejected by the prefix filter. The default
+	 * implementation ignores the filter and returns all chains.
+	 */
+	default ModeChainGenerator createModeChainGenerator(Collection<String> availableModes, Person person,
+			List<DiscreteModeChoiceTrip> trips, Predicate<List<String>> prefixFilter) {
+		return createModeChainGenerator(availableModes, person, trips);
+	}
+
+	/**
+	 * Creates a ModeChainGenerator for modes that have already been interned into
+	 * a ModeRegistry, so that all chains of a plan can share the same registry.
+	 * The default implementation passes on the modes of the registry.
+	 */
+	default ModeChainGenerator createModeChainGenerator(ModeRegistry registry, Person person,
+			List<DiscreteModeChoiceTrip> trips, Predicate<List<String>> prefixFilter) {
+		return createModeChainGenerator(registry.getModes(), person, trips, prefixFilter);
+	}
+
+	/**
+	 * Creates a ModeChainGenerator that only returns the chains that start with
+	 * the given modes, e.g. to split the chains of a tour into parts. The prefix
+	 * filter is applied as usual, also to the prefixes of the given modes. The
+	 * default implementation filters the chains of the generator above, so it
+	 * still enumerates all chains. Generators that construct chains trip by trip
+	 * should start their enumeration at the prefix instead.
+	 */
+	default ModeChainGenerator createModeChainGenerator(ModeRegistry registry, Person person,
+			List<DiscreteModeChoiceTrip> trips, List<String> fixedPrefix, Predicate<List<String>> prefixFilter) {
+		ModeChainGenerator generator = createModeChainGenerator(registry, person, trips,
+				prefix -> PrefixFilteringModeChainGenerator.startsWith(prefix, fixedPrefix)
+						&& prefixFilter.test(prefix));
+		return new PrefixFilteringModeChainGenerator(generator, fixedPrefix);
+	}
 }
@@ -0,0 +1,84 @@
+package ch.ethz.matsim.discrete_mode_choice.model.mode_chain;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns a set of modes into small integer indices. This way, chains of modes
+ * can be stored as integer buffers (see IndexedModeChain) and sets of modes can
+ * be represented as bit masks, which avoids string comparisons and hashing when
+ * chains are enumerated.
+ *
+ * Since masks are stored in a long, at most 64 modes can be registered.
+ *
+ * @author sebhoerl
+ */
+public class ModeRegistry {
+	public static final int MAXIMUM_NUMBER_OF_MODES = Long.SIZE;
+
+	private final List<String> modes;
+	private final Map<String, Integer> indices;
+
+	public ModeRegistry(Collection<String> modes) {
+		this.modes = new ArrayList<>(modes.size());
+		this.indices = new HashMap<>();
+
+		for (String mode : modes) {
+			if (!indices.containsKey(mode)) {
+				indices.put(mode, this.modes.size());
+				this.modes.add(mode);
+			}
+		}
+
+		if (this.modes.size() > MAXIMUM_NUMBER_OF_MODES) {
+			throw new IllegalStateException(String.format("At most %d modes can be registered, but got %d",
+					MAXIMUM_NUMBER_OF_MODES, this.modes.size()));
+		}
+	}
+
+	public int getNumberOfModes() {
+		return modes.size();
+	}
+
+	public List<String> getModes() {
+		return Collections.unmodifiableList(modes);
+	}
+
+	public String getMode(int index) {
+		return modes.get(index);
+	}
+
+	/**
+	 * Returns the index of the mode or -1 if it is not registered.
+	 */
+	public int getIndex(String mode) {
+		Integer index = indices.get(mode);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Creates a bit mask for the given modes. Modes that are not registered are
+	 * ignored.
+	 */
+	public long getMask(Collection<String> modes) {
+		long mask = 0L;
+
+		for (String mode : modes) {
+			int index = getIndex(mode);
+
+			if (index >= 0) {
+				mask |= 1L << index;
+			}
+		}
+
+		return mask;
+	}
+
+	static public boolean isInMask(long mask, int index) {
+		return (mask & (1L << index)) != 0L;
+	}
+}
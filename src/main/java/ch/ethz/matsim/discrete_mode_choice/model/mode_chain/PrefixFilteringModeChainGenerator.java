@@ -0,0 +1,69 @@
+package ch.ethz.matsim.discrete_mode_choice.model.mode_chain;
+
+import java.util.List;
+
+/**
+ * Passes on only those chains of another generator that start with a fixed
+ * prefix. This is the fallback for generators that cannot start their
+ * enumeration at a prefix: They still generate all chains, so the delegate
+ * should at least be created with a prefix filter that rejects other prefixes
+ * (see startsWith).
+ *
+ * @author sebhoerl
+ */
+public class PrefixFilteringModeChainGenerator implements ModeChainGenerator {
+	private final ModeChainGenerator delegate;
+	private final List<String> prefix;
+
+	private List<String> pendingChain = null;
+
+	public PrefixFilteringModeChainGenerator(ModeChainGenerator delegate, List<String> prefix) {
+		this.delegate = delegate;
+		this.prefix = prefix;
+	}
+
+	/**
+	 * Returns whether the chain and the prefix agree on their common length, i.e.
+	 * whether the chain may be extended to a chain with the prefix.
+	 */
+	static public boolean startsWith(List<String> chain, List<String> prefix) {
+		int length = Math.min(chain.size(), prefix.size());
+
+		for (int i = 0; i < length; i++) {
+			if (!chain.get(i).equals(prefix.get(i))) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (pendingChain == null && delegate.hasNext()) {
+			List<String> chain = delegate.next();
+
+			if (startsWith(chain, prefix)) {
+				pendingChain = chain;
+			}
+		}
+
+		return pendingChain != null;
+	}
+
+	@Override
+	public List<String> next() {
+		if (!hasNext()) {
+			throw new IllegalStateException();
+		}
+
+		List<String> chain = pendingChain;
+		pendingChain = null;
+		return chain;
+	}
+
+	@Override
+	public int getNumberOfAlternatives() {
+		return delegate.getNumberOfAlternatives();
+	}
+}
@@ -0,0 +1,124 @@
+package ch.ethz.matsim.discrete_mode_choice.model.tour_based;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.population.Person;
+
+import ch.ethz.matsim.discrete_mode_choice.components.tour_finder.TourFinder;
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceModel;
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_availability.ModeAvailability;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeRegistry;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.state_space.TourStateSpace;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
+
+/**
+ * Base class for tour-based models that choose a chain on a TourStateSpace
+ * instead of enumerating all chains. It handles tour finding, filtering and
+ * the fallback behaviour in the same way as the TourBasedModel.
+ *
+ * @author sebhoerl
+ */
+public abstract class AbstractStateSpaceTourModel implements DiscreteModeChoiceModel {
+	final private static Logger logger = Logger.getLogger(AbstractStateSpaceTourModel.class);
+
+	final private TourFinder tourFinder;
+	final private TourFilter tourFilter;
+	final private TourEstimator estimator;
+	final private ModeAvailability modeAvailability;
+	final private TourStateSpace.Factory stateSpaceFactory;
+	final private FallbackBehaviour fallbackBehaviour;
+
+	protected AbstractStateSpaceTourModel(TourEstimator estimator, ModeAvailability modeAvailability,
+			TourStateSpace.Factory stateSpaceFactory, TourFinder tourFinder, TourFilter tourFilter,
+			FallbackBehaviour fallbackBehaviour) {
+		this.estimator = estimator;
+		this.modeAvailability = modeAvailability;
+		this.stateSpaceFactory = stateSpaceFactory;
+		this.tourFinder = tourFinder;
+		this.tourFilter = tourFilter;
+		this.fallbackBehaviour = fallbackBehaviour;
+	}
+
+	/**
+	 * Chooses a candidate for one tour or returns an empty result if there is no
+	 * feasible chain.
+	 */
+	abstract protected Optional<TourCandidate> chooseTour(Person person, TourStateSpace stateSpace,
+			List<DiscreteModeChoiceTrip> tourTrips, List<TourCandidate> previousTours, Random random);
+
+	@Override
+	public List<TripCandidate> chooseModes(Person person, List<DiscreteModeChoiceTrip> trips, Random random)
+			throws NoFeasibleChoiceException {
+		ModeRegistry registry = modeAvailability.getAvailableModeRegistry(person, trips);
+		List<TourCandidate> tourCandidates = new LinkedList<>();
+
+		int tripIndex = 1;
+
+		for (List<DiscreteModeChoiceTrip> tourTrips : tourFinder.findTours(trips)) {
+			TourCandidate finalTourCandidate = null;
+
+			if (tourFilter.filter(person, tourTrips)) {
+				TourStateSpace stateSpace = stateSpaceFactory.createStateSpace(person, trips, tourTrips, registry);
+				Optional<TourCandidate> selectedCandidate = chooseTour(person, stateSpace, tourTrips, tourCandidates,
+						random);
+
+				if (selectedCandidate.isPresent()) {
+					finalTourCandidate = selectedCandidate.get();
+				} else {
+					switch (fallbackBehaviour) {
+					case INITIAL_CHOICE:
+						logger.warn(
+								buildFallbackMessage(tripIndex, person, "Setting tour modes back to initial choice."));
+						finalTourCandidate = createFallbackCandidate(person, tourTrips, tourCandidates);
+						break;
+					case IGNORE_AGENT:
+						return handleIgnoreAgent(tripIndex, person, trips);
+					case EXCEPTION:
+						throw new NoFeasibleChoiceException(buildFallbackMessage(tripIndex, person, ""));
+					}
+				}
+			} else {
+				finalTourCandidate = createFallbackCandidate(person, tourTrips, tourCandidates);
+			}
+
+			tourCandidates.add(finalTourCandidate);
+			tripIndex += tourTrips.size();
+		}
+
+		return createTripCandidates(tourCandidates);
+	}
+
+	private TourCandidate createFallbackCandidate(Person person, List<DiscreteModeChoiceTrip> tourTrips,
+			List<TourCandidate> tourCandidates) {
+		List<String> initialModes = tourTrips.stream().map(DiscreteModeChoiceTrip::getInitialMode)
+				.collect(Collectors.toList());
+		return estimator.estimateTour(person, initialModes, tourTrips, tourCandidates);
+	}
+
+	private List<TripCandidate> createTripCandidates(List<TourCandidate> tourCandidates) {
+		return tourCandidates.stream().map(TourCandidate::getTripCandidates).flatMap(List::stream)
+				.collect(Collectors.toList());
+	}
+
+	private List<TripCandidate> handleIgnoreAgent(int tripIndex, Person person, List<DiscreteModeChoiceTrip> trips) {
+		List<TourCandidate> tourCandidates = new LinkedList<>();
+
+		for (List<DiscreteModeChoiceTrip> tourTrips : tourFinder.findTours(trips)) {
+			tourCandidates.add(createFallbackCandidate(person, tourTrips, tourCandidates));
+		}
+
+		logger.warn(buildFallbackMessage(tripIndex, person, "Setting whole plan back to initial modes."));
+		return createTripCandidates(tourCandidates);
+	}
+
+	private String buildFallbackMessage(int tripIndex, Person person, String appendix) {
+		return String.format("No feasible mode choice candidate for tour starting at trip %d of agent %s. %s",
+				tripIndex, person.getId().toString(), appendix);
+	}
+}
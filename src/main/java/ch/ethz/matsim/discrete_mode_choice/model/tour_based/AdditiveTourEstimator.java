@@ -0,0 +1,29 @@
+package ch.ethz.matsim.discrete_mode_choice.model.tour_based;
+
+import org.matsim.api.core.v01.population.Person;
+
+/**
+ * An IncrementalTourEstimator for which the utility of a tour is the sum of
+ * the trip utilities plus a constant for every mode that is used at least once
+ * in the tour. If, additionally, the estimate of a trip does not depend on the
+ * previous trips in the tour (see hasIndependentTrips), choice models can find
+ * or sample the best chain without enumerating all of them (see
+ * DynamicProgrammingTourModel).
+ *
+ * @author sebhoerl
+ */
+public interface AdditiveTourEstimator extends IncrementalTourEstimator {
+	/**
+	 * Returns the utility that is added to a tour if the mode is used at least
+	 * once.
+	 */
+	double estimateModeConstant(Person person, String mode);
+
+	/**
+	 * Returns whether the estimate of a trip is independent of the previous trips
+	 * in the tour. Models that estimate every trip only once per mode
+	 * (DynamicProgrammingTourModel, BranchAndBoundTourSearch) require this and
+	 * fail if it is not the case.
+	 */
+	boolean hasIndependentTrips();
+}
@@ -0,0 +1,198 @@
+package ch.ethz.matsim.discrete_mode_choice.model.tour_based;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.matsim.api.core.v01.population.Person;
+
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.IndexedModeChain;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeRegistry;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
+
+/**
+ * Finds the chain with the highest utility for one tour if the utilities are
+ * additive (see AdditiveTourEstimator). All trips are estimated once per mode.
+ * Then chains are searched depth-first, trying the modes with the highest trip
+ * utility first. A prefix is not extended if even the best possible completion
+ * (the highest trip utility for every remaining trip plus all positive mode
+ * constants that have not been collected yet) cannot beat the best chain found
+ * so far. Prefixes are also checked with TourConstraint.validatePrefix.
+ *
+ * If several chains have the same utility, the first one that is found is
+ * returned.
+ *
+ * @author sebhoerl
+ */
+public class BranchAndBoundTourSearch {
+	private final Person person;
+	private final AdditiveTourEstimator estimator;
+	private final TourConstraint constraint;
+	private final List<DiscreteModeChoiceTrip> tourTrips;
+	private final List<TourCandidate> previousTours;
+	private final List<List<String>> previousModes;
+
+	private final int numberOfTrips;
+	private final int numberOfModes;
+
+	private final TripCandidate[][] tripCandidates;
+	private final int[][] modeOrder;
+	private final double[] remainingBounds;
+	private final double[] modeConstants;
+
+	private final int[] chainIndices;
+	private final IndexedModeChain[] prefixes;
+
+	private TourCandidate bestCandidate = null;
+	private double bestUtility = Double.NEGATIVE_INFINITY;
+
+	public BranchAndBoundTourSearch(Person person, AdditiveTourEstimator estimator, TourConstraint constraint,
+			Collection<String> modes, List<DiscreteModeChoiceTrip> tourTrips, List<TourCandidate> previousTours,
+			List<List<String>> previousModes) {
+		this.person = person;
+		this.estimator = estimator;
+		this.constraint = constraint;
+		this.tourTrips = tourTrips;
+		this.previousTours = previousTours;
+		this.previousModes = previousModes;
+
+		ModeRegistry registry = new ModeRegistry(modes);
+
+		this.numberOfTrips = tourTrips.size();
+		this.numberOfModes = registry.getNumberOfModes();
+
+		// One view per prefix length on the same buffer
+		this.chainIndices = new int[numberOfTrips];
+		this.prefixes = new IndexedModeChain[numberOfTrips + 1];
+
+		for (int length = 0; length <= numberOfTrips; length++) {
+			prefixes[length] = new IndexedModeChain(registry, chainIndices, length);
+		}
+
+		this.modeConstants = new double[numberOfModes];
+
+		for (int modeIndex = 0; modeIndex < numberOfModes; modeIndex++) {
+			modeConstants[modeIndex] = estimator.estimateModeConstant(person, registry.getMode(modeIndex));
+		}
+
+		// Estimate all trips and sort the modes by utility
+		this.tripCandidates = new TripCandidate[numberOfTrips][numberOfModes];
+		this.modeOrder = new int[numberOfTrips][];
+		this.remainingBounds = new double[numberOfTrips + 1];
+
+		for (int tripIndex = 0; tripIndex < numberOfTrips; tripIndex++) {
+			List<Integer> feasibleModes = new ArrayList<>(numberOfModes);
+
+			for (int modeIndex = 0; modeIndex < numberOfModes; modeIndex++) {
+				if (!Double.isFinite(modeConstants[modeIndex])) {
+					continue;
+				}
+
+				TripCandidate candidate = estimator.estimateTrip(person, registry.getMode(modeIndex),
+						tourTrips.get(tripIndex), Collections.emptyList(), previousTours);
+
+				if (Double.isFinite(candidate.getUtility())) {
+					tripCandidates[tripIndex][modeIndex] = candidate;
+					feasibleModes.add(modeIndex);
+				}
+			}
+
+			TripCandidate[] candidates = tripCandidates[tripIndex];
+			feasibleModes.sort((a, b) -> Double.compare(candidates[b].getUtility(), candidates[a].getUtility()));
+			modeOrder[tripIndex] = feasibleModes.stream().mapToInt(Integer::intValue).toArray();
+		}
+
+		// Optimistic utility of the remaining trips
+		for (int tripIndex = numberOfTrips - 1; tripIndex >= 0; tripIndex--) {
+			if (modeOrder[tripIndex].length == 0) {
+				remainingBounds[tripIndex] = Double.NEGATIVE_INFINITY;
+			} else {
+				double bestTripUtility = tripCandidates[tripIndex][modeOrder[tripIndex][0]].getUtility();
+				remainingBounds[tripIndex] = remainingBounds[tripIndex + 1] + bestTripUtility;
+			}
+		}
+	}
+
+	/**
+	 * Returns the best feasible candidate or an empty result if there is none.
+	 */
+	public Optional<TourCandidate> findBestCandidate() {
+		search(0, 0.0, 0L);
+		return Optional.ofNullable(bestCandidate);
+	}
+
+	private double getOptimisticConstants(long usedModes) {
+		double utility = 0.0;
+
+		for (int modeIndex = 0; modeIndex < numberOfModes; modeIndex++) {
+			if (modeConstants[modeIndex] > 0.0 && !ModeRegistry.isInMask(usedModes, modeIndex)) {
+				utility += modeConstants[modeIndex];
+			}
+		}
+
+		return utility;
+	}
+
+	private void search(int position, double utility, long usedModes) {
+		if (position == numberOfTrips) {
+			evaluateChain();
+			return;
+		}
+
+		for (int modeIndex : modeOrder[position]) {
+			double nextUtility = utility + tripCandidates[position][modeIndex].getUtility();
+
+			if (!ModeRegistry.isInMask(usedModes, modeIndex)) {
+				nextUtility += modeConstants[modeIndex];
+			}
+
+			long nextUsedModes = usedModes | (1L << modeIndex);
+			double bound = nextUtility + remainingBounds[position + 1] + getOptimisticConstants(nextUsedModes);
+
+			if (bound <= bestUtility) {
+				continue;
+			}
+
+			chainIndices[position] = modeIndex;
+
+			if (position + 1 < numberOfTrips
+					&& !constraint.validatePrefix(tourTrips, prefixes[position + 1], previousModes)) {
+				continue;
+			}
+
+			search(position + 1, nextUtility, nextUsedModes);
+		}
+	}
+
+	private void evaluateChain() {
+		IndexedModeChain chain = prefixes[numberOfTrips];
+
+		if (!constraint.validateBeforeEstimation(tourTrips, chain, previousModes)) {
+			return;
+		}
+
+		List<TripCandidate> candidates = new ArrayList<>(numberOfTrips);
+
+		for (int tripIndex = 0; tripIndex < numberOfTrips; tripIndex++) {
+			candidates.add(tripCandidates[tripIndex][chainIndices[tripIndex]]);
+		}
+
+		TourCandidate candidate = estimator.estimateTour(person, chain.copy(), tourTrips, candidates, previousTours);
+
+		if (!Double.isFinite(candidate.getUtility())) {
+			return;
+		}
+
+		if (!constraint.validateAfterEstimation(tourTrips, candidate, previousTours)) {
+			return;
+		}
+
+		if (candidate.getUtility() > bestUtility) {
+			bestCandidate = candidate;
+			bestUtility = candidate.getUtility();
+		}
+	}
+}
@@ -0,0 +1,283 @@
+package ch.ethz.matsim.discrete_mode_choice.model.tour_based;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.population.Person;
+
+import ch.ethz.matsim.discrete_mode_choice.components.tour_finder.TourFinder;
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_availability.ModeAvailability;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeRegistry;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.state_space.TourState;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.state_space.TourStateSpace;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
+
+/**
+ * A tour-based choice model for additive utilities (see AdditiveTourEstimator)
+ * that works on a TourStateSpace instead of enumerating all chains. Since the
+ * utility of a chain is the sum of its trip utilities plus the constants of
+ * the used modes, the best remaining utility (or the logsum of the remaining
+ * utilities) only depends on the state of the constraints and the set of modes
+ * that have been used so far. These values are computed once per state by
+ * dynamic programming. Afterwards:
+ *
+ * <ul>
+ * <li>For the MAXIMUM objective, the chain is constructed by choosing the best
+ * mode in every step (as in the Viterbi algorithm).</li>
+ * <li>For the MULTINOMIAL_LOGIT objective, every mode is chosen with its
+ * conditional probability, which is given by the logsum values. This samples
+ * exactly from the multinomial logit model over all feasible chains.</li>
+ * </ul>
+ *
+ * In contrast to the MultinomialLogitSelector, utilities are not cut off at a
+ * maximum value, because all calculations are performed in log space. Filtering
+ * by a minimum utility is not supported.
+ *
+ * @author sebhoerl
+ */
+public class DynamicProgrammingTourModel extends AbstractStateSpaceTourModel {
+	final private static Logger logger = Logger.getLogger(DynamicProgrammingTourModel.class);
+
+	public enum Objective {
+		MAXIMUM, MULTINOMIAL_LOGIT
+	}
+
+	final private AdditiveTourEstimator estimator;
+	final private Objective objective;
+
+	public DynamicProgrammingTourModel(AdditiveTourEstimator estimator, ModeAvailability modeAvailability,
+			TourStateSpace.Factory stateSpaceFactory, TourFinder tourFinder, TourFilter tourFilter,
+			Objective objective, FallbackBehaviour fallbackBehaviour) {
+		super(estimator, modeAvailability, stateSpaceFactory, tourFinder, tourFilter, fallbackBehaviour);
+
+		if (!estimator.hasIndependentTrips()) {
+			throw new IllegalStateException("Dynamic programming requires an estimator with independent trips");
+		}
+
+		this.estimator = estimator;
+		this.objective = objective;
+	}
+
+	@Override
+	protected Optional<TourCandidate> chooseTour(Person person, TourStateSpace stateSpace,
+			List<DiscreteModeChoiceTrip> tourTrips, List<TourCandidate> previousTours, Random random) {
+		return new TourProblem(person, stateSpace, tourTrips, previousTours).choose(random);
+	}
+
+	static private class ProblemState {
+		final TourState tourState;
+		final long usedModes;
+
+		ProblemState(TourState tourState, long usedModes) {
+			this.tourState = tourState;
+			this.usedModes = usedModes;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof ProblemState)) {
+				return false;
+			}
+
+			ProblemState otherState = (ProblemState) other;
+			return usedModes == otherState.usedModes && tourState.equals(otherState.tourState);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * tourState.hashCode() + Long.hashCode(usedModes);
+		}
+	}
+
+	private class TourProblem {
+		private final Person person;
+		private final TourStateSpace stateSpace;
+		private final List<DiscreteModeChoiceTrip> tourTrips;
+		private final List<TourCandidate> previousTours;
+
+		private final int numberOfTrips;
+		private final int numberOfModes;
+
+		private final TripCandidate[][] tripCandidates;
+		private final double[] modeConstants;
+		private long constantModes = 0L;
+
+		private final Map<ProblemState, Double> values = new HashMap<>();
+
+		TourProblem(Person person, TourStateSpace stateSpace, List<DiscreteModeChoiceTrip> tourTrips,
+				List<TourCandidate> previousTours) {
+			this.person = person;
+			this.stateSpace = stateSpace;
+			this.tourTrips = tourTrips;
+			this.previousTours = previousTours;
+
+			ModeRegistry registry = stateSpace.getRegistry();
+
+			this.numberOfTrips = tourTrips.size();
+			this.numberOfModes = registry.getNumberOfModes();
+
+			this.tripCandidates = new TripCandidate[numberOfTrips][numberOfModes];
+			this.modeConstants = new double[numberOfModes];
+
+			for (int modeIndex = 0; modeIndex < numberOfModes; modeIndex++) {
+				String mode = registry.getMode(modeIndex);
+				modeConstants[modeIndex] = estimator.estimateModeConstant(person, mode);
+
+				if (!Double.isFinite(modeConstants[modeIndex])) {
+					logger.warn(buildIllegalUtilityMessage(person, mode));
+					continue;
+				}
+
+				if (modeConstants[modeIndex] != 0.0) {
+					constantModes |= 1L << modeIndex;
+				}
+
+				for (int tripIndex = 0; tripIndex < numberOfTrips; tripIndex++) {
+					TripCandidate candidate = estimator.estimateTrip(person, mode, tourTrips.get(tripIndex),
+							Collections.emptyList(), previousTours);
+
+					if (Double.isFinite(candidate.getUtility())) {
+						tripCandidates[tripIndex][modeIndex] = candidate;
+					} else {
+						logger.warn(buildIllegalUtilityMessage(person, mode));
+					}
+				}
+			}
+		}
+
+		private ProblemState getNextState(ProblemState state, int modeIndex) {
+			if (tripCandidates[state.tourState.getPosition()][modeIndex] == null) {
+				return null;
+			}
+
+			TourState nextTourState = stateSpace.getNextState(state.tourState, modeIndex);
+
+			if (nextTourState == null) {
+				return null;
+			}
+
+			return new ProblemState(nextTourState, state.usedModes | (constantModes & (1L << modeIndex)));
+		}
+
+		/**
+		 * Utility of choosing the mode in the given state plus the value of the
+		 * resulting state.
+		 */
+		private double getUtility(ProblemState state, int modeIndex, ProblemState nextState) {
+			double utility = tripCandidates[state.tourState.getPosition()][modeIndex].getUtility();
+
+			if (ModeRegistry.isInMask(constantModes, modeIndex)
+					&& !ModeRegistry.isInMask(state.usedModes, modeIndex)) {
+				utility += modeConstants[modeIndex];
+			}
+
+			return utility + getValue(nextState);
+		}
+
+		private double getValue(ProblemState state) {
+			if (state.tourState.getPosition() == numberOfTrips) {
+				return 0.0;
+			}
+
+			Double value = values.get(state);
+
+			if (value == null) {
+				double maximumUtility = Double.NEGATIVE_INFINITY;
+				double[] utilities = new double[numberOfModes];
+
+				for (int modeIndex = 0; modeIndex < numberOfModes; modeIndex++) {
+					ProblemState nextState = getNextState(state, modeIndex);
+					utilities[modeIndex] = nextState == null ? Double.NEGATIVE_INFINITY
+							: getUtility(state, modeIndex, nextState);
+					maximumUtility = Math.max(maximumUtility, utilities[modeIndex]);
+				}
+
+				if (objective == Objective.MAXIMUM || maximumUtility == Double.NEGATIVE_INFINITY) {
+					value = maximumUtility;
+				} else {
+					double sum = 0.0;
+
+					for (int modeIndex = 0; modeIndex < numberOfModes; modeIndex++) {
+						sum += Math.exp(utilities[modeIndex] - maximumUtility);
+					}
+
+					value = maximumUtility + Math.log(sum);
+				}
+
+				values.put(state, value);
+			}
+
+			return value;
+		}
+
+		Optional<TourCandidate> choose(Random random) {
+			ProblemState state = new ProblemState(stateSpace.getInitialState(), 0L);
+
+			if (getValue(state) == Double.NEGATIVE_INFINITY) {
+				return Optional.empty();
+			}
+
+			List<String> modes = new ArrayList<>(numberOfTrips);
+			List<TripCandidate> candidates = new ArrayList<>(numberOfTrips);
+
+			while (state.tourState.getPosition() < numberOfTrips) {
+				double stateValue = getValue(state);
+				double pointer = random.nextDouble();
+
+				ProblemState selectedState = null;
+				int selectedModeIndex = -1;
+				double selectedUtility = Double.NEGATIVE_INFINITY;
+
+				for (int modeIndex = 0; modeIndex < numberOfModes; modeIndex++) {
+					ProblemState nextState = getNextState(state, modeIndex);
+
+					if (nextState == null) {
+						continue;
+					}
+
+					double utility = getUtility(state, modeIndex, nextState);
+
+					if (utility == Double.NEGATIVE_INFINITY) {
+						continue;
+					}
+
+					if (objective == Objective.MAXIMUM) {
+						if (utility > selectedUtility) {
+							selectedState = nextState;
+							selectedModeIndex = modeIndex;
+							selectedUtility = utility;
+						}
+					} else {
+						// Keep the last feasible mode in case of rounding errors
+						selectedState = nextState;
+						selectedModeIndex = modeIndex;
+
+						pointer -= Math.exp(utility - stateValue);
+
+						if (pointer < 0.0) {
+							break;
+						}
+					}
+				}
+
+				modes.add(stateSpace.getRegistry().getMode(selectedModeIndex));
+				candidates.add(tripCandidates[state.tourState.getPosition()][selectedModeIndex]);
+				state = selectedState;
+			}
+
+			return Optional.of(estimator.estimateTour(person, modes, tourTrips, candidates, previousTours));
+		}
+	}
+
+	private String buildIllegalUtilityMessage(Person person, String mode) {
+		return String.format("Received illegal utility for mode %s of agent %s. Continuing without this alternative.", mode,
+				person.getId().toString());
+	}
+}
@@ -0,0 +1,38 @@
+package ch.ethz.matsim.discrete_mode_choice.model.tour_based;
+
+import java.util.List;
+
+import org.matsim.api.core.v01.population.Person;
+
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
+
+/**
+ * A TourEstimator that is able to estimate a tour trip by trip. The
+ * TourBasedModel makes use of this by only estimating those trips that differ
+ * from the previously estimated chain of modes. Since consecutive chains
+ * usually share a long prefix, only a few trips need to be estimated per
+ * chain.
+ * 
+ * Estimating a tour incrementally must give the same result as calling
+ * estimateTour with the same modes.
+ * 
+ * @author sebhoerl
+ */
+public interface IncrementalTourEstimator extends TourEstimator {
+	/**
+	 * Estimates one trip of a tour. The previousTrips argument contains the
+	 * candidates for the preceding trips in the same tour. The list is reused by
+	 * the caller and must not be retained.
+	 */
+	TripCandidate estimateTrip(Person person, String mode, DiscreteModeChoiceTrip trip,
+			List<TripCandidate> previousTrips, List<TourCandidate> previousTours);
+
+	/**
+	 * Creates the tour candidate once all trips in the tour have been estimated.
+	 * The tripCandidates list is reused by the caller and must be copied if it is
+	 * kept in the returned candidate.
+	 */
+	TourCandidate estimateTour(Person person, List<String> modes, List<DiscreteModeChoiceTrip> trips,
+			List<TripCandidate> tripCandidates, List<TourCandidate> previousTours);
+}
@@ -0,0 +1,166 @@
+package ch.ethz.matsim.discrete_mode_choice.model.tour_based;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.population.Person;
+
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeChainGenerator;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeChainGeneratorFactory;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeRegistry;
+import ch.ethz.matsim.discrete_mode_choice.model.utilities.MergeableUtilitySelector;
+import ch.ethz.matsim.discrete_mode_choice.model.utilities.UtilitySelector;
+
+/**
+ * Evaluates the chains of a large tour in parallel. The chains are split by
+ * their first modes into tasks, which are run in a dedicated ForkJoinPool.
+ * Every task starts the mode chain generator at its prefix, so it only
+ * enumerates its own chains (see ModeChainGeneratorFactory).
+ *
+ * Every worker thread of the pool has its own estimator (from the estimator
+ * supplier), which is reused for all tasks of the thread, and every task has
+ * its own constraint, so these components do not need to be thread-safe. The
+ * evaluator can therefore be shared by all choice models.
+ *
+ * If the selector is a MergeableUtilitySelector, every task passes its
+ * candidates into its own part of the selector and the parts are merged in the
+ * order of the prefixes. Otherwise, the candidates of the tasks are collected
+ * and passed to the selector in the order of the prefixes. In both cases, the
+ * candidates arrive in the same order as without parallelism.
+ *
+ * Tours are only evaluated in parallel if the number of possible chains
+ * (available modes to the power of trips) reaches the chain threshold.
+ *
+ * @author sebhoerl
+ */
+public class ParallelTourEvaluator {
+	final private static Logger logger = Logger.getLogger(ParallelTourEvaluator.class);
+
+	private final ThreadLocal<TourEstimator> estimators;
+	private final TourConstraintFactory constraintFactory;
+	private final ModeChainGeneratorFactory modeChainGeneratorFactory;
+	private final ForkJoinPool pool;
+	private final double chainThreshold;
+
+	public ParallelTourEvaluator(Supplier<TourEstimator> estimatorSupplier, TourConstraintFactory constraintFactory,
+			ModeChainGeneratorFactory modeChainGeneratorFactory, ForkJoinPool pool, double chainThreshold) {
+		this.estimators = ThreadLocal.withInitial(estimatorSupplier);
+		this.constraintFactory = constraintFactory;
+		this.modeChainGeneratorFactory = modeChainGeneratorFactory;
+		this.pool = pool;
+		this.chainThreshold = chainThreshold;
+	}
+
+	public boolean isApplicable(int numberOfModes, int numberOfTrips) {
+		return numberOfTrips > 1 && Math.pow(numberOfModes, numberOfTrips) >= chainThreshold;
+	}
+
+	/**
+	 * Passes all feasible candidates for the tour to the selector.
+	 */
+	public void evaluate(Person person, List<DiscreteModeChoiceTrip> planTrips, ModeRegistry registry,
+			List<DiscreteModeChoiceTrip> tourTrips, List<TourCandidate> previousTours,
+			List<List<String>> previousModes, UtilitySelector selector) {
+		List<List<String>> prefixes = createPrefixes(registry.getModes(), tourTrips.size());
+
+		if (selector instanceof MergeableUtilitySelector) {
+			MergeableUtilitySelector mergeableSelector = (MergeableUtilitySelector) selector;
+
+			List<MergeableUtilitySelector> parts = new ArrayList<>(prefixes.size());
+			List<ForkJoinTask<?>> tasks = new ArrayList<>(prefixes.size());
+
+			for (List<String> prefix : prefixes) {
+				MergeableUtilitySelector part = mergeableSelector.createPart();
+				parts.add(part);
+
+				tasks.add(pool.submit(() -> evaluatePrefix(person, planTrips, registry, tourTrips, previousTours,
+						previousModes, prefix, part::addCandidate)));
+			}
+
+			for (int index = 0; index < tasks.size(); index++) {
+				tasks.get(index).join();
+				mergeableSelector.merge(parts.get(index));
+			}
+		} else {
+			List<ForkJoinTask<List<TourCandidate>>> tasks = new ArrayList<>(prefixes.size());
+
+			for (List<String> prefix : prefixes) {
+				tasks.add(pool.submit(() -> {
+					List<TourCandidate> candidates = new ArrayList<>();
+					evaluatePrefix(person, planTrips, registry, tourTrips, previousTours, previousModes, prefix,
+							candidates::add);
+					return candidates;
+				}));
+			}
+
+			for (ForkJoinTask<List<TourCandidate>> task : tasks) {
+				task.join().forEach(selector::addCandidate);
+			}
+		}
+	}
+
+	/**
+	 * Creates prefixes of the same length such that there are a couple of tasks
+	 * per worker of the pool. The last trip is never part of the prefix.
+	 */
+	private List<List<String>> createPrefixes(List<String> modes, int numberOfTrips) {
+		List<List<String>> prefixes = Collections.singletonList(Collections.emptyList());
+		int minimumNumberOfTasks = 4 * pool.getParallelism();
+
+		while (prefixes.size() < minimumNumberOfTasks && prefixes.get(0).size() < numberOfTrips - 1) {
+			List<List<String>> extendedPrefixes = new ArrayList<>(prefixes.size() * modes.size());
+
+			for (List<String> prefix : prefixes) {
+				for (String mode : modes) {
+					List<String> extendedPrefix = new ArrayList<>(prefix);
+					extendedPrefix.add(mode);
+					extendedPrefixes.add(extendedPrefix);
+				}
+			}
+
+			prefixes = extendedPrefixes;
+		}
+
+		return prefixes;
+	}
+
+	private void evaluatePrefix(Person person, List<DiscreteModeChoiceTrip> planTrips, ModeRegistry registry,
+			List<DiscreteModeChoiceTrip> tourTrips, List<TourCandidate> previousTours,
+			List<List<String>> previousModes, List<String> prefix, Consumer<TourCandidate> consumer) {
+		TourConstraint constraint = constraintFactory.createConstraint(person, planTrips, registry.getModes());
+
+		ModeChainGenerator generator = modeChainGeneratorFactory.createModeChainGenerator(registry, person, tourTrips,
+				prefix, chain -> constraint.validatePrefix(tourTrips, chain, previousModes));
+		PrefixTourEstimation estimation = new PrefixTourEstimation(estimators.get(), tourTrips.size());
+
+		while (generator.hasNext()) {
+			List<String> tourModes = generator.next();
+
+			if (!constraint.validateBeforeEstimation(tourTrips, tourModes, previousModes)) {
+				continue;
+			}
+
+			TourCandidate candidate = estimation.estimateTour(person, tourModes, tourTrips, previousTours);
+
+			if (!Double.isFinite(candidate.getUtility())) {
+				logger.warn(String.format(
+						"Received illegal utility for a tour of agent %s. Continuing with next candidate.",
+						person.getId().toString()));
+				continue;
+			}
+
+			if (!constraint.validateAfterEstimation(tourTrips, candidate, previousTours)) {
+				continue;
+			}
+
+			consumer.accept(candidate);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package ch.ethz.matsim.discrete_mode_choice.model.tour_based;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.matsim.api.core.v01.population.Person;
+
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
+
+/**
+ * Estimates the chains of one tour one after another. If the estimator is an
+ * IncrementalTourEstimator, only those trips are estimated that differ from the
+ * previously estimated chain. Otherwise, every chain is estimated as a whole.
+ *
+ * An instance must only be used by one thread.
+ *
+ * @author sebhoerl
+ */
+class PrefixTourEstimation {
+	private final TourEstimator estimator;
+	private final List<String> estimatedModes;
+	private final List<TripCandidate> estimatedTripCandidates;
+
+	PrefixTourEstimation(TourEstimator estimator, int numberOfTrips) {
+		this.estimator = estimator;
+		this.estimatedModes = new ArrayList<>(numberOfTrips);
+		this.estimatedTripCandidates = new ArrayList<>(numberOfTrips);
+	}
+
+	TourCandidate estimateTour(Person person, List<String> tourModes, List<DiscreteModeChoiceTrip> tourTrips,
+			List<TourCandidate> tourCandidates) {
+		if (!(estimator instanceof IncrementalTourEstimator)) {
+			return estimator.estimateTour(person, tourModes, tourTrips, tourCandidates);
+		}
+
+		IncrementalTourEstimator incrementalEstimator = (IncrementalTourEstimator) estimator;
+
+		int sharedLength = 0;
+
+		while (sharedLength < estimatedModes.size() && sharedLength < tourModes.size()
+				&& estimatedModes.get(sharedLength).equals(tourModes.get(sharedLength))) {
+			sharedLength++;
+		}
+
+		while (estimatedModes.size() > sharedLength) {
+			estimatedModes.remove(estimatedModes.size() - 1);
+			estimatedTripCandidates.remove(estimatedTripCandidates.size() - 1);
+		}
+
+		for (int i = sharedLength; i < tourModes.size(); i++) {
+			String mode = tourModes.get(i);
+
+			estimatedTripCandidates.add(incrementalEstimator.estimateTrip(person, mode, tourTrips.get(i),
+					estimatedTripCandidates, tourCandidates));
+			estimatedModes.add(mode);
+		}
+
+		return incrementalEstimator.estimateTour(person, tourModes, tourTrips, estimatedTripCandidates,
+				tourCandidates);
+	}
+}
@@ -0,0 +1,171 @@
+package ch.ethz.matsim.discrete_mode_choice.model.tour_based;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.population.Person;
+
+import ch.ethz.matsim.discrete_mode_choice.components.tour_finder.TourFinder;
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_availability.ModeAvailability;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeRegistry;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.state_space.TourStateSpace;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.state_space.WeightedTourSampler;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
+import ch.ethz.matsim.discrete_mode_choice.model.utilities.UtilityCandidate;
+import ch.ethz.matsim.discrete_mode_choice.model.utilities.UtilitySelector;
+import ch.ethz.matsim.discrete_mode_choice.model.utilities.UtilitySelectorFactory;
+
+/**
+ * A tour-based choice model for a multinomial logit selector that does not
+ * build the full choice set of a tour. Instead, a fixed number of feasible
+ * chains is drawn (with replacement) from a proposal distribution on a
+ * TourStateSpace:
+ *
+ * <ul>
+ * <li>UNIFORM: All feasible chains have the same probability.</li>
+ * <li>UTILITY_WEIGHTED: Chains are drawn proportionally to the exponential of
+ * the sum of their trip utilities. This requires an IncrementalTourEstimator,
+ * which provides the trip utilities.</li>
+ * </ul>
+ *
+ * Every distinct chain is estimated once and passed to the selector with the
+ * utility V + ln(k / q), where k is the number of times that the chain has been
+ * drawn and q is its proposal probability (sampling of alternatives). With
+ * this correction, the choice probabilities approach those of the multinomial
+ * logit model over all feasible chains as the number of samples grows, while
+ * the effort per tour is bounded by the number of samples.
+ *
+ * As in the UniformTourSamplingModel, only the VehicleContinuity and
+ * SubtourMode constraints are supported.
+ *
+ * @author sebhoerl
+ */
+public class SampledChoiceSetTourModel extends AbstractStateSpaceTourModel {
+	final private static Logger logger = Logger.getLogger(SampledChoiceSetTourModel.class);
+
+	public enum Proposal {
+		UNIFORM, UTILITY_WEIGHTED
+	}
+
+	final private TourEstimator estimator;
+	final private UtilitySelectorFactory selectorFactory;
+	final private Proposal proposal;
+	final private int numberOfSamples;
+
+	public SampledChoiceSetTourModel(TourEstimator estimator, ModeAvailability modeAvailability,
+			TourStateSpace.Factory stateSpaceFactory, TourFinder tourFinder, TourFilter tourFilter,
+			UtilitySelectorFactory selectorFactory, Proposal proposal, int numberOfSamples,
+			FallbackBehaviour fallbackBehaviour) {
+		super(estimator, modeAvailability, stateSpaceFactory, tourFinder, tourFilter, fallbackBehaviour);
+
+		if (proposal == Proposal.UTILITY_WEIGHTED && !(estimator instanceof IncrementalTourEstimator)) {
+			throw new IllegalStateException("The UTILITY_WEIGHTED proposal requires an IncrementalTourEstimator");
+		}
+
+		if (numberOfSamples < 1) {
+			throw new IllegalStateException("At least one chain must be sampled per tour");
+		}
+
+		this.estimator = estimator;
+		this.selectorFactory = selectorFactory;
+		this.proposal = proposal;
+		this.numberOfSamples = numberOfSamples;
+	}
+
+	private double[][] createLogWeights(Person person, TourStateSpace stateSpace,
+			List<DiscreteModeChoiceTrip> tourTrips, List<TourCandidate> previousTours) {
+		ModeRegistry registry = stateSpace.getRegistry();
+		double[][] logWeights = new double[tourTrips.size()][registry.getNumberOfModes()];
+
+		if (proposal == Proposal.UTILITY_WEIGHTED) {
+			IncrementalTourEstimator incrementalEstimator = (IncrementalTourEstimator) estimator;
+
+			for (int tripIndex = 0; tripIndex < tourTrips.size(); tripIndex++) {
+				for (int modeIndex = 0; modeIndex < registry.getNumberOfModes(); modeIndex++) {
+					double utility = incrementalEstimator.estimateTrip(person, registry.getMode(modeIndex),
+							tourTrips.get(tripIndex), Collections.emptyList(), previousTours).getUtility();
+					logWeights[tripIndex][modeIndex] = Double.isFinite(utility) ? utility
+							: Double.NEGATIVE_INFINITY;
+				}
+			}
+		}
+
+		return logWeights;
+	}
+
+	@Override
+	protected Optional<TourCandidate> chooseTour(Person person, TourStateSpace stateSpace,
+			List<DiscreteModeChoiceTrip> tourTrips, List<TourCandidate> previousTours, Random random) {
+		WeightedTourSampler sampler = new WeightedTourSampler(stateSpace,
+				createLogWeights(person, stateSpace, tourTrips, previousTours));
+
+		if (!sampler.hasChains()) {
+			return Optional.empty();
+		}
+
+		// Linked to keep the order of the choice set deterministic
+		Map<List<String>, Integer> sampledChains = new LinkedHashMap<>();
+
+		for (int k = 0; k < numberOfSamples; k++) {
+			List<String> chain = sampler.sample(random).get();
+			sampledChains.put(chain, sampledChains.getOrDefault(chain, 0) + 1);
+		}
+
+		UtilitySelector selector = selectorFactory.createUtilitySelector(random);
+
+		for (Map.Entry<List<String>, Integer> entry : sampledChains.entrySet()) {
+			TourCandidate candidate = estimator.estimateTour(person, entry.getKey(), tourTrips, previousTours);
+
+			if (!Double.isFinite(candidate.getUtility())) {
+				logger.warn(buildIllegalUtilityMessage(person));
+				continue;
+			}
+
+			double correction = Math.log(entry.getValue()) - sampler.getLogProbability(entry.getKey());
+			selector.addCandidate(new SampledTourCandidate(candidate, candidate.getUtility() + correction));
+		}
+
+		Optional<UtilityCandidate> selectedCandidate = selector.select(random);
+
+		if (selectedCandidate.isPresent()) {
+			return Optional.of(((SampledTourCandidate) selectedCandidate.get()).delegate);
+		}
+
+		return Optional.empty();
+	}
+
+	/**
+	 * Carries the corrected utility to the selector.
+	 */
+	static private class SampledTourCandidate implements TourCandidate {
+		final TourCandidate delegate;
+		final double utility;
+
+		SampledTourCandidate(TourCandidate delegate, double utility) {
+			this.delegate = delegate;
+			this.utility = utility;
+		}
+
+		@Override
+		public double getUtility() {
+			return utility;
+		}
+
+		@Override
+		public List<TripCandidate> getTripCandidates() {
+			return delegate.getTripCandidates();
+		}
+	}
+
+	private String buildIllegalUtilityMessage(Person person) {
+		return String.format(
+				"Received illegal utility for a sampled tour of agent %s. Continuing without this alternative.",
+				person.getId().toString());
+	}
+}
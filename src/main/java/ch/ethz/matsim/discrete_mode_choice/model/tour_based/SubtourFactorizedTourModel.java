@@ -0,0 +1,501 @@
+package ch.ethz.matsim.discrete_mode_choice.model.tour_based;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.population.Person;
+
+import ch.ethz.matsim.discrete_mode_choice.components.tour_finder.TourFinder;
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_availability.ModeAvailability;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeRegistry;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.DynamicProgrammingTourModel.Objective;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.state_space.TourState;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.state_space.TourStateSpace;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
+
+/**
+ * A tour-based choice model that splits a tour into a tree of sub-tours and
+ * enumerates the chains of every sub-tour separately. The top-level sub-tours
+ * are the ones found by the SubtourModeConstraint. Inside of a sub-tour, the
+ * nested sub-tours are found in the same way, using the closing positions of
+ * the TourStateSpace. The own trips of a sub-tour are all of its trips that are
+ * not part of a nested sub-tour.
+ *
+ * Before and after a sub-tour, only the state of the TourStateSpace (e.g. the
+ * locations of the restricted vehicles) and the set of modes used so far are
+ * relevant. Hence, for every sub-tour and state in which it is entered, the
+ * modes of the own trips are enumerated, while each nested sub-tour only
+ * contributes the states in which it can be left, together with its best
+ * utility or logsum for each of them. The sub-tours are then combined by
+ * dynamic programming over these states: The best combination is chosen for the
+ * MAXIMUM objective, and for the MULTINOMIAL_LOGIT objective, exit states and
+ * the chains leading there are sampled according to their logsums. The number
+ * of chains that are enumerated grows exponentially with the largest number of
+ * own trips of a sub-tour instead of the length of the whole tour.
+ *
+ * The result is the same as with enumeration, if the utility of the tour is the
+ * sum of the trip utilities plus the constants of the used modes (see
+ * AdditiveTourEstimator) and the trip utilities do not depend on the previous
+ * trips. Only the previous own trips of the same sub-tour are passed to the
+ * estimator, so estimates that depend on earlier trips would differ from
+ * enumeration. As for the DynamicProgrammingTourModel, this needs to be declared
+ * for the estimator (see AdditiveTourEstimator.hasIndependentTrips), and only
+ * the VehicleContinuity and SubtourMode constraints are supported.
+ *
+ * @author sebhoerl
+ */
+public class SubtourFactorizedTourModel extends AbstractStateSpaceTourModel {
+	final private static Logger logger = Logger.getLogger(SubtourFactorizedTourModel.class);
+
+	final private AdditiveTourEstimator estimator;
+	final private Objective objective;
+
+	public SubtourFactorizedTourModel(AdditiveTourEstimator estimator, ModeAvailability modeAvailability,
+			TourStateSpace.Factory stateSpaceFactory, TourFinder tourFinder, TourFilter tourFilter,
+			Objective objective, FallbackBehaviour fallbackBehaviour) {
+		super(estimator, modeAvailability, stateSpaceFactory, tourFinder, tourFilter, fallbackBehaviour);
+		this.estimator = estimator;
+		this.objective = objective;
+	}
+
+	@Override
+	protected Optional<TourCandidate> chooseTour(Person person, TourStateSpace stateSpace,
+			List<DiscreteModeChoiceTrip> tourTrips, List<TourCandidate> previousTours, Random random) {
+		return new TourProblem(person, stateSpace, tourTrips, previousTours).choose(random);
+	}
+
+	/**
+	 * A sub-tour from its first to its closing trip, or a single trip that does
+	 * not belong to any sub-tour. The trips between start and end that are not
+	 * part of a nested sub-tour are the own trips of the sub-tour.
+	 */
+	static private class Subtour {
+		final int start;
+		final int end;
+		final List<Subtour> children = new ArrayList<>();
+		int numberOfOwnTrips;
+
+		final Map<ProblemState, List<SubtourPath>> paths = new HashMap<>();
+		final Map<ProblemState, Map<ProblemState, Double>> transitions = new HashMap<>();
+
+		Subtour(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/**
+	 * One way through a sub-tour from a given state: the modes of the own trips
+	 * and the states in which the nested sub-tours are entered and left. The
+	 * utility contains the own trips, the constants of newly used modes and the
+	 * values of the nested sub-tours for the given states.
+	 */
+	static private class SubtourPath {
+		final int[] ownModeIndices;
+		final List<TripCandidate> ownTripCandidates;
+		final ProblemState[] childEntryStates;
+		final ProblemState[] childExitStates;
+		final double utility;
+		final ProblemState exitState;
+
+		SubtourPath(int[] ownModeIndices, List<TripCandidate> ownTripCandidates, ProblemState[] childEntryStates,
+				ProblemState[] childExitStates, double utility, ProblemState exitState) {
+			this.ownModeIndices = ownModeIndices;
+			this.ownTripCandidates = ownTripCandidates;
+			this.childEntryStates = childEntryStates;
+			this.childExitStates = childExitStates;
+			this.utility = utility;
+			this.exitState = exitState;
+		}
+	}
+
+	static private class ProblemState {
+		final TourState tourState;
+		final long usedModes;
+
+		ProblemState(TourState tourState, long usedModes) {
+			this.tourState = tourState;
+			this.usedModes = usedModes;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof ProblemState)) {
+				return false;
+			}
+
+			ProblemState otherState = (ProblemState) other;
+			return usedModes == otherState.usedModes && tourState.equals(otherState.tourState);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * tourState.hashCode() + Long.hashCode(usedModes);
+		}
+	}
+
+	private class TourProblem {
+		private final Person person;
+		private final TourStateSpace stateSpace;
+		private final List<DiscreteModeChoiceTrip> tourTrips;
+		private final List<TourCandidate> previousTours;
+
+		private final int numberOfTrips;
+		private final int numberOfModes;
+
+		private final Subtour[] topLevelSubtours;
+		private final double[] modeConstants;
+		private long constantModes = 0L;
+		private long excludedModes = 0L;
+
+		private final Map<ProblemState, Double> values = new HashMap<>();
+
+		TourProblem(Person person, TourStateSpace stateSpace, List<DiscreteModeChoiceTrip> tourTrips,
+				List<TourCandidate> previousTours) {
+			this.person = person;
+			this.stateSpace = stateSpace;
+			this.tourTrips = tourTrips;
+			this.previousTours = previousTours;
+
+			ModeRegistry registry = stateSpace.getRegistry();
+
+			this.numberOfTrips = tourTrips.size();
+			this.numberOfModes = registry.getNumberOfModes();
+
+			this.modeConstants = new double[numberOfModes];
+
+			for (int modeIndex = 0; modeIndex < numberOfModes; modeIndex++) {
+				modeConstants[modeIndex] = estimator.estimateModeConstant(person, registry.getMode(modeIndex));
+
+				if (!Double.isFinite(modeConstants[modeIndex])) {
+					logger.warn(buildIllegalUtilityMessage(person));
+					excludedModes |= 1L << modeIndex;
+				} else if (modeConstants[modeIndex] != 0.0) {
+					constantModes |= 1L << modeIndex;
+				}
+			}
+
+			// The top-level sub-tours are found in the same greedy way as in the
+			// SubtourModeConstraint, indexed by their first position
+			this.topLevelSubtours = new Subtour[numberOfTrips];
+
+			for (int position = 0; position < numberOfTrips; position++) {
+				int closingPosition = stateSpace.getClosingPosition(position);
+
+				if (closingPosition > position) {
+					topLevelSubtours[position] = buildSubtour(position, closingPosition);
+					position = closingPosition;
+				} else {
+					topLevelSubtours[position] = buildSubtour(position, position);
+				}
+			}
+		}
+
+		/**
+		 * Builds the tree of sub-tours that are nested between start and end. Nested
+		 * sub-tours are found greedily in the same way as the top-level ones.
+		 */
+		private Subtour buildSubtour(int start, int end) {
+			Subtour subtour = new Subtour(start, end);
+			subtour.numberOfOwnTrips = end - start + 1;
+
+			for (int position = start + 1; position < end; position++) {
+				int closingPosition = stateSpace.getClosingPosition(position);
+
+				if (closingPosition > position && closingPosition < end) {
+					Subtour child = buildSubtour(position, closingPosition);
+					subtour.children.add(child);
+					subtour.numberOfOwnTrips -= child.end - child.start + 1;
+					position = closingPosition;
+				}
+			}
+
+			return subtour;
+		}
+
+		private List<SubtourPath> getPaths(Subtour subtour, ProblemState entryState) {
+			List<SubtourPath> paths = subtour.paths.get(entryState);
+
+			if (paths == null) {
+				paths = new ArrayList<>();
+
+				enumeratePaths(subtour, subtour.start, entryState, 0, new int[subtour.numberOfOwnTrips],
+						new ArrayList<>(subtour.numberOfOwnTrips), new ProblemState[subtour.children.size()],
+						new ProblemState[subtour.children.size()], 0.0, paths);
+				subtour.paths.put(entryState, paths);
+			}
+
+			return paths;
+		}
+
+		/**
+		 * Enumerates the modes of the own trips of a sub-tour. The nested sub-tours
+		 * are not enumerated here, but only the states in which they can be left,
+		 * together with their value. Only the previous own trips of the sub-tour are
+		 * passed to the estimator.
+		 */
+		private void enumeratePaths(Subtour subtour, int position, ProblemState state, int childIndex,
+				int[] ownModeIndices, List<TripCandidate> ownTripCandidates, ProblemState[] childEntryStates,
+				ProblemState[] childExitStates, double utility, List<SubtourPath> paths) {
+			if (position > subtour.end) {
+				paths.add(new SubtourPath(ownModeIndices.clone(), new ArrayList<>(ownTripCandidates),
+						childEntryStates.clone(), childExitStates.clone(), utility, state));
+				return;
+			}
+
+			if (childIndex < subtour.children.size() && subtour.children.get(childIndex).start == position) {
+				Subtour child = subtour.children.get(childIndex);
+
+				for (Map.Entry<ProblemState, Double> transition : getTransitions(child, state).entrySet()) {
+					childEntryStates[childIndex] = state;
+					childExitStates[childIndex] = transition.getKey();
+
+					enumeratePaths(subtour, child.end + 1, transition.getKey(), childIndex + 1, ownModeIndices,
+							ownTripCandidates, childEntryStates, childExitStates, utility + transition.getValue(),
+							paths);
+				}
+
+				return;
+			}
+
+			for (int modeIndex = 0; modeIndex < numberOfModes; modeIndex++) {
+				if (ModeRegistry.isInMask(excludedModes, modeIndex)) {
+					continue;
+				}
+
+				TourState nextTourState = stateSpace.getNextState(state.tourState, modeIndex);
+
+				if (nextTourState == null) {
+					continue;
+				}
+
+				TripCandidate candidate = estimator.estimateTrip(person, stateSpace.getRegistry().getMode(modeIndex),
+						tourTrips.get(position), ownTripCandidates, previousTours);
+
+				if (!Double.isFinite(candidate.getUtility())) {
+					logger.warn(buildIllegalUtilityMessage(person));
+					continue;
+				}
+
+				double nextUtility = utility + candidate.getUtility();
+				long modeMask = constantModes & (1L << modeIndex);
+
+				if ((state.usedModes & modeMask) == 0L && modeMask != 0L) {
+					nextUtility += modeConstants[modeIndex];
+				}
+
+				ownModeIndices[ownTripCandidates.size()] = modeIndex;
+				ownTripCandidates.add(candidate);
+
+				enumeratePaths(subtour, position + 1, new ProblemState(nextTourState, state.usedModes | modeMask),
+						childIndex, ownModeIndices, ownTripCandidates, childEntryStates, childExitStates,
+						nextUtility, paths);
+
+				ownTripCandidates.remove(ownTripCandidates.size() - 1);
+			}
+		}
+
+		/**
+		 * Returns the states in which a sub-tour can be left from the given state,
+		 * together with the best utility (MAXIMUM) or the logsum (MULTINOMIAL_LOGIT)
+		 * of the paths that lead there.
+		 */
+		private Map<ProblemState, Double> getTransitions(Subtour subtour, ProblemState entryState) {
+			Map<ProblemState, Double> transitions = subtour.transitions.get(entryState);
+
+			if (transitions == null) {
+				Map<ProblemState, List<Double>> utilities = new LinkedHashMap<>();
+
+				for (SubtourPath path : getPaths(subtour, entryState)) {
+					utilities.computeIfAbsent(path.exitState, k -> new ArrayList<>()).add(path.utility);
+				}
+
+				transitions = new LinkedHashMap<>();
+
+				for (Map.Entry<ProblemState, List<Double>> entry : utilities.entrySet()) {
+					transitions.put(entry.getKey(), combine(entry.getValue()));
+				}
+
+				subtour.transitions.put(entryState, transitions);
+			}
+
+			return transitions;
+		}
+
+		private double combine(List<Double> utilities) {
+			double maximumUtility = Double.NEGATIVE_INFINITY;
+
+			for (double utility : utilities) {
+				maximumUtility = Math.max(maximumUtility, utility);
+			}
+
+			if (objective == Objective.MAXIMUM || maximumUtility == Double.NEGATIVE_INFINITY) {
+				return maximumUtility;
+			}
+
+			double sum = 0.0;
+
+			for (double utility : utilities) {
+				sum += Math.exp(utility - maximumUtility);
+			}
+
+			return maximumUtility + Math.log(sum);
+		}
+
+		private double getValue(ProblemState state) {
+			int position = state.tourState.getPosition();
+
+			if (position == numberOfTrips) {
+				return 0.0;
+			}
+
+			Double value = values.get(state);
+
+			if (value == null) {
+				List<Double> utilities = new ArrayList<>();
+
+				for (Map.Entry<ProblemState, Double> transition : getTransitions(topLevelSubtours[position], state)
+						.entrySet()) {
+					utilities.add(transition.getValue() + getValue(transition.getKey()));
+				}
+
+				value = combine(utilities);
+				values.put(state, value);
+			}
+
+			return value;
+		}
+
+		/**
+		 * Selects one element of a list of options by their utility: the first one
+		 * with the highest utility for the MAXIMUM objective, or randomly according to
+		 * exp(utility - totalValue) for the MULTINOMIAL_LOGIT objective.
+		 */
+		private int select(double[] utilities, double totalValue, Random random) {
+			int selectedIndex = -1;
+
+			if (objective == Objective.MAXIMUM) {
+				double selectedUtility = Double.NEGATIVE_INFINITY;
+
+				for (int k = 0; k < utilities.length; k++) {
+					if (utilities[k] > selectedUtility) {
+						selectedIndex = k;
+						selectedUtility = utilities[k];
+					}
+				}
+			} else {
+				double pointer = random.nextDouble();
+
+				for (int k = 0; k < utilities.length; k++) {
+					if (utilities[k] == Double.NEGATIVE_INFINITY) {
+						continue;
+					}
+
+					// Keep the last feasible option in case of rounding errors
+					selectedIndex = k;
+					pointer -= Math.exp(utilities[k] - totalValue);
+
+					if (pointer < 0.0) {
+						break;
+					}
+				}
+			}
+
+			return selectedIndex;
+		}
+
+		/**
+		 * Chooses a path through the sub-tour that leads from the entry to the exit
+		 * state and writes the modes and candidates of all its trips, including the
+		 * nested sub-tours.
+		 */
+		private void expand(Subtour subtour, ProblemState entryState, ProblemState exitState, Random random,
+				int[] modeIndices, TripCandidate[] tripCandidates) {
+			List<SubtourPath> paths = new ArrayList<>();
+
+			for (SubtourPath path : getPaths(subtour, entryState)) {
+				if (path.exitState.equals(exitState)) {
+					paths.add(path);
+				}
+			}
+
+			double[] utilities = new double[paths.size()];
+
+			for (int k = 0; k < paths.size(); k++) {
+				utilities[k] = paths.get(k).utility;
+			}
+
+			SubtourPath path = paths
+					.get(select(utilities, getTransitions(subtour, entryState).get(exitState), random));
+
+			int ownIndex = 0;
+			int childIndex = 0;
+
+			for (int position = subtour.start; position <= subtour.end; position++) {
+				if (childIndex < subtour.children.size() && subtour.children.get(childIndex).start == position) {
+					Subtour child = subtour.children.get(childIndex);
+					expand(child, path.childEntryStates[childIndex], path.childExitStates[childIndex], random,
+							modeIndices, tripCandidates);
+
+					position = child.end;
+					childIndex++;
+				} else {
+					modeIndices[position] = path.ownModeIndices[ownIndex];
+					tripCandidates[position] = path.ownTripCandidates.get(ownIndex);
+					ownIndex++;
+				}
+			}
+		}
+
+		Optional<TourCandidate> choose(Random random) {
+			ProblemState state = new ProblemState(stateSpace.getInitialState(), 0L);
+
+			if (getValue(state) == Double.NEGATIVE_INFINITY) {
+				return Optional.empty();
+			}
+
+			int[] modeIndices = new int[numberOfTrips];
+			TripCandidate[] tripCandidates = new TripCandidate[numberOfTrips];
+
+			while (state.tourState.getPosition() < numberOfTrips) {
+				Subtour subtour = topLevelSubtours[state.tourState.getPosition()];
+
+				List<ProblemState> exitStates = new ArrayList<>();
+				List<Double> exitUtilities = new ArrayList<>();
+
+				for (Map.Entry<ProblemState, Double> transition : getTransitions(subtour, state).entrySet()) {
+					exitStates.add(transition.getKey());
+					exitUtilities.add(transition.getValue() + getValue(transition.getKey()));
+				}
+
+				double[] utilities = exitUtilities.stream().mapToDouble(Double::doubleValue).toArray();
+				ProblemState exitState = exitStates.get(select(utilities, getValue(state), random));
+
+				expand(subtour, state, exitState, random, modeIndices, tripCandidates);
+				state = exitState;
+			}
+
+			List<String> modes = new ArrayList<>(numberOfTrips);
+
+			for (int modeIndex : modeIndices) {
+				modes.add(stateSpace.getRegistry().getMode(modeIndex));
+			}
+
+			return Optional.of(estimator.estimateTour(person, modes, tourTrips, Arrays.asList(tripCandidates),
+					previousTours));
+		}
+	}
+
+	private String buildIllegalUtilityMessage(Person person) {
+		return String.format("Received illegal utility for a sub-tour of agent %s. Continuing without this alternative.",
+				person.getId().toString());
+	}
+}
@@ -1,6 +1,5 @@
 package ch.ethz.matsim.discrete_mode_choice.model.tour_based;
 
-import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
@@ -14,8 +13,10 @@ import ch.ethz.matsim.discrete_mode_choice.components.tour_finder.TourFinder;
 import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceModel;
 import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
 import ch.ethz.matsim.discrete_mode_choice.model.mode_availability.ModeAvailability;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.IndexedModeChain;
 import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeChainGenerator;
 import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeChainGeneratorFactory;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeRegistry;
 import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
 import ch.ethz.matsim.discrete_mode_choice.model.utilities.UtilityCandidate;
 import ch.ethz.matsim.discrete_mode_choice.model.utilities.UtilitySelector;
@@ -39,11 +40,48 @@ public class TourBasedModel implements DiscreteModeChoiceModel {
 	final private UtilitySelectorFactory selectorFactory;
 	final private ModeChainGeneratorFactory modeChainGeneratorFactory;
 	final private FallbackBehaviour fallbackBehaviour;
+	final private boolean useBranchAndBound;
+	final private ParallelTourEvaluator parallelEvaluator;
 
 	public TourBasedModel(TourEstimator estimator, ModeAvailability modeAvailability,
 			TourConstraintFactory constraintFactory, TourFinder tourFinder, TourFilter tourFilter,
 			UtilitySelectorFactory selectorFactory, ModeChainGeneratorFactory modeChainGeneratorFactory,
 			FallbackBehaviour fallbackBehaviour) {
+		this(estimator, modeAvailability, constraintFactory, tourFinder, tourFilter, selectorFactory,
+				modeChainGeneratorFactory, fallbackBehaviour, false);
+	}
+
+	/**
+	 * If useBranchAndBound is set, the candidate with the highest utility is
+	 * searched with a BranchAndBoundTourSearch instead of enumerating all chains
+	 * and passing them to the selector. This requires an AdditiveTourEstimator
+	 * that estimates trips independently of the previous trips and is only
+	 * equivalent to the enumeration if the selector picks the maximum.
+	 */
+	public TourBasedModel(TourEstimator estimator, ModeAvailability modeAvailability,
+			TourConstraintFactory constraintFactory, TourFinder tourFinder, TourFilter tourFilter,
+			UtilitySelectorFactory selectorFactory, ModeChainGeneratorFactory modeChainGeneratorFactory,
+			FallbackBehaviour fallbackBehaviour, boolean useBranchAndBound) {
+		this(estimator, modeAvailability, constraintFactory, tourFinder, tourFilter, selectorFactory,
+				modeChainGeneratorFactory, fallbackBehaviour, useBranchAndBound, null);
+	}
+
+	/**
+	 * If a ParallelTourEvaluator is given, the chains of large tours are
+	 * evaluated in parallel and passed to the selector in a deterministic order. It is not used together with branch and bound.
+	 */
+	public TourBasedModel(TourEstimator estimator, ModeAvailability modeAvailability,
+			TourConstraintFactory constraintFactory, TourFinder tourFinder, TourFilter tourFilter,
+			UtilitySelectorFactory selectorFactory, ModeChainGeneratorFactory modeChainGeneratorFactory,
+			FallbackBehaviour fallbackBehaviour, boolean useBranchAndBound, ParallelTourEvaluator parallelEvaluator) {
+		if (useBranchAndBound && !(estimator instanceof AdditiveTourEstimator
+				&& ((AdditiveTourEstimator) estimator).hasIndependentTrips())) {
+			throw new IllegalStateException(
+					"Branch and bound search requires an AdditiveTourEstimator with independent trips");
+		}
+
+		this.useBranchAndBound = useBranchAndBound;
+		this.parallelEvaluator = parallelEvaluator;
 		this.estimator = estimator;
 		this.modeAvailability = modeAvailability;
 		this.constraintFactory = constraintFactory;
@@ -57,7 +95,8 @@ public class TourBasedModel implements DiscreteModeChoiceModel {
 	@Override
 	public List<TripCandidate> chooseModes(Person person, List<DiscreteModeChoiceTrip> trips, Random random)
 			throws NoFeasibleChoiceException {
-		List<String> modes = new ArrayList<>(modeAvailability.getAvailableModes(person, trips));
+		ModeRegistry registry = modeAvailability.getAvailableModeRegistry(person, trips);
+		List<String> modes = registry.getModes();
 		TourConstraint constraint = constraintFactory.createConstraint(person, trips, modes);
 
 		List<TourCandidate> tourCandidates = new LinkedList<>();
@@ -69,33 +108,18 @@ public class TourBasedModel implements DiscreteModeChoiceModel {
 			TourCandidate finalTourCandidate = null;
 
 			if (tourFilter.filter(person, tourTrips)) {
-				ModeChainGenerator generator = modeChainGeneratorFactory.createModeChainGenerator(modes, person,
-						tourTrips);
-				UtilitySelector selector = selectorFactory.createUtilitySelector();
-
-				while (generator.hasNext()) {
-					List<String> tourModes = generator.next();
-
-					if (!constraint.validateBeforeEstimation(tourTrips, tourModes, tourCandidateModes)) {
-						continue;
-					}
-
-					TourCandidate candidate = estimator.estimateTour(person, tourModes, tourTrips, tourCandidates);
-
-					if (!Double.isFinite(candidate.getUtility())) {
-						logger.warn(buildIllegalUtilityMessage(tripIndex, person));
-						continue;
-					}
-
-					if (!constraint.validateAfterEstimation(tourTrips, candidate, tourCandidates)) {
-						continue;
-					}
-
-					selector.addCandidate(candidate);
+				estimator.prepareTour(person, modes, tourTrips, tourCandidates);
+				Optional<UtilityCandidate> selectedCandidate;
+
+				if (useBranchAndBound) {
+					selectedCandidate = new BranchAndBoundTourSearch(person, (AdditiveTourEstimator) estimator,
+							constraint, modes, tourTrips, tourCandidates, tourCandidateModes).findBestCandidate()
+									.map(UtilityCandidate.class::cast);
+				} else {
+					selectedCandidate = selectByEnumeration(person, trips, registry, constraint, tourTrips,
+							tourCandidates, tourCandidateModes, tripIndex, random);
 				}
 
-				Optional<UtilityCandidate> selectedCandidate = selector.select(random);
-
 				if (!selectedCandidate.isPresent()) {
 					switch (fallbackBehaviour) {
 					case INITIAL_CHOICE:
@@ -116,8 +140,8 @@ public class TourBasedModel implements DiscreteModeChoiceModel {
 			}
 
 			tourCandidates.add(finalTourCandidate);
-			tourCandidateModes.add(
-					finalTourCandidate.getTripCandidates().stream().map(c -> c.getMode()).collect(Collectors.toList()));
+			tourCandidateModes.add(IndexedModeChain.copyOf(registry,
+					finalTourCandidate.getTripCandidates().stream().map(c -> c.getMode()).collect(Collectors.toList())));
 
 			tripIndex += tourTrips.size();
 		}
@@ -125,6 +149,49 @@ public class TourBasedModel implements DiscreteModeChoiceModel {
 		return createTripCandidates(tourCandidates);
 	}
 
+	private Optional<UtilityCandidate> selectByEnumeration(Person person, List<DiscreteModeChoiceTrip> trips,
+			ModeRegistry registry, TourConstraint constraint, List<DiscreteModeChoiceTrip> tourTrips,
+			List<TourCandidate> tourCandidates, List<List<String>> tourCandidateModes, int tripIndex,
+			Random random) {
+		List<String> modes = registry.getModes();
+
+		if (parallelEvaluator != null && parallelEvaluator.isApplicable(modes.size(), tourTrips.size())) {
+			UtilitySelector selector = selectorFactory.createUtilitySelector(random);
+			parallelEvaluator.evaluate(person, trips, registry, tourTrips, tourCandidates, tourCandidateModes,
+					selector);
+			return selector.select(random);
+		}
+
+		ModeChainGenerator generator = modeChainGeneratorFactory.createModeChainGenerator(registry, person, tourTrips,
+				prefix -> constraint.validatePrefix(tourTrips, prefix, tourCandidateModes));
+		UtilitySelector selector = selectorFactory.createUtilitySelector(random);
+
+		PrefixTourEstimation estimation = new PrefixTourEstimation(estimator, tourTrips.size());
+
+		while (generator.hasNext()) {
+			List<String> tourModes = generator.next();
+
+			if (!constraint.validateBeforeEstimation(tourTrips, tourModes, tourCandidateModes)) {
+				continue;
+			}
+
+			TourCandidate candidate = estimation.estimateTour(person, tourModes, tourTrips, tourCandidates);
+
+			if (!Double.isFinite(candidate.getUtility())) {
+				logger.warn(buildIllegalUtilityMessage(tripIndex, person));
+				continue;
+			}
+
+			if (!constraint.validateAfterEstimation(tourTrips, candidate, tourCandidates)) {
+				continue;
+			}
+
+			selector.addCandidate(candidate);
+		}
+
+		return selector.select(random);
+	}
+
 	private TourCandidate createFallbackCandidate(Person person, List<DiscreteModeChoiceTrip> tourTrips,
 			List<TourCandidate> tourCandidates) {
 		List<String> initialModes = tourTrips.stream().map(DiscreteModeChoiceTrip::getInitialMode)
@@ -24,6 +24,26 @@ public interface TourConstraint {
 	boolean validateBeforeEstimation(List<DiscreteModeChoiceTrip> tour, List<String> modes,
 			List<List<String>> previousModes);
 
+	/**
+	 * This function is called while a chain of modes is constructed trip by trip.
+	 * The prefixModes argument contains the modes for the first trips of the tour
+	 * (it is always shorter than the tour). If it returns false, no chain starting
+	 * with the given prefix will be considered, so it must only return false if
+	 * there is no way to complete the prefix into a feasible chain. Complete chains
+	 * are always passed to validateBeforeEstimation afterwards.
+	 * 
+	 * The prefix is extended one trip at a time and a prefix is only extended if
+	 * it has been accepted before, i.e. implementations may restrict themselves to
+	 * checking the last mode in the prefix.
+	 * 
+	 * By default, all prefixes are accepted, which means that the constraint is
+	 * only checked on complete chains.
+	 */
+	default boolean validatePrefix(List<DiscreteModeChoiceTrip> tour, List<String> prefixModes,
+			List<List<String>> previousModes) {
+		return true;
+	}
+
 	/**
 	 * This function is called after a tour is estimated. If it returns true, the
 	 * given modes are a feasible option for the tour, while false indicates that
@@ -15,4 +15,14 @@ import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
 public interface TourEstimator {
 	TourCandidate estimateTour(Person person, List<String> modes, List<DiscreteModeChoiceTrip> trips,
 			List<TourCandidate> previousTours);
+
+	/**
+	 * Is called once for every tour before its alternatives are estimated, with
+	 * all modes that are available. Estimators can use it to estimate the trips of
+	 * the tour for several modes at once (e.g. concurrently) and keep the
+	 * estimates for the alternatives. By default, nothing is done.
+	 */
+	default void prepareTour(Person person, List<String> modes, List<DiscreteModeChoiceTrip> trips,
+			List<TourCandidate> previousTours) {
+	}
 }
@@ -0,0 +1,46 @@
+package ch.ethz.matsim.discrete_mode_choice.model.tour_based;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import org.matsim.api.core.v01.population.Person;
+
+import ch.ethz.matsim.discrete_mode_choice.components.tour_finder.TourFinder;
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_availability.ModeAvailability;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.state_space.TourStateSpace;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.state_space.UniformTourSampler;
+
+/**
+ * A tour-based choice model that draws one of the feasible mode chains of a
+ * tour uniformly at random. It produces the same distribution as the
+ * TourBasedModel with a uniform estimator and a random selector (as it is used
+ * to replace SubtourModeChoice), but it does not enumerate the chains. Instead,
+ * the feasible chains are counted and sampled on a TourStateSpace, so only the
+ * VehicleContinuity and SubtourMode constraints are supported.
+ *
+ * @author sebhoerl
+ */
+public class UniformTourSamplingModel extends AbstractStateSpaceTourModel {
+	final private TourEstimator estimator;
+
+	public UniformTourSamplingModel(TourEstimator estimator, ModeAvailability modeAvailability,
+			TourStateSpace.Factory stateSpaceFactory, TourFinder tourFinder, TourFilter tourFilter,
+			FallbackBehaviour fallbackBehaviour) {
+		super(estimator, modeAvailability, stateSpaceFactory, tourFinder, tourFilter, fallbackBehaviour);
+		this.estimator = estimator;
+	}
+
+	@Override
+	protected Optional<TourCandidate> chooseTour(Person person, TourStateSpace stateSpace,
+			List<DiscreteModeChoiceTrip> tourTrips, List<TourCandidate> previousTours, Random random) {
+		Optional<List<String>> selectedModes = new UniformTourSampler(stateSpace).sample(random);
+
+		if (selectedModes.isPresent()) {
+			return Optional.of(estimator.estimateTour(person, selectedModes.get(), tourTrips, previousTours));
+		}
+
+		return Optional.empty();
+	}
+}
@@ -0,0 +1,59 @@
+package ch.ethz.matsim.discrete_mode_choice.model.tour_based.state_space;
+
+import java.util.Arrays;
+
+/**
+ * State of a partially constructed mode chain in a TourStateSpace. Two prefixes
+ * that lead to the same state allow for exactly the same completions, which
+ * makes it possible to count and sample chains without enumerating them.
+ *
+ * @author sebhoerl
+ */
+public final class TourState {
+	private final int position;
+	private final int segmentConstraint;
+	private final int[] vehicleLocations;
+	private final int hashCode;
+
+	TourState(int position, int segmentConstraint, int[] vehicleLocations) {
+		this.position = position;
+		this.segmentConstraint = segmentConstraint;
+		this.vehicleLocations = vehicleLocations;
+		this.hashCode = 31 * (31 * position + segmentConstraint) + Arrays.hashCode(vehicleLocations);
+	}
+
+	/**
+	 * Index of the next trip for which a mode needs to be chosen.
+	 */
+	public int getPosition() {
+		return position;
+	}
+
+	int getSegmentConstraint() {
+		return segmentConstraint;
+	}
+
+	int[] getVehicleLocations() {
+		return vehicleLocations;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+
+		if (!(other instanceof TourState)) {
+			return false;
+		}
+
+		TourState otherState = (TourState) other;
+		return position == otherState.position && segmentConstraint == otherState.segmentConstraint
+				&& Arrays.equals(vehicleLocations, otherState.vehicleLocations);
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+}
@@ -0,0 +1,279 @@
+package ch.ethz.matsim.discrete_mode_choice.model.tour_based.state_space;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.matsim.api.core.v01.BasicLocation;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+
+import ch.ethz.matsim.discrete_mode_choice.components.utils.home_finder.HomeFinder;
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.PlanContext;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeRegistry;
+
+/**
+ * Describes the feasible mode chains of a tour as transitions between
+ * TourStates. It encodes the same rules as the VehicleContinuity and SubtourMode
+ * tour constraints:
+ *
+ * <ul>
+ * <li>For every restricted mode, the state keeps track of where the vehicle
+ * has been left. A trip with that mode must depart from there. If the home
+ * location is known, vehicles start and must end there. Otherwise, a vehicle
+ * can only be used if it is used for the first trip, and then it must also be
+ * used for the last trip.</li>
+ * <li>The trips are split into sub-tours in the same greedy way as in the
+ * SubtourModeConstraint. Within a sub-tour, the state keeps track of the mode
+ * of the first trip: If it is a constrained mode, all trips in the sub-tour
+ * must have that mode, otherwise all trips must have unconstrained modes.</li>
+ * </ul>
+ *
+ * A chain is feasible if getNextState returns a state for every trip. Locations
+ * are represented by their indices in the PlanContext of the plan.
+ *
+ * @author sebhoerl
+ */
+public class TourStateSpace {
+	static final int FREE_SEGMENT = -1;
+	static final int UNCONSTRAINED_SEGMENT = -2;
+
+	static private final int NO_HOME = -1;
+	static private final int UNUSED_VEHICLE = -1;
+	static private final int UNAVAILABLE_VEHICLE = -2;
+
+	private final ModeRegistry registry;
+	private final int numberOfTrips;
+
+	private final int[] originLocations;
+	private final int[] destinationLocations;
+
+	private final int homeLocation;
+	private final int[] vehicleSlots;
+	private final int numberOfVehicles;
+
+	private final long constrainedMask;
+	private final int[] closingPositions;
+	private final int[] segmentEnds;
+	private final boolean[] isSegmentContinuation;
+
+	/**
+	 * Creates the state space for the trips of a tour, which must already have a
+	 * PlanContext (see PlanContext.get).
+	 */
+	public TourStateSpace(ModeRegistry registry, List<DiscreteModeChoiceTrip> tourTrips,
+			Collection<String> restrictedModes, Id<? extends BasicLocation> homeLocationId,
+			Collection<String> constrainedModes) {
+		this(registry, tourTrips, restrictedModes, getHomeLocation(PlanContext.get(tourTrips), homeLocationId),
+				constrainedModes);
+	}
+
+	/**
+	 * Creates the state space with the home location given as a location index of
+	 * the PlanContext of the trips, or -1 if there is no home location. The trips
+	 * must already have a PlanContext.
+	 */
+	public TourStateSpace(ModeRegistry registry, List<DiscreteModeChoiceTrip> tourTrips,
+			Collection<String> restrictedModes, int homeLocation, Collection<String> constrainedModes) {
+		this.registry = registry;
+		this.numberOfTrips = tourTrips.size();
+		this.homeLocation = homeLocation;
+
+		this.originLocations = new int[numberOfTrips];
+		this.destinationLocations = new int[numberOfTrips];
+		this.closingPositions = new int[numberOfTrips];
+
+		if (numberOfTrips > 0) {
+			PlanContext context = PlanContext.get(tourTrips);
+
+			for (int index = 0; index < numberOfTrips; index++) {
+				int planIndex = tourTrips.get(index).getPlanIndex();
+				originLocations[index] = context.getOriginLocation(planIndex);
+				destinationLocations[index] = context.getDestinationLocation(planIndex);
+			}
+
+			// For every trip, the first trip at or after it that returns to its origin
+			int[] nextArrivals = new int[context.getNumberOfLocations()];
+			Arrays.fill(nextArrivals, -1);
+
+			for (int index = numberOfTrips - 1; index >= 0; index--) {
+				nextArrivals[destinationLocations[index]] = index;
+				closingPositions[index] = nextArrivals[originLocations[index]];
+			}
+		}
+
+		// Each restricted mode that is available gets a slot in the state
+		this.vehicleSlots = new int[registry.getNumberOfModes()];
+		Arrays.fill(vehicleSlots, -1);
+
+		int numberOfVehicles = 0;
+
+		for (int modeIndex = 0; modeIndex < registry.getNumberOfModes(); modeIndex++) {
+			if (restrictedModes.contains(registry.getMode(modeIndex))) {
+				vehicleSlots[modeIndex] = numberOfVehicles++;
+			}
+		}
+
+		this.numberOfVehicles = numberOfVehicles;
+
+		// The sub-tours are found in the same way as in SubtourModeConstraint
+		this.constrainedMask = registry.getMask(constrainedModes);
+		this.segmentEnds = new int[numberOfTrips];
+		this.isSegmentContinuation = new boolean[numberOfTrips];
+
+		Arrays.fill(segmentEnds, -1);
+
+		for (int index = 0; index < numberOfTrips; index++) {
+			int end = closingPositions[index];
+
+			if (end != -1) {
+				segmentEnds[index] = end;
+
+				for (int k = index + 1; k <= end; k++) {
+					isSegmentContinuation[k] = true;
+				}
+
+				index = end;
+			}
+		}
+	}
+
+	static private int getHomeLocation(PlanContext context, Id<? extends BasicLocation> homeLocationId) {
+		if (homeLocationId == null) {
+			return NO_HOME;
+		}
+
+		int homeLocation = context.getLocationIndex(homeLocationId);
+
+		// If the home location is not part of the plan, no trip can start there
+		return homeLocation == -1 ? context.getNumberOfLocations() : homeLocation;
+	}
+
+	public ModeRegistry getRegistry() {
+		return registry;
+	}
+
+	public int getNumberOfTrips() {
+		return numberOfTrips;
+	}
+
+	/**
+	 * Returns the position of the first trip at or after the given position that
+	 * ends at the origin of the trip at the given position, or -1 if there is
+	 * none. The sub-tours of the tour, including the ones that are nested in
+	 * other sub-tours, span from a position to its closing position.
+	 */
+	public int getClosingPosition(int position) {
+		return closingPositions[position];
+	}
+
+	public TourState getInitialState() {
+		int[] vehicleLocations = new int[numberOfVehicles];
+		Arrays.fill(vehicleLocations, homeLocation == NO_HOME ? UNUSED_VEHICLE : homeLocation);
+		return new TourState(0, FREE_SEGMENT, vehicleLocations);
+	}
+
+	/**
+	 * Returns the state after choosing the mode with the given index for the next
+	 * trip or null if this choice is not feasible.
+	 */
+	public TourState getNextState(TourState state, int modeIndex) {
+		int position = state.getPosition();
+
+		if (position >= numberOfTrips) {
+			throw new IllegalStateException("All trips of the tour have already been assigned a mode");
+		}
+
+		// I) Sub-tours
+		int segmentConstraint = state.getSegmentConstraint();
+		boolean isConstrainedMode = ModeRegistry.isInMask(constrainedMask, modeIndex);
+
+		if (isSegmentContinuation[position]) {
+			if (segmentConstraint >= 0 && segmentConstraint != modeIndex) {
+				return null;
+			}
+
+			if (segmentConstraint == UNCONSTRAINED_SEGMENT && isConstrainedMode) {
+				return null;
+			}
+		} else if (segmentEnds[position] > position) {
+			segmentConstraint = isConstrainedMode ? modeIndex : UNCONSTRAINED_SEGMENT;
+		} else {
+			segmentConstraint = FREE_SEGMENT;
+		}
+
+		if (position + 1 < numberOfTrips && !isSegmentContinuation[position + 1]) {
+			segmentConstraint = FREE_SEGMENT;
+		}
+
+		// II) Vehicles
+		int[] vehicleLocations = state.getVehicleLocations();
+		int slot = vehicleSlots[modeIndex];
+
+		if (slot >= 0) {
+			int vehicleLocation = vehicleLocations[slot];
+
+			if (vehicleLocation == UNAVAILABLE_VEHICLE) {
+				return null;
+			}
+
+			if (vehicleLocation != UNUSED_VEHICLE && vehicleLocation != originLocations[position]) {
+				return null;
+			}
+
+			vehicleLocations = vehicleLocations.clone();
+			vehicleLocations[slot] = destinationLocations[position];
+		}
+
+		if (position == 0 && homeLocation == NO_HOME) {
+			// Vehicles that are not used for the first trip cannot be used at all
+			vehicleLocations = vehicleLocations.clone();
+
+			for (int k = 0; k < numberOfVehicles; k++) {
+				if (vehicleLocations[k] == UNUSED_VEHICLE) {
+					vehicleLocations[k] = UNAVAILABLE_VEHICLE;
+				}
+			}
+		}
+
+		if (position + 1 == numberOfTrips) {
+			// All vehicles must be back home, or if there is no home, all used vehicles
+			// must be used for the last trip
+			for (int k = 0; k < numberOfVehicles; k++) {
+				if (homeLocation != NO_HOME) {
+					if (vehicleLocations[k] != homeLocation) {
+						return null;
+					}
+				} else if (vehicleLocations[k] != UNAVAILABLE_VEHICLE && k != slot) {
+					return null;
+				}
+			}
+		}
+
+		return new TourState(position + 1, segmentConstraint, vehicleLocations);
+	}
+
+	public static class Factory {
+		private final Collection<String> restrictedModes;
+		private final HomeFinder homeFinder;
+		private final Collection<String> constrainedModes;
+
+		/**
+		 * Pass an empty collection of restricted or constrained modes to disable
+		 * the respective rules.
+		 */
+		public Factory(Collection<String> restrictedModes, HomeFinder homeFinder,
+				Collection<String> constrainedModes) {
+			this.restrictedModes = restrictedModes;
+			this.homeFinder = homeFinder;
+			this.constrainedModes = constrainedModes;
+		}
+
+		public TourStateSpace createStateSpace(Person person, List<DiscreteModeChoiceTrip> planTrips,
+				List<DiscreteModeChoiceTrip> tourTrips, ModeRegistry registry) {
+			int homeLocation = homeFinder.getHomeLocation(PlanContext.getOrCreate(planTrips), planTrips);
+			return new TourStateSpace(registry, tourTrips, restrictedModes, homeLocation, constrainedModes);
+		}
+	}
+}
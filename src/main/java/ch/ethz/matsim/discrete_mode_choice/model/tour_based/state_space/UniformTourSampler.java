@@ -0,0 +1,107 @@
+package ch.ethz.matsim.discrete_mode_choice.model.tour_based.state_space;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeRegistry;
+
+/**
+ * Draws one chain uniformly from all feasible chains of a TourStateSpace
+ * without enumerating them. First, the number of feasible completions is
+ * counted for every reachable state by dynamic programming. Then, the chain is
+ * constructed trip by trip, where each mode is chosen with a probability that
+ * is proportional to the number of feasible chains that continue with it. This
+ * is equivalent to drawing a uniform rank and unranking it.
+ *
+ * Counts are kept as doubles, so they are exact up to 2^53 chains.
+ *
+ * @author sebhoerl
+ */
+public class UniformTourSampler {
+	private final TourStateSpace stateSpace;
+	private final Map<TourState, Double> counts = new HashMap<>();
+
+	public UniformTourSampler(TourStateSpace stateSpace) {
+		this.stateSpace = stateSpace;
+	}
+
+	private double getCount(TourState state) {
+		if (state.getPosition() == stateSpace.getNumberOfTrips()) {
+			return 1.0;
+		}
+
+		Double count = counts.get(state);
+
+		if (count == null) {
+			count = 0.0;
+
+			for (int modeIndex = 0; modeIndex < stateSpace.getRegistry().getNumberOfModes(); modeIndex++) {
+				TourState nextState = stateSpace.getNextState(state, modeIndex);
+
+				if (nextState != null) {
+					count += getCount(nextState);
+				}
+			}
+
+			counts.put(state, count);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Returns the number of feasible chains.
+	 */
+	public double getNumberOfChains() {
+		return getCount(stateSpace.getInitialState());
+	}
+
+	/**
+	 * Draws a feasible chain or returns an empty result if there is none.
+	 */
+	public Optional<List<String>> sample(Random random) {
+		ModeRegistry registry = stateSpace.getRegistry();
+		TourState state = stateSpace.getInitialState();
+
+		if (getCount(state) == 0.0) {
+			return Optional.empty();
+		}
+
+		List<String> chain = new ArrayList<>(stateSpace.getNumberOfTrips());
+
+		while (state.getPosition() < stateSpace.getNumberOfTrips()) {
+			double remaining = random.nextDouble() * getCount(state);
+			TourState selectedState = null;
+			int selectedModeIndex = -1;
+
+			for (int modeIndex = 0; modeIndex < registry.getNumberOfModes(); modeIndex++) {
+				TourState nextState = stateSpace.getNextState(state, modeIndex);
+
+				if (nextState != null) {
+					double count = getCount(nextState);
+
+					if (count > 0.0) {
+						// Keep the last feasible mode in case of rounding errors
+						selectedState = nextState;
+						selectedModeIndex = modeIndex;
+
+						if (remaining < count) {
+							break;
+						}
+
+						remaining -= count;
+					}
+				}
+			}
+
+			chain.add(registry.getMode(selectedModeIndex));
+			state = selectedState;
+		}
+
+		return Optional.of(chain);
+	}
+}
@@ -0,0 +1,165 @@
+package ch.ethz.matsim.discrete_mode_choice.model.tour_based.state_space;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeRegistry;
+
+/**
+ * Draws feasible chains of a TourStateSpace with a probability that is
+ * proportional to the product of per-trip weights, i.e. proportional to
+ * exp(w_1 + w_2 + ... + w_n) for the log-weights w_i of the chosen mode of
+ * every trip. A log-weight of negative infinity excludes a mode for a trip. If
+ * all log-weights are zero, this is the same distribution as in the
+ * UniformTourSampler.
+ *
+ * The normalizing constants are computed per state by dynamic programming in
+ * log space, so the probability of a sampled chain is known exactly. This is
+ * needed to correct for the sampling when the chains are used as a choice set.
+ *
+ * @author sebhoerl
+ */
+public class WeightedTourSampler {
+	private final TourStateSpace stateSpace;
+	private final double[][] logWeights;
+	private final Map<TourState, Double> logTotals = new HashMap<>();
+
+	/**
+	 * The log-weights are given per trip and mode index of the registry of the
+	 * state space.
+	 */
+	public WeightedTourSampler(TourStateSpace stateSpace, double[][] logWeights) {
+		this.stateSpace = stateSpace;
+		this.logWeights = logWeights;
+	}
+
+	private double getLogTotal(TourState state) {
+		if (state.getPosition() == stateSpace.getNumberOfTrips()) {
+			return 0.0;
+		}
+
+		Double logTotal = logTotals.get(state);
+
+		if (logTotal == null) {
+			int numberOfModes = stateSpace.getRegistry().getNumberOfModes();
+			double[] values = new double[numberOfModes];
+			double maximumValue = Double.NEGATIVE_INFINITY;
+
+			for (int modeIndex = 0; modeIndex < numberOfModes; modeIndex++) {
+				values[modeIndex] = getLogWeight(state, modeIndex);
+				maximumValue = Math.max(maximumValue, values[modeIndex]);
+			}
+
+			if (maximumValue == Double.NEGATIVE_INFINITY) {
+				logTotal = Double.NEGATIVE_INFINITY;
+			} else {
+				double sum = 0.0;
+
+				for (int modeIndex = 0; modeIndex < numberOfModes; modeIndex++) {
+					sum += Math.exp(values[modeIndex] - maximumValue);
+				}
+
+				logTotal = maximumValue + Math.log(sum);
+			}
+
+			logTotals.put(state, logTotal);
+		}
+
+		return logTotal;
+	}
+
+	/**
+	 * Log-weight of all feasible completions that start with the given mode.
+	 */
+	private double getLogWeight(TourState state, int modeIndex) {
+		double logWeight = logWeights[state.getPosition()][modeIndex];
+
+		if (logWeight == Double.NEGATIVE_INFINITY) {
+			return Double.NEGATIVE_INFINITY;
+		}
+
+		TourState nextState = stateSpace.getNextState(state, modeIndex);
+
+		if (nextState == null) {
+			return Double.NEGATIVE_INFINITY;
+		}
+
+		return logWeight + getLogTotal(nextState);
+	}
+
+	/**
+	 * Returns whether there is at least one chain that can be sampled.
+	 */
+	public boolean hasChains() {
+		return getLogTotal(stateSpace.getInitialState()) > Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * Returns the log-probability with which the given chain is sampled. The
+	 * modes must be registered in the registry of the state space.
+	 */
+	public double getLogProbability(List<String> chain) {
+		ModeRegistry registry = stateSpace.getRegistry();
+		TourState state = stateSpace.getInitialState();
+		double logProbability = -getLogTotal(state);
+
+		for (String mode : chain) {
+			int modeIndex = registry.getIndex(mode);
+			logProbability += logWeights[state.getPosition()][modeIndex];
+			state = stateSpace.getNextState(state, modeIndex);
+
+			if (state == null) {
+				return Double.NEGATIVE_INFINITY;
+			}
+		}
+
+		return logProbability;
+	}
+
+	/**
+	 * Draws a chain or returns an empty result if there is none.
+	 */
+	public Optional<List<String>> sample(Random random) {
+		ModeRegistry registry = stateSpace.getRegistry();
+		TourState state = stateSpace.getInitialState();
+
+		if (!hasChains()) {
+			return Optional.empty();
+		}
+
+		List<String> chain = new ArrayList<>(stateSpace.getNumberOfTrips());
+
+		while (state.getPosition() < stateSpace.getNumberOfTrips()) {
+			double logTotal = getLogTotal(state);
+			double pointer = random.nextDouble();
+
+			TourState selectedState = null;
+			int selectedModeIndex = -1;
+
+			for (int modeIndex = 0; modeIndex < registry.getNumberOfModes(); modeIndex++) {
+				double logWeight = getLogWeight(state, modeIndex);
+
+				if (logWeight > Double.NEGATIVE_INFINITY) {
+					// Keep the last feasible mode in case of rounding errors
+					selectedState = stateSpace.getNextState(state, modeIndex);
+					selectedModeIndex = modeIndex;
+
+					pointer -= Math.exp(logWeight - logTotal);
+
+					if (pointer < 0.0) {
+						break;
+					}
+				}
+			}
+
+			chain.add(registry.getMode(selectedModeIndex));
+			state = selectedState;
+		}
+
+		return Optional.of(chain);
+	}
+}
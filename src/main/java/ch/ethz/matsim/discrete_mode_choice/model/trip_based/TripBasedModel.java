@@ -11,7 +11,10 @@ import org.matsim.api.core.v01.population.Person;
 import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceModel;
 import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
 import ch.ethz.matsim.discrete_mode_choice.model.mode_availability.ModeAvailability;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeChainBuffer;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeRegistry;
 import ch.ethz.matsim.discrete_mode_choice.model.tour_based.TripFilter;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.PrunedTripCandidate;
 import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
 import ch.ethz.matsim.discrete_mode_choice.model.utilities.UtilityCandidate;
 import ch.ethz.matsim.discrete_mode_choice.model.utilities.UtilitySelector;
@@ -47,11 +50,12 @@ public class TripBasedModel implements DiscreteModeChoiceModel {
 	@Override
 	public List<TripCandidate> chooseModes(Person person, List<DiscreteModeChoiceTrip> trips, Random random)
 			throws NoFeasibleChoiceException {
-		List<String> modes = new ArrayList<>(modeAvailability.getAvailableModes(person, trips));
+		ModeRegistry registry = modeAvailability.getAvailableModeRegistry(person, trips);
+		List<String> modes = registry.getModes();
 		TripConstraint constraint = constraintFactory.createConstraint(person, trips, modes);
 
 		List<TripCandidate> tripCandidates = new ArrayList<>(trips.size());
-		List<String> tripCandidateModes = new ArrayList<>(trips.size());
+		ModeChainBuffer tripCandidateModes = new ModeChainBuffer(registry, trips.size());
 
 		int tripIndex = 0;
 
@@ -59,15 +63,22 @@ public class TripBasedModel implements DiscreteModeChoiceModel {
 			TripCandidate finalTripCandidate = null;
 
 			if (tripFilter.filter(person, trip)) {
-				UtilitySelector selector = selectorFactory.createUtilitySelector();
+				UtilitySelector selector = selectorFactory.createUtilitySelector(random);
 				tripIndex++;
 
+				List<String> feasibleModes = new ArrayList<>(modes.size());
+
 				for (String mode : modes) {
-					if (!constraint.validateBeforeEstimation(trip, mode, tripCandidateModes)) {
-						continue;
+					if (constraint.validateBeforeEstimation(trip, mode, tripCandidateModes.getChain())) {
+						feasibleModes.add(mode);
 					}
+				}
 
-					TripCandidate candidate = estimator.estimateTrip(person, mode, trip, tripCandidates);
+				for (TripCandidate candidate : estimator.estimateTripModes(person, feasibleModes, trip,
+						tripCandidates)) {
+					if (candidate instanceof PrunedTripCandidate) {
+						continue;
+					}
 
 					if (!Double.isFinite(candidate.getUtility())) {
 						logger.warn(buildIllegalUtilityMessage(tripIndex, person));
@@ -20,6 +20,11 @@ public interface TripConstraint {
 	 * Since trip decisions are performed one after another the previousModes
 	 * argument contains a list of modes that have been chosen for earlier trips in
 	 * the plan.
+	 * 
+	 * Callers may pass the same list object in consecutive calls, but they must
+	 * only append modes to it or remove modes from its end. Modes must not be
+	 * replaced in place, because implementations may keep state for the modes
+	 * they have already seen in the list (see VehicleTripConstraint).
 	 */
 	boolean validateBeforeEstimation(DiscreteModeChoiceTrip trip, String mode, List<String> previousModes);
 
@@ -1,5 +1,6 @@
 package ch.ethz.matsim.discrete_mode_choice.model.trip_based;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.matsim.api.core.v01.population.Person;
@@ -11,8 +12,47 @@ import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandi
  * This interface represents a function that calculates a utility (or additional
  * information) for a given trip performed with a certain mode.
  * 
+ * Besides estimating one trip with one mode, there are two batch methods, which
+ * estimate one trip with several modes or several trips in one call. By default
+ * they call estimateTrip for every element. Estimators that can share work
+ * between the elements of a batch (e.g. one search tree for several modes or
+ * destinations of the same origin) can override them.
+ * 
  * @author sebhoerl
  */
 public interface TripEstimator {
 	TripCandidate estimateTrip(Person person, String mode, DiscreteModeChoiceTrip trip, List<TripCandidate> previousTrips);
+
+	/**
+	 * Estimates one trip for several modes. The candidates are returned in the
+	 * order of the modes.
+	 */
+	default List<TripCandidate> estimateTripModes(Person person, List<String> modes, DiscreteModeChoiceTrip trip,
+			List<TripCandidate> previousTrips) {
+		List<TripCandidate> candidates = new ArrayList<>(modes.size());
+
+		for (String mode : modes) {
+			candidates.add(estimateTrip(person, mode, trip, previousTrips));
+		}
+
+		return candidates;
+	}
+
+	/**
+	 * Estimates a chain of trips, where the i-th trip is performed with the i-th
+	 * mode. Every trip is estimated with the previous trips plus the candidates of
+	 * the preceding trips in the chain. The candidates are returned in the order
+	 * of the trips.
+	 */
+	default List<TripCandidate> estimateTrips(Person person, List<String> modes, List<DiscreteModeChoiceTrip> trips,
+			List<TripCandidate> previousTrips) {
+		List<TripCandidate> chainTrips = new ArrayList<>(previousTrips.size() + trips.size());
+		chainTrips.addAll(previousTrips);
+
+		for (int i = 0; i < trips.size(); i++) {
+			chainTrips.add(estimateTrip(person, modes.get(i), trips.get(i), chainTrips));
+		}
+
+		return new ArrayList<>(chainTrips.subList(previousTrips.size(), chainTrips.size()));
+	}
 }
@@ -0,0 +1,27 @@
+package ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates;
+
+/**
+ * Placeholder that is returned by estimators for a mode that has not been
+ * estimated because it is clearly dominated by other modes (see
+ * TwoStageTripEstimator). Its utility is negative infinity and the models skip
+ * it without further notice.
+ * 
+ * @author sebhoerl
+ */
+public class PrunedTripCandidate implements TripCandidate {
+	final private String mode;
+
+	public PrunedTripCandidate(String mode) {
+		this.mode = mode;
+	}
+
+	@Override
+	public double getUtility() {
+		return Double.NEGATIVE_INFINITY;
+	}
+
+	@Override
+	public String getMode() {
+		return mode;
+	}
+}
@@ -8,9 +8,11 @@ import java.util.Random;
  * utility value and then selects the one with the highest utility. Internally,
  * always only the best candidate is held.
  * 
+ * If several candidates have the same utility, the first one is selected.
+ * 
  * @author sebhoerl
  */
-public class MaximumSelector implements UtilitySelector {
+public class MaximumSelector implements MergeableUtilitySelector {
 	private UtilityCandidate bestCandidate = null;
 
 	@Override
@@ -31,6 +33,24 @@ public class MaximumSelector implements UtilitySelector {
 		return Optional.of(bestCandidate);
 	}
 
+	@Override
+	public MergeableUtilitySelector createPart() {
+		return new MaximumSelector();
+	}
+
+	/**
+	 * On equal utilities, the candidate of this selector is kept, as it would have
+	 * been added first.
+	 */
+	@Override
+	public void merge(MergeableUtilitySelector part) {
+		UtilityCandidate partCandidate = ((MaximumSelector) part).bestCandidate;
+
+		if (partCandidate != null) {
+			addCandidate(partCandidate);
+		}
+	}
+
 	public static class Factory implements UtilitySelectorFactory {
 		@Override
 		public UtilitySelector createUtilitySelector() {
@@ -0,0 +1,26 @@
+package ch.ethz.matsim.discrete_mode_choice.model.utilities;
+
+/**
+ * A UtilitySelector that can split its choice set into parts. Every part has
+ * its own selector, so the parts can be filled by different threads, and the
+ * parts are merged back afterwards. If the parts are merged in the order in
+ * which they have been created and every part receives a consecutive range of
+ * the candidates, the selection is distributed as if all candidates had been
+ * added to this selector.
+ *
+ * Parts must be created and merged by the thread that owns this selector.
+ *
+ * @author sebhoerl
+ */
+public interface MergeableUtilitySelector extends UtilitySelector {
+	/**
+	 * Creates an empty selector with the same configuration for one part of the
+	 * choice set.
+	 */
+	MergeableUtilitySelector createPart();
+
+	/**
+	 * Adds the state of a part that has been created by this selector.
+	 */
+	void merge(MergeableUtilitySelector part);
+}
@@ -22,7 +22,7 @@ import org.apache.log4j.Logger;
  * 
  * @author sebhoerl
  */
-public class MultinomialLogitSelector implements UtilitySelector {
+public class MultinomialLogitSelector implements MergeableUtilitySelector {
 	private final static Logger logger = Logger.getLogger(MultinomialLogitSelector.class);
 
 	final private List<UtilityCandidate> candidates = new LinkedList<>();
@@ -102,6 +102,21 @@ public class MultinomialLogitSelector implements UtilitySelector {
 		return Optional.of(filteredCandidates.get(selection));
 	}
 
+	@Override
+	public MergeableUtilitySelector createPart() {
+		return new MultinomialLogitSelector(maximumUtility, minimumUtility, considerMinimumUtility);
+	}
+
+	/**
+	 * The candidates of the part are appended, so merging the parts in order
+	 * gives the same selection for a given seed as adding all candidates to one
+	 * selector.
+	 */
+	@Override
+	public void merge(MergeableUtilitySelector part) {
+		candidates.addAll(((MultinomialLogitSelector) part).candidates);
+	}
+
 	public static class Factory implements UtilitySelectorFactory {
 		private final double minimumUtility;
 		private final double maximumUtility;
@@ -11,7 +11,7 @@ import java.util.Random;
  * 
  * @author sebhoerl
  */
-public class RandomSelector implements UtilitySelector {
+public class RandomSelector implements MergeableUtilitySelector {
 	private final List<UtilityCandidate> candidates = new LinkedList<>();
 
 	@Override
@@ -28,6 +28,16 @@ public class RandomSelector implements UtilitySelector {
 		return Optional.of(candidates.get(random.nextInt(candidates.size())));
 	}
 
+	@Override
+	public MergeableUtilitySelector createPart() {
+		return new RandomSelector();
+	}
+
+	@Override
+	public void merge(MergeableUtilitySelector part) {
+		candidates.addAll(((RandomSelector) part).candidates);
+	}
+
 	static public class Factory implements UtilitySelectorFactory {
 		@Override
 		public UtilitySelector createUtilitySelector() {
@@ -0,0 +1,128 @@
+package ch.ethz.matsim.discrete_mode_choice.model.utilities;
+
+import java.util.Optional;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+import org.matsim.core.gbl.MatsimRandom;
+
+/**
+ * The StreamingMultinomialLogitSelector selects candidates according to the
+ * same multinomial logit model as the MultinomialLogitSelector, but it does not
+ * keep the candidates in memory. Instead, a Gumbel-distributed error term is
+ * drawn for every candidate when it is added and only the candidate with the
+ * highest perturbed utility is kept (Gumbel-max trick). This is useful for very
+ * large choice sets, e.g. all mode chains of a long tour.
+ * 
+ * Since random numbers are needed while the candidates are added, the selector
+ * should be created with the random number generator of the choice (see
+ * UtilitySelectorFactory). The generator that is passed to select is not used.
+ * Hence, the selected candidates are distributed as with the
+ * MultinomialLogitSelector, but they are not the same for a given seed.
+ * 
+ * The minimum and maximum utility are treated as in the
+ * MultinomialLogitSelector.
+ * 
+ * @author sebhoerl
+ */
+public class StreamingMultinomialLogitSelector implements MergeableUtilitySelector {
+	private final static Logger logger = Logger.getLogger(StreamingMultinomialLogitSelector.class);
+
+	private final Random random;
+
+	private final double maximumUtility;
+	private final double minimumUtility;
+	private final boolean considerMinimumUtility;
+
+	private UtilityCandidate selectedCandidate = null;
+	private double selectedValue = Double.NEGATIVE_INFINITY;
+	private boolean hasCandidates = false;
+
+	public StreamingMultinomialLogitSelector(Random random, double maximumUtility, double minimumUtility,
+			boolean considerMinimumUtility) {
+		this.random = random;
+		this.maximumUtility = maximumUtility;
+		this.minimumUtility = minimumUtility;
+		this.considerMinimumUtility = considerMinimumUtility;
+	}
+
+	@Override
+	public void addCandidate(UtilityCandidate candidate) {
+		hasCandidates = true;
+		double utility = candidate.getUtility();
+
+		if (considerMinimumUtility && !(utility > minimumUtility)) {
+			return;
+		}
+
+		// Warn if there is a utility that is exceeding the feasible range
+		if (utility > maximumUtility) {
+			logger.warn(String.format(
+					"Encountered choice where a utility (%f) is larger than %f (maximum configured utility)", utility,
+					maximumUtility));
+			utility = maximumUtility;
+		}
+
+		double value = utility - Math.log(-Math.log(random.nextDouble()));
+
+		if (selectedCandidate == null || value > selectedValue) {
+			selectedCandidate = candidate;
+			selectedValue = value;
+		}
+	}
+
+	@Override
+	public Optional<UtilityCandidate> select(Random random) {
+		if (selectedCandidate == null && hasCandidates) {
+			logger.warn(String.format(
+					"Encountered choice where all utilities were smaller than %f (minimum configured utility)",
+					minimumUtility));
+		}
+
+		return Optional.ofNullable(selectedCandidate);
+	}
+
+	/**
+	 * The part draws its error terms from its own random number generator, which
+	 * is seeded from the generator of this selector.
+	 */
+	@Override
+	public MergeableUtilitySelector createPart() {
+		return new StreamingMultinomialLogitSelector(new Random(random.nextLong()), maximumUtility, minimumUtility,
+				considerMinimumUtility);
+	}
+
+	@Override
+	public void merge(MergeableUtilitySelector part) {
+		StreamingMultinomialLogitSelector other = (StreamingMultinomialLogitSelector) part;
+		hasCandidates |= other.hasCandidates;
+
+		if (other.selectedCandidate != null && (selectedCandidate == null || other.selectedValue > selectedValue)) {
+			selectedCandidate = other.selectedCandidate;
+			selectedValue = other.selectedValue;
+		}
+	}
+
+	public static class Factory implements UtilitySelectorFactory {
+		private final double minimumUtility;
+		private final double maximumUtility;
+		private final boolean considerMinimumUtility;
+
+		public Factory(double minimumUtility, double maximumUtility, boolean considerMinimumUtility) {
+			this.minimumUtility = minimumUtility;
+			this.maximumUtility = maximumUtility;
+			this.considerMinimumUtility = considerMinimumUtility;
+		}
+
+		@Override
+		public UtilitySelector createUtilitySelector() {
+			return createUtilitySelector(MatsimRandom.getLocalInstance());
+		}
+
+		@Override
+		public UtilitySelector createUtilitySelector(Random random) {
+			return new StreamingMultinomialLogitSelector(random, maximumUtility, minimumUtility,
+					considerMinimumUtility);
+		}
+	}
+}
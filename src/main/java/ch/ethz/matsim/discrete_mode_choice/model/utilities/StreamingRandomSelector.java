@@ -0,0 +1,78 @@
+package ch.ethz.matsim.discrete_mode_choice.model.utilities;
+
+import java.util.Optional;
+import java.util.Random;
+
+import org.matsim.core.gbl.MatsimRandom;
+
+/**
+ * The StreamingRandomSelector selects one of the candidates uniformly at
+ * random, like the RandomSelector, but without keeping them in memory. The
+ * n-th candidate replaces the current selection with probability 1/n
+ * (reservoir sampling).
+ * 
+ * As for the StreamingMultinomialLogitSelector, the random number generator of
+ * the choice should be passed when the selector is created.
+ * 
+ * @author sebhoerl
+ */
+public class StreamingRandomSelector implements MergeableUtilitySelector {
+	private final Random random;
+
+	private UtilityCandidate selectedCandidate = null;
+	private int numberOfCandidates = 0;
+
+	public StreamingRandomSelector(Random random) {
+		this.random = random;
+	}
+
+	@Override
+	public void addCandidate(UtilityCandidate candidate) {
+		numberOfCandidates++;
+
+		if (random.nextInt(numberOfCandidates) == 0) {
+			selectedCandidate = candidate;
+		}
+	}
+
+	@Override
+	public Optional<UtilityCandidate> select(Random random) {
+		return Optional.ofNullable(selectedCandidate);
+	}
+
+	@Override
+	public MergeableUtilitySelector createPart() {
+		return new StreamingRandomSelector(new Random(random.nextLong()));
+	}
+
+	/**
+	 * The selection of the part replaces the current selection with probability
+	 * (candidates of the part) / (candidates of both).
+	 */
+	@Override
+	public void merge(MergeableUtilitySelector part) {
+		StreamingRandomSelector other = (StreamingRandomSelector) part;
+
+		if (other.numberOfCandidates == 0) {
+			return;
+		}
+
+		numberOfCandidates += other.numberOfCandidates;
+
+		if (random.nextInt(numberOfCandidates) < other.numberOfCandidates) {
+			selectedCandidate = other.selectedCandidate;
+		}
+	}
+
+	static public class Factory implements UtilitySelectorFactory {
+		@Override
+		public UtilitySelector createUtilitySelector() {
+			return createUtilitySelector(MatsimRandom.getLocalInstance());
+		}
+
+		@Override
+		public UtilitySelector createUtilitySelector(Random random) {
+			return new StreamingRandomSelector(random);
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package ch.ethz.matsim.discrete_mode_choice.model.utilities;
 
+import java.util.Random;
+
 /**
  * Creates a UtilitySelector.
  * 
@@ -7,4 +9,14 @@ package ch.ethz.matsim.discrete_mode_choice.model.utilities;
  */
 public interface UtilitySelectorFactory {
 	UtilitySelector createUtilitySelector();
+
+	/**
+	 * Creates a UtilitySelector for a choice that will later be made with the
+	 * given random number generator. Selectors that already need random numbers
+	 * while candidates are added (like the streaming selectors) should override
+	 * this, all others can ignore the generator.
+	 */
+	default UtilitySelector createUtilitySelector(Random random) {
+		return createUtilitySelector();
+	}
 }
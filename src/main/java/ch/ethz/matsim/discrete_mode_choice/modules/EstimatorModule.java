@@ -2,30 +2,56 @@ package ch.ethz.matsim.discrete_mode_choice.modules;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.groups.GlobalConfigGroup;
 import org.matsim.core.router.TripRouter;
 import org.matsim.core.scoring.functions.ScoringParametersForPerson;
 import org.matsim.facilities.ActivityFacilities;
 import org.matsim.pt.config.TransitConfigGroup;
+import org.matsim.pt.transitSchedule.api.TransitSchedule;
 
 import com.google.inject.Provider;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
 
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.BeelineProxyEstimator;
 import ch.ethz.matsim.discrete_mode_choice.components.estimators.CumulativeTourEstimator;
 import ch.ethz.matsim.discrete_mode_choice.components.estimators.MATSimDayScoringEstimator;
 import ch.ethz.matsim.discrete_mode_choice.components.estimators.MATSimTripScoringEstimator;
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.ThreadLocalTripRouter;
 import ch.ethz.matsim.discrete_mode_choice.components.estimators.UniformTourEstimator;
 import ch.ethz.matsim.discrete_mode_choice.components.estimators.UniformTripEstimator;
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.routing.CompactNetworkRouters;
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.routing.CompactRouteStore;
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.skims.SkimRepository;
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.skims.SkimTripEstimator;
 import ch.ethz.matsim.discrete_mode_choice.components.utils.NullWaitingTimeEstimator;
 import ch.ethz.matsim.discrete_mode_choice.components.utils.PTWaitingTimeEstimator;
+import ch.ethz.matsim.discrete_mode_choice.model.estimation.AsyncTripEstimator;
 import ch.ethz.matsim.discrete_mode_choice.model.estimation.CachedTripEstimator;
+import ch.ethz.matsim.discrete_mode_choice.model.estimation.EstimationExecutor;
+import ch.ethz.matsim.discrete_mode_choice.model.estimation.SharedCachedTripEstimator;
+import ch.ethz.matsim.discrete_mode_choice.model.estimation.SharedTripCachePrepass;
+import ch.ethz.matsim.discrete_mode_choice.model.estimation.SharedTripEstimateCache;
+import ch.ethz.matsim.discrete_mode_choice.model.estimation.TwoStageTripEstimator;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_availability.ModeAvailability;
 import ch.ethz.matsim.discrete_mode_choice.model.tour_based.TourEstimator;
 import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripEstimator;
 import ch.ethz.matsim.discrete_mode_choice.modules.config.DiscreteModeChoiceConfigGroup;
 import ch.ethz.matsim.discrete_mode_choice.modules.config.MATSimTripScoringConfigGroup;
+import ch.ethz.matsim.discrete_mode_choice.modules.config.SharedTripCacheConfigGroup;
+import ch.ethz.matsim.discrete_mode_choice.modules.utils.BeelineProxyListener;
+import ch.ethz.matsim.discrete_mode_choice.modules.utils.CompactRoutingListener;
+import ch.ethz.matsim.discrete_mode_choice.modules.utils.EstimationExecutorListener;
 import ch.ethz.matsim.discrete_mode_choice.modules.utils.ScheduleWaitingTimeEstimatorModule;
+import ch.ethz.matsim.discrete_mode_choice.modules.utils.SharedTripCacheListener;
+import ch.ethz.matsim.discrete_mode_choice.modules.utils.SkimListener;
 
 /**
  * Internal module that manages all built-in estimators.
@@ -38,19 +64,27 @@ public class EstimatorModule extends AbstractDiscreteModeChoiceExtension {
 	public static final String MATSIM_DAY_SCORING = "MATSimDayScoring";
 	public static final String CUMULATIVE = "Cumulative";
 	public static final String UNIFORM = "Uniform";
+	public static final String SKIMS = "Skims";
 
-	public static final Collection<String> TRIP_COMPONENTS = Arrays.asList(MATSIM_TRIP_SCORING, UNIFORM);
+	public static final Collection<String> TRIP_COMPONENTS = Arrays.asList(MATSIM_TRIP_SCORING, UNIFORM, SKIMS);
 	public static final Collection<String> TOUR_COMPONENTS = Arrays.asList(MATSIM_DAY_SCORING, CUMULATIVE, UNIFORM);
 
 	@Override
 	public void installExtension() {
 		bindTripEstimator(MATSIM_TRIP_SCORING).to(MATSimTripScoringEstimator.class);
 		bindTripEstimator(UNIFORM).to(UniformTripEstimator.class);
+		bindTripEstimator(SKIMS).to(SkimTripEstimator.class);
 
 		bindTourEstimator(MATSIM_DAY_SCORING).to(MATSimDayScoringEstimator.class);
 		bindTourEstimator(CUMULATIVE).to(CumulativeTourEstimator.class);
 		bindTourEstimator(UNIFORM).to(UniformTourEstimator.class);
 
+		addControlerListenerBinding().to(SharedTripCacheListener.class);
+		addControlerListenerBinding().to(EstimationExecutorListener.class);
+		addControlerListenerBinding().to(SkimListener.class);
+		addControlerListenerBinding().to(CompactRoutingListener.class);
+		addControlerListenerBinding().to(BeelineProxyListener.class);
+
 		TransitConfigGroup transitConfigGroup = getConfig().transit();
 
 		if (transitConfigGroup.isUseTransit()) {
@@ -75,17 +109,146 @@ public class EstimatorModule extends AbstractDiscreteModeChoiceExtension {
 
 	@Provides
 	public TripEstimator provideTripEstimator(DiscreteModeChoiceConfigGroup dmcConfig,
-			Map<String, Provider<TripEstimator>> components) {
+			Map<String, Provider<TripEstimator>> components, SharedTripEstimateCache sharedCache,
+			Provider<EstimationExecutor> executorProvider, Provider<BeelineProxyEstimator> proxyEstimatorProvider) {
 		Provider<TripEstimator> provider = components.get(dmcConfig.getTripEstimator());
 
 		if (provider != null) {
-			return new CachedTripEstimator(provider.get(), dmcConfig.getCachedModes());
+			TripEstimator estimator = createAsyncTripEstimator(provider, dmcConfig.getTripEstimator(), dmcConfig,
+					executorProvider);
+			return createCachedTripEstimator(estimator, dmcConfig.getTripEstimator().equals(MATSIM_TRIP_SCORING),
+					dmcConfig, sharedCache, proxyEstimatorProvider);
 		} else {
 			throw new IllegalStateException(
 					String.format("There is no TripEstimator component called '%s',", dmcConfig.getTripEstimator()));
 		}
 	}
 
+	/**
+	 * The worker estimators are shared by all estimators of the same component.
+	 */
+	static private TripEstimator createAsyncTripEstimator(Provider<? extends TripEstimator> provider,
+			String componentName, DiscreteModeChoiceConfigGroup dmcConfig,
+			Provider<EstimationExecutor> executorProvider) {
+		TripEstimator delegate = provider.get();
+
+		if (dmcConfig.getNumberOfEstimationThreads() > 0) {
+			return new AsyncTripEstimator(delegate, componentName, provider::get, executorProvider.get());
+		}
+
+		return delegate;
+	}
+
+	static private TripEstimator createSharedCachedTripEstimator(TripEstimator delegate,
+			DiscreteModeChoiceConfigGroup dmcConfig, SharedTripEstimateCache sharedCache) {
+		Collection<String> sharedCachedModes = dmcConfig.getSharedTripCacheConfig().getCachedModes();
+
+		if (sharedCachedModes.size() > 0) {
+			return new SharedCachedTripEstimator(delegate, sharedCache, sharedCachedModes);
+		}
+
+		return delegate;
+	}
+
+	/**
+	 * Wraps the estimator with the caches and, if modes are pruned, with the
+	 * two-stage estimator. Pruning depends on the other modes of a trip, so the
+	 * two-stage estimator wraps the caches. The proxy estimator should learn from
+	 * every exact estimate only once, so it observes them inside of the caches.
+	 * 
+	 * Tour-based models estimate every trip of a chain exactly, so pruning would
+	 * only add the cost of the proxy estimates there and is rejected.
+	 */
+	static private TripEstimator createCachedTripEstimator(TripEstimator estimator, boolean allowPruning,
+			DiscreteModeChoiceConfigGroup dmcConfig, SharedTripEstimateCache sharedCache,
+			Provider<BeelineProxyEstimator> proxyEstimatorProvider) {
+		MATSimTripScoringConfigGroup config = dmcConfig.getMATSimTripScoringConfigGroup();
+		BeelineProxyEstimator proxyEstimator = null;
+
+		if (allowPruning && config.getPrunedModes().size() > 0) {
+			if (dmcConfig.getModelType() == ModelModule.ModelType.Tour) {
+				throw new IllegalStateException(String.format(
+						"The %s of the %s trip estimator only take effect with the trip-based model, since tour-based models estimate every trip of a chain exactly. Remove them for modelType %s.",
+						MATSimTripScoringConfigGroup.PRUNED_MODES, MATSIM_TRIP_SCORING, ModelModule.ModelType.Tour));
+			}
+
+			proxyEstimator = proxyEstimatorProvider.get();
+			estimator = new TwoStageTripEstimator.ObservingEstimator(estimator, proxyEstimator);
+		}
+
+		estimator = new CachedTripEstimator(createSharedCachedTripEstimator(estimator, dmcConfig, sharedCache),
+				dmcConfig.getCachedModes());
+
+		if (proxyEstimator != null) {
+			estimator = new TwoStageTripEstimator(estimator, proxyEstimator, config.getPrunedModes(),
+					config.getPruningMargin());
+		}
+
+		return estimator;
+	}
+
+	@Provides
+	@Singleton
+	public SharedTripEstimateCache provideSharedTripEstimateCache(DiscreteModeChoiceConfigGroup dmcConfig) {
+		SharedTripCacheConfigGroup config = dmcConfig.getSharedTripCacheConfig();
+		return new SharedTripEstimateCache(config.getInvalidatedModes(), config.getTimeBinSize(),
+				config.getMaximumSize(), config.getMaximumAge(), config.getPersonClassAttribute());
+	}
+
+	/**
+	 * If numberOfEstimationThreads is not set, the executor is only used by the
+	 * pre-pass of the shared trip cache, which then uses as many threads as the
+	 * replanning.
+	 */
+	@Provides
+	@Singleton
+	public EstimationExecutor provideEstimationExecutor(DiscreteModeChoiceConfigGroup dmcConfig,
+			GlobalConfigGroup globalConfig) {
+		int numberOfThreads = dmcConfig.getNumberOfEstimationThreads();
+
+		if (numberOfThreads <= 0) {
+			numberOfThreads = Math.max(1, globalConfig.getNumberOfThreads());
+		}
+
+		return new EstimationExecutor(numberOfThreads, 16 * numberOfThreads);
+	}
+
+	/**
+	 * The estimators of the pre-pass are kept by the worker threads across
+	 * iterations, so they only consist of the trip estimator component and the
+	 * shared cache, without the per-agent caches.
+	 */
+	@Provides
+	public SharedTripCachePrepass provideSharedTripCachePrepass(DiscreteModeChoiceConfigGroup dmcConfig,
+			Map<String, Provider<TripEstimator>> components, SharedTripEstimateCache sharedCache,
+			ModeAvailability modeAvailability, EstimationExecutor executor) {
+		Provider<TripEstimator> provider = components.get(dmcConfig.getTripEstimator());
+
+		if (provider == null) {
+			throw new IllegalStateException(
+					String.format("There is no TripEstimator component called '%s',", dmcConfig.getTripEstimator()));
+		}
+
+		return new SharedTripCachePrepass(sharedCache, dmcConfig.getSharedTripCacheConfig().getCachedModes(),
+				modeAvailability, () -> createSharedCachedTripEstimator(provider.get(), dmcConfig, sharedCache),
+				executor);
+	}
+
+	@Provides
+	@Singleton
+	public BeelineProxyEstimator.Factors provideBeelineProxyFactors() {
+		return new BeelineProxyEstimator.Factors();
+	}
+
+	@Provides
+	public BeelineProxyEstimator provideBeelineProxyEstimator(ActivityFacilities facilities,
+			ScoringParametersForPerson scoringParametersForPerson, Config config,
+			BeelineProxyEstimator.Factors factors, DiscreteModeChoiceConfigGroup dmcConfig) {
+		return new BeelineProxyEstimator(facilities, scoringParametersForPerson,
+				config.plansCalcRoute().getModeRoutingParams(), factors,
+				dmcConfig.getMATSimTripScoringConfigGroup().getMinimumProxyObservations());
+	}
+
 	@Provides
 	@Singleton
 	public UniformTripEstimator provideNullTripEstimator() {
@@ -107,21 +270,94 @@ public class EstimatorModule extends AbstractDiscreteModeChoiceExtension {
 	@Provides
 	public MATSimTripScoringEstimator provideMATSimTripScoringEstimator(ActivityFacilities facilities,
 			TripRouter tripRouter, PTWaitingTimeEstimator waitingTimeEstimator,
-			ScoringParametersForPerson scoringParametersForPerson, DiscreteModeChoiceConfigGroup dmcConfig) {
-		MATSimTripScoringConfigGroup config = dmcConfig.getMATSimTripScoringConfigGroup();
+			ScoringParametersForPerson scoringParametersForPerson, DiscreteModeChoiceConfigGroup dmcConfig,
+			Population population, Config config, CompactNetworkRouters compactRouters,
+			Provider<CompactRouteStore> routeStoreProvider, ThreadLocalTripRouter reroutingTripRouter) {
+		MATSimTripScoringConfigGroup tripScoringConfig = dmcConfig.getMATSimTripScoringConfigGroup();
+		CompactRouteStore routeStore = tripScoringConfig.getRouteStoreSize() > 0 ? routeStoreProvider.get() : null;
+
 		return new MATSimTripScoringEstimator(facilities, tripRouter, waitingTimeEstimator, scoringParametersForPerson,
-				config.getPtLegModes());
+				tripScoringConfig.getPtLegModes(), population.getFactory(),
+				config.plansCalcRoute().getModeRoutingParams(), compactRouters,
+				tripScoringConfig.getLazyRoutedModes(), routeStore, reroutingTripRouter);
+	}
+
+	@Provides
+	@Singleton
+	public ThreadLocalTripRouter provideThreadLocalTripRouter(Provider<TripRouter> tripRouterProvider) {
+		return new ThreadLocalTripRouter(tripRouterProvider::get);
 	}
 
 	@Provides
-	public MATSimDayScoringEstimator provideMATSimDayScoringEstimator(MATSimTripScoringEstimator tripEstimator,
-			ScoringParametersForPerson scoringParametersForPerson, DiscreteModeChoiceConfigGroup dmcConfig) {
-		return new MATSimDayScoringEstimator(new CachedTripEstimator(tripEstimator, dmcConfig.getCachedModes()),
-				scoringParametersForPerson);
+	@Singleton
+	public CompactRouteStore provideCompactRouteStore(Scenario scenario, DiscreteModeChoiceConfigGroup dmcConfig) {
+		TransitSchedule schedule = scenario.getConfig().transit().isUseTransit() ? scenario.getTransitSchedule()
+				: null;
+		int routeStoreSize = dmcConfig.getMATSimTripScoringConfigGroup().getRouteStoreSize();
+
+		if (routeStoreSize >= 2048) {
+			throw new IllegalStateException(
+					String.format("The route store size must be below 2048 MB, but is %d MB", routeStoreSize));
+		}
+
+		int capacity = routeStoreSize * 1024 * 1024;
+		return new CompactRouteStore(scenario.getNetwork(), schedule, scenario.getPopulation().getFactory(),
+				capacity);
 	}
 
 	@Provides
-	public CumulativeTourEstimator provideCumulativeTourEstimator(TripEstimator tripEstimator) {
-		return new CumulativeTourEstimator(tripEstimator);
+	@Singleton
+	public CompactNetworkRouters provideCompactNetworkRouters(Network network,
+			DiscreteModeChoiceConfigGroup dmcConfig) {
+		MATSimTripScoringConfigGroup config = dmcConfig.getMATSimTripScoringConfigGroup();
+		return new CompactNetworkRouters(network, config.getCompactRoutedModes(), config.getNumberOfLandmarks(),
+				config.getTravelTimeBinSize(), config.getTravelTimeEndTime());
+	}
+
+	@Provides
+	@Singleton
+	public SkimRepository provideSkimRepository() {
+		return new SkimRepository();
+	}
+
+	@Provides
+	public SkimTripEstimator provideSkimTripEstimator(SkimRepository repository,
+			MATSimTripScoringEstimator fallbackEstimator, ScoringParametersForPerson scoringParametersForPerson,
+			ActivityFacilities facilities, DiscreteModeChoiceConfigGroup dmcConfig) {
+		return new SkimTripEstimator(repository, dmcConfig.getSkimEstimatorConfigGroup().getSkimmedModes(),
+				scoringParametersForPerson, fallbackEstimator, facilities);
+	}
+
+	@Provides
+	public MATSimDayScoringEstimator provideMATSimDayScoringEstimator(
+			Provider<MATSimTripScoringEstimator> tripEstimatorProvider,
+			ScoringParametersForPerson scoringParametersForPerson, DiscreteModeChoiceConfigGroup dmcConfig,
+			SharedTripEstimateCache sharedCache, Provider<EstimationExecutor> executorProvider,
+			Provider<BeelineProxyEstimator> proxyEstimatorProvider) {
+		TripEstimator tripEstimator = createAsyncTripEstimator(tripEstimatorProvider, MATSIM_TRIP_SCORING, dmcConfig,
+				executorProvider);
+		tripEstimator = createCachedTripEstimator(tripEstimator, true, dmcConfig, sharedCache,
+				proxyEstimatorProvider);
+		return new MATSimDayScoringEstimator(tripEstimator, scoringParametersForPerson,
+				dmcConfig.getTourModelConfig().getIndependentTripEstimates(), getPrefetchedModes(dmcConfig));
+	}
+
+	@Provides
+	public CumulativeTourEstimator provideCumulativeTourEstimator(TripEstimator tripEstimator,
+			DiscreteModeChoiceConfigGroup dmcConfig) {
+		return new CumulativeTourEstimator(tripEstimator,
+				dmcConfig.getTourModelConfig().getIndependentTripEstimates(), getPrefetchedModes(dmcConfig));
+	}
+
+	/**
+	 * With estimation threads, the tour estimators prefetch the cached modes of
+	 * all trips of a tour, so that they are estimated concurrently.
+	 */
+	static private Collection<String> getPrefetchedModes(DiscreteModeChoiceConfigGroup dmcConfig) {
+		if (dmcConfig.getNumberOfEstimationThreads() > 0) {
+			return dmcConfig.getCachedModes();
+		}
+
+		return Collections.emptySet();
 	}
 }
@@ -1,32 +1,49 @@
 package ch.ethz.matsim.discrete_mode_choice.modules;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.matsim.core.controler.AbstractModule;
 
 import com.google.inject.Provider;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 
 import ch.ethz.matsim.discrete_mode_choice.components.tour_finder.TourFinder;
+import ch.ethz.matsim.discrete_mode_choice.components.utils.home_finder.HomeFinder;
 import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceModel;
 import ch.ethz.matsim.discrete_mode_choice.model.filters.CompositeTourFilter;
 import ch.ethz.matsim.discrete_mode_choice.model.filters.CompositeTripFilter;
 import ch.ethz.matsim.discrete_mode_choice.model.mode_availability.ModeAvailability;
 import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.DefaultModeChainGenerator;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.DepthFirstModeChainGenerator;
 import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeChainGeneratorFactory;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.AdditiveTourEstimator;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.DynamicProgrammingTourModel;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.IncrementalTourEstimator;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.ParallelTourEvaluator;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.SampledChoiceSetTourModel;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.SubtourFactorizedTourModel;
 import ch.ethz.matsim.discrete_mode_choice.model.tour_based.TourBasedModel;
 import ch.ethz.matsim.discrete_mode_choice.model.tour_based.TourConstraintFactory;
 import ch.ethz.matsim.discrete_mode_choice.model.tour_based.TourEstimator;
 import ch.ethz.matsim.discrete_mode_choice.model.tour_based.TourFilter;
 import ch.ethz.matsim.discrete_mode_choice.model.tour_based.TripFilter;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.UniformTourSamplingModel;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.state_space.TourStateSpace;
 import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripBasedModel;
 import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripConstraintFactory;
 import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripEstimator;
 import ch.ethz.matsim.discrete_mode_choice.model.utilities.UtilitySelectorFactory;
 import ch.ethz.matsim.discrete_mode_choice.modules.config.DiscreteModeChoiceConfigGroup;
+import ch.ethz.matsim.discrete_mode_choice.modules.config.TourModelConfigGroup;
 
 /**
  * Internal module that sets up the acutal choice models according to
@@ -45,19 +62,82 @@ public class ModelModule extends AbstractModule {
 		install(new ConstraintModule());
 		install(new FilterModule());
 
-		bind(ModeChainGeneratorFactory.class).to(DefaultModeChainGenerator.Factory.class);
+		bind(ModeChainGeneratorFactory.class).to(DepthFirstModeChainGenerator.Factory.class);
 	}
 
 	public enum ModelType {
 		Trip, Tour
 	}
 
+	private final static Collection<String> STATE_SPACE_TOUR_CONSTRAINTS = Arrays
+			.asList(ConstraintModule.VEHICLE_CONTINUITY, ConstraintModule.SUBTOUR_MODE);
+
+	/**
+	 * A TourStateSpace can represent the VehicleContinuity and SubtourMode tour
+	 * constraints. The sub-tour constraint is only supported on the whole plan.
+	 */
+	static private boolean areTourConstraintsSupportedByStateSpace(DiscreteModeChoiceConfigGroup dmcConfig) {
+		if (!STATE_SPACE_TOUR_CONSTRAINTS.containsAll(dmcConfig.getTourConstraints())) {
+			return false;
+		}
+
+		if (dmcConfig.getTourConstraints().contains(ConstraintModule.SUBTOUR_MODE)
+				&& !dmcConfig.getTourFinder().equals(TourFinderModule.PLAN_BASED)) {
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Uniform sampling gives the same result as enumerating all tour candidates if
+	 * they are estimated uniformly, selected randomly and only constrained by
+	 * vehicle continuity and sub-tours (as in the SubtourModeChoice replacement).
+	 */
+	static public boolean isUniformTourSamplingApplicable(DiscreteModeChoiceConfigGroup dmcConfig) {
+		if (!dmcConfig.getTourEstimator().equals(EstimatorModule.UNIFORM)) {
+			return false;
+		}
+
+		if (!dmcConfig.getSelector().equals(SelectorModule.RANDOM)
+				&& !dmcConfig.getSelector().equals(SelectorModule.STREAMING_RANDOM)) {
+			return false;
+		}
+
+		if (dmcConfig.getTourFilters().size() > 0) {
+			return false;
+		}
+
+		return areTourConstraintsSupportedByStateSpace(dmcConfig);
+	}
+
 	@Provides
 	public DiscreteModeChoiceModel provideDiscreteModeChoiceModel(DiscreteModeChoiceConfigGroup dmcConfig,
-			Provider<TourBasedModel> tourBasedProvider, Provider<TripBasedModel> tripBasedProvider) {
+			Provider<TourBasedModel> tourBasedProvider, Provider<TripBasedModel> tripBasedProvider,
+			Provider<UniformTourSamplingModel> uniformTourSamplingProvider,
+			Provider<DynamicProgrammingTourModel> dynamicProgrammingProvider,
+			Provider<SampledChoiceSetTourModel> sampledChoiceSetProvider,
+			Provider<SubtourFactorizedTourModel> subtourFactorizedProvider) {
 		switch (dmcConfig.getModelType()) {
 		case Tour:
-			return tourBasedProvider.get();
+			switch (dmcConfig.getTourModelConfig().getAlgorithm()) {
+			case DYNAMIC_PROGRAMMING:
+				return dynamicProgrammingProvider.get();
+			case BRANCH_AND_BOUND:
+				return tourBasedProvider.get();
+			case SAMPLING:
+				return sampledChoiceSetProvider.get();
+			case SUBTOUR_FACTORIZATION:
+				return subtourFactorizedProvider.get();
+			case ENUMERATION:
+				if (isUniformTourSamplingApplicable(dmcConfig)) {
+					return uniformTourSamplingProvider.get();
+				}
+
+				return tourBasedProvider.get();
+			default:
+				throw new IllegalStateException();
+			}
 		case Trip:
 			return tripBasedProvider.get();
 		default:
@@ -69,9 +149,195 @@ public class ModelModule extends AbstractModule {
 	public TourBasedModel provideTourBasedModel(ModeAvailability modeAvailability, TourFilter tourFilter,
 			TourEstimator tourEstimator, TourConstraintFactory tourConstraintFactory, TourFinder tourFinder,
 			UtilitySelectorFactory selectorFactory, ModeChainGeneratorFactory modeChainGeneratorFactory,
-			DiscreteModeChoiceConfigGroup dmcConfig) {
+			DiscreteModeChoiceConfigGroup dmcConfig, Provider<ParallelTourEvaluator> parallelEvaluatorProvider) {
+		boolean useBranchAndBound = dmcConfig.getTourModelConfig()
+				.getAlgorithm() == TourModelConfigGroup.Algorithm.BRANCH_AND_BOUND;
+
+		if (useBranchAndBound) {
+			verifyIndependentTrips(tourEstimator, dmcConfig, "branch and bound");
+
+			if (!dmcConfig.getSelector().equals(SelectorModule.MAXIMUM)) {
+				throw new IllegalStateException(String.format(
+						"Branch and bound only supports the Maximum selector, but got '%s'.", dmcConfig.getSelector()));
+			}
+		}
+
+		ParallelTourEvaluator parallelEvaluator = null;
+
+		if (dmcConfig.getTourModelConfig().getUseParallelEvaluation()) {
+			parallelEvaluator = parallelEvaluatorProvider.get();
+		}
+
 		return new TourBasedModel(tourEstimator, modeAvailability, tourConstraintFactory, tourFinder, tourFilter,
-				selectorFactory, modeChainGeneratorFactory, dmcConfig.getFallbackBehaviour());
+				selectorFactory, modeChainGeneratorFactory, dmcConfig.getFallbackBehaviour(), useBranchAndBound,
+				parallelEvaluator);
+	}
+
+	/**
+	 * The evaluator is shared by all choice models, so there is one pool and one
+	 * tour estimator per worker thread. The workers are daemon threads.
+	 */
+	@Provides
+	@Singleton
+	public ParallelTourEvaluator provideParallelTourEvaluator(TourConstraintFactory tourConstraintFactory,
+			ModeChainGeneratorFactory modeChainGeneratorFactory, DiscreteModeChoiceConfigGroup dmcConfig,
+			Provider<TourEstimator> tourEstimatorProvider) {
+		TourModelConfigGroup config = dmcConfig.getTourModelConfig();
+
+		int numberOfThreads = config.getNumberOfParallelEvaluationThreads();
+
+		if (numberOfThreads <= 0) {
+			numberOfThreads = Runtime.getRuntime().availableProcessors();
+		}
+
+		AtomicInteger threadIndex = new AtomicInteger();
+
+		ForkJoinPool pool = new ForkJoinPool(numberOfThreads, forkJoinPool -> {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+			thread.setName("DMC tour evaluation " + threadIndex.getAndIncrement());
+			return thread;
+		}, null, false);
+
+		return new ParallelTourEvaluator(tourEstimatorProvider::get, tourConstraintFactory, modeChainGeneratorFactory,
+				pool, config.getParallelChainThreshold());
+	}
+
+	@Provides
+	public UniformTourSamplingModel provideUniformTourSamplingModel(ModeAvailability modeAvailability,
+			TourFilter tourFilter, TourEstimator tourEstimator, TourStateSpace.Factory stateSpaceFactory,
+			TourFinder tourFinder, DiscreteModeChoiceConfigGroup dmcConfig) {
+		return new UniformTourSamplingModel(tourEstimator, modeAvailability, stateSpaceFactory, tourFinder,
+				tourFilter, dmcConfig.getFallbackBehaviour());
+	}
+
+	/**
+	 * Checks whether the tour estimator is additive and estimates trips
+	 * independently of the previous trips. This is never assumed, but needs to be
+	 * declared in the config.
+	 */
+	static private void verifyIndependentTrips(TourEstimator tourEstimator, DiscreteModeChoiceConfigGroup dmcConfig,
+			String algorithm) {
+		if (!(tourEstimator instanceof AdditiveTourEstimator)) {
+			throw new IllegalStateException(String.format(
+					"The tour estimator '%s' is not an AdditiveTourEstimator and cannot be used with %s.",
+					dmcConfig.getTourEstimator(), algorithm));
+		}
+
+		if (!((AdditiveTourEstimator) tourEstimator).hasIndependentTrips()) {
+			throw new IllegalStateException(String.format(
+					"The tour estimator '%s' cannot be used with %s, because its trip estimates may depend on the previous trips. Set %s to true if the trip estimator does not use them.",
+					dmcConfig.getTourEstimator(), algorithm, TourModelConfigGroup.INDEPENDENT_TRIP_ESTIMATES));
+		}
+	}
+
+	/**
+	 * Checks whether a model that works on additive utilities and a TourStateSpace
+	 * can be used with the configured components and returns the objective that
+	 * corresponds to the selector.
+	 */
+	static private DynamicProgrammingTourModel.Objective getStateSpaceObjective(TourEstimator tourEstimator,
+			DiscreteModeChoiceConfigGroup dmcConfig, String algorithm) {
+		if (!(tourEstimator instanceof AdditiveTourEstimator)) {
+			throw new IllegalStateException(String.format(
+					"The tour estimator '%s' is not an AdditiveTourEstimator and cannot be used with %s.",
+					dmcConfig.getTourEstimator(), algorithm));
+		}
+
+		if (!areTourConstraintsSupportedByStateSpace(dmcConfig)) {
+			throw new IllegalStateException(String.format(
+					"%s only supports the VehicleContinuity and SubtourMode tour constraints (the latter only with the PlanBased tour finder).",
+					algorithm));
+		}
+
+		if (dmcConfig.getSelector().equals(SelectorModule.MAXIMUM)) {
+			return DynamicProgrammingTourModel.Objective.MAXIMUM;
+		} else if (dmcConfig.getSelector().equals(SelectorModule.MULTINOMIAL_LOGIT)
+				|| dmcConfig.getSelector().equals(SelectorModule.STREAMING_MULTINOMIAL_LOGIT)) {
+			if (dmcConfig.getMultinomialLogitSelectorConfig().getConsiderMinimumUtility()) {
+				throw new IllegalStateException(String.format(
+						"%s cannot be used with a minimum utility for the MultinomialLogit selector.", algorithm));
+			}
+
+			return DynamicProgrammingTourModel.Objective.MULTINOMIAL_LOGIT;
+		} else {
+			throw new IllegalStateException(
+					String.format("%s only supports the Maximum and MultinomialLogit selectors, but got '%s'.",
+							algorithm, dmcConfig.getSelector()));
+		}
+	}
+
+	@Provides
+	public DynamicProgrammingTourModel provideDynamicProgrammingTourModel(ModeAvailability modeAvailability,
+			TourFilter tourFilter, TourEstimator tourEstimator, TourStateSpace.Factory stateSpaceFactory,
+			TourFinder tourFinder, DiscreteModeChoiceConfigGroup dmcConfig) {
+		verifyIndependentTrips(tourEstimator, dmcConfig, "dynamic programming");
+		DynamicProgrammingTourModel.Objective objective = getStateSpaceObjective(tourEstimator, dmcConfig,
+				"Dynamic programming");
+		return new DynamicProgrammingTourModel((AdditiveTourEstimator) tourEstimator, modeAvailability,
+				stateSpaceFactory, tourFinder, tourFilter, objective, dmcConfig.getFallbackBehaviour());
+	}
+
+	@Provides
+	public SubtourFactorizedTourModel provideSubtourFactorizedTourModel(ModeAvailability modeAvailability,
+			TourFilter tourFilter, TourEstimator tourEstimator, TourStateSpace.Factory stateSpaceFactory,
+			TourFinder tourFinder, DiscreteModeChoiceConfigGroup dmcConfig) {
+		verifyIndependentTrips(tourEstimator, dmcConfig, "sub-tour factorization");
+		DynamicProgrammingTourModel.Objective objective = getStateSpaceObjective(tourEstimator, dmcConfig,
+				"Sub-tour factorization");
+		return new SubtourFactorizedTourModel((AdditiveTourEstimator) tourEstimator, modeAvailability,
+				stateSpaceFactory, tourFinder, tourFilter, objective, dmcConfig.getFallbackBehaviour());
+	}
+
+	@Provides
+	public SampledChoiceSetTourModel provideSampledChoiceSetTourModel(ModeAvailability modeAvailability,
+			TourFilter tourFilter, TourEstimator tourEstimator, TourStateSpace.Factory stateSpaceFactory,
+			TourFinder tourFinder, UtilitySelectorFactory selectorFactory, DiscreteModeChoiceConfigGroup dmcConfig) {
+		TourModelConfigGroup tourModelConfig = dmcConfig.getTourModelConfig();
+
+		if (!dmcConfig.getSelector().equals(SelectorModule.MULTINOMIAL_LOGIT)
+				&& !dmcConfig.getSelector().equals(SelectorModule.STREAMING_MULTINOMIAL_LOGIT)) {
+			throw new IllegalStateException(String.format(
+					"Choice set sampling only supports the MultinomialLogit and StreamingMultinomialLogit selectors, but got '%s'.",
+					dmcConfig.getSelector()));
+		}
+
+		if (dmcConfig.getMultinomialLogitSelectorConfig().getConsiderMinimumUtility()) {
+			throw new IllegalStateException(
+					"Choice set sampling cannot be used with a minimum utility for the MultinomialLogit selector.");
+		}
+
+		if (!areTourConstraintsSupportedByStateSpace(dmcConfig)) {
+			throw new IllegalStateException(
+					"Choice set sampling only supports the VehicleContinuity and SubtourMode tour constraints (the latter only with the PlanBased tour finder).");
+		}
+
+		if (tourModelConfig.getSamplingProposal() == SampledChoiceSetTourModel.Proposal.UTILITY_WEIGHTED
+				&& !(tourEstimator instanceof IncrementalTourEstimator)) {
+			throw new IllegalStateException(String.format(
+					"The tour estimator '%s' does not provide trip utilities and cannot be used with the UTILITY_WEIGHTED proposal.",
+					dmcConfig.getTourEstimator()));
+		}
+
+		return new SampledChoiceSetTourModel(tourEstimator, modeAvailability, stateSpaceFactory, tourFinder,
+				tourFilter, selectorFactory, tourModelConfig.getSamplingProposal(),
+				tourModelConfig.getNumberOfSampledChains(), dmcConfig.getFallbackBehaviour());
+	}
+
+	@Provides
+	@Singleton
+	public TourStateSpace.Factory provideTourStateSpaceFactory(DiscreteModeChoiceConfigGroup dmcConfig,
+			@Named("tour") HomeFinder homeFinder) {
+		Collection<String> tourConstraints = dmcConfig.getTourConstraints();
+
+		Collection<String> restrictedModes = tourConstraints.contains(ConstraintModule.VEHICLE_CONTINUITY)
+				? dmcConfig.getVehicleTourConstraintConfig().getRestrictedModes()
+				: Collections.emptySet();
+
+		Collection<String> constrainedModes = tourConstraints.contains(ConstraintModule.SUBTOUR_MODE)
+				? dmcConfig.getSubtourConstraintConfig().getConstrainedModes()
+				: Collections.emptySet();
+
+		return new TourStateSpace.Factory(restrictedModes, homeFinder, constrainedModes);
 	}
 
 	@Provides
@@ -88,6 +354,12 @@ public class ModelModule extends AbstractModule {
 		return new DefaultModeChainGenerator.Factory();
 	}
 
+	@Provides
+	@Singleton
+	public DepthFirstModeChainGenerator.Factory provideDepthFirstModeChainGeneratorFactory() {
+		return new DepthFirstModeChainGenerator.Factory();
+	}
+
 	@Provides
 	public TripFilter provideTripFilter(DiscreteModeChoiceConfigGroup dmcConfig,
 			Map<String, Provider<TripFilter>> providers) {
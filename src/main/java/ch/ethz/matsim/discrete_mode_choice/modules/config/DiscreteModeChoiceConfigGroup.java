@@ -51,6 +51,7 @@ public class DiscreteModeChoiceConfigGroup extends ReflectiveConfigGroup {
 	private Collection<String> tripFilters = new HashSet<>();
 
 	private Collection<String> cachedModes = new HashSet<>();
+	private int numberOfEstimationThreads = 0;
 
 	public static final String GROUP_NAME = "DiscreteModeChoice";
 
@@ -79,7 +80,11 @@ public class DiscreteModeChoiceConfigGroup extends ReflectiveConfigGroup {
 	public static final String TOUR_FILTER = "tourFilter";
 	public static final String TRIP_FILTER = "tripFilter";
 
+	public static final String CACHE = "cache";
+	public static final String SHARED_TRIP_CACHE = "SharedTripEstimates";
+
 	public static final String CACHED_MODES = "cachedModes";
+	public static final String NUMBER_OF_ESTIMATION_THREADS = "numberOfEstimationThreads";
 
 	public DiscreteModeChoiceConfigGroup() {
 		super(GROUP_NAME);
@@ -267,6 +272,16 @@ public class DiscreteModeChoiceConfigGroup extends ReflectiveConfigGroup {
 		return String.join(", ", cachedModes);
 	}
 
+	@StringSetter(NUMBER_OF_ESTIMATION_THREADS)
+	public void setNumberOfEstimationThreads(int numberOfEstimationThreads) {
+		this.numberOfEstimationThreads = numberOfEstimationThreads;
+	}
+
+	@StringGetter(NUMBER_OF_ESTIMATION_THREADS)
+	public int getNumberOfEstimationThreads() {
+		return numberOfEstimationThreads;
+	}
+
 	// --- Component configuration ---
 
 	private final Map<Tuple<String, String>, ConfigGroup> componentRegistry = createComponentRegistry(
@@ -302,8 +317,14 @@ public class DiscreteModeChoiceConfigGroup extends ReflectiveConfigGroup {
 				SubtourModeConstraintConfigGroup::new);
 		registry.put(new Tuple<>(TRIP_ESTIMATOR, EstimatorModule.MATSIM_TRIP_SCORING), //
 				MATSimTripScoringConfigGroup::new);
+		registry.put(new Tuple<>(TRIP_ESTIMATOR, EstimatorModule.SKIMS), //
+				SkimEstimatorConfigGroup::new);
 		registry.put(new Tuple<>(TOUR_FILTER, FilterModule.TOUR_LENGTH), //
 				TourLengthFilterConfigGroup::new);
+		registry.put(new Tuple<>(MODEL_TYPE, ModelType.Tour.toString()), //
+				TourModelConfigGroup::new);
+		registry.put(new Tuple<>(CACHE, SHARED_TRIP_CACHE), //
+				SharedTripCacheConfigGroup::new);
 
 		return registry;
 	}
@@ -399,10 +420,22 @@ public class DiscreteModeChoiceConfigGroup extends ReflectiveConfigGroup {
 		return (MATSimTripScoringConfigGroup) getComponentConfig(TRIP_ESTIMATOR, EstimatorModule.MATSIM_TRIP_SCORING);
 	}
 
+	public SkimEstimatorConfigGroup getSkimEstimatorConfigGroup() {
+		return (SkimEstimatorConfigGroup) getComponentConfig(TRIP_ESTIMATOR, EstimatorModule.SKIMS);
+	}
+
 	public TourLengthFilterConfigGroup getTourLengthFilterConfigGroup() {
 		return (TourLengthFilterConfigGroup) getComponentConfig(TOUR_FILTER, FilterModule.TOUR_LENGTH);
 	}
 
+	public TourModelConfigGroup getTourModelConfig() {
+		return (TourModelConfigGroup) getComponentConfig(MODEL_TYPE, ModelType.Tour.toString());
+	}
+
+	public SharedTripCacheConfigGroup getSharedTripCacheConfig() {
+		return (SharedTripCacheConfigGroup) getComponentConfig(CACHE, SHARED_TRIP_CACHE);
+	}
+
 	@Override
 	public Map<String, String> getComments() {
 		Map<String, String> comments = new HashMap<>();
@@ -445,6 +478,8 @@ public class DiscreteModeChoiceConfigGroup extends ReflectiveConfigGroup {
 						+ String.join(", ", FilterModule.TRIP_COMPONENTS));
 		comments.put(CACHED_MODES,
 				"Trips tested with the modes listed here will be cached for each combination of trip and agent during one replanning pass.");
+		comments.put(NUMBER_OF_ESTIMATION_THREADS,
+				"Number of additional threads (shared by all replanning threads) that estimate the modes of one trip concurrently. 0 means that all modes are estimated one after another by the replanning thread.");
 
 		return comments;
 	}
@@ -15,8 +15,26 @@ import java.util.stream.Collectors;
  */
 public class MATSimTripScoringConfigGroup extends ComponentConfigGroup {
 	private Collection<String> ptLegModes = new HashSet<>(Arrays.asList("pt"));
+	private Collection<String> prunedModes = new HashSet<>();
+	private double pruningMargin = 5.0;
+	private long minimumProxyObservations = 100;
+	private Collection<String> compactRoutedModes = new HashSet<>();
+	private int numberOfLandmarks = 16;
+	private double travelTimeBinSize = 900.0;
+	private double travelTimeEndTime = 30.0 * 3600.0;
+	private Collection<String> lazyRoutedModes = new HashSet<>();
+	private int routeStoreSize = 0;
 
 	public final static String PT_LEG_MODES = "ptLegModes";
+	public final static String PRUNED_MODES = "prunedModes";
+	public final static String PRUNING_MARGIN = "pruningMargin";
+	public final static String MINIMUM_PROXY_OBSERVATIONS = "minimumProxyObservations";
+	public final static String COMPACT_ROUTED_MODES = "compactRoutedModes";
+	public final static String NUMBER_OF_LANDMARKS = "numberOfLandmarks";
+	public final static String TRAVEL_TIME_BIN_SIZE = "travelTimeBinSize";
+	public final static String TRAVEL_TIME_END_TIME = "travelTimeEndTime";
+	public final static String LAZY_ROUTED_MODES = "lazyRoutedModes";
+	public final static String ROUTE_STORE_SIZE = "routeStoreSize";
 
 	public MATSimTripScoringConfigGroup(String componentType, String componentName) {
 		super(componentType, componentName);
@@ -28,6 +46,21 @@ public class MATSimTripScoringConfigGroup extends ComponentConfigGroup {
 
 		comments.put(PT_LEG_MODES,
 				"Modes which are considered as public transit, i.e. they involve waiting for a vehicle.");
+		comments.put(PRUNED_MODES,
+				"Modes which are not routed if a cheap proxy utility (based on the beeline distance) is more than the pruning margin below the best proxy utility of a trip. Only for the trip-based model.");
+		comments.put(PRUNING_MARGIN, "Utility margin below the best proxy utility at which modes are pruned.");
+		comments.put(MINIMUM_PROXY_OBSERVATIONS,
+				"Number of routed trips that are needed for a network mode before its proxy utility is used.");
+		comments.put(COMPACT_ROUTED_MODES,
+				"Network modes which are routed by a built-in estimation router (landmark-based A* on a snapshot of the travel times of the last iteration) instead of the TripRouter. No access and egress walks are considered for these modes.");
+		comments.put(NUMBER_OF_LANDMARKS, "Number of landmarks of the estimation router.");
+		comments.put(TRAVEL_TIME_BIN_SIZE, "Size of the time bins of the travel time snapshot [s].");
+		comments.put(TRAVEL_TIME_END_TIME,
+				"End time of the travel time snapshot [s]. Later departures use the travel times of the last bin.");
+		comments.put(LAZY_ROUTED_MODES,
+				"Modes whose routes are not kept after estimation. Chosen trips are routed again when they are inserted into the plan. Do not use this for modes whose routes are inspected by constraints (e.g. TransitWalk for pt).");
+		comments.put(ROUTE_STORE_SIZE,
+				"Memory [MB] in which the routes of all other routed modes are kept in compact form. Once it is full, the oldest routes are dropped and routed again if they are chosen. Zero means that routes are kept as MATSim objects.");
 
 		return comments;
 	}
@@ -49,4 +82,121 @@ public class MATSimTripScoringConfigGroup extends ComponentConfigGroup {
 	public String getPtLegModesAsString() {
 		return String.join(", ", ptLegModes);
 	}
+
+	public void setPrunedModes(Collection<String> prunedModes) {
+		this.prunedModes = new HashSet<>(prunedModes);
+	}
+
+	public Collection<String> getPrunedModes() {
+		return prunedModes;
+	}
+
+	@StringSetter(PRUNED_MODES)
+	public void setPrunedModesAsString(String prunedModes) {
+		this.prunedModes = Arrays.asList(prunedModes.split(",")).stream().map(String::trim)
+				.filter(mode -> mode.length() > 0).collect(Collectors.toSet());
+	}
+
+	@StringGetter(PRUNED_MODES)
+	public String getPrunedModesAsString() {
+		return String.join(", ", prunedModes);
+	}
+
+	@StringSetter(PRUNING_MARGIN)
+	public void setPruningMargin(double pruningMargin) {
+		this.pruningMargin = pruningMargin;
+	}
+
+	@StringGetter(PRUNING_MARGIN)
+	public double getPruningMargin() {
+		return pruningMargin;
+	}
+
+	@StringSetter(MINIMUM_PROXY_OBSERVATIONS)
+	public void setMinimumProxyObservations(long minimumProxyObservations) {
+		this.minimumProxyObservations = minimumProxyObservations;
+	}
+
+	@StringGetter(MINIMUM_PROXY_OBSERVATIONS)
+	public long getMinimumProxyObservations() {
+		return minimumProxyObservations;
+	}
+
+	public void setCompactRoutedModes(Collection<String> compactRoutedModes) {
+		this.compactRoutedModes = new HashSet<>(compactRoutedModes);
+	}
+
+	public Collection<String> getCompactRoutedModes() {
+		return compactRoutedModes;
+	}
+
+	@StringSetter(COMPACT_ROUTED_MODES)
+	public void setCompactRoutedModesAsString(String compactRoutedModes) {
+		this.compactRoutedModes = Arrays.asList(compactRoutedModes.split(",")).stream().map(String::trim)
+				.filter(mode -> mode.length() > 0).collect(Collectors.toSet());
+	}
+
+	@StringGetter(COMPACT_ROUTED_MODES)
+	public String getCompactRoutedModesAsString() {
+		return String.join(", ", compactRoutedModes);
+	}
+
+	@StringSetter(NUMBER_OF_LANDMARKS)
+	public void setNumberOfLandmarks(int numberOfLandmarks) {
+		this.numberOfLandmarks = numberOfLandmarks;
+	}
+
+	@StringGetter(NUMBER_OF_LANDMARKS)
+	public int getNumberOfLandmarks() {
+		return numberOfLandmarks;
+	}
+
+	@StringSetter(TRAVEL_TIME_BIN_SIZE)
+	public void setTravelTimeBinSize(double travelTimeBinSize) {
+		this.travelTimeBinSize = travelTimeBinSize;
+	}
+
+	@StringGetter(TRAVEL_TIME_BIN_SIZE)
+	public double getTravelTimeBinSize() {
+		return travelTimeBinSize;
+	}
+
+	@StringSetter(TRAVEL_TIME_END_TIME)
+	public void setTravelTimeEndTime(double travelTimeEndTime) {
+		this.travelTimeEndTime = travelTimeEndTime;
+	}
+
+	@StringGetter(TRAVEL_TIME_END_TIME)
+	public double getTravelTimeEndTime() {
+		return travelTimeEndTime;
+	}
+
+	public void setLazyRoutedModes(Collection<String> lazyRoutedModes) {
+		this.lazyRoutedModes = new HashSet<>(lazyRoutedModes);
+	}
+
+	public Collection<String> getLazyRoutedModes() {
+		return lazyRoutedModes;
+	}
+
+	@StringSetter(LAZY_ROUTED_MODES)
+	public void setLazyRoutedModesAsString(String lazyRoutedModes) {
+		this.lazyRoutedModes = Arrays.asList(lazyRoutedModes.split(",")).stream().map(String::trim)
+				.filter(mode -> mode.length() > 0).collect(Collectors.toSet());
+	}
+
+	@StringGetter(LAZY_ROUTED_MODES)
+	public String getLazyRoutedModesAsString() {
+		return String.join(", ", lazyRoutedModes);
+	}
+
+	@StringSetter(ROUTE_STORE_SIZE)
+	public void setRouteStoreSize(int routeStoreSize) {
+		this.routeStoreSize = routeStoreSize;
+	}
+
+	@StringGetter(ROUTE_STORE_SIZE)
+	public int getRouteStoreSize() {
+		return routeStoreSize;
+	}
 }
@@ -0,0 +1,146 @@
+package ch.ethz.matsim.discrete_mode_choice.modules.config;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Config group for the trip estimate cache that is shared by all agents,
+ * threads and iterations.
+ * 
+ * @author sebhoerl
+ *
+ */
+public class SharedTripCacheConfigGroup extends ComponentConfigGroup {
+	private Collection<String> cachedModes = new HashSet<>();
+	private Collection<String> invalidatedModes = new HashSet<>();
+	private double timeBinSize = 900.0;
+	private int maximumSize = 1000000;
+	private int maximumAge = 0;
+	private String personClassAttribute = "subpopulation";
+	private boolean performPrepass = false;
+
+	public final static String CACHED_MODES = "cachedModes";
+	public final static String INVALIDATED_MODES = "invalidatedModes";
+	public final static String TIME_BIN_SIZE = "timeBinSize";
+	public final static String MAXIMUM_SIZE = "maximumSize";
+	public final static String MAXIMUM_AGE = "maximumAge";
+	public final static String PERSON_CLASS_ATTRIBUTE = "personClassAttribute";
+	public final static String PERFORM_PREPASS = "performPrepass";
+
+	public SharedTripCacheConfigGroup(String componentType, String componentName) {
+		super(componentType, componentName);
+	}
+
+	@Override
+	public Map<String, String> getComments() {
+		Map<String, String> comments = new HashMap<>();
+
+		comments.put(CACHED_MODES,
+				"Trips with these modes are cached by origin, destination, departure time bin and person class for all agents. Only use it for modes whose estimates do not depend on anything else.");
+		comments.put(INVALIDATED_MODES,
+				"Cached estimates for these modes are removed at the beginning of every iteration (e.g. for congested modes).");
+		comments.put(TIME_BIN_SIZE, "Size of the departure time bins [s].");
+		comments.put(MAXIMUM_SIZE,
+				"Maximum number of cached estimates. If it is exceeded, the estimates that have not been used for the longest time are removed.");
+		comments.put(MAXIMUM_AGE,
+				"Cached estimates are removed after this number of iterations. Zero means that they are kept.");
+		comments.put(PERSON_CLASS_ATTRIBUTE,
+				"Person attribute that distinguishes agents whose estimates differ (e.g. because of different scoring parameters).");
+		comments.put(PERFORM_PREPASS,
+				"Before mode choice, all distinct trips of the replanned agents are estimated once in parallel for the cached modes, so that mode choice only needs to look them up.");
+
+		return comments;
+	}
+
+	public void setCachedModes(Collection<String> cachedModes) {
+		this.cachedModes = new HashSet<>(cachedModes);
+	}
+
+	public Collection<String> getCachedModes() {
+		return cachedModes;
+	}
+
+	@StringSetter(CACHED_MODES)
+	public void setCachedModesAsString(String cachedModes) {
+		this.cachedModes = Arrays.asList(cachedModes.split(",")).stream().map(String::trim)
+				.filter(mode -> mode.length() > 0).collect(Collectors.toSet());
+	}
+
+	@StringGetter(CACHED_MODES)
+	public String getCachedModesAsString() {
+		return String.join(", ", cachedModes);
+	}
+
+	public void setInvalidatedModes(Collection<String> invalidatedModes) {
+		this.invalidatedModes = new HashSet<>(invalidatedModes);
+	}
+
+	public Collection<String> getInvalidatedModes() {
+		return invalidatedModes;
+	}
+
+	@StringSetter(INVALIDATED_MODES)
+	public void setInvalidatedModesAsString(String invalidatedModes) {
+		this.invalidatedModes = Arrays.asList(invalidatedModes.split(",")).stream().map(String::trim)
+				.filter(mode -> mode.length() > 0).collect(Collectors.toSet());
+	}
+
+	@StringGetter(INVALIDATED_MODES)
+	public String getInvalidatedModesAsString() {
+		return String.join(", ", invalidatedModes);
+	}
+
+	@StringSetter(TIME_BIN_SIZE)
+	public void setTimeBinSize(double timeBinSize) {
+		this.timeBinSize = timeBinSize;
+	}
+
+	@StringGetter(TIME_BIN_SIZE)
+	public double getTimeBinSize() {
+		return timeBinSize;
+	}
+
+	@StringSetter(MAXIMUM_SIZE)
+	public void setMaximumSize(int maximumSize) {
+		this.maximumSize = maximumSize;
+	}
+
+	@StringGetter(MAXIMUM_SIZE)
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	@StringSetter(MAXIMUM_AGE)
+	public void setMaximumAge(int maximumAge) {
+		this.maximumAge = maximumAge;
+	}
+
+	@StringGetter(MAXIMUM_AGE)
+	public int getMaximumAge() {
+		return maximumAge;
+	}
+
+	@StringSetter(PERSON_CLASS_ATTRIBUTE)
+	public void setPersonClassAttribute(String personClassAttribute) {
+		this.personClassAttribute = personClassAttribute;
+	}
+
+	@StringGetter(PERSON_CLASS_ATTRIBUTE)
+	public String getPersonClassAttribute() {
+		return personClassAttribute;
+	}
+
+	@StringSetter(PERFORM_PREPASS)
+	public void setPerformPrepass(boolean performPrepass) {
+		this.performPrepass = performPrepass;
+	}
+
+	@StringGetter(PERFORM_PREPASS)
+	public boolean getPerformPrepass() {
+		return performPrepass;
+	}
+}
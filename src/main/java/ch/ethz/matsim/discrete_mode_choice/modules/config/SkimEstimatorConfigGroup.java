@@ -0,0 +1,158 @@
+package ch.ethz.matsim.discrete_mode_choice.modules.config;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.matsim.api.core.v01.TransportMode;
+
+/**
+ * Config group for the skim-based trip estimator.
+ * 
+ * @author sebhoerl
+ *
+ */
+public class SkimEstimatorConfigGroup extends ComponentConfigGroup {
+	private Collection<String> skimmedModes = new HashSet<>(Arrays.asList(TransportMode.car, TransportMode.pt));
+	private Collection<String> networkModes = new HashSet<>(Arrays.asList(TransportMode.car));
+	private String skimDirectory = null;
+	private double zoneSize = 1000.0;
+	private int numberOfPeriods = 24;
+	private double periodDuration = 3600.0;
+	private int reskimInterval = 0;
+	private int numberOfThreads = 4;
+
+	public final static String SKIMMED_MODES = "skimmedModes";
+	public final static String NETWORK_MODES = "networkModes";
+	public final static String SKIM_DIRECTORY = "skimDirectory";
+	public final static String ZONE_SIZE = "zoneSize";
+	public final static String NUMBER_OF_PERIODS = "numberOfPeriods";
+	public final static String PERIOD_DURATION = "periodDuration";
+	public final static String RESKIM_INTERVAL = "reskimInterval";
+	public final static String NUMBER_OF_THREADS = "numberOfThreads";
+
+	public SkimEstimatorConfigGroup(String componentType, String componentName) {
+		super(componentType, componentName);
+	}
+
+	@Override
+	public Map<String, String> getComments() {
+		Map<String, String> comments = new HashMap<>();
+
+		comments.put(SKIMMED_MODES,
+				"Trips with these modes are estimated from skims. All other modes are estimated by MATSimTripScoring.");
+		comments.put(NETWORK_MODES,
+				"Skimmed modes that are skimmed on the network with the current travel times. The only other mode that can be skimmed is pt, which is skimmed with SwissRailRaptor.");
+		comments.put(SKIM_DIRECTORY,
+				"Directory with existing skim files (<mode>.skim). Skims that are not found there are built at startup and written to the output directory.");
+		comments.put(ZONE_SIZE, "Size of the square zones [m] if skims are built.");
+		comments.put(NUMBER_OF_PERIODS, "Number of time periods if skims are built.");
+		comments.put(PERIOD_DURATION, "Duration of one time period [s] if skims are built.");
+		comments.put(RESKIM_INTERVAL,
+				"The network modes are skimmed again with the latest travel times every this many iterations. Zero means that the skims are never updated.");
+		comments.put(NUMBER_OF_THREADS, "Number of threads that build the skims.");
+
+		return comments;
+	}
+
+	public void setSkimmedModes(Collection<String> skimmedModes) {
+		this.skimmedModes = new HashSet<>(skimmedModes);
+	}
+
+	public Collection<String> getSkimmedModes() {
+		return skimmedModes;
+	}
+
+	@StringSetter(SKIMMED_MODES)
+	public void setSkimmedModesAsString(String skimmedModes) {
+		this.skimmedModes = Arrays.asList(skimmedModes.split(",")).stream().map(String::trim)
+				.filter(mode -> mode.length() > 0).collect(Collectors.toSet());
+	}
+
+	@StringGetter(SKIMMED_MODES)
+	public String getSkimmedModesAsString() {
+		return String.join(", ", skimmedModes);
+	}
+
+	public void setNetworkModes(Collection<String> networkModes) {
+		this.networkModes = new HashSet<>(networkModes);
+	}
+
+	public Collection<String> getNetworkModes() {
+		return networkModes;
+	}
+
+	@StringSetter(NETWORK_MODES)
+	public void setNetworkModesAsString(String networkModes) {
+		this.networkModes = Arrays.asList(networkModes.split(",")).stream().map(String::trim)
+				.filter(mode -> mode.length() > 0).collect(Collectors.toSet());
+	}
+
+	@StringGetter(NETWORK_MODES)
+	public String getNetworkModesAsString() {
+		return String.join(", ", networkModes);
+	}
+
+	@StringSetter(SKIM_DIRECTORY)
+	public void setSkimDirectory(String skimDirectory) {
+		this.skimDirectory = skimDirectory;
+	}
+
+	@StringGetter(SKIM_DIRECTORY)
+	public String getSkimDirectory() {
+		return skimDirectory;
+	}
+
+	@StringSetter(ZONE_SIZE)
+	public void setZoneSize(double zoneSize) {
+		this.zoneSize = zoneSize;
+	}
+
+	@StringGetter(ZONE_SIZE)
+	public double getZoneSize() {
+		return zoneSize;
+	}
+
+	@StringSetter(NUMBER_OF_PERIODS)
+	public void setNumberOfPeriods(int numberOfPeriods) {
+		this.numberOfPeriods = numberOfPeriods;
+	}
+
+	@StringGetter(NUMBER_OF_PERIODS)
+	public int getNumberOfPeriods() {
+		return numberOfPeriods;
+	}
+
+	@StringSetter(PERIOD_DURATION)
+	public void setPeriodDuration(double periodDuration) {
+		this.periodDuration = periodDuration;
+	}
+
+	@StringGetter(PERIOD_DURATION)
+	public double getPeriodDuration() {
+		return periodDuration;
+	}
+
+	@StringSetter(RESKIM_INTERVAL)
+	public void setReskimInterval(int reskimInterval) {
+		this.reskimInterval = reskimInterval;
+	}
+
+	@StringGetter(RESKIM_INTERVAL)
+	public int getReskimInterval() {
+		return reskimInterval;
+	}
+
+	@StringSetter(NUMBER_OF_THREADS)
+	public void setNumberOfThreads(int numberOfThreads) {
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	@StringGetter(NUMBER_OF_THREADS)
+	public int getNumberOfThreads() {
+		return numberOfThreads;
+	}
+}
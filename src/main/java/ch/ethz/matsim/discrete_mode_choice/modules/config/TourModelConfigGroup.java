@@ -0,0 +1,136 @@
+package ch.ethz.matsim.discrete_mode_choice.modules.config;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.SampledChoiceSetTourModel.Proposal;
+
+/**
+ * Config group for the tour-based model
+ *
+ * @author sebhoerl
+ *
+ */
+public class TourModelConfigGroup extends ComponentConfigGroup {
+	public enum Algorithm {
+		ENUMERATION, DYNAMIC_PROGRAMMING, BRANCH_AND_BOUND, SAMPLING, SUBTOUR_FACTORIZATION
+	}
+
+	private Algorithm algorithm = Algorithm.ENUMERATION;
+	private Proposal samplingProposal = Proposal.UNIFORM;
+	private int numberOfSampledChains = 100;
+	private boolean useParallelEvaluation = false;
+	private double parallelChainThreshold = 100000.0;
+	private int numberOfParallelEvaluationThreads = 0;
+	private boolean independentTripEstimates = false;
+
+	public static final String ALGORITHM = "algorithm";
+	public static final String SAMPLING_PROPOSAL = "samplingProposal";
+	public static final String NUMBER_OF_SAMPLED_CHAINS = "numberOfSampledChains";
+	public static final String USE_PARALLEL_EVALUATION = "useParallelEvaluation";
+	public static final String PARALLEL_CHAIN_THRESHOLD = "parallelChainThreshold";
+	public static final String NUMBER_OF_PARALLEL_EVALUATION_THREADS = "numberOfParallelEvaluationThreads";
+	public static final String INDEPENDENT_TRIP_ESTIMATES = "independentTripEstimates";
+
+	public TourModelConfigGroup(String componentType, String componentName) {
+		super(componentType, componentName);
+	}
+
+	@Override
+	public Map<String, String> getComments() {
+		Map<String, String> comments = new HashMap<>();
+
+		String options = Arrays.asList(Algorithm.values()).stream().map(String::valueOf)
+				.collect(Collectors.joining(", "));
+		comments.put(ALGORITHM, "Defines how tour alternatives are evaluated: " + options
+				+ ". DYNAMIC_PROGRAMMING requires an additive tour estimator (Cumulative, MATSimDayScoring) with independentTripEstimates, the Maximum or MultinomialLogit selector and only VehicleContinuity and SubtourMode as tour constraints. BRANCH_AND_BOUND requires an additive tour estimator with independentTripEstimates and the Maximum selector, but supports all tour constraints. SAMPLING draws a limited choice set per tour for the MultinomialLogit selector and supports the same tour constraints as DYNAMIC_PROGRAMMING. SUBTOUR_FACTORIZATION enumerates every sub-tour separately and has the same requirements as DYNAMIC_PROGRAMMING.");
+
+		options = Arrays.asList(Proposal.values()).stream().map(String::valueOf).collect(Collectors.joining(", "));
+		comments.put(SAMPLING_PROPOSAL, "Defines from which distribution chains are drawn if the algorithm is SAMPLING: "
+				+ options + ". UTILITY_WEIGHTED prefers chains with high trip utilities.");
+		comments.put(NUMBER_OF_SAMPLED_CHAINS,
+				"Defines how many chains are drawn per tour if the algorithm is SAMPLING.");
+		comments.put(USE_PARALLEL_EVALUATION,
+				"Defines whether the chains of large tours should be evaluated in parallel in a dedicated thread pool if the algorithm is ENUMERATION. Every worker thread creates its own tour estimator and every task its own tour constraint.");
+		comments.put(PARALLEL_CHAIN_THRESHOLD,
+				"Tours are evaluated in parallel if the number of available modes to the power of the number of trips reaches this value.");
+		comments.put(NUMBER_OF_PARALLEL_EVALUATION_THREADS,
+				"Number of worker threads for the parallel evaluation of tours. If zero, the number of available processors is used.");
+		comments.put(INDEPENDENT_TRIP_ESTIMATES,
+				"Declares that the trip estimator does not make use of the previous trips of a tour. Only then, the Cumulative and MATSimDayScoring tour estimators can be used with DYNAMIC_PROGRAMMING, BRANCH_AND_BOUND and SUBTOUR_FACTORIZATION.");
+
+		return comments;
+	}
+
+	@StringSetter(ALGORITHM)
+	public void setAlgorithm(Algorithm algorithm) {
+		this.algorithm = algorithm;
+	}
+
+	@StringGetter(ALGORITHM)
+	public Algorithm getAlgorithm() {
+		return algorithm;
+	}
+
+	@StringSetter(SAMPLING_PROPOSAL)
+	public void setSamplingProposal(Proposal samplingProposal) {
+		this.samplingProposal = samplingProposal;
+	}
+
+	@StringGetter(SAMPLING_PROPOSAL)
+	public Proposal getSamplingProposal() {
+		return samplingProposal;
+	}
+
+	@StringSetter(NUMBER_OF_SAMPLED_CHAINS)
+	public void setNumberOfSampledChains(int numberOfSampledChains) {
+		this.numberOfSampledChains = numberOfSampledChains;
+	}
+
+	@StringGetter(NUMBER_OF_SAMPLED_CHAINS)
+	public int getNumberOfSampledChains() {
+		return numberOfSampledChains;
+	}
+
+	@StringSetter(USE_PARALLEL_EVALUATION)
+	public void setUseParallelEvaluation(boolean useParallelEvaluation) {
+		this.useParallelEvaluation = useParallelEvaluation;
+	}
+
+	@StringGetter(USE_PARALLEL_EVALUATION)
+	public boolean getUseParallelEvaluation() {
+		return useParallelEvaluation;
+	}
+
+	@StringSetter(PARALLEL_CHAIN_THRESHOLD)
+	public void setParallelChainThreshold(double parallelChainThreshold) {
+		this.parallelChainThreshold = parallelChainThreshold;
+	}
+
+	@StringGetter(PARALLEL_CHAIN_THRESHOLD)
+	public double getParallelChainThreshold() {
+		return parallelChainThreshold;
+	}
+
+	@StringSetter(NUMBER_OF_PARALLEL_EVALUATION_THREADS)
+	public void setNumberOfParallelEvaluationThreads(int numberOfParallelEvaluationThreads) {
+		this.numberOfParallelEvaluationThreads = numberOfParallelEvaluationThreads;
+	}
+
+	@StringGetter(NUMBER_OF_PARALLEL_EVALUATION_THREADS)
+	public int getNumberOfParallelEvaluationThreads() {
+		return numberOfParallelEvaluationThreads;
+	}
+
+	@StringSetter(INDEPENDENT_TRIP_ESTIMATES)
+	public void setIndependentTripEstimates(boolean independentTripEstimates) {
+		this.independentTripEstimates = independentTripEstimates;
+	}
+
+	@StringGetter(INDEPENDENT_TRIP_ESTIMATES)
+	public boolean getIndependentTripEstimates() {
+		return independentTripEstimates;
+	}
+}
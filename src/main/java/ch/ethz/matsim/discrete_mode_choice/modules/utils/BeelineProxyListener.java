@@ -0,0 +1,29 @@
+package ch.ethz.matsim.discrete_mode_choice.modules.utils;
+
+import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.listener.IterationStartsListener;
+
+import com.google.inject.Inject;
+
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.BeelineProxyEstimator;
+
+/**
+ * Internal listener that resets the factors of the BeelineProxyEstimator when a
+ * new iteration starts, so that they are learned from the current travel times.
+ * 
+ * @author sebhoerl
+ *
+ */
+public class BeelineProxyListener implements IterationStartsListener {
+	private final BeelineProxyEstimator.Factors factors;
+
+	@Inject
+	public BeelineProxyListener(BeelineProxyEstimator.Factors factors) {
+		this.factors = factors;
+	}
+
+	@Override
+	public void notifyIterationStarts(IterationStartsEvent event) {
+		factors.reset();
+	}
+}
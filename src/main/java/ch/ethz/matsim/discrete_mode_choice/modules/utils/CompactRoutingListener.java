@@ -0,0 +1,41 @@
+package ch.ethz.matsim.discrete_mode_choice.modules.utils;
+
+import java.util.Map;
+
+import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.listener.IterationStartsListener;
+import org.matsim.core.router.util.TravelTime;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.routing.CompactNetworkRouters;
+import ch.ethz.matsim.discrete_mode_choice.modules.config.DiscreteModeChoiceConfigGroup;
+
+/**
+ * Internal listener that copies the latest travel times into the estimation
+ * routers at the beginning of every iteration.
+ * 
+ * @author sebhoerl
+ *
+ */
+public class CompactRoutingListener implements IterationStartsListener {
+	private final DiscreteModeChoiceConfigGroup dmcConfig;
+	private final Provider<CompactNetworkRouters> routersProvider;
+	private final Map<String, TravelTime> travelTimes;
+
+	@Inject
+	public CompactRoutingListener(DiscreteModeChoiceConfigGroup dmcConfig,
+			Provider<CompactNetworkRouters> routersProvider, Map<String, TravelTime> travelTimes) {
+		this.dmcConfig = dmcConfig;
+		this.routersProvider = routersProvider;
+		this.travelTimes = travelTimes;
+	}
+
+	@Override
+	public void notifyIterationStarts(IterationStartsEvent event) {
+		if (dmcConfig.getMATSimTripScoringConfigGroup().getCompactRoutedModes().size() > 0) {
+			routersProvider.get().updateTravelTimes(travelTimes);
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package ch.ethz.matsim.discrete_mode_choice.modules.utils;
+
+import org.matsim.core.controler.events.ShutdownEvent;
+import org.matsim.core.controler.listener.ShutdownListener;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+import ch.ethz.matsim.discrete_mode_choice.model.estimation.EstimationExecutor;
+import ch.ethz.matsim.discrete_mode_choice.modules.config.DiscreteModeChoiceConfigGroup;
+
+/**
+ * Internal listener that stops the worker threads of the EstimationExecutor
+ * when the simulation shuts down.
+ * 
+ * @author sebhoerl
+ *
+ */
+public class EstimationExecutorListener implements ShutdownListener {
+	private final DiscreteModeChoiceConfigGroup dmcConfig;
+	private final Provider<EstimationExecutor> executorProvider;
+
+	@Inject
+	public EstimationExecutorListener(DiscreteModeChoiceConfigGroup dmcConfig,
+			Provider<EstimationExecutor> executorProvider) {
+		this.dmcConfig = dmcConfig;
+		this.executorProvider = executorProvider;
+	}
+
+	@Override
+	public void notifyShutdown(ShutdownEvent event) {
+		if (dmcConfig.getNumberOfEstimationThreads() > 0 || dmcConfig.getSharedTripCacheConfig().getPerformPrepass()) {
+			executorProvider.get().shutdown();
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package ch.ethz.matsim.discrete_mode_choice.modules.utils;
+
+import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.listener.IterationStartsListener;
+
+import com.google.inject.Inject;
+
+import ch.ethz.matsim.discrete_mode_choice.model.estimation.SharedTripEstimateCache;
+
+/**
+ * Internal listener that tells the SharedTripEstimateCache when a new iteration
+ * starts, so that outdated estimates can be removed.
+ * 
+ * @author sebhoerl
+ *
+ */
+public class SharedTripCacheListener implements IterationStartsListener {
+	private final SharedTripEstimateCache cache;
+
+	@Inject
+	public SharedTripCacheListener(SharedTripEstimateCache cache) {
+		this.cache = cache;
+	}
+
+	@Override
+	public void notifyIterationStarts(IterationStartsEvent event) {
+		cache.startIteration(event.getIteration());
+	}
+}
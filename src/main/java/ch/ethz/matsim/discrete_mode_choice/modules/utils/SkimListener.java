@@ -0,0 +1,211 @@
+package ch.ethz.matsim.discrete_mode_choice.modules.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.groups.PlansCalcRouteConfigGroup.ModeRoutingParams;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.events.StartupEvent;
+import org.matsim.core.controler.listener.IterationStartsListener;
+import org.matsim.core.controler.listener.StartupListener;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.network.algorithms.TransportModeNetworkFilter;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.router.util.TravelTime;
+
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.skims.SkimBuilder;
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.skims.SkimMatrix;
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.skims.SkimRepository;
+import ch.ethz.matsim.discrete_mode_choice.modules.EstimatorModule;
+import ch.ethz.matsim.discrete_mode_choice.modules.config.DiscreteModeChoiceConfigGroup;
+import ch.ethz.matsim.discrete_mode_choice.modules.config.SkimEstimatorConfigGroup;
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptor;
+
+/**
+ * Internal listener that provides the skims for the skim-based trip estimator.
+ * At startup, the skims are read from the skim directory or built if they do
+ * not exist. All skims must share the same zones. Afterwards, the network modes
+ * are skimmed again with the latest travel times if a re-skim interval is
+ * given.
+ * 
+ * Every skim is built into one file in the output directory, which is mapped
+ * only once. Later re-skims overwrite the values in this mapping, so no new
+ * mappings pile up over the iterations. This happens at the start of an
+ * iteration, when no trips are estimated.
+ * 
+ * @author sebhoerl
+ *
+ */
+public class SkimListener implements StartupListener, IterationStartsListener {
+	final private static Logger logger = Logger.getLogger(SkimListener.class);
+
+	private final DiscreteModeChoiceConfigGroup dmcConfig;
+	private final SkimRepository repository;
+	private final Scenario scenario;
+	private final Map<String, TravelTime> travelTimes;
+	private final Injector injector;
+	private final OutputDirectoryHierarchy outputHierarchy;
+
+	private final Map<String, SkimMatrix.Writer> writers = new HashMap<>();
+	private List<Coord> centroids = null;
+
+	@Inject
+	public SkimListener(DiscreteModeChoiceConfigGroup dmcConfig, SkimRepository repository, Scenario scenario,
+			Map<String, TravelTime> travelTimes, Injector injector, OutputDirectoryHierarchy outputHierarchy) {
+		this.dmcConfig = dmcConfig;
+		this.repository = repository;
+		this.scenario = scenario;
+		this.travelTimes = travelTimes;
+		this.injector = injector;
+		this.outputHierarchy = outputHierarchy;
+	}
+
+	private boolean isActive() {
+		return dmcConfig.getTripEstimator().equals(EstimatorModule.SKIMS);
+	}
+
+	@Override
+	public void notifyStartup(StartupEvent event) {
+		if (!isActive()) {
+			return;
+		}
+
+		SkimEstimatorConfigGroup config = dmcConfig.getSkimEstimatorConfigGroup();
+
+		for (String mode : config.getSkimmedModes()) {
+			if (!config.getNetworkModes().contains(mode) && !mode.equals(TransportMode.pt)) {
+				throw new IllegalStateException(String.format(
+						"Skimmed mode '%s' is neither a network mode nor '%s' and cannot be skimmed", mode,
+						TransportMode.pt));
+			}
+		}
+
+		try {
+			for (String mode : config.getSkimmedModes()) {
+				File inputFile = null;
+
+				if (config.getSkimDirectory() != null) {
+					inputFile = new File(config.getSkimDirectory(), mode + ".skim");
+				}
+
+				if (inputFile != null && inputFile.exists()) {
+					logger.info(String.format("Reading skims for mode '%s' from %s", mode, inputFile));
+					SkimMatrix matrix = SkimMatrix.read(inputFile);
+
+					if (centroids == null) {
+						centroids = matrix.getCentroids();
+					} else if (!centroids.equals(matrix.getCentroids())) {
+						throw new IllegalStateException(String.format(
+								"The zones of %s differ from the zones of the other skim files in %s", inputFile,
+								config.getSkimDirectory()));
+					}
+
+					repository.setMatrix(mode, matrix);
+				}
+			}
+
+			for (String mode : config.getSkimmedModes()) {
+				if (repository.getMatrix(mode) == null) {
+					repository.setMatrix(mode, buildSkims(mode));
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public void notifyIterationStarts(IterationStartsEvent event) {
+		if (!isActive()) {
+			return;
+		}
+
+		SkimEstimatorConfigGroup config = dmcConfig.getSkimEstimatorConfigGroup();
+		int iteration = event.getIteration();
+
+		if (config.getReskimInterval() > 0 && iteration > 0 && iteration % config.getReskimInterval() == 0) {
+			try {
+				for (String mode : config.getSkimmedModes()) {
+					if (config.getNetworkModes().contains(mode)) {
+						repository.setMatrix(mode, buildSkims(mode));
+					}
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	private SkimMatrix buildSkims(String mode) throws IOException {
+		SkimEstimatorConfigGroup config = dmcConfig.getSkimEstimatorConfigGroup();
+		Network network = scenario.getNetwork();
+
+		if (centroids == null) {
+			centroids = SkimBuilder.createGridCentroids(network, config.getZoneSize());
+		}
+
+		SkimMatrix.Writer writer = writers.get(mode);
+
+		if (writer == null) {
+			writer = SkimMatrix.create(new File(outputHierarchy.getOutputFilename(mode + ".skim")), centroids,
+					config.getNumberOfPeriods(), config.getPeriodDuration());
+			writers.put(mode, writer);
+		}
+
+		SkimBuilder builder = new SkimBuilder(centroids, config.getNumberOfPeriods(), config.getPeriodDuration(),
+				config.getNumberOfThreads());
+
+		if (config.getNetworkModes().contains(mode)) {
+			TravelTime travelTime = travelTimes.get(mode);
+
+			if (travelTime == null) {
+				throw new IllegalStateException(
+						String.format("No TravelTime is available for network mode '%s'", mode));
+			}
+
+			Network modeNetwork = NetworkUtils.createNetwork();
+			new TransportModeNetworkFilter(network).filter(modeNetwork, Collections.singleton(mode));
+
+			builder.buildNetworkSkim(writer, modeNetwork, travelTime);
+		} else {
+			Config matsimConfig = scenario.getConfig();
+
+			if (!matsimConfig.transit().isUseTransit()) {
+				throw new IllegalStateException(
+						String.format("Mode '%s' can only be skimmed if transit is enabled", mode));
+			}
+
+			ModeRoutingParams walkParams = matsimConfig.plansCalcRoute().getModeRoutingParams()
+					.get(TransportMode.walk);
+
+			if (walkParams == null || walkParams.getTeleportedModeSpeed() == null) {
+				throw new IllegalStateException("Skimming public transport requires teleportation parameters for walk");
+			}
+
+			double egressWalkSpeed = walkParams.getTeleportedModeSpeed() / walkParams.getBeelineDistanceFactor();
+			Person person = PopulationUtils.getFactory().createPerson(Id.createPersonId("skim_person"));
+
+			builder.buildTransitSkim(writer, scenario.getTransitSchedule(),
+					() -> SkimBuilder.createRaptorTreeRouter(injector.getInstance(SwissRailRaptor.class), person),
+					matsimConfig.transitRouter().getSearchRadius(), egressWalkSpeed);
+		}
+
+		return writer.getMatrix();
+	}
+}
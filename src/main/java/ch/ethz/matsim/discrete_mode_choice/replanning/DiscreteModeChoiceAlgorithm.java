@@ -1,13 +1,16 @@
 package ch.ethz.matsim.discrete_mode_choice.replanning;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
+import org.matsim.api.core.v01.population.Activity;
 import org.matsim.api.core.v01.population.Leg;
 import org.matsim.api.core.v01.population.Plan;
 import org.matsim.api.core.v01.population.PlanElement;
 import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.population.PopulationUtils;
 import org.matsim.core.population.algorithms.PlanAlgorithm;
 import org.matsim.core.router.TripRouter;
 
@@ -59,7 +62,8 @@ public class DiscreteModeChoiceAlgorithm implements PlanAlgorithm {
 
 				if (candidate instanceof RoutedTripCandidate) {
 					RoutedTripCandidate routedCandidate = (RoutedTripCandidate) candidate;
-					insertElements = routedCandidate.getRoutedPlanElements();
+					insertElements = copyPlanElements(routedCandidate.getRoutedPlanElements(),
+							trip.getDepartureTime());
 				} else {
 					Leg insertLeg = populationFactory.createLeg(candidate.getMode());
 					insertElements = Collections.singletonList(insertLeg);
@@ -71,4 +75,41 @@ public class DiscreteModeChoiceAlgorithm implements PlanAlgorithm {
 			throw new IllegalStateException(e);
 		}
 	}
+
+	/**
+	 * Routed candidates may be shared between agents (see
+	 * SharedTripEstimateCache), so their plan elements are copied before they are
+	 * inserted into the plan. A shared candidate may have been routed for another
+	 * departure time in the same time bin, so the departure times of the copied
+	 * legs are shifted such that the first leg departs at the departure time of
+	 * the trip. Travel times and routes are kept as they are.
+	 */
+	private List<PlanElement> copyPlanElements(List<? extends PlanElement> elements, double departureTime) {
+		List<PlanElement> copies = new ArrayList<>(elements.size());
+		double offset = Double.NaN;
+
+		for (PlanElement element : elements) {
+			if (element instanceof Leg) {
+				Leg leg = (Leg) element;
+				Leg copy = populationFactory.createLeg(leg.getMode());
+				PopulationUtils.copyFromTo(leg, copy);
+
+				if (Double.isFinite(copy.getDepartureTime())) {
+					if (Double.isNaN(offset)) {
+						offset = Double.isFinite(departureTime) ? departureTime - copy.getDepartureTime() : 0.0;
+					}
+
+					copy.setDepartureTime(copy.getDepartureTime() + offset);
+				}
+
+				copies.add(copy);
+			} else if (element instanceof Activity) {
+				copies.add(PopulationUtils.createActivity((Activity) element));
+			} else {
+				copies.add(element);
+			}
+		}
+
+		return copies;
+	}
 }
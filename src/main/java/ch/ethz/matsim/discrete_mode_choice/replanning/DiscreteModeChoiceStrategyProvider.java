@@ -15,13 +15,17 @@ import org.matsim.facilities.ActivityFacilities;
 import com.google.inject.Provider;
 
 import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceModel;
+import ch.ethz.matsim.discrete_mode_choice.model.estimation.SharedTripCachePrepass;
 import ch.ethz.matsim.discrete_mode_choice.modules.config.DiscreteModeChoiceConfigGroup;
+import ch.ethz.matsim.discrete_mode_choice.modules.config.SharedTripCacheConfigGroup;
 
 /**
  * This defines the general choice strategy for the discrete mode choice
  * extension. It consists of three replanning modules:
  * 
  * <ul>
+ * <li>Optionally, SharedTripCachePrepassModule if it is configured for the
+ * shared trip estimate cache</li>
  * <li>TripsToLegs, which collapses all multi-stage trips into one leg</li>
  * <li>DiscreteModeChoiceReplanningModule, which creates a new discrete choice
  * model and performs the choices <(li>
@@ -38,22 +42,32 @@ public class DiscreteModeChoiceStrategyProvider implements Provider<PlanStrategy
 	private final Provider<DiscreteModeChoiceModel> modeChoiceModelProvider;
 	private final DiscreteModeChoiceConfigGroup dmcConfig;
 	private final PopulationFactory populationFactory;
+	private final Provider<SharedTripCachePrepass> prepassProvider;
 
 	@Inject
 	DiscreteModeChoiceStrategyProvider(GlobalConfigGroup globalConfigGroup, ActivityFacilities activityFacilities,
 			Provider<TripRouter> tripRouterProvider, Provider<DiscreteModeChoiceModel> modeChoiceModelProvider,
-			DiscreteModeChoiceConfigGroup dmcConfig, Population population) {
+			DiscreteModeChoiceConfigGroup dmcConfig, Population population,
+			Provider<SharedTripCachePrepass> prepassProvider) {
 		this.globalConfigGroup = globalConfigGroup;
 		this.activityFacilities = activityFacilities;
 		this.tripRouterProvider = tripRouterProvider;
 		this.modeChoiceModelProvider = modeChoiceModelProvider;
 		this.dmcConfig = dmcConfig;
 		this.populationFactory = population.getFactory();
+		this.prepassProvider = prepassProvider;
 	}
 
 	@Override
 	public PlanStrategy get() {
 		PlanStrategyImpl.Builder builder = new PlanStrategyImpl.Builder(new RandomPlanSelector<>());
+
+		SharedTripCacheConfigGroup sharedCacheConfig = dmcConfig.getSharedTripCacheConfig();
+
+		if (sharedCacheConfig.getPerformPrepass() && sharedCacheConfig.getCachedModes().size() > 0) {
+			builder.addStrategyModule(new SharedTripCachePrepassModule(prepassProvider.get()));
+		}
+
 		builder.addStrategyModule(
 				new DiscreteModeChoiceReplanningModule(globalConfigGroup, modeChoiceModelProvider, populationFactory));
 
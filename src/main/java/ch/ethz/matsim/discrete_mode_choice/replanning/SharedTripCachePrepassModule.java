@@ -0,0 +1,36 @@
+package ch.ethz.matsim.discrete_mode_choice.replanning;
+
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.core.replanning.PlanStrategyModule;
+import org.matsim.core.replanning.ReplanningContext;
+
+import ch.ethz.matsim.discrete_mode_choice.model.estimation.SharedTripCachePrepass;
+
+/**
+ * This replanning module runs before the DiscreteModeChoiceReplanningModule
+ * and fills the shared trip estimate cache for all plans that are replanned
+ * (see SharedTripCachePrepass).
+ * 
+ * @author sebhoerl
+ */
+public class SharedTripCachePrepassModule implements PlanStrategyModule {
+	private final SharedTripCachePrepass prepass;
+
+	public SharedTripCachePrepassModule(SharedTripCachePrepass prepass) {
+		this.prepass = prepass;
+	}
+
+	@Override
+	public void prepareReplanning(ReplanningContext replanningContext) {
+	}
+
+	@Override
+	public void handlePlan(Plan plan) {
+		prepass.addTrips(plan.getPerson(), TripListConverter.convert(plan));
+	}
+
+	@Override
+	public void finishReplanning() {
+		prepass.run();
+	}
+}
@@ -13,6 +13,7 @@ import org.matsim.core.router.TripStructureUtils.Trip;
 import org.matsim.core.utils.misc.Time;
 
 import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.PlanContext;
 
 /**
  * Helper class for converting a MATSim plan into a list of
@@ -62,7 +63,8 @@ public final class TripListConverter {
 	/**
 	 * Convert a MATSim plan into a list of DiscreteModeChoiceTrip and extract the
 	 * respective legs. It is expected that the plan is already flattened (i.e.
-	 * there are no interaction activities).
+	 * there are no interaction activities). The PlanContext of the plan is
+	 * attached to the trips.
 	 */
 	public static List<DiscreteModeChoiceTrip> convert(Plan plan) {
 		List<Trip> initialTrips = TripStructureUtils.getTrips(plan);
@@ -103,6 +105,7 @@ public final class TripListConverter {
 			tripDuration = getTripDuration(initialTrip, time);
 		}
 
+		PlanContext.create(trips);
 		return trips;
 	}
 }
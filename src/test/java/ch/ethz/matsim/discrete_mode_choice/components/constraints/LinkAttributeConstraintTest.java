@@ -0,0 +1,81 @@
+package ch.ethz.matsim.discrete_mode_choice.components.constraints;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+
+import ch.ethz.matsim.discrete_mode_choice.components.constraints.LinkAttributeConstraint.Requirement;
+import ch.ethz.matsim.discrete_mode_choice.components.constraints.LinkAttributeIndex.Rule;
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripConstraint;
+import ch.ethz.matsim.discrete_mode_choice.test_utils.PlanBuilder;
+
+public class LinkAttributeConstraintTest {
+	private Network createNetwork() {
+		Network network = NetworkUtils.createNetwork();
+
+		Node nodeA = NetworkUtils.createAndAddNode(network, Id.createNodeId("A"), new Coord(0.0, 0.0));
+		Node nodeB = NetworkUtils.createAndAddNode(network, Id.createNodeId("B"), new Coord(1000.0, 0.0));
+		Node nodeC = NetworkUtils.createAndAddNode(network, Id.createNodeId("C"), new Coord(2000.0, 0.0));
+
+		Link linkAB = NetworkUtils.createAndAddLink(network, Id.createLinkId("AB"), nodeA, nodeB, 1000.0, 10.0,
+				1000.0, 1.0);
+		Link linkBC = NetworkUtils.createAndAddLink(network, Id.createLinkId("BC"), nodeB, nodeC, 1000.0, 10.0,
+				1000.0, 1.0);
+
+		linkAB.getAttributes().putAttribute("zone", "center");
+		linkAB.getAttributes().putAttribute("parking", true);
+		linkBC.getAttributes().putAttribute("zone", "suburb");
+
+		return network;
+	}
+
+	@Test
+	public void testLinkAttributeIndex() {
+		LinkAttributeIndex index = new LinkAttributeIndex(createNetwork(),
+				Arrays.asList(new Rule("zone", "center"), new Rule("parking", "true"), new Rule("zone", "other")));
+
+		Assertions.assertEquals(3, index.getNumberOfRules());
+
+		Assertions.assertTrue(index.matches(0, Id.createLinkId("AB")));
+		Assertions.assertFalse(index.matches(0, Id.createLinkId("BC")));
+
+		Assertions.assertTrue(index.matches(1, Id.createLinkId("AB")));
+		Assertions.assertFalse(index.matches(1, Id.createLinkId("BC")));
+
+		Assertions.assertFalse(index.matches(2, Id.createLinkId("AB")));
+		Assertions.assertFalse(index.matches(2, Id.createLinkId("BC")));
+
+		Assertions.assertThrows(IllegalStateException.class, () -> index.matches(0, Id.createLinkId("unknown")));
+	}
+
+	@Test
+	public void testRequirements() {
+		LinkAttributeIndex index = new LinkAttributeIndex(createNetwork(), "zone", "center");
+
+		List<DiscreteModeChoiceTrip> trips = new PlanBuilder() //
+				.addActivityWithLinkId("home", "AB") //
+				.addLeg() //
+				.addActivityWithLinkId("work", "BC") //
+				.buildDiscreteModeChoiceTrips();
+
+		DiscreteModeChoiceTrip trip = trips.get(0);
+		List<String> previousModes = Collections.emptyList();
+
+		TripConstraint constraint = new LinkAttributeConstraint(Arrays.asList("car"), index, 0, Requirement.ANY);
+		Assertions.assertTrue(constraint.validateBeforeEstimation(trip, "car", previousModes));
+
+		constraint = new LinkAttributeConstraint(Arrays.asList("car"), index, 0, Requirement.DESTINATION);
+		Assertions.assertFalse(constraint.validateBeforeEstimation(trip, "car", previousModes));
+		Assertions.assertTrue(constraint.validateBeforeEstimation(trip, "walk", previousModes));
+	}
+}
@@ -0,0 +1,82 @@
+package ch.ethz.matsim.discrete_mode_choice.components.constraints;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+
+import ch.ethz.matsim.discrete_mode_choice.components.constraints.ShapeFileConstraint.Requirement;
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripConstraint;
+import ch.ethz.matsim.discrete_mode_choice.test_utils.PlanBuilder;
+
+public class ShapeFileConstraintTest {
+	private Network createNetwork() {
+		Network network = NetworkUtils.createNetwork();
+
+		Node nodeA = NetworkUtils.createAndAddNode(network, Id.createNodeId("A"), new Coord(0.0, 0.0));
+		Node nodeB = NetworkUtils.createAndAddNode(network, Id.createNodeId("B"), new Coord(1000.0, 0.0));
+		Node nodeC = NetworkUtils.createAndAddNode(network, Id.createNodeId("C"), new Coord(2000.0, 0.0));
+		Node nodeD = NetworkUtils.createAndAddNode(network, Id.createNodeId("D"), new Coord(3000.0, 0.0));
+
+		NetworkUtils.createAndAddLink(network, Id.createLinkId("AB"), nodeA, nodeB, 1000.0, 10.0, 1000.0, 1.0);
+		NetworkUtils.createAndAddLink(network, Id.createLinkId("BC"), nodeB, nodeC, 1000.0, 10.0, 1000.0, 1.0);
+		NetworkUtils.createAndAddLink(network, Id.createLinkId("CD"), nodeC, nodeD, 1000.0, 10.0, 1000.0, 1.0);
+
+		return network;
+	}
+
+	private Geometry createSquare(double minX, double maxX) {
+		GeometryFactory factory = new GeometryFactory();
+
+		return factory.createPolygon(new Coordinate[] { new Coordinate(minX, -100.0), new Coordinate(maxX, -100.0),
+				new Coordinate(maxX, 100.0), new Coordinate(minX, 100.0), new Coordinate(minX, -100.0) });
+	}
+
+	@Test
+	public void testLinkShapeIndex() {
+		LinkShapeIndex index = new LinkShapeIndex(createNetwork(),
+				Arrays.asList(createSquare(0.0, 1000.0), createSquare(2000.0, 3000.0)));
+
+		Assertions.assertTrue(index.isInside(Id.createLinkId("AB")));
+		Assertions.assertFalse(index.isInside(Id.createLinkId("BC")));
+		Assertions.assertTrue(index.isInside(Id.createLinkId("CD")));
+		Assertions.assertEquals(2, index.getNumberOfInsideLinks());
+
+		Assertions.assertThrows(IllegalStateException.class, () -> index.isInside(Id.createLinkId("unknown")));
+	}
+
+	@Test
+	public void testRequirements() {
+		LinkShapeIndex index = new LinkShapeIndex(createNetwork(), Collections.singleton(createSquare(0.0, 1000.0)));
+
+		List<DiscreteModeChoiceTrip> trips = new PlanBuilder() //
+				.addActivityWithLinkId("home", "AB") //
+				.addLeg() //
+				.addActivityWithLinkId("work", "CD") //
+				.buildDiscreteModeChoiceTrips();
+
+		DiscreteModeChoiceTrip trip = trips.get(0);
+		List<String> previousModes = Collections.emptyList();
+
+		TripConstraint constraint = new ShapeFileConstraint(Arrays.asList("car"), Requirement.ORIGIN, index);
+		Assertions.assertTrue(constraint.validateBeforeEstimation(trip, "car", previousModes));
+
+		constraint = new ShapeFileConstraint(Arrays.asList("car"), Requirement.BOTH, index);
+		Assertions.assertFalse(constraint.validateBeforeEstimation(trip, "car", previousModes));
+		Assertions.assertTrue(constraint.validateBeforeEstimation(trip, "walk", previousModes));
+
+		constraint = new ShapeFileConstraint(Arrays.asList("car"), Requirement.NONE, index);
+		Assertions.assertFalse(constraint.validateBeforeEstimation(trip, "car", previousModes));
+	}
+}
@@ -0,0 +1,82 @@
+package ch.ethz.matsim.discrete_mode_choice.components.constraints;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.population.Person;
+
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.TourConstraint;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.TourConstraintFactory;
+import ch.ethz.matsim.discrete_mode_choice.test_utils.PlanBuilder;
+
+public class SubtourModeConstraintTest {
+	private final Collection<String> availableModes = Arrays.asList("car", "bike", "walk");
+	private final TourConstraintFactory constraintFactory = new SubtourModeConstraint.Factory(
+			Arrays.asList("car", "bike"));
+
+	@Test
+	public void testNestedSubtour() {
+		PlanBuilder planBuilder = new PlanBuilder() //
+				.addActivityWithFacilityId("home", "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", "B") //
+				.addLeg() //
+				.addActivityWithFacilityId("shop", "C") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", "B") //
+				.addLeg() //
+				.addActivityWithFacilityId("home", "A");
+
+		List<DiscreteModeChoiceTrip> trips = planBuilder.buildDiscreteModeChoiceTrips();
+		Person person = planBuilder.buildPlan().getPerson();
+		TourConstraint constraint = constraintFactory.createConstraint(person, trips, availableModes);
+
+		List<List<String>> previousModes = Collections.emptyList();
+
+		Assertions.assertTrue(constraint.validateBeforeEstimation(trips, Arrays.asList("car", "car", "car", "car"),
+				previousModes));
+		Assertions.assertTrue(constraint.validateBeforeEstimation(trips,
+				Arrays.asList("walk", "walk", "walk", "walk"), previousModes));
+		Assertions.assertFalse(constraint.validateBeforeEstimation(trips, Arrays.asList("car", "walk", "walk", "car"),
+				previousModes));
+		Assertions.assertFalse(constraint.validateBeforeEstimation(trips,
+				Arrays.asList("walk", "bike", "bike", "walk"), previousModes));
+
+		// The outer sub-tour is not closed within the prefix
+		Assertions.assertTrue(constraint.validatePrefix(trips, Arrays.asList("car", "walk"), previousModes));
+	}
+
+	@Test
+	public void testSecondTour() {
+		PlanBuilder planBuilder = new PlanBuilder() //
+				.addActivityWithFacilityId("home", "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", "B") //
+				.addLeg() //
+				.addActivityWithFacilityId("home", "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("shop", "C") //
+				.addLeg() //
+				.addActivityWithFacilityId("home", "A");
+
+		List<DiscreteModeChoiceTrip> trips = planBuilder.buildDiscreteModeChoiceTrips();
+		Person person = planBuilder.buildPlan().getPerson();
+		TourConstraint constraint = constraintFactory.createConstraint(person, trips, availableModes);
+
+		List<DiscreteModeChoiceTrip> secondTour = trips.subList(2, 4);
+		List<List<String>> previousModes = Collections.singletonList(Arrays.asList("walk", "walk"));
+
+		Assertions.assertTrue(
+				constraint.validateBeforeEstimation(secondTour, Arrays.asList("car", "car"), previousModes));
+		Assertions.assertTrue(
+				constraint.validateBeforeEstimation(secondTour, Arrays.asList("walk", "walk"), previousModes));
+		Assertions.assertFalse(
+				constraint.validateBeforeEstimation(secondTour, Arrays.asList("car", "walk"), previousModes));
+		Assertions.assertFalse(constraint.validatePrefix(secondTour, Arrays.asList("bike", "car"), previousModes));
+	}
+}
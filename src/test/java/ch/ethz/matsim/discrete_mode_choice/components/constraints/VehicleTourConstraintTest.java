@@ -147,4 +147,53 @@ public class VehicleTourConstraintTest {
 		modes = Arrays.asList("car", "car");
 		Assertions.assertTrue(constraint.validateBeforeEstimation(tour2, modes, Arrays.asList()));		
 	}
+
+	@Test
+	public void testPrefix() {
+		// PREPARATION
+		HomeFinder homeFinder = (List<DiscreteModeChoiceTrip> trips) -> Id.create("A", ActivityFacility.class);
+		Collection<String> availableModes = Arrays.asList("car", "walk");
+		Collection<String> restrictedModes = Arrays.asList("car");
+
+		TourConstraintFactory constraintFactory = new VehicleTourConstraint.Factory(restrictedModes, homeFinder);
+
+		PlanBuilder planBuilder;
+
+		planBuilder = new PlanBuilder() //
+				.addActivityWithFacilityId("home", "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("other", "B") //
+				.addLeg() //
+				.addActivityWithFacilityId("other", "C") //
+				.addLeg() //
+				.addActivityWithFacilityId("other", "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("other", "C") //
+				.addLeg() //
+				.addActivityWithFacilityId("home", "A");
+
+		List<DiscreteModeChoiceTrip> trips = planBuilder.buildDiscreteModeChoiceTrips();
+		Person person = planBuilder.buildPlan().getPerson();
+
+		TourConstraint constraint = constraintFactory.createConstraint(person, trips, availableModes);
+		List<String> modes;
+
+		// Test start at home
+		modes = Arrays.asList("car", "walk");
+		Assertions.assertTrue(constraint.validatePrefix(trips, modes, Arrays.asList()));
+
+		modes = Arrays.asList("walk", "car");
+		Assertions.assertFalse(constraint.validatePrefix(trips, modes, Arrays.asList()));
+
+		// Test continuity
+		modes = Arrays.asList("car", "car", "car");
+		Assertions.assertTrue(constraint.validatePrefix(trips, modes, Arrays.asList()));
+
+		modes = Arrays.asList("car", "walk", "car");
+		Assertions.assertFalse(constraint.validatePrefix(trips, modes, Arrays.asList()));
+
+		// Returning home cannot be decided on a prefix
+		modes = Arrays.asList("walk", "walk", "walk", "car");
+		Assertions.assertTrue(constraint.validatePrefix(trips, modes, Arrays.asList()));
+	}
 }
@@ -0,0 +1,74 @@
+package ch.ethz.matsim.discrete_mode_choice.components.constraints;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.population.Person;
+
+import ch.ethz.matsim.discrete_mode_choice.components.utils.home_finder.FirstActivityHomeFinder;
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripConstraint;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripConstraintFactory;
+import ch.ethz.matsim.discrete_mode_choice.test_utils.PlanBuilder;
+
+public class VehicleTripConstraintTest {
+	@Test
+	public void testAdvancedConstraint() {
+		Collection<String> availableModes = Arrays.asList("car", "walk");
+		TripConstraintFactory constraintFactory = new VehicleTripConstraint.Factory(Arrays.asList("car"), true,
+				new FirstActivityHomeFinder());
+
+		PlanBuilder planBuilder = new PlanBuilder() //
+				.addActivityWithFacilityId("home", "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", "B") //
+				.addLeg() //
+				.addActivityWithFacilityId("shop", "C") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", "B") //
+				.addLeg() //
+				.addActivityWithFacilityId("home", "A");
+
+		List<DiscreteModeChoiceTrip> trips = planBuilder.buildDiscreteModeChoiceTrips();
+		Person person = planBuilder.buildPlan().getPerson();
+		TripConstraint constraint = constraintFactory.createConstraint(person, trips, availableModes);
+
+		// The same list is extended, as in the TripBasedModel
+		List<String> previousModes = new ArrayList<>();
+
+		Assertions.assertTrue(constraint.validateBeforeEstimation(trips.get(0), "car", previousModes));
+		Assertions.assertTrue(constraint.validateBeforeEstimation(trips.get(0), "walk", previousModes));
+		previousModes.add("car");
+
+		// The agent comes back to B before going home, so the car can be left there
+		Assertions.assertTrue(constraint.validateBeforeEstimation(trips.get(1), "car", previousModes));
+		Assertions.assertTrue(constraint.validateBeforeEstimation(trips.get(1), "walk", previousModes));
+		previousModes.add("walk");
+
+		// The car is still at B
+		Assertions.assertFalse(constraint.validateBeforeEstimation(trips.get(2), "car", previousModes));
+		Assertions.assertTrue(constraint.validateBeforeEstimation(trips.get(2), "walk", previousModes));
+
+		// A mode that is replaced in place is noticed
+		previousModes.set(1, "car");
+		Assertions.assertTrue(constraint.validateBeforeEstimation(trips.get(2), "car", previousModes));
+		previousModes.set(1, "walk");
+		Assertions.assertFalse(constraint.validateBeforeEstimation(trips.get(2), "car", previousModes));
+		previousModes.add("walk");
+
+		// The car needs to be brought home
+		Assertions.assertTrue(constraint.validateBeforeEstimation(trips.get(3), "car", previousModes));
+		Assertions.assertFalse(constraint.validateBeforeEstimation(trips.get(3), "walk", previousModes));
+
+		// Other lists of previous modes are evaluated from scratch
+		Assertions.assertFalse(
+				constraint.validateBeforeEstimation(trips.get(1), "car", Collections.singletonList("walk")));
+		Assertions.assertTrue(
+				constraint.validateBeforeEstimation(trips.get(2), "car", Arrays.asList("car", "car")));
+	}
+}
@@ -0,0 +1,167 @@
+package ch.ethz.matsim.discrete_mode_choice.components.estimators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.PlanCalcScoreConfigGroup.ModeParams;
+import org.matsim.core.config.groups.PlansCalcRouteConfigGroup.ModeRoutingParams;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.GenericRouteImpl;
+import org.matsim.core.router.TripRouter;
+import org.matsim.core.scoring.functions.ScoringParameters;
+import org.matsim.facilities.FacilitiesUtils;
+
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.routing.CompactNetworkRouters;
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
+import ch.ethz.matsim.discrete_mode_choice.test_utils.PlanBuilder;
+
+public class MATSimTripScoringEstimatorTest {
+	@Test
+	public void testTeleportedModes() {
+		PlanBuilder planBuilder = new PlanBuilder() //
+				.addActivityWithLinkId("home", 3600.0, "A") //
+				.addLeg() //
+				.addActivityWithLinkId("work", "B");
+
+		Plan plan = planBuilder.buildPlan();
+		((Activity) plan.getPlanElements().get(0)).setCoord(new Coord(0.0, 0.0));
+		((Activity) plan.getPlanElements().get(2)).setCoord(new Coord(3000.0, 4000.0));
+
+		Person person = plan.getPerson();
+		DiscreteModeChoiceTrip trip = planBuilder.buildDiscreteModeChoiceTrips().get(0);
+
+		Config config = ConfigUtils.createConfig();
+
+		ModeParams walkParams = config.planCalcScore().getOrCreateModeParams(TransportMode.walk);
+		walkParams.setConstant(-1.0);
+		walkParams.setMarginalUtilityOfTraveling(-6.0);
+
+		ModeRoutingParams walkRoutingParams = config.plansCalcRoute().getOrCreateModeRoutingParams(TransportMode.walk);
+		walkRoutingParams.setTeleportedModeSpeed(1.0);
+		walkRoutingParams.setBeelineDistanceFactor(1.2);
+
+		ScoringParameters parameters = new ScoringParameters.Builder(config.planCalcScore(),
+				config.planCalcScore().getScoringParameters(null), config.scenario()).build();
+
+		// Without a TripRouter, routing would fail
+		MATSimTripScoringEstimator estimator = new MATSimTripScoringEstimator(
+				FacilitiesUtils.createActivityFacilities(), null, (time, route) -> 0.0, p -> parameters,
+				Arrays.asList(TransportMode.pt), PopulationUtils.getFactory(),
+				config.plansCalcRoute().getModeRoutingParams());
+
+		TripCandidate candidate = estimator.estimateTrip(person, TransportMode.walk, trip, Collections.emptyList());
+		Assertions.assertTrue(candidate instanceof TeleportedTripCandidate);
+
+		TeleportedTripCandidate teleportedCandidate = (TeleportedTripCandidate) candidate;
+		Assertions.assertEquals(6000.0, teleportedCandidate.getDistance(), 1e-6);
+		Assertions.assertEquals(6000.0, teleportedCandidate.getTravelTime(), 1e-6);
+		Assertions.assertEquals(-1.0 - 6.0 * 6000.0 / 3600.0, teleportedCandidate.getUtility(), 1e-6);
+
+		List<? extends PlanElement> elements = teleportedCandidate.getRoutedPlanElements();
+		Assertions.assertEquals(1, elements.size());
+		Assertions.assertSame(elements, teleportedCandidate.getRoutedPlanElements());
+
+		Leg leg = (Leg) elements.get(0);
+		Assertions.assertEquals(TransportMode.walk, leg.getMode());
+		Assertions.assertEquals(3600.0, leg.getDepartureTime(), 1e-6);
+		Assertions.assertEquals(6000.0, leg.getTravelTime(), 1e-6);
+		Assertions.assertEquals(6000.0, leg.getRoute().getDistance(), 1e-6);
+		Assertions.assertEquals(Id.createLinkId("A"), leg.getRoute().getStartLinkId());
+		Assertions.assertEquals(Id.createLinkId("B"), leg.getRoute().getEndLinkId());
+	}
+
+	@Test
+	public void testRerouteOnOtherThread() throws InterruptedException, ExecutionException {
+		PlanBuilder planBuilder = new PlanBuilder() //
+				.addActivityWithLinkId("home", 3600.0, "A") //
+				.addLeg() //
+				.addActivityWithLinkId("work", "B");
+
+		Person person = planBuilder.buildPlan().getPerson();
+		DiscreteModeChoiceTrip trip = planBuilder.buildDiscreteModeChoiceTrips().get(0);
+
+		Config config = ConfigUtils.createConfig();
+		ScoringParameters parameters = new ScoringParameters.Builder(config.planCalcScore(),
+				config.planCalcScore().getScoringParameters(null), config.scenario()).build();
+
+		// Every router checks that it is only used by the thread that has created it
+		List<Thread> routingThreads = Collections.synchronizedList(new ArrayList<>());
+		List<Person> routingPersons = Collections.synchronizedList(new ArrayList<>());
+		AtomicInteger numberOfForeignRoutings = new AtomicInteger(0);
+
+		ThreadLocalTripRouter tripRouters = new ThreadLocalTripRouter(() -> {
+			Thread creatingThread = Thread.currentThread();
+
+			TripRouter tripRouter = new TripRouter();
+			tripRouter.setRoutingModule(TransportMode.car, (originFacility, destinationFacility, departureTime, p) -> {
+				routingThreads.add(Thread.currentThread());
+				routingPersons.add(p);
+
+				if (Thread.currentThread() != creatingThread) {
+					numberOfForeignRoutings.incrementAndGet();
+				}
+
+				Route route = new GenericRouteImpl(originFacility.getLinkId(), destinationFacility.getLinkId());
+				route.setDistance(1000.0);
+
+				Leg leg = PopulationUtils.createLeg(TransportMode.car);
+				leg.setTravelTime(600.0);
+				leg.setRoute(route);
+
+				return Collections.singletonList(leg);
+			});
+
+			return tripRouter;
+		});
+
+		MATSimTripScoringEstimator estimator = new MATSimTripScoringEstimator(
+				FacilitiesUtils.createActivityFacilities(), tripRouters.get(), (time, route) -> 0.0, p -> parameters,
+				Arrays.asList(TransportMode.pt), PopulationUtils.getFactory(), Collections.emptyMap(),
+				new CompactNetworkRouters(), Arrays.asList(TransportMode.car), null, tripRouters);
+
+		TripCandidate candidate = estimator.estimateTrip(person, TransportMode.car, trip, Collections.emptyList());
+		Assertions.assertTrue(candidate instanceof ReroutingTripCandidate);
+		Assertions.assertEquals(1000.0, ((ReroutingTripCandidate) candidate).getDistance());
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		try {
+			Thread otherThread = executor.submit(Thread::currentThread).get();
+			List<? extends PlanElement> elements = executor
+					.submit(() -> ((ReroutingTripCandidate) candidate).getRoutedPlanElements()).get();
+
+			Leg leg = (Leg) elements.get(0);
+			Assertions.assertEquals(TransportMode.car, leg.getMode());
+			Assertions.assertEquals(Id.createLinkId("A"), leg.getRoute().getStartLinkId());
+			Assertions.assertEquals(Id.createLinkId("B"), leg.getRoute().getEndLinkId());
+			Assertions.assertEquals(Arrays.asList(Thread.currentThread(), otherThread), routingThreads);
+			Assertions.assertEquals(0, numberOfForeignRoutings.get());
+
+			// The candidate does not keep the estimated person for rerouting
+			Assertions.assertSame(person, routingPersons.get(0));
+			Assertions.assertNotSame(person, routingPersons.get(1));
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
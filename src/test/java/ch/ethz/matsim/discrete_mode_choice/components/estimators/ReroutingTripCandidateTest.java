@@ -0,0 +1,37 @@
+package ch.ethz.matsim.discrete_mode_choice.components.estimators;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.population.PopulationUtils;
+
+public class ReroutingTripCandidateTest {
+	@Test
+	public void testRoutesOnDemand() {
+		AtomicInteger numberOfRoutings = new AtomicInteger(0);
+
+		ReroutingTripCandidate candidate = new ReroutingTripCandidate(-2.0, TransportMode.pt, 1200.0, 5000.0, () -> {
+			numberOfRoutings.incrementAndGet();
+			return Collections.singletonList(PopulationUtils.createLeg(TransportMode.pt));
+		});
+
+		Assertions.assertEquals(-2.0, candidate.getUtility());
+		Assertions.assertEquals(1200.0, candidate.getTravelTime());
+		Assertions.assertEquals(5000.0, candidate.getDistance());
+		Assertions.assertEquals(0, numberOfRoutings.get());
+
+		List<? extends PlanElement> elements = candidate.getRoutedPlanElements();
+		Assertions.assertEquals(1, numberOfRoutings.get());
+		Assertions.assertEquals(TransportMode.pt, ((Leg) elements.get(0)).getMode());
+
+		// The elements are not kept, so every request routes again
+		candidate.getRoutedPlanElements();
+		Assertions.assertEquals(2, numberOfRoutings.get());
+	}
+}
@@ -0,0 +1,121 @@
+package ch.ethz.matsim.discrete_mode_choice.components.estimators.routing;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+
+public class CompactNetworkRouterTest {
+	private Network createNetwork() {
+		Network network = NetworkUtils.createNetwork();
+
+		Node nodeX = NetworkUtils.createAndAddNode(network, Id.createNodeId("X"), new Coord(-1000.0, 0.0));
+		Node nodeA = NetworkUtils.createAndAddNode(network, Id.createNodeId("A"), new Coord(0.0, 0.0));
+		Node nodeB = NetworkUtils.createAndAddNode(network, Id.createNodeId("B"), new Coord(1000.0, 0.0));
+		Node nodeC = NetworkUtils.createAndAddNode(network, Id.createNodeId("C"), new Coord(2000.0, 0.0));
+		Node nodeD = NetworkUtils.createAndAddNode(network, Id.createNodeId("D"), new Coord(1000.0, 1000.0));
+		Node nodeY = NetworkUtils.createAndAddNode(network, Id.createNodeId("Y"), new Coord(3000.0, 0.0));
+
+		NetworkUtils.createAndAddLink(network, Id.createLinkId("in"), nodeX, nodeA, 1000.0, 10.0, 1000.0, 1.0);
+		NetworkUtils.createAndAddLink(network, Id.createLinkId("AB"), nodeA, nodeB, 1000.0, 10.0, 1000.0, 1.0);
+		NetworkUtils.createAndAddLink(network, Id.createLinkId("BC"), nodeB, nodeC, 1000.0, 10.0, 1000.0, 1.0);
+		NetworkUtils.createAndAddLink(network, Id.createLinkId("AD"), nodeA, nodeD, 1500.0, 30.0, 1000.0, 1.0);
+		NetworkUtils.createAndAddLink(network, Id.createLinkId("DC"), nodeD, nodeC, 1500.0, 30.0, 1000.0, 1.0);
+		NetworkUtils.createAndAddLink(network, Id.createLinkId("out"), nodeC, nodeY, 1000.0, 10.0, 1000.0, 1.0);
+
+		return network;
+	}
+
+	private int[] getLinkIndices(CompactNetwork network, String... linkIds) {
+		int[] indices = new int[linkIds.length];
+
+		for (int i = 0; i < linkIds.length; i++) {
+			indices[i] = network.getLinkIndex(Id.createLinkId(linkIds[i]));
+		}
+
+		return indices;
+	}
+
+	@Test
+	public void testFreeSpeedRoute() {
+		CompactNetwork network = new CompactNetwork(createNetwork());
+		CompactNetworkRouter router = new CompactNetworkRouter(network, Landmarks.create(network, 2), 900.0, 3600.0);
+		CompactNetworkRouter.Search search = router.getSearch();
+
+		int in = network.getLinkIndex(Id.createLinkId("in"));
+		int out = network.getLinkIndex(Id.createLinkId("out"));
+
+		CompactRoute route = search.route(in, out, 0.0);
+		assertArrayEquals(getLinkIndices(network, "AD", "DC"), route.getLinks());
+		assertEquals(100.0, route.getTravelTime(), 1e-3);
+		assertEquals(4000.0, route.getDistance(), 1e-6);
+
+		route = search.route(in, in, 0.0);
+		assertEquals(0, route.getLinks().length);
+		assertEquals(0.0, route.getTravelTime());
+
+		assertNull(search.route(out, in, 0.0));
+	}
+
+	@Test
+	public void testCongestedRoute() {
+		CompactNetwork network = new CompactNetwork(createNetwork());
+		CompactNetworkRouter router = new CompactNetworkRouter(network, Landmarks.create(network, 2), 900.0, 3600.0);
+		CompactNetworkRouter.Search search = router.getSearch();
+
+		Id<Link> congestedLinkId = Id.createLinkId("AD");
+
+		router.updateTravelTimes((link, time, person, vehicle) -> {
+			if (link.getId().equals(congestedLinkId) && time < 900.0) {
+				return 1000.0;
+			}
+
+			return link.getLength() / link.getFreespeed();
+		});
+
+		int in = network.getLinkIndex(Id.createLinkId("in"));
+		int out = network.getLinkIndex(Id.createLinkId("out"));
+
+		CompactRoute route = search.route(in, out, 0.0);
+		assertArrayEquals(getLinkIndices(network, "AB", "BC"), route.getLinks());
+		assertEquals(200.0, route.getTravelTime(), 1e-3);
+		assertEquals(3000.0, route.getDistance(), 1e-6);
+
+		route = search.route(in, out, 1000.0);
+		assertArrayEquals(getLinkIndices(network, "AD", "DC"), route.getLinks());
+	}
+
+	@Test
+	public void testTree() {
+		CompactNetwork network = new CompactNetwork(createNetwork());
+		CompactNetworkRouter router = new CompactNetworkRouter(network, Landmarks.create(network, 0), 900.0, 3600.0);
+		CompactNetworkRouter.Search search = router.getSearch();
+
+		search.calculateTree(network.getNodeIndex(Id.createNodeId("A")), 100.0);
+
+		int nodeB = network.getNodeIndex(Id.createNodeId("B"));
+		int nodeC = network.getNodeIndex(Id.createNodeId("C"));
+		int nodeX = network.getNodeIndex(Id.createNodeId("X"));
+		int nodeY = network.getNodeIndex(Id.createNodeId("Y"));
+
+		assertEquals(200.0, search.getArrivalTime(nodeB), 1e-3);
+		assertEquals(1000.0, search.getDistance(nodeB), 1e-6);
+
+		// C is reached faster via D, so the distance follows AD and DC
+		assertEquals(200.0, search.getArrivalTime(nodeC), 1e-3);
+		assertEquals(3000.0, search.getDistance(nodeC), 1e-6);
+
+		assertEquals(300.0, search.getArrivalTime(nodeY), 1e-3);
+		assertEquals(4000.0, search.getDistance(nodeY), 1e-6);
+
+		assertEquals(Double.POSITIVE_INFINITY, search.getArrivalTime(nodeX));
+		assertEquals(Double.POSITIVE_INFINITY, search.getDistance(nodeX));
+	}
+}
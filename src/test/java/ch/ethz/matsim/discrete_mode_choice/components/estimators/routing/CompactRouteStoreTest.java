@@ -0,0 +1,164 @@
+package ch.ethz.matsim.discrete_mode_choice.components.estimators.routing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.router.TripStructureUtils;
+
+public class CompactRouteStoreTest {
+	private Network createNetwork() {
+		Network network = NetworkUtils.createNetwork();
+		Node previousNode = NetworkUtils.createAndAddNode(network, Id.createNodeId("0"), new Coord(0.0, 0.0));
+
+		for (int i = 1; i <= 10; i++) {
+			Node node = NetworkUtils.createAndAddNode(network, Id.createNodeId(String.valueOf(i)),
+					new Coord(i * 100.0, 0.0));
+			NetworkUtils.createAndAddLink(network, Id.createLinkId(String.valueOf(i)), previousNode, node, 100.0,
+					10.0, 1000.0, 1.0);
+			previousNode = node;
+		}
+
+		return network;
+	}
+
+	private List<PlanElement> createElements(PopulationFactory factory) {
+		Leg walkLeg = factory.createLeg(TransportMode.walk);
+		Route walkRoute = factory.getRouteFactories().createRoute(Route.class, Id.createLinkId("1"),
+				Id.createLinkId("2"));
+		walkRoute.setTravelTime(60.0);
+		walkRoute.setDistance(120.0);
+		walkRoute.setRouteDescription("walk description");
+		walkLeg.setRoute(walkRoute);
+		walkLeg.setDepartureTime(3600.0);
+		walkLeg.setTravelTime(60.0);
+
+		Activity interaction = PopulationUtils.createActivityFromCoordAndLinkId("car interaction",
+				new Coord(150.0, 0.0), Id.createLinkId("2"));
+		interaction.setStartTime(3660.0);
+		interaction.setMaximumDuration(0.0);
+
+		Leg carLeg = factory.createLeg(TransportMode.car);
+		NetworkRoute carRoute = factory.getRouteFactories().createRoute(NetworkRoute.class, Id.createLinkId("2"),
+				Id.createLinkId("9"));
+		carRoute.setLinkIds(Id.createLinkId("2"), Arrays.asList(Id.createLinkId("3"), Id.createLinkId("5"),
+				Id.createLinkId("4"), Id.createLinkId("8")), Id.createLinkId("9"));
+		carRoute.setTravelTime(300.0);
+		carRoute.setDistance(700.0);
+		carRoute.setTravelCost(12.5);
+		carRoute.setVehicleId(Id.createVehicleId("vehicle"));
+		carLeg.setRoute(carRoute);
+		TripStructureUtils.setRoutingMode(carLeg, TransportMode.car);
+		carLeg.setDepartureTime(3660.0);
+		carLeg.setTravelTime(300.0);
+
+		return Arrays.asList(walkLeg, interaction, carLeg);
+	}
+
+	@Test
+	public void testEncodeAndDecode() {
+		PopulationFactory factory = PopulationUtils.getFactory();
+		CompactRouteStore store = new CompactRouteStore(createNetwork(), null, factory, 1024);
+
+		long handle = store.encode(createElements(factory));
+		assertNotEquals(-1, handle);
+
+		List<PlanElement> elements = store.decode(handle);
+		assertEquals(3, elements.size());
+
+		Leg walkLeg = (Leg) elements.get(0);
+		assertEquals(TransportMode.walk, walkLeg.getMode());
+		assertEquals(3600.0, walkLeg.getDepartureTime());
+		assertEquals(60.0, walkLeg.getTravelTime());
+		assertEquals(Id.createLinkId("1"), walkLeg.getRoute().getStartLinkId());
+		assertEquals(Id.createLinkId("2"), walkLeg.getRoute().getEndLinkId());
+		assertEquals(120.0, walkLeg.getRoute().getDistance());
+		assertEquals("walk description", walkLeg.getRoute().getRouteDescription());
+
+		Activity interaction = (Activity) elements.get(1);
+		assertEquals("car interaction", interaction.getType());
+		assertEquals(Id.createLinkId("2"), interaction.getLinkId());
+		assertEquals(150.0, interaction.getCoord().getX());
+		assertEquals(3660.0, interaction.getStartTime());
+		assertEquals(0.0, interaction.getMaximumDuration());
+
+		Leg carLeg = (Leg) elements.get(2);
+		assertEquals(TransportMode.car, TripStructureUtils.getRoutingMode(carLeg));
+		assertTrue(carLeg.getRoute() instanceof NetworkRoute);
+
+		NetworkRoute carRoute = (NetworkRoute) carLeg.getRoute();
+		assertEquals(Id.createLinkId("2"), carRoute.getStartLinkId());
+		assertEquals(Id.createLinkId("9"), carRoute.getEndLinkId());
+		assertEquals(Arrays.asList(Id.createLinkId("3"), Id.createLinkId("5"), Id.createLinkId("4"),
+				Id.createLinkId("8")), carRoute.getLinkIds());
+		assertEquals(300.0, carRoute.getTravelTime());
+		assertEquals(700.0, carRoute.getDistance());
+		assertEquals(12.5, carRoute.getTravelCost());
+		assertEquals(Id.createVehicleId("vehicle"), carRoute.getVehicleId());
+	}
+
+	@Test
+	public void testAttributes() {
+		PopulationFactory factory = PopulationUtils.getFactory();
+		CompactRouteStore store = new CompactRouteStore(createNetwork(), null, factory, 1024);
+
+		// Other attributes would be lost, so such elements are not encoded
+		List<PlanElement> elements = createElements(factory);
+		((Leg) elements.get(0)).getAttributes().putAttribute("other", 1.0);
+		assertEquals(-1, store.encode(elements));
+
+		elements = createElements(factory);
+		((Activity) elements.get(1)).getAttributes().putAttribute("other", 1.0);
+		assertEquals(-1, store.encode(elements));
+	}
+
+	@Test
+	public void testOverwriting() {
+		PopulationFactory factory = PopulationUtils.getFactory();
+		CompactRouteStore store = new CompactRouteStore(createNetwork(), null, factory, 256);
+
+		long firstHandle = store.encode(createElements(factory));
+		assertNotNull(store.decode(firstHandle));
+
+		long lastHandle = -1;
+
+		for (int i = 0; i < 10; i++) {
+			lastHandle = store.encode(createElements(factory));
+		}
+
+		assertNull(store.decode(firstHandle));
+		assertNotNull(store.decode(lastHandle));
+	}
+
+	@Test
+	public void testUnknownLink() {
+		PopulationFactory factory = PopulationUtils.getFactory();
+		CompactRouteStore store = new CompactRouteStore(createNetwork(), null, factory, 1024);
+
+		Leg leg = factory.createLeg(TransportMode.walk);
+		leg.setRoute(factory.getRouteFactories().createRoute(Route.class, Id.createLinkId("unknown"),
+				Id.createLinkId("2")));
+
+		assertEquals(-1, store.encode(Arrays.asList(leg)));
+	}
+}
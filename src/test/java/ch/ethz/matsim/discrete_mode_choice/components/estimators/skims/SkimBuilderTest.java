@@ -0,0 +1,132 @@
+package ch.ethz.matsim.discrete_mode_choice.components.estimators.skims;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.pt.transitSchedule.api.TransitSchedule;
+import org.matsim.pt.transitSchedule.api.TransitScheduleFactory;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+
+public class SkimBuilderTest {
+	@TempDir
+	Path temporaryDirectory;
+
+	private final List<Coord> centroids = Arrays.asList(new Coord(0.0, 0.0), new Coord(1000.0, 0.0),
+			new Coord(2000.0, 0.0));
+
+	@Test
+	public void testNetworkSkim() throws IOException {
+		Network network = NetworkUtils.createNetwork();
+
+		Node nodeA = NetworkUtils.createAndAddNode(network, Id.createNodeId("A"), new Coord(0.0, 0.0));
+		Node nodeB = NetworkUtils.createAndAddNode(network, Id.createNodeId("B"), new Coord(1000.0, 0.0));
+		Node nodeC = NetworkUtils.createAndAddNode(network, Id.createNodeId("C"), new Coord(2000.0, 0.0));
+
+		// Parallel links: the longer one is faster and is used by the tree
+		NetworkUtils.createAndAddLink(network, Id.createLinkId("AB_fast"), nodeA, nodeB, 1500.0, 30.0, 1000.0, 1.0);
+		NetworkUtils.createAndAddLink(network, Id.createLinkId("AB_slow"), nodeA, nodeB, 1000.0, 5.0, 1000.0, 1.0);
+		NetworkUtils.createAndAddLink(network, Id.createLinkId("BC"), nodeB, nodeC, 1000.0, 10.0, 1000.0, 1.0);
+		NetworkUtils.createAndAddLink(network, Id.createLinkId("BA"), nodeB, nodeA, 1000.0, 10.0, 1000.0, 1.0);
+
+		SkimMatrix.Writer writer = SkimMatrix.create(temporaryDirectory.resolve("car.skim").toFile(), centroids, 2,
+				3600.0);
+		SkimBuilder builder = new SkimBuilder(centroids, 2, 3600.0, 2);
+		builder.buildNetworkSkim(writer, network,
+				(link, time, person, vehicle) -> link.getLength() / link.getFreespeed());
+
+		SkimMatrix matrix = writer.getMatrix();
+
+		for (int period = 0; period < 2; period++) {
+			assertEquals(50.0, matrix.getValue(period, 0, 1, SkimMatrix.TRAVEL_TIME), 1e-3);
+			assertEquals(1500.0, matrix.getValue(period, 0, 1, SkimMatrix.DISTANCE), 1e-3);
+
+			assertEquals(150.0, matrix.getValue(period, 0, 2, SkimMatrix.TRAVEL_TIME), 1e-3);
+			assertEquals(2500.0, matrix.getValue(period, 0, 2, SkimMatrix.DISTANCE), 1e-3);
+
+			assertEquals(100.0, matrix.getValue(period, 1, 0, SkimMatrix.TRAVEL_TIME), 1e-3);
+			assertEquals(1000.0, matrix.getValue(period, 1, 0, SkimMatrix.DISTANCE), 1e-3);
+
+			assertEquals(Double.POSITIVE_INFINITY, matrix.getValue(period, 2, 0, SkimMatrix.TRAVEL_TIME));
+			assertEquals(0.0, matrix.getValue(period, 2, 2, SkimMatrix.TRAVEL_TIME));
+		}
+
+		// Values are written to the file as well
+		SkimMatrix fileMatrix = SkimMatrix.read(temporaryDirectory.resolve("car.skim").toFile());
+		assertEquals(1500.0, fileMatrix.getValue(1, 0, 1, SkimMatrix.DISTANCE), 1e-3);
+	}
+
+	@Test
+	public void testTransitSkim() throws IOException {
+		TransitSchedule schedule = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getTransitSchedule();
+		TransitScheduleFactory factory = schedule.getFactory();
+
+		Id<TransitStopFacility> stop0 = Id.create("S0", TransitStopFacility.class);
+		Id<TransitStopFacility> stop1 = Id.create("S1", TransitStopFacility.class);
+
+		schedule.addStopFacility(factory.createTransitStopFacility(stop0, new Coord(0.0, 100.0), false));
+		schedule.addStopFacility(factory.createTransitStopFacility(stop1, new Coord(1000.0, 0.0), false));
+
+		// Zone 0 reaches both stops, zone 1 only its own stop and zone 2 none
+		SkimBuilder.StopTreeRouter router = (originFacility, departureTime) -> {
+			Map<Id<TransitStopFacility>, Double> arrivalTimes = new HashMap<>();
+
+			if (originFacility.getCoord().getX() == 0.0) {
+				arrivalTimes.put(stop0, departureTime + 60.0);
+				arrivalTimes.put(stop1, departureTime + 300.0);
+			} else if (originFacility.getCoord().getX() == 1000.0) {
+				arrivalTimes.put(stop1, departureTime + 60.0);
+			}
+
+			return arrivalTimes;
+		};
+
+		SkimMatrix.Writer writer = SkimMatrix.create(temporaryDirectory.resolve("pt.skim").toFile(), centroids, 2,
+				3600.0);
+		SkimBuilder builder = new SkimBuilder(centroids, 2, 3600.0, 2);
+		builder.buildTransitSkim(writer, schedule, () -> router, 200.0, 1.0);
+
+		SkimMatrix matrix = writer.getMatrix();
+
+		for (int period = 0; period < 2; period++) {
+			assertEquals(300.0, matrix.getValue(period, 0, 1, SkimMatrix.TRAVEL_TIME), 1e-3);
+			assertEquals(1000.0, matrix.getValue(period, 0, 1, SkimMatrix.DISTANCE), 1e-3);
+
+			// No stop within the radius of zone 2, so the closest stop is used
+			assertEquals(1300.0, matrix.getValue(period, 0, 2, SkimMatrix.TRAVEL_TIME), 1e-3);
+			assertEquals(2000.0, matrix.getValue(period, 0, 2, SkimMatrix.DISTANCE), 1e-3);
+
+			assertEquals(1060.0, matrix.getValue(period, 1, 2, SkimMatrix.TRAVEL_TIME), 1e-3);
+
+			assertEquals(Double.POSITIVE_INFINITY, matrix.getValue(period, 1, 0, SkimMatrix.TRAVEL_TIME));
+			assertEquals(Double.POSITIVE_INFINITY, matrix.getValue(period, 2, 1, SkimMatrix.TRAVEL_TIME));
+		}
+	}
+
+	@Test
+	public void testGridCentroids() {
+		Network network = NetworkUtils.createNetwork();
+		NetworkUtils.createAndAddNode(network, Id.createNodeId("A"), new Coord(100.0, 100.0));
+		NetworkUtils.createAndAddNode(network, Id.createNodeId("B"), new Coord(200.0, 300.0));
+		NetworkUtils.createAndAddNode(network, Id.createNodeId("C"), new Coord(2100.0, 100.0));
+
+		List<Coord> gridCentroids = SkimBuilder.createGridCentroids(network, 1000.0);
+		assertEquals(Arrays.asList(new Coord(500.0, 500.0), new Coord(2500.0, 500.0)), gridCentroids);
+		assertEquals(Collections.emptyList(), SkimBuilder.createGridCentroids(NetworkUtils.createNetwork(), 1000.0));
+	}
+}
@@ -0,0 +1,80 @@
+package ch.ethz.matsim.discrete_mode_choice.components.estimators.skims;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.matsim.api.core.v01.Coord;
+
+public class SkimMatrixTest {
+	@TempDir
+	Path temporaryDirectory;
+
+	private final List<Coord> centroids = Arrays.asList(new Coord(0.0, 0.0), new Coord(1000.0, 0.0),
+			new Coord(0.0, 1000.0));
+
+	@Test
+	public void testWriteAndRead() throws IOException {
+		File file = temporaryDirectory.resolve("car.skim").toFile();
+
+		SkimMatrix.Writer writer = SkimMatrix.create(file, centroids, 2, 3600.0);
+
+		for (int period = 0; period < 2; period++) {
+			for (int origin = 0; origin < 3; origin++) {
+				for (int destination = 0; destination < 3; destination++) {
+					writer.setValues(period, origin, destination, 100.0 * period + 10.0 * origin + destination,
+							1000.0 * origin + destination, 0.5 * period);
+				}
+			}
+		}
+
+		writer.flush();
+
+		SkimMatrix matrix = SkimMatrix.read(file);
+
+		assertEquals(2, matrix.getNumberOfPeriods());
+		assertEquals(3600.0, matrix.getPeriodDuration());
+		assertEquals(3, matrix.getCentroids().size());
+		assertEquals(1000.0, matrix.getCentroids().get(1).getX());
+
+		assertEquals(12.0, matrix.getValue(0, 1, 2, SkimMatrix.TRAVEL_TIME));
+		assertEquals(121.0, matrix.getValue(1, 2, 1, SkimMatrix.TRAVEL_TIME));
+		assertEquals(2001.0, matrix.getValue(1, 2, 1, SkimMatrix.DISTANCE));
+		assertEquals(0.5, matrix.getValue(1, 2, 1, SkimMatrix.COST));
+		assertEquals(0.0, matrix.getValue(0, 2, 1, SkimMatrix.COST));
+	}
+
+	@Test
+	public void testPeriodsAndZones() throws IOException {
+		File file = temporaryDirectory.resolve("car.skim").toFile();
+		SkimMatrix.create(file, centroids, 24, 3600.0).flush();
+		SkimMatrix matrix = SkimMatrix.read(file);
+
+		assertEquals(0, matrix.getPeriod(-100.0));
+		assertEquals(1, matrix.getPeriod(3600.0));
+		assertEquals(23, matrix.getPeriod(30.0 * 3600.0));
+
+		assertEquals(0, matrix.getZoneIndex().getZone(new Coord(100.0, 200.0)));
+		assertEquals(1, matrix.getZoneIndex().getZone(new Coord(2000.0, -100.0)));
+		assertEquals(2, matrix.getZoneIndex().getZone(new Coord(100.0, 900.0)));
+	}
+
+	@Test
+	public void testInvalidFile() throws IOException {
+		File file = temporaryDirectory.resolve("invalid.skim").toFile();
+
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			randomAccessFile.setLength(1024);
+		}
+
+		assertThrows(IllegalStateException.class, () -> SkimMatrix.read(file));
+	}
+}
@@ -0,0 +1,94 @@
+package ch.ethz.matsim.discrete_mode_choice.components.estimators.skims;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.PlanCalcScoreConfigGroup.ModeParams;
+import org.matsim.core.scoring.functions.ScoringParameters;
+import org.matsim.facilities.FacilitiesUtils;
+
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripEstimator;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.DefaultTripCandidate;
+import ch.ethz.matsim.discrete_mode_choice.test_utils.PlanBuilder;
+
+public class SkimTripEstimatorTest {
+	@TempDir
+	Path temporaryDirectory;
+
+	@Test
+	public void testSkimmedTrips() throws IOException {
+		List<Coord> centroids = Arrays.asList(new Coord(0.0, 0.0), new Coord(1000.0, 0.0));
+
+		SkimMatrix.Writer writer = SkimMatrix.create(temporaryDirectory.resolve("car.skim").toFile(), centroids, 1,
+				3600.0);
+		writer.setValues(0, 0, 1, 600.0, 1500.0, 2.0);
+		writer.setValues(0, 1, 0, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, 0.0);
+
+		SkimRepository repository = new SkimRepository();
+		repository.setMatrix(TransportMode.car, writer.getMatrix());
+
+		PlanBuilder planBuilder = new PlanBuilder() //
+				.addActivityWithLinkId("home", 3600.0, "A") //
+				.addLeg() //
+				.addActivityWithLinkId("work", 7200.0, "B") //
+				.addLeg() //
+				.addActivityWithLinkId("home", 10800.0, "A") //
+				.addLeg() //
+				.addActivityWithLinkId("shop", "C");
+
+		Plan plan = planBuilder.buildPlan();
+		((Activity) plan.getPlanElements().get(0)).setCoord(new Coord(0.0, 0.0));
+		((Activity) plan.getPlanElements().get(2)).setCoord(new Coord(1100.0, 0.0));
+		((Activity) plan.getPlanElements().get(4)).setCoord(new Coord(0.0, 0.0));
+		((Activity) plan.getPlanElements().get(6)).setCoord(new Coord(100.0, 0.0));
+
+		Person person = plan.getPerson();
+		List<DiscreteModeChoiceTrip> trips = planBuilder.buildDiscreteModeChoiceTrips();
+
+		Config config = ConfigUtils.createConfig();
+
+		ModeParams carParams = config.planCalcScore().getOrCreateModeParams(TransportMode.car);
+		carParams.setConstant(-1.0);
+		carParams.setMarginalUtilityOfTraveling(-6.0);
+		carParams.setMonetaryDistanceRate(-0.001);
+
+		ScoringParameters parameters = new ScoringParameters.Builder(config.planCalcScore(),
+				config.planCalcScore().getScoringParameters(null), config.scenario()).build();
+
+		TripEstimator fallbackEstimator = (p, mode, trip, previousTrips) -> new DefaultTripCandidate(-100.0, mode);
+
+		SkimTripEstimator estimator = new SkimTripEstimator(repository, Arrays.asList(TransportMode.car),
+				p -> parameters, fallbackEstimator, FacilitiesUtils.createActivityFacilities());
+
+		double expectedUtility = -1.0 - 6.0 * 600.0 / 3600.0 - 0.001 * 1500.0 - 2.0;
+		assertEquals(expectedUtility,
+				estimator.estimateTrip(person, TransportMode.car, trips.get(0), Collections.emptyList()).getUtility(),
+				1e-6);
+
+		// Unreachable zones, intrazonal trips and modes without skims are estimated
+		// by the fallback
+		assertEquals(-100.0,
+				estimator.estimateTrip(person, TransportMode.car, trips.get(1), Collections.emptyList()).getUtility());
+		assertEquals(-100.0,
+				estimator.estimateTrip(person, TransportMode.car, trips.get(2), Collections.emptyList()).getUtility());
+		assertEquals(-100.0,
+				estimator.estimateTrip(person, TransportMode.walk, trips.get(0), Collections.emptyList()).getUtility());
+		assertEquals(-100.0,
+				estimator.estimateTrip(person, TransportMode.pt, trips.get(0), Collections.emptyList()).getUtility());
+	}
+}
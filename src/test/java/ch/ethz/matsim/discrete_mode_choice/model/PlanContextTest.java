@@ -0,0 +1,80 @@
+package ch.ethz.matsim.discrete_mode_choice.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.facilities.ActivityFacility;
+
+import ch.ethz.matsim.discrete_mode_choice.test_utils.PlanBuilder;
+
+public class PlanContextTest {
+	@Test
+	public void testPlanContext() {
+		List<DiscreteModeChoiceTrip> trips = new PlanBuilder() //
+				.addActivityWithFacilityId("home", "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", "B") //
+				.addLeg() //
+				.addActivityWithFacilityId("shop", "C") //
+				.addLeg() //
+				.addActivityWithFacilityId("home", "A") //
+				.buildDiscreteModeChoiceTrips();
+
+		PlanContext context = trips.get(0).getPlanContext();
+		Assertions.assertNotNull(context);
+		Assertions.assertSame(context, PlanContext.get(trips.subList(1, 3)));
+
+		Assertions.assertEquals(3, context.getNumberOfTrips());
+		Assertions.assertEquals(3, context.getNumberOfLocations());
+
+		Assertions.assertEquals(0, context.getOriginLocation(0));
+		Assertions.assertEquals(1, context.getDestinationLocation(0));
+		Assertions.assertEquals(2, context.getDestinationLocation(1));
+		Assertions.assertEquals(0, context.getDestinationLocation(2));
+
+		Assertions.assertEquals(Id.create("C", ActivityFacility.class), context.getLocationId(2));
+		Assertions.assertEquals(1, context.getLocationIndex(Id.create("B", ActivityFacility.class)));
+		Assertions.assertEquals(-1, context.getLocationIndex(Id.create("D", ActivityFacility.class)));
+
+		Assertions.assertEquals(context.getActivityTypeCode("home"), context.getOriginActivityType(0));
+		Assertions.assertEquals(context.getActivityTypeCode("home"), context.getDestinationActivityType(2));
+		Assertions.assertEquals(-1, context.getActivityTypeCode("leisure"));
+
+		Assertions.assertEquals(1, context.getFirstLocationOfType("work"));
+		Assertions.assertEquals(-1, context.getFirstLocationOfType("leisure"));
+
+		for (int index = 0; index < trips.size(); index++) {
+			Assertions.assertEquals(index, trips.get(index).getPlanIndex());
+			Assertions.assertEquals(trips.get(index).getDepartureTime(), context.getDepartureTime(index));
+			Assertions.assertTrue(Double.isNaN(context.getBeelineDistance(index)));
+		}
+	}
+
+	@Test
+	public void testTripsWithoutContext() {
+		List<DiscreteModeChoiceTrip> trips = new ArrayList<>();
+
+		for (DiscreteModeChoiceTrip trip : new PlanBuilder() //
+				.addActivityWithFacilityId("home", "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", "B") //
+				.addLeg() //
+				.addActivityWithFacilityId("home", "A") //
+				.buildDiscreteModeChoiceTrips()) {
+			trips.add(new DiscreteModeChoiceTrip(trip.getOriginActivity(), trip.getDestinationActivity(),
+					trip.getInitialMode(), trip.getInitialElements(), trip.getDepartureTime(), 0, trips.size()));
+		}
+
+		// A context cannot be created from a tour, since the indices refer to the plan
+		Assertions.assertThrows(IllegalStateException.class, () -> PlanContext.get(trips.subList(1, 2)));
+		Assertions.assertNull(trips.get(1).getPlanContext());
+
+		PlanContext context = PlanContext.getOrCreate(trips);
+		Assertions.assertEquals(2, context.getNumberOfTrips());
+		Assertions.assertSame(context, PlanContext.get(trips.subList(1, 2)));
+		Assertions.assertEquals(1, trips.get(1).getPlanIndex());
+	}
+}
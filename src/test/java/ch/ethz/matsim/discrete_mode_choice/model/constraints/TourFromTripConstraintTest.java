@@ -0,0 +1,71 @@
+package ch.ethz.matsim.discrete_mode_choice.model.constraints;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripConstraint;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
+import ch.ethz.matsim.discrete_mode_choice.test_utils.PlanBuilder;
+
+public class TourFromTripConstraintTest {
+	@Test
+	public void testPrefixReusesPreviousModes() {
+		List<DiscreteModeChoiceTrip> trips = new PlanBuilder() //
+				.addActivityWithLinkId("home", "A") //
+				.addLeg() //
+				.addActivityWithLinkId("work", "B") //
+				.addLeg() //
+				.addActivityWithLinkId("shop", "C") //
+				.addLeg() //
+				.addActivityWithLinkId("home", "A") //
+				.buildDiscreteModeChoiceTrips();
+
+		List<List<String>> passedLists = new ArrayList<>();
+		List<List<String>> passedModes = new ArrayList<>();
+
+		TourFromTripConstraint constraint = new TourFromTripConstraint(new TripConstraint() {
+			@Override
+			public boolean validateBeforeEstimation(DiscreteModeChoiceTrip trip, String mode,
+					List<String> previousModes) {
+				passedLists.add(previousModes);
+				passedModes.add(new ArrayList<>(previousModes));
+				return true;
+			}
+
+			@Override
+			public boolean validateAfterEstimation(DiscreteModeChoiceTrip trip, TripCandidate candidate,
+					List<TripCandidate> previousCandidates) {
+				return true;
+			}
+		});
+
+		List<List<String>> previousTourModes = Collections.singletonList(Arrays.asList("bike"));
+
+		// Prefixes in depth-first order
+		constraint.validatePrefix(trips, Arrays.asList("car"), previousTourModes);
+		constraint.validatePrefix(trips, Arrays.asList("car", "walk"), previousTourModes);
+		constraint.validatePrefix(trips, Arrays.asList("car", "walk", "car"), previousTourModes);
+		constraint.validatePrefix(trips, Arrays.asList("car", "car"), previousTourModes);
+		constraint.validatePrefix(trips, Arrays.asList("walk"), previousTourModes);
+		constraint.validatePrefix(trips, Arrays.asList("walk", "car"), previousTourModes);
+
+		Assertions.assertEquals(Arrays.asList(Arrays.asList("bike"), Arrays.asList("bike", "car"),
+				Arrays.asList("bike", "car", "walk"), Arrays.asList("bike", "car"), Arrays.asList("bike"),
+				Arrays.asList("bike", "walk")), passedModes);
+
+		// The wrapped constraint always sees the same list
+		for (List<String> passedList : passedLists) {
+			Assertions.assertSame(passedLists.get(0), passedList);
+		}
+
+		// Other previous tours are taken into account
+		constraint.validatePrefix(trips, Arrays.asList("car", "pt"), Collections.emptyList());
+		Assertions.assertEquals(Arrays.asList("car"), passedModes.get(passedModes.size() - 1));
+	}
+}
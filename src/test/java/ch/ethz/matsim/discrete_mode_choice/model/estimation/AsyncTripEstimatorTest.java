@@ -0,0 +1,125 @@
+package ch.ethz.matsim.discrete_mode_choice.model.estimation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.population.Person;
+
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.CumulativeTourEstimator;
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripEstimator;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.DefaultTripCandidate;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
+import ch.ethz.matsim.discrete_mode_choice.test_utils.PlanBuilder;
+
+public class AsyncTripEstimatorTest {
+	/**
+	 * Fails if it is used by more than one thread.
+	 */
+	static private class SingleThreadEstimator implements TripEstimator {
+		private Thread thread = null;
+
+		@Override
+		public TripCandidate estimateTrip(Person person, String mode, DiscreteModeChoiceTrip trip,
+				List<TripCandidate> previousTrips) {
+			if (thread == null) {
+				thread = Thread.currentThread();
+			}
+
+			Assertions.assertSame(thread, Thread.currentThread());
+			return new DefaultTripCandidate(mode.length(), mode);
+		}
+	}
+
+	@Test
+	public void testEstimateTripModes() {
+		PlanBuilder planBuilder = new PlanBuilder() //
+				.addActivityWithFacilityId("home", "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", "B");
+
+		Person person = planBuilder.buildPlan().getPerson();
+		DiscreteModeChoiceTrip trip = planBuilder.buildDiscreteModeChoiceTrips().get(0);
+
+		Set<TripEstimator> workerEstimators = ConcurrentHashMap.newKeySet();
+
+		EstimationExecutor executor = new EstimationExecutor(2, 2);
+
+		// Both estimators share the worker estimators, since they have the same name
+		List<TripEstimator> estimators = new ArrayList<>();
+
+		for (int i = 0; i < 2; i++) {
+			estimators.add(new AsyncTripEstimator(new SingleThreadEstimator(), "test", () -> {
+				TripEstimator workerEstimator = new SingleThreadEstimator();
+				workerEstimators.add(workerEstimator);
+				return workerEstimator;
+			}, executor));
+		}
+
+		List<String> modes = Arrays.asList("car", "pt", "walk", "bike", "car_passenger", "taxi", "drt");
+
+		for (int k = 0; k < 100; k++) {
+			for (TripEstimator estimator : estimators) {
+				List<TripCandidate> candidates = estimator.estimateTripModes(person, modes, trip,
+						Collections.emptyList());
+				List<String> candidateModes = new ArrayList<>();
+
+				for (TripCandidate candidate : candidates) {
+					candidateModes.add(candidate.getMode());
+					Assertions.assertEquals(candidate.getMode().length(), candidate.getUtility());
+				}
+
+				Assertions.assertEquals(modes, candidateModes);
+			}
+		}
+
+		executor.shutdown();
+
+		// At most one estimator for each worker and the calling thread
+		Assertions.assertTrue(workerEstimators.size() <= 3);
+	}
+
+	@Test
+	public void testPrefetchTourTrips() {
+		PlanBuilder planBuilder = new PlanBuilder() //
+				.addActivityWithFacilityId("home", "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", "B") //
+				.addLeg() //
+				.addActivityWithFacilityId("home", "A");
+
+		Person person = planBuilder.buildPlan().getPerson();
+		List<DiscreteModeChoiceTrip> trips = planBuilder.buildDiscreteModeChoiceTrips();
+
+		AtomicInteger callingThreadEstimates = new AtomicInteger();
+
+		EstimationExecutor executor = new EstimationExecutor(2, 16);
+		TripEstimator asyncEstimator = new AsyncTripEstimator((p, mode, trip, previousTrips) -> {
+			callingThreadEstimates.incrementAndGet();
+			return new DefaultTripCandidate(mode.length(), mode);
+		}, "test", SingleThreadEstimator::new, executor);
+
+		CumulativeTourEstimator tourEstimator = new CumulativeTourEstimator(
+				new CachedTripEstimator(asyncEstimator, Arrays.asList("car", "pt")), false,
+				Arrays.asList("car", "pt"));
+
+		tourEstimator.prepareTour(person, Arrays.asList("car", "pt", "walk"), trips, Collections.emptyList());
+
+		// One mode per trip is estimated by the calling thread, the other one by a worker
+		Assertions.assertEquals(2, callingThreadEstimates.get());
+
+		// Afterwards, the tours are estimated from the cache
+		tourEstimator.estimateTour(person, Arrays.asList("car", "pt"), trips, Collections.emptyList());
+		tourEstimator.estimateTour(person, Arrays.asList("pt", "car"), trips, Collections.emptyList());
+		Assertions.assertEquals(2, callingThreadEstimates.get());
+
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,113 @@
+package ch.ethz.matsim.discrete_mode_choice.model.estimation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.population.Person;
+
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripEstimator;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.DefaultTripCandidate;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
+import ch.ethz.matsim.discrete_mode_choice.test_utils.PlanBuilder;
+
+public class CachedTripEstimatorTest {
+	/**
+	 * Records the batch calls and returns the number of previous trips as the
+	 * utility.
+	 */
+	static private class RecordingEstimator implements TripEstimator {
+		final List<List<String>> batches = new ArrayList<>();
+
+		@Override
+		public TripCandidate estimateTrip(Person person, String mode, DiscreteModeChoiceTrip trip,
+				List<TripCandidate> previousTrips) {
+			return new DefaultTripCandidate(previousTrips.size(), mode);
+		}
+
+		@Override
+		public List<TripCandidate> estimateTripModes(Person person, List<String> modes, DiscreteModeChoiceTrip trip,
+				List<TripCandidate> previousTrips) {
+			batches.add(new ArrayList<>(modes));
+			return TripEstimator.super.estimateTripModes(person, modes, trip, previousTrips);
+		}
+
+		@Override
+		public List<TripCandidate> estimateTrips(Person person, List<String> modes, List<DiscreteModeChoiceTrip> trips,
+				List<TripCandidate> previousTrips) {
+			batches.add(new ArrayList<>(modes));
+			return TripEstimator.super.estimateTrips(person, modes, trips, previousTrips);
+		}
+	}
+
+	private PlanBuilder createPlanBuilder() {
+		return new PlanBuilder() //
+				.addActivityWithFacilityId("home", "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", "B") //
+				.addLeg() //
+				.addActivityWithFacilityId("shop", "C") //
+				.addLeg() //
+				.addActivityWithFacilityId("home", "A");
+	}
+
+	@Test
+	public void testEstimateTripModes() {
+		PlanBuilder planBuilder = createPlanBuilder();
+		Person person = planBuilder.buildPlan().getPerson();
+		DiscreteModeChoiceTrip trip = planBuilder.buildDiscreteModeChoiceTrips().get(0);
+
+		RecordingEstimator delegate = new RecordingEstimator();
+		TripEstimator estimator = new CachedTripEstimator(delegate, Arrays.asList("car"));
+
+		List<TripCandidate> candidates = estimator.estimateTripModes(person, Arrays.asList("car", "pt", "walk"), trip,
+				Collections.emptyList());
+		Assertions.assertEquals(Arrays.asList("car", "pt", "walk"), getModes(candidates));
+
+		candidates = estimator.estimateTripModes(person, Arrays.asList("car", "pt", "walk"), trip,
+				Collections.emptyList());
+		Assertions.assertEquals(Arrays.asList("car", "pt", "walk"), getModes(candidates));
+
+		// The cached car estimate is not requested again
+		Assertions.assertEquals(Arrays.asList(Arrays.asList("car", "pt", "walk"), Arrays.asList("pt", "walk")),
+				delegate.batches);
+	}
+
+	@Test
+	public void testEstimateTrips() {
+		PlanBuilder planBuilder = createPlanBuilder();
+		Person person = planBuilder.buildPlan().getPerson();
+		List<DiscreteModeChoiceTrip> trips = planBuilder.buildDiscreteModeChoiceTrips();
+
+		RecordingEstimator delegate = new RecordingEstimator();
+		TripEstimator estimator = new CachedTripEstimator(delegate, Arrays.asList("car"));
+
+		estimator.estimateTrip(person, "car", trips.get(1), Collections.emptyList());
+		delegate.batches.clear();
+
+		List<TripCandidate> candidates = estimator.estimateTrips(person, Arrays.asList("pt", "car", "walk"), trips,
+				Collections.emptyList());
+		Assertions.assertEquals(Arrays.asList("pt", "car", "walk"), getModes(candidates));
+
+		// The batch is split around the cached trip
+		Assertions.assertEquals(Arrays.asList(Arrays.asList("pt"), Arrays.asList("walk")), delegate.batches);
+
+		// Every trip sees the preceding trips of the chain
+		Assertions.assertEquals(0.0, candidates.get(0).getUtility());
+		Assertions.assertEquals(2.0, candidates.get(2).getUtility());
+	}
+
+	private List<String> getModes(List<TripCandidate> candidates) {
+		List<String> modes = new ArrayList<>();
+
+		for (TripCandidate candidate : candidates) {
+			modes.add(candidate.getMode());
+		}
+
+		return modes;
+	}
+}
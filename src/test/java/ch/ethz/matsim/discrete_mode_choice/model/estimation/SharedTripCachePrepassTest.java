@@ -0,0 +1,99 @@
+package ch.ethz.matsim.discrete_mode_choice.model.estimation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.population.Person;
+
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripEstimator;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.DefaultTripCandidate;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
+import ch.ethz.matsim.discrete_mode_choice.test_utils.PlanBuilder;
+
+public class SharedTripCachePrepassTest {
+	static private class CountingEstimator implements TripEstimator {
+		final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public TripCandidate estimateTrip(Person person, String mode, DiscreteModeChoiceTrip trip,
+				List<TripCandidate> previousTrips) {
+			count.incrementAndGet();
+			return new DefaultTripCandidate(1.0, mode);
+		}
+	}
+
+	private PlanBuilder createPlanBuilder(String workFacilityId) {
+		return new PlanBuilder() //
+				.addActivityWithFacilityId("home", 3600.0, "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", workFacilityId) //
+				.addLeg() //
+				.addActivityWithFacilityId("home", "A");
+	}
+
+	@Test
+	public void testDistinctRequests() {
+		CountingEstimator delegate = new CountingEstimator();
+		SharedTripEstimateCache cache = new SharedTripEstimateCache(Collections.emptySet(), 900.0, 1000, 0,
+				"subpopulation");
+		TripEstimator estimator = new SharedCachedTripEstimator(delegate, cache, Arrays.asList("car", "pt"));
+
+		AtomicInteger numberOfEstimators = new AtomicInteger();
+		EstimationExecutor executor = new EstimationExecutor(2, 32);
+
+		try {
+			SharedTripCachePrepass prepass = new SharedTripCachePrepass(cache, Arrays.asList("car", "pt"),
+					(person, trips) -> Arrays.asList("car", "pt", "walk"), () -> {
+						numberOfEstimators.incrementAndGet();
+						return estimator;
+					}, executor);
+
+			verifyDistinctRequests(prepass, estimator, delegate, cache);
+
+			// Every worker thread creates its estimator once for all runs
+			Assertions.assertTrue(numberOfEstimators.get() <= 2);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private void verifyDistinctRequests(SharedTripCachePrepass prepass, TripEstimator estimator,
+			CountingEstimator delegate, SharedTripEstimateCache cache) {
+		List<PlanBuilder> planBuilders = Arrays.asList(createPlanBuilder("B"), createPlanBuilder("B"),
+				createPlanBuilder("C"));
+
+		for (PlanBuilder planBuilder : planBuilders) {
+			prepass.addTrips(planBuilder.buildPlan().getPerson(), planBuilder.buildDiscreteModeChoiceTrips());
+		}
+
+		// Two destinations, two trips per plan and two cached modes
+		Assertions.assertEquals(8, prepass.run());
+		Assertions.assertEquals(8, delegate.count.get());
+		Assertions.assertEquals(8, cache.size());
+
+		// Mode choice only looks up the cached estimates
+		for (PlanBuilder planBuilder : planBuilders) {
+			Person person = planBuilder.buildPlan().getPerson();
+
+			for (DiscreteModeChoiceTrip trip : planBuilder.buildDiscreteModeChoiceTrips()) {
+				estimator.estimateTrip(person, "car", trip, Collections.emptyList());
+				estimator.estimateTrip(person, "pt", trip, Collections.emptyList());
+			}
+		}
+
+		Assertions.assertEquals(8, delegate.count.get());
+
+		// Requests that are already cached are not estimated again
+		for (PlanBuilder planBuilder : planBuilders) {
+			prepass.addTrips(planBuilder.buildPlan().getPerson(), planBuilder.buildDiscreteModeChoiceTrips());
+		}
+
+		Assertions.assertEquals(0, prepass.run());
+		Assertions.assertEquals(8, delegate.count.get());
+	}
+}
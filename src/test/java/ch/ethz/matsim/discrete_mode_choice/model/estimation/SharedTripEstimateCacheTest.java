@@ -0,0 +1,110 @@
+package ch.ethz.matsim.discrete_mode_choice.model.estimation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.population.Person;
+
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripEstimator;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.DefaultTripCandidate;
+import ch.ethz.matsim.discrete_mode_choice.test_utils.PlanBuilder;
+
+public class SharedTripEstimateCacheTest {
+	static private class CountingEstimator implements TripEstimator {
+		final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public DefaultTripCandidate estimateTrip(Person person, String mode, DiscreteModeChoiceTrip trip,
+				List<ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate> previousTrips) {
+			count.incrementAndGet();
+			return new DefaultTripCandidate(1.0, mode);
+		}
+	}
+
+	private PlanBuilder createPlanBuilder(String personClass, double departureTime) {
+		PlanBuilder planBuilder = new PlanBuilder() //
+				.addActivityWithFacilityId("home", departureTime, "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", "B") //
+				.addLeg() //
+				.addActivityWithFacilityId("home", "A");
+
+		planBuilder.buildPlan().getPerson().getAttributes().putAttribute("subpopulation", personClass);
+		return planBuilder;
+	}
+
+	private void estimate(TripEstimator estimator, PlanBuilder planBuilder, String mode) {
+		Person person = planBuilder.buildPlan().getPerson();
+
+		for (DiscreteModeChoiceTrip trip : planBuilder.buildDiscreteModeChoiceTrips()) {
+			estimator.estimateTrip(person, mode, trip, Collections.emptyList());
+		}
+	}
+
+	@Test
+	public void testSharedBetweenAgents() {
+		CountingEstimator delegate = new CountingEstimator();
+		SharedTripEstimateCache cache = new SharedTripEstimateCache(Collections.emptySet(), 900.0, 1000, 0,
+				"subpopulation");
+		TripEstimator estimator = new SharedCachedTripEstimator(delegate, cache, Arrays.asList("car"));
+
+		estimate(estimator, createPlanBuilder("a", 3600.0), "car");
+		Assertions.assertEquals(2, delegate.count.get());
+
+		// Same origin, destination and time bin
+		estimate(estimator, createPlanBuilder("a", 3700.0), "car");
+		Assertions.assertEquals(2, delegate.count.get());
+
+		// Other person class
+		estimate(estimator, createPlanBuilder("b", 3600.0), "car");
+		Assertions.assertEquals(4, delegate.count.get());
+
+		// Other time bin
+		estimate(estimator, createPlanBuilder("a", 7200.0), "car");
+		Assertions.assertEquals(6, delegate.count.get());
+
+		// Mode that is not cached
+		estimate(estimator, createPlanBuilder("a", 3600.0), "walk");
+		estimate(estimator, createPlanBuilder("a", 3600.0), "walk");
+		Assertions.assertEquals(10, delegate.count.get());
+	}
+
+	@Test
+	public void testIterations() {
+		CountingEstimator delegate = new CountingEstimator();
+		SharedTripEstimateCache cache = new SharedTripEstimateCache(Arrays.asList("car"), 900.0, 1000, 2,
+				"subpopulation");
+		TripEstimator estimator = new SharedCachedTripEstimator(delegate, cache, Arrays.asList("car", "pt"));
+
+		cache.startIteration(0);
+		estimate(estimator, createPlanBuilder("a", 3600.0), "car");
+		estimate(estimator, createPlanBuilder("a", 3600.0), "pt");
+		Assertions.assertEquals(4, cache.size());
+
+		// Car is invalidated in every iteration
+		cache.startIteration(1);
+		Assertions.assertEquals(2, cache.size());
+
+		// Pt is removed after two iterations
+		cache.startIteration(2);
+		Assertions.assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testMaximumSize() {
+		CountingEstimator delegate = new CountingEstimator();
+		SharedTripEstimateCache cache = new SharedTripEstimateCache(Collections.emptySet(), 1.0, 10, 0,
+				"subpopulation");
+		TripEstimator estimator = new SharedCachedTripEstimator(delegate, cache, Arrays.asList("car"));
+
+		for (int k = 0; k < 100; k++) {
+			estimate(estimator, createPlanBuilder("a", 3600.0 * k), "car");
+			Assertions.assertTrue(cache.size() <= 10);
+		}
+	}
+}
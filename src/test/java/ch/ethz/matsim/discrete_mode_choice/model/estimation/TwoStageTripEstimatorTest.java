@@ -0,0 +1,90 @@
+package ch.ethz.matsim.discrete_mode_choice.model.estimation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.population.Person;
+
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripEstimator;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.DefaultTripCandidate;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.PrunedTripCandidate;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
+import ch.ethz.matsim.discrete_mode_choice.test_utils.PlanBuilder;
+
+public class TwoStageTripEstimatorTest {
+	@Test
+	public void testPruning() {
+		PlanBuilder planBuilder = new PlanBuilder() //
+				.addActivityWithFacilityId("home", "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", "B");
+
+		Person person = planBuilder.buildPlan().getPerson();
+		DiscreteModeChoiceTrip trip = planBuilder.buildDiscreteModeChoiceTrips().get(0);
+
+		Map<String, Double> proxyUtilities = new HashMap<>();
+		proxyUtilities.put("walk", 0.0);
+		proxyUtilities.put("car", -2.0);
+		proxyUtilities.put("pt", -10.0);
+		proxyUtilities.put("bike", -10.0);
+		proxyUtilities.put("taxi", Double.NaN);
+
+		List<String> observedModes = new ArrayList<>();
+
+		TwoStageTripEstimator.ProxyEstimator proxyEstimator = new TwoStageTripEstimator.ProxyEstimator() {
+			@Override
+			public double estimateProxyUtility(Person person, String mode, DiscreteModeChoiceTrip trip) {
+				return proxyUtilities.get(mode);
+			}
+
+			@Override
+			public void observe(Person person, String mode, DiscreteModeChoiceTrip trip, TripCandidate candidate) {
+				observedModes.add(mode);
+			}
+		};
+
+		List<String> estimatedModes = new ArrayList<>();
+
+		TripEstimator exactEstimator = (p, mode, t, previousTrips) -> {
+			estimatedModes.add(mode);
+			return new DefaultTripCandidate(1.0, mode);
+		};
+
+		TripEstimator delegate = new CachedTripEstimator(
+				new TwoStageTripEstimator.ObservingEstimator(exactEstimator, proxyEstimator),
+				Arrays.asList("walk", "car", "pt", "bike", "taxi"));
+
+		// Bike is not in the pruned modes, and taxi has no proxy utility
+		TripEstimator estimator = new TwoStageTripEstimator(delegate, proxyEstimator,
+				Arrays.asList("car", "pt", "taxi"), 5.0);
+
+		List<TripCandidate> candidates = estimator.estimateTripModes(person,
+				Arrays.asList("walk", "car", "pt", "bike", "taxi"), trip, Collections.emptyList());
+
+		Assertions.assertEquals(5, candidates.size());
+		Assertions.assertEquals("pt", candidates.get(2).getMode());
+		Assertions.assertTrue(candidates.get(2) instanceof PrunedTripCandidate);
+
+		Assertions.assertEquals(Arrays.asList("walk", "car", "bike", "taxi"), estimatedModes);
+		Assertions.assertEquals(estimatedModes, observedModes);
+
+		// Cached estimates are not observed again
+		estimator.estimateTripModes(person, Arrays.asList("walk", "car", "pt", "bike", "taxi"), trip,
+				Collections.emptyList());
+		Assertions.assertEquals(Arrays.asList("walk", "car", "bike", "taxi"), observedModes);
+
+		// Single estimates are always exact
+		estimatedModes.clear();
+		observedModes.clear();
+		Assertions.assertEquals(1.0, estimator.estimateTrip(person, "pt", trip, Collections.emptyList()).getUtility());
+		Assertions.assertEquals(Arrays.asList("pt"), estimatedModes);
+		Assertions.assertEquals(Arrays.asList("pt"), observedModes);
+	}
+}
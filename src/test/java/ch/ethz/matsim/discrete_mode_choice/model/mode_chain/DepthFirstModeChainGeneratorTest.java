@@ -0,0 +1,193 @@
+package ch.ethz.matsim.discrete_mode_choice.model.mode_chain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+
+public class DepthFirstModeChainGeneratorTest {
+	private Set<List<String>> collect(ModeChainGenerator generator) {
+		Set<List<String>> chains = new HashSet<>();
+
+		while (generator.hasNext()) {
+			chains.add(new ArrayList<>(generator.next()));
+		}
+
+		return chains;
+	}
+
+	@Test
+	public void testSameChainsAsDefault() {
+		List<String> modes = Arrays.asList("car", "pt", "walk");
+
+		Set<List<String>> defaultChains = collect(new DefaultModeChainGenerator(modes, 4));
+		Set<List<String>> depthFirstChains = collect(new DepthFirstModeChainGenerator(modes, 4));
+
+		Assertions.assertEquals(81, defaultChains.size());
+		Assertions.assertEquals(defaultChains, depthFirstChains);
+	}
+
+	@Test
+	public void testPruning() {
+		List<String> modes = Arrays.asList("car", "walk");
+		List<List<String>> testedPrefixes = new LinkedList<>();
+
+		ModeChainGenerator generator = new DepthFirstModeChainGenerator(modes, 3, prefix -> {
+			testedPrefixes.add(new LinkedList<>(prefix));
+			return !prefix.get(0).equals("car");
+		});
+
+		Set<List<String>> chains = collect(generator);
+
+		Assertions.assertEquals(4, chains.size());
+
+		for (List<String> chain : chains) {
+			Assertions.assertEquals("walk", chain.get(0));
+		}
+
+		// Only [car], [walk], [walk, car], [walk, walk] should have been tested
+		Assertions.assertEquals(4, testedPrefixes.size());
+	}
+
+	@Test
+	public void testChainsAreIndependent() {
+		List<String> modes = Arrays.asList("car", "walk");
+		ModeChainGenerator generator = new DepthFirstModeChainGenerator(modes, 2);
+
+		List<List<String>> chains = new ArrayList<>();
+
+		while (generator.hasNext()) {
+			chains.add(generator.next());
+		}
+
+		Assertions.assertEquals(Arrays.asList("car", "car"), chains.get(0));
+		Assertions.assertEquals(Arrays.asList("car", "walk"), chains.get(1));
+		Assertions.assertEquals(Arrays.asList("walk", "car"), chains.get(2));
+		Assertions.assertEquals(Arrays.asList("walk", "walk"), chains.get(3));
+	}
+
+	@Test
+	public void testModeChainBuffer() {
+		ModeRegistry registry = new ModeRegistry(Arrays.asList("car", "walk"));
+		ModeChainBuffer buffer = new ModeChainBuffer(registry, 3);
+
+		buffer.add("walk");
+		buffer.add("car");
+
+		Assertions.assertTrue(buffer.getChain() instanceof IndexedModeChain);
+		Assertions.assertEquals(Arrays.asList("walk", "car"), buffer.getChain());
+
+		// Unregistered modes make the chain fall back to strings
+		buffer.add("bike");
+
+		Assertions.assertFalse(buffer.getChain() instanceof IndexedModeChain);
+		Assertions.assertEquals(Arrays.asList("walk", "car", "bike"), buffer.getChain());
+
+		Assertions.assertTrue(
+				IndexedModeChain.copyOf(registry, Arrays.asList("car", "walk")) instanceof IndexedModeChain);
+		Assertions.assertEquals(Arrays.asList("car", "bike"),
+				IndexedModeChain.copyOf(registry, Arrays.asList("car", "bike")));
+	}
+
+	@Test
+	public void testEdgeCases() {
+		List<String> modes = Arrays.asList("car", "walk");
+
+		Set<List<String>> chains = collect(new DepthFirstModeChainGenerator(modes, 0));
+		Assertions.assertEquals(1, chains.size());
+		Assertions.assertTrue(chains.iterator().next().isEmpty());
+
+		chains = collect(new DepthFirstModeChainGenerator(Arrays.asList(), 3));
+		Assertions.assertEquals(0, chains.size());
+
+		chains = collect(new DepthFirstModeChainGenerator(modes, 3, prefix -> false));
+		Assertions.assertEquals(0, chains.size());
+	}
+
+	@Test
+	public void testIndexedChains() {
+		ModeRegistry registry = new ModeRegistry(Arrays.asList("car", "pt", "walk"));
+		ModeChainGenerator generator = new DepthFirstModeChainGenerator(registry, 3, prefix -> true);
+
+		while (generator.hasNext()) {
+			List<String> chain = generator.next();
+			Assertions.assertTrue(chain instanceof IndexedModeChain);
+
+			IndexedModeChain indexedChain = (IndexedModeChain) chain;
+
+			for (int i = 0; i < chain.size(); i++) {
+				Assertions.assertEquals(registry.getIndex(chain.get(i)), indexedChain.getModeIndex(i));
+			}
+		}
+
+		long mask = registry.getMask(Arrays.asList("car", "walk", "unknown"));
+		Assertions.assertTrue(ModeRegistry.isInMask(mask, registry.getIndex("car")));
+		Assertions.assertFalse(ModeRegistry.isInMask(mask, registry.getIndex("pt")));
+		Assertions.assertTrue(ModeRegistry.isInMask(mask, registry.getIndex("walk")));
+	}
+
+	@Test
+	public void testFixedPrefix() {
+		ModeRegistry registry = new ModeRegistry(Arrays.asList("car", "pt", "walk"));
+		List<List<String>> testedPrefixes = new LinkedList<>();
+
+		ModeChainGenerator generator = new DepthFirstModeChainGenerator(registry, 3, Arrays.asList("pt"), prefix -> {
+			testedPrefixes.add(new LinkedList<>(prefix));
+			return true;
+		});
+
+		Assertions.assertEquals(9, generator.getNumberOfAlternatives());
+
+		List<List<String>> chains = new ArrayList<>();
+
+		while (generator.hasNext()) {
+			chains.add(generator.next());
+		}
+
+		Assertions.assertEquals(9, chains.size());
+		Assertions.assertEquals(Arrays.asList("pt", "car", "car"), chains.get(0));
+		Assertions.assertEquals(Arrays.asList("pt", "walk", "walk"), chains.get(8));
+
+		for (List<String> chain : chains) {
+			Assertions.assertEquals("pt", chain.get(0));
+		}
+
+		// Only [pt] and [pt, car], [pt, pt], [pt, walk] should have been tested
+		Assertions.assertEquals(4, testedPrefixes.size());
+		Assertions.assertEquals(Arrays.asList("pt"), testedPrefixes.get(0));
+
+		// A rejected prefix does not produce any chain
+		generator = new DepthFirstModeChainGenerator(registry, 3, Arrays.asList("pt"),
+				prefix -> !prefix.get(0).equals("pt"));
+		Assertions.assertFalse(generator.hasNext());
+
+		// A prefix of full length is the only chain
+		generator = new DepthFirstModeChainGenerator(registry, 2, Arrays.asList("pt", "car"), prefix -> true);
+		Assertions.assertEquals(Arrays.asList(Arrays.asList("pt", "car")), new ArrayList<>(collect(generator)));
+	}
+
+	@Test
+	public void testFixedPrefixFallback() {
+		ModeRegistry registry = new ModeRegistry(Arrays.asList("car", "walk"));
+
+		// The default implementation filters the chains of another generator
+		ModeChainGeneratorFactory factory = (modes, person, trips) -> new DefaultModeChainGenerator(modes,
+				trips.size());
+
+		ModeChainGenerator generator = factory.createModeChainGenerator(registry, null,
+				Arrays.<DiscreteModeChoiceTrip>asList(null, null, null), Arrays.asList("walk", "car"), prefix -> true);
+
+		Set<List<String>> expected = new HashSet<>();
+		expected.add(Arrays.asList("walk", "car", "car"));
+		expected.add(Arrays.asList("walk", "car", "walk"));
+
+		Assertions.assertEquals(expected, collect(generator));
+	}
+}
@@ -0,0 +1,157 @@
+package ch.ethz.matsim.discrete_mode_choice.model.tour_based;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.facilities.ActivityFacility;
+
+import ch.ethz.matsim.discrete_mode_choice.components.constraints.SubtourModeConstraint;
+import ch.ethz.matsim.discrete_mode_choice.components.constraints.VehicleTourConstraint;
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.CumulativeTourEstimator;
+import ch.ethz.matsim.discrete_mode_choice.components.tour_finder.PlanTourFinder;
+import ch.ethz.matsim.discrete_mode_choice.components.utils.home_finder.HomeFinder;
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceModel.FallbackBehaviour;
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceModel.NoFeasibleChoiceException;
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.constraints.CompositeTourConstraintFactory;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.DepthFirstModeChainGenerator;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripEstimator;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.DefaultTripCandidate;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
+import ch.ethz.matsim.discrete_mode_choice.model.utilities.MaximumSelector;
+import ch.ethz.matsim.discrete_mode_choice.test_utils.PlanBuilder;
+
+public class BranchAndBoundTourSearchTest {
+	private final static List<String> MODES = Arrays.asList("car", "pt", "walk");
+	private final static Collection<String> RESTRICTED_MODES = Arrays.asList("car");
+	private final static HomeFinder HOME_FINDER = trips -> Id.create("A", ActivityFacility.class);
+
+	/**
+	 * Trip utilities are drawn randomly per trip and mode, using the car adds a
+	 * constant once per tour and using walk adds a positive constant.
+	 */
+	static private class TestEstimator extends CumulativeTourEstimator {
+		TestEstimator(List<DiscreteModeChoiceTrip> trips, long seed) {
+			super(createTripEstimator(trips, seed), true);
+		}
+
+		static private TripEstimator createTripEstimator(List<DiscreteModeChoiceTrip> trips, long seed) {
+			Map<DiscreteModeChoiceTrip, double[]> utilities = new IdentityHashMap<>();
+			Random random = new Random(seed);
+
+			for (DiscreteModeChoiceTrip trip : trips) {
+				utilities.put(trip, new double[] { random.nextDouble(), random.nextDouble(), random.nextDouble() });
+			}
+
+			return (person, mode, trip, previousTrips) -> new DefaultTripCandidate(
+					utilities.get(trip)[MODES.indexOf(mode)], mode);
+		}
+
+		@Override
+		public double estimateModeConstant(Person person, String mode) {
+			switch (mode) {
+			case "car":
+				return -1.5;
+			case "walk":
+				return 0.3;
+			default:
+				return 0.0;
+			}
+		}
+
+		@Override
+		public TourCandidate estimateTour(Person person, List<String> modes, List<DiscreteModeChoiceTrip> trips,
+				List<TripCandidate> tripCandidates, List<TourCandidate> previousTours) {
+			TourCandidate candidate = super.estimateTour(person, modes, trips, tripCandidates, previousTours);
+			double utility = candidate.getUtility();
+
+			for (String mode : new HashSet<>(modes)) {
+				utility += estimateModeConstant(person, mode);
+			}
+
+			return new DefaultTourCandidate(utility, candidate.getTripCandidates());
+		}
+	}
+
+	private PlanBuilder createPlanBuilder() {
+		return new PlanBuilder() //
+				.addActivityWithFacilityId("home", "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", "B") //
+				.addLeg() //
+				.addActivityWithFacilityId("other", "C") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", "B") //
+				.addLeg() //
+				.addActivityWithFacilityId("home", "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("other", "D") //
+				.addLeg() //
+				.addActivityWithFacilityId("other", "E") //
+				.addLeg() //
+				.addActivityWithFacilityId("home", "A");
+	}
+
+	private TourBasedModel createModel(TourEstimator estimator, boolean useBranchAndBound) {
+		CompositeTourConstraintFactory constraintFactory = new CompositeTourConstraintFactory();
+		constraintFactory.addFactory(new VehicleTourConstraint.Factory(RESTRICTED_MODES, HOME_FINDER));
+		constraintFactory.addFactory(new SubtourModeConstraint.Factory(RESTRICTED_MODES));
+
+		return new TourBasedModel(estimator, (person, trips) -> MODES, constraintFactory, new PlanTourFinder(),
+				(person, tour) -> true, new MaximumSelector.Factory(), new DepthFirstModeChainGenerator.Factory(),
+				FallbackBehaviour.EXCEPTION, useBranchAndBound);
+	}
+
+	private List<String> getModes(List<TripCandidate> candidates) {
+		return candidates.stream().map(TripCandidate::getMode).collect(Collectors.toList());
+	}
+
+	private double getUtility(Person person, List<DiscreteModeChoiceTrip> trips, List<String> modes,
+			TourEstimator estimator) {
+		double utility = 0.0;
+		int offset = 0;
+
+		for (List<DiscreteModeChoiceTrip> tourTrips : new PlanTourFinder().findTours(trips)) {
+			List<String> tourModes = modes.subList(offset, offset + tourTrips.size());
+			utility += estimator.estimateTour(person, tourModes, tourTrips, null).getUtility();
+			offset += tourTrips.size();
+		}
+
+		return utility;
+	}
+
+	@Test
+	public void testSameUtilityAsEnumeration() throws NoFeasibleChoiceException {
+		PlanBuilder planBuilder = createPlanBuilder();
+		List<DiscreteModeChoiceTrip> trips = planBuilder.buildDiscreteModeChoiceTrips();
+		Person person = planBuilder.buildPlan().getPerson();
+
+		for (long seed = 0; seed < 20; seed++) {
+			TourEstimator estimator = new TestEstimator(trips, seed);
+
+			List<String> enumeratedModes = getModes(
+					createModel(estimator, false).chooseModes(person, trips, new Random(0)));
+			List<String> searchedModes = getModes(
+					createModel(estimator, true).chooseModes(person, trips, new Random(0)));
+
+			Assertions.assertEquals(getUtility(person, trips, enumeratedModes, estimator),
+					getUtility(person, trips, searchedModes, estimator), 1e-9);
+		}
+	}
+
+	@Test
+	public void testRequiresAdditiveEstimator() {
+		TourEstimator estimator = (person, modes, trips, previousTours) -> null;
+		Assertions.assertThrows(IllegalStateException.class, () -> createModel(estimator, true));
+	}
+}
@@ -0,0 +1,166 @@
+package ch.ethz.matsim.discrete_mode_choice.model.tour_based;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.facilities.ActivityFacility;
+
+import ch.ethz.matsim.discrete_mode_choice.components.constraints.SubtourModeConstraint;
+import ch.ethz.matsim.discrete_mode_choice.components.constraints.VehicleTourConstraint;
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.CumulativeTourEstimator;
+import ch.ethz.matsim.discrete_mode_choice.components.tour_finder.PlanTourFinder;
+import ch.ethz.matsim.discrete_mode_choice.components.utils.home_finder.HomeFinder;
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceModel.FallbackBehaviour;
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceModel.NoFeasibleChoiceException;
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.constraints.CompositeTourConstraintFactory;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.DepthFirstModeChainGenerator;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.DefaultTripCandidate;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
+import ch.ethz.matsim.discrete_mode_choice.model.utilities.MaximumSelector;
+import ch.ethz.matsim.discrete_mode_choice.model.utilities.MultinomialLogitSelector;
+import ch.ethz.matsim.discrete_mode_choice.model.utilities.RandomSelector;
+import ch.ethz.matsim.discrete_mode_choice.model.utilities.StreamingMultinomialLogitSelector;
+import ch.ethz.matsim.discrete_mode_choice.model.utilities.UtilityCandidate;
+import ch.ethz.matsim.discrete_mode_choice.model.utilities.UtilitySelector;
+import ch.ethz.matsim.discrete_mode_choice.model.utilities.UtilitySelectorFactory;
+import ch.ethz.matsim.discrete_mode_choice.test_utils.PlanBuilder;
+
+public class ParallelTourEvaluatorTest {
+	private final static List<String> MODES = Arrays.asList("car", "pt", "walk");
+	private final static Collection<String> RESTRICTED_MODES = Arrays.asList("car");
+	private final static HomeFinder HOME_FINDER = trips -> Id.create("A", ActivityFacility.class);
+
+	private PlanBuilder createPlanBuilder() {
+		return new PlanBuilder() //
+				.addActivityWithFacilityId("home", "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", "B") //
+				.addLeg() //
+				.addActivityWithFacilityId("other", "C") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", "B") //
+				.addLeg() //
+				.addActivityWithFacilityId("home", "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("other", "D") //
+				.addLeg() //
+				.addActivityWithFacilityId("home", "A");
+	}
+
+	private TourEstimator createEstimator() {
+		return new CumulativeTourEstimator((person, mode, trip, previousTrips) -> new DefaultTripCandidate(
+				0.1 * MODES.indexOf(mode) + 0.01 * previousTrips.size(), mode));
+	}
+
+	private TourBasedModel createModel(TourConstraintFactory constraintFactory, UtilitySelectorFactory selectorFactory,
+			ParallelTourEvaluator evaluator) {
+		return new TourBasedModel(createEstimator(), (person, trips) -> MODES, constraintFactory,
+				new PlanTourFinder(), (person, tour) -> true, selectorFactory,
+				new DepthFirstModeChainGenerator.Factory(), FallbackBehaviour.EXCEPTION, false, evaluator);
+	}
+
+	private TourConstraintFactory createConstraintFactory() {
+		CompositeTourConstraintFactory constraintFactory = new CompositeTourConstraintFactory();
+		constraintFactory.addFactory(new VehicleTourConstraint.Factory(RESTRICTED_MODES, HOME_FINDER));
+		constraintFactory.addFactory(new SubtourModeConstraint.Factory(RESTRICTED_MODES));
+		return constraintFactory;
+	}
+
+	private void assertSameChoices(UtilitySelectorFactory selectorFactory) throws NoFeasibleChoiceException {
+		PlanBuilder planBuilder = createPlanBuilder();
+		List<DiscreteModeChoiceTrip> trips = planBuilder.buildDiscreteModeChoiceTrips();
+		Person person = planBuilder.buildPlan().getPerson();
+
+		TourConstraintFactory constraintFactory = createConstraintFactory();
+		ForkJoinPool pool = new ForkJoinPool(2);
+
+		try {
+			ParallelTourEvaluator evaluator = new ParallelTourEvaluator(this::createEstimator, constraintFactory,
+					new DepthFirstModeChainGenerator.Factory(), pool, 0.0);
+
+			TourBasedModel sequentialModel = createModel(constraintFactory, selectorFactory, null);
+			TourBasedModel parallelModel = createModel(constraintFactory, selectorFactory, evaluator);
+
+			Random sequentialRandom = new Random(0);
+			Random parallelRandom = new Random(0);
+
+			for (int k = 0; k < 100; k++) {
+				Assertions.assertEquals(getModes(sequentialModel.chooseModes(person, trips, sequentialRandom)),
+						getModes(parallelModel.chooseModes(person, trips, parallelRandom)));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private List<String> getModes(List<TripCandidate> candidates) {
+		return candidates.stream().map(TripCandidate::getMode).collect(Collectors.toList());
+	}
+
+	@Test
+	public void testSameChoicesAsSequential() throws NoFeasibleChoiceException {
+		// The candidates are merged in the order of the prefixes
+		assertSameChoices(new MultinomialLogitSelector.Factory(-700.0, 700.0, false));
+		assertSameChoices(new MaximumSelector.Factory());
+		assertSameChoices(new RandomSelector.Factory());
+
+		// Not mergeable, so the candidates are collected
+		assertSameChoices(() -> {
+			UtilitySelector delegate = new MultinomialLogitSelector(700.0, -700.0, false);
+
+			return new UtilitySelector() {
+				@Override
+				public void addCandidate(UtilityCandidate candidate) {
+					delegate.addCandidate(candidate);
+				}
+
+				@Override
+				public Optional<UtilityCandidate> select(Random random) {
+					return delegate.select(random);
+				}
+			};
+		});
+	}
+
+	@Test
+	public void testEstimatorPerWorkerThread() throws NoFeasibleChoiceException {
+		PlanBuilder planBuilder = createPlanBuilder();
+		List<DiscreteModeChoiceTrip> trips = planBuilder.buildDiscreteModeChoiceTrips();
+		Person person = planBuilder.buildPlan().getPerson();
+
+		TourConstraintFactory constraintFactory = createConstraintFactory();
+		AtomicInteger numberOfEstimators = new AtomicInteger();
+		ForkJoinPool pool = new ForkJoinPool(2);
+
+		try {
+			ParallelTourEvaluator evaluator = new ParallelTourEvaluator(() -> {
+				numberOfEstimators.incrementAndGet();
+				return createEstimator();
+			}, constraintFactory, new DepthFirstModeChainGenerator.Factory(), pool, 0.0);
+
+			TourBasedModel model = createModel(constraintFactory,
+					new StreamingMultinomialLogitSelector.Factory(-700.0, 700.0, false), evaluator);
+			Random random = new Random(0);
+
+			for (int k = 0; k < 100; k++) {
+				List<String> modes = getModes(model.chooseModes(person, trips, random));
+				Assertions.assertEquals(trips.size(), modes.size());
+			}
+
+			Assertions.assertTrue(numberOfEstimators.get() <= 2);
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
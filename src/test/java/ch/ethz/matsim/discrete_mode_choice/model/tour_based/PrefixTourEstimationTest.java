@@ -0,0 +1,117 @@
+package ch.ethz.matsim.discrete_mode_choice.model.tour_based;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.population.Person;
+
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.CumulativeTourEstimator;
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.DepthFirstModeChainGenerator;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeChainGenerator;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripEstimator;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.DefaultTripCandidate;
+import ch.ethz.matsim.discrete_mode_choice.test_utils.PlanBuilder;
+
+public class PrefixTourEstimationTest {
+	private final static List<String> MODES = Arrays.asList("car", "pt", "walk");
+
+	/**
+	 * Trip utilities are drawn randomly per trip and mode. Keeping the mode of the
+	 * previous trip gives a bonus, so the estimates depend on the prefix.
+	 */
+	static private TripEstimator createTripEstimator(List<DiscreteModeChoiceTrip> trips,
+			AtomicInteger numberOfEstimates) {
+		Map<DiscreteModeChoiceTrip, double[]> utilities = new IdentityHashMap<>();
+		Random random = new Random(1);
+
+		for (DiscreteModeChoiceTrip trip : trips) {
+			utilities.put(trip, new double[] { random.nextDouble(), random.nextDouble(), random.nextDouble() });
+		}
+
+		return (person, mode, trip, previousTrips) -> {
+			numberOfEstimates.incrementAndGet();
+			double utility = utilities.get(trip)[MODES.indexOf(mode)];
+
+			if (previousTrips.size() > 0 && previousTrips.get(previousTrips.size() - 1).getMode().equals(mode)) {
+				utility += 0.5;
+			}
+
+			return new DefaultTripCandidate(utility, mode);
+		};
+	}
+
+	static private List<TourCandidate> estimateAllChains(TourEstimator estimator, Person person,
+			List<DiscreteModeChoiceTrip> trips) {
+		PrefixTourEstimation estimation = new PrefixTourEstimation(estimator, trips.size());
+		ModeChainGenerator generator = new DepthFirstModeChainGenerator(MODES, trips.size());
+		List<TourCandidate> candidates = new ArrayList<>();
+
+		while (generator.hasNext()) {
+			candidates.add(estimation.estimateTour(person, generator.next(), trips, Collections.emptyList()));
+		}
+
+		return candidates;
+	}
+
+	@Test
+	public void testIncrementalEstimation() {
+		PlanBuilder planBuilder = new PlanBuilder() //
+				.addActivityWithFacilityId("home", "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", "B") //
+				.addLeg() //
+				.addActivityWithFacilityId("shop", "C") //
+				.addLeg() //
+				.addActivityWithFacilityId("home", "A");
+
+		Person person = planBuilder.buildPlan().getPerson();
+		List<DiscreteModeChoiceTrip> trips = planBuilder.buildDiscreteModeChoiceTrips();
+
+		// Full estimation, since the wrapper is not an IncrementalTourEstimator
+		AtomicInteger numberOfFullEstimates = new AtomicInteger(0);
+		TourEstimator fullDelegate = new CumulativeTourEstimator(createTripEstimator(trips, numberOfFullEstimates));
+		TourEstimator fullEstimator = (p, modes, tourTrips, previousTours) -> fullDelegate.estimateTour(p, modes,
+				tourTrips, previousTours);
+
+		List<TourCandidate> fullCandidates = estimateAllChains(fullEstimator, person, trips);
+
+		AtomicInteger numberOfIncrementalEstimates = new AtomicInteger(0);
+		TourEstimator incrementalEstimator = new CumulativeTourEstimator(
+				createTripEstimator(trips, numberOfIncrementalEstimates));
+
+		List<TourCandidate> incrementalCandidates = estimateAllChains(incrementalEstimator, person, trips);
+
+		Assertions.assertEquals(27, fullCandidates.size());
+		Assertions.assertEquals(fullCandidates.size(), incrementalCandidates.size());
+
+		for (int i = 0; i < fullCandidates.size(); i++) {
+			TourCandidate fullCandidate = fullCandidates.get(i);
+			TourCandidate incrementalCandidate = incrementalCandidates.get(i);
+
+			Assertions.assertEquals(fullCandidate.getUtility(), incrementalCandidate.getUtility(), 1e-12);
+			Assertions.assertEquals(trips.size(), incrementalCandidate.getTripCandidates().size());
+
+			for (int k = 0; k < trips.size(); k++) {
+				Assertions.assertEquals(fullCandidate.getTripCandidates().get(k).getMode(),
+						incrementalCandidate.getTripCandidates().get(k).getMode());
+				Assertions.assertEquals(fullCandidate.getTripCandidates().get(k).getUtility(),
+						incrementalCandidate.getTripCandidates().get(k).getUtility(), 1e-12);
+			}
+		}
+
+		// Every chain estimates all of its trips, while consecutive chains of the
+		// depth-first generator share their prefix and only estimate the remaining trips
+		Assertions.assertEquals(27 * 3, numberOfFullEstimates.get());
+		Assertions.assertTrue(numberOfIncrementalEstimates.get() < numberOfFullEstimates.get());
+		Assertions.assertEquals(3 + 9 + 27, numberOfIncrementalEstimates.get());
+	}
+}
@@ -0,0 +1,325 @@
+package ch.ethz.matsim.discrete_mode_choice.model.tour_based;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.facilities.ActivityFacility;
+
+import ch.ethz.matsim.discrete_mode_choice.components.constraints.SubtourModeConstraint;
+import ch.ethz.matsim.discrete_mode_choice.components.constraints.VehicleTourConstraint;
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.CumulativeTourEstimator;
+import ch.ethz.matsim.discrete_mode_choice.components.tour_finder.PlanTourFinder;
+import ch.ethz.matsim.discrete_mode_choice.components.utils.home_finder.HomeFinder;
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceModel.FallbackBehaviour;
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceModel.NoFeasibleChoiceException;
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.constraints.CompositeTourConstraintFactory;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.DefaultModeChainGenerator;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeChainGenerator;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.DynamicProgrammingTourModel.Objective;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.state_space.TourStateSpace;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.TripEstimator;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.DefaultTripCandidate;
+import ch.ethz.matsim.discrete_mode_choice.model.trip_based.candidates.TripCandidate;
+import ch.ethz.matsim.discrete_mode_choice.test_utils.PlanBuilder;
+
+public class SubtourFactorizedTourModelTest {
+	private final static List<String> MODES = Arrays.asList("car", "pt", "walk");
+	private final static Collection<String> RESTRICTED_MODES = Arrays.asList("car");
+	private final static HomeFinder HOME_FINDER = trips -> Id.create("A", ActivityFacility.class);
+
+	/**
+	 * Trip utilities are drawn randomly per trip and mode, using the car adds a
+	 * constant once per tour.
+	 */
+	static private class TestEstimator extends CumulativeTourEstimator {
+		TestEstimator(List<DiscreteModeChoiceTrip> trips) {
+			super(createTripEstimator(trips));
+		}
+
+		TestEstimator(TripEstimator tripEstimator) {
+			super(tripEstimator);
+		}
+
+		static private TripEstimator createTripEstimator(List<DiscreteModeChoiceTrip> trips) {
+			Map<DiscreteModeChoiceTrip, double[]> utilities = new IdentityHashMap<>();
+			Random random = new Random(1);
+
+			for (DiscreteModeChoiceTrip trip : trips) {
+				utilities.put(trip, new double[] { random.nextDouble(), random.nextDouble(), random.nextDouble() });
+			}
+
+			return (person, mode, trip, previousTrips) -> new DefaultTripCandidate(
+					utilities.get(trip)[MODES.indexOf(mode)], mode);
+		}
+
+		@Override
+		public double estimateModeConstant(Person person, String mode) {
+			return mode.equals("car") ? -1.5 : 0.0;
+		}
+
+		@Override
+		public TourCandidate estimateTour(Person person, List<String> modes, List<DiscreteModeChoiceTrip> trips,
+				List<TripCandidate> tripCandidates, List<TourCandidate> previousTours) {
+			TourCandidate candidate = super.estimateTour(person, modes, trips, tripCandidates, previousTours);
+			double utility = candidate.getUtility();
+
+			for (String mode : new HashSet<>(modes)) {
+				utility += estimateModeConstant(person, mode);
+			}
+
+			return new DefaultTourCandidate(utility, candidate.getTripCandidates());
+		}
+	}
+
+	private PlanBuilder createPlanBuilder() {
+		return new PlanBuilder() //
+				.addActivityWithFacilityId("home", "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", "B") //
+				.addLeg() //
+				.addActivityWithFacilityId("other", "C") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", "B") //
+				.addLeg() //
+				.addActivityWithFacilityId("home", "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("other", "D") //
+				.addLeg() //
+				.addActivityWithFacilityId("home", "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("shop", "E") //
+				.addLeg() //
+				.addActivityWithFacilityId("home", "A");
+	}
+
+	private Map<List<String>, Double> enumerateUtilities(Person person, List<DiscreteModeChoiceTrip> trips,
+			AdditiveTourEstimator estimator) {
+		CompositeTourConstraintFactory constraintFactory = new CompositeTourConstraintFactory();
+		constraintFactory.addFactory(new VehicleTourConstraint.Factory(RESTRICTED_MODES, HOME_FINDER));
+		constraintFactory.addFactory(new SubtourModeConstraint.Factory(RESTRICTED_MODES));
+		TourConstraint constraint = constraintFactory.createConstraint(person, trips, MODES);
+
+		Map<List<String>, Double> utilities = new HashMap<>();
+		ModeChainGenerator generator = new DefaultModeChainGenerator(MODES, trips.size());
+
+		while (generator.hasNext()) {
+			List<String> chain = generator.next();
+
+			if (constraint.validateBeforeEstimation(trips, chain, new ArrayList<>())) {
+				utilities.put(chain, estimator.estimateTour(person, chain, trips, new ArrayList<>()).getUtility());
+			}
+		}
+
+		return utilities;
+	}
+
+	private SubtourFactorizedTourModel createModel(AdditiveTourEstimator estimator, Objective objective) {
+		TourStateSpace.Factory stateSpaceFactory = new TourStateSpace.Factory(RESTRICTED_MODES, HOME_FINDER,
+				RESTRICTED_MODES);
+		return new SubtourFactorizedTourModel(estimator, (person, trips) -> MODES, stateSpaceFactory,
+				new PlanTourFinder(), (person, tour) -> true, objective, FallbackBehaviour.EXCEPTION);
+	}
+
+	private List<String> getModes(List<TripCandidate> candidates) {
+		return candidates.stream().map(TripCandidate::getMode).collect(Collectors.toList());
+	}
+
+	@Test
+	public void testMaximum() throws NoFeasibleChoiceException {
+		PlanBuilder planBuilder = createPlanBuilder();
+		List<DiscreteModeChoiceTrip> trips = planBuilder.buildDiscreteModeChoiceTrips();
+		Person person = planBuilder.buildPlan().getPerson();
+
+		AdditiveTourEstimator estimator = new TestEstimator(trips);
+		Map<List<String>, Double> utilities = enumerateUtilities(person, trips, estimator);
+		double maximumUtility = utilities.values().stream().mapToDouble(d -> d).max().getAsDouble();
+
+		SubtourFactorizedTourModel model = createModel(estimator, Objective.MAXIMUM);
+		List<String> chain = getModes(model.chooseModes(person, trips, new Random(0)));
+
+		Assertions.assertTrue(utilities.containsKey(chain));
+		Assertions.assertEquals(maximumUtility, utilities.get(chain), 1e-9);
+	}
+
+	@Test
+	public void testMultinomialLogit() throws NoFeasibleChoiceException {
+		PlanBuilder planBuilder = createPlanBuilder();
+		List<DiscreteModeChoiceTrip> trips = planBuilder.buildDiscreteModeChoiceTrips();
+		Person person = planBuilder.buildPlan().getPerson();
+
+		AdditiveTourEstimator estimator = new TestEstimator(trips);
+		Map<List<String>, Double> utilities = enumerateUtilities(person, trips, estimator);
+
+		double denominator = utilities.values().stream().mapToDouble(Math::exp).sum();
+		Set<List<String>> feasibleChains = utilities.keySet();
+
+		SubtourFactorizedTourModel model = createModel(estimator, Objective.MULTINOMIAL_LOGIT);
+		Map<List<String>, Integer> counts = new HashMap<>();
+		Random random = new Random(0);
+		int numberOfSamples = 20000;
+
+		for (int k = 0; k < numberOfSamples; k++) {
+			List<String> chain = getModes(model.chooseModes(person, trips, random));
+			Assertions.assertTrue(feasibleChains.contains(chain));
+			counts.put(chain, counts.getOrDefault(chain, 0) + 1);
+		}
+
+		for (Map.Entry<List<String>, Integer> entry : counts.entrySet()) {
+			double expectedShare = Math.exp(utilities.get(entry.getKey())) / denominator;
+			double actualShare = (double) entry.getValue() / numberOfSamples;
+			Assertions.assertEquals(expectedShare, actualShare, 0.01);
+		}
+	}
+
+	/**
+	 * Home - work - lunch - meeting - lunch - work - home: The sub-tour at lunch
+	 * is nested in the sub-tour at work, which is nested in the tour from home.
+	 */
+	private PlanBuilder createNestedPlanBuilder() {
+		return new PlanBuilder() //
+				.addActivityWithFacilityId("home", "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", "B") //
+				.addLeg() //
+				.addActivityWithFacilityId("lunch", "C") //
+				.addLeg() //
+				.addActivityWithFacilityId("meeting", "D") //
+				.addLeg() //
+				.addActivityWithFacilityId("lunch", "C") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", "B") //
+				.addLeg() //
+				.addActivityWithFacilityId("home", "A");
+	}
+
+	/**
+	 * For every trip, the previous own trip of its innermost sub-tour, or -1.
+	 */
+	private final static int[] PREVIOUS_OWN_TRIPS = new int[] { -1, -1, -1, 2, 1, 0 };
+
+	/**
+	 * Like the TestEstimator, but a trip gets a bonus if the previous trip that is
+	 * passed to the estimator has the same mode.
+	 */
+	static private class PathDependentEstimator extends TestEstimator {
+		PathDependentEstimator(List<DiscreteModeChoiceTrip> trips, List<Integer> numberOfPreviousTrips) {
+			super(createTripEstimator(trips, numberOfPreviousTrips));
+		}
+
+		static private TripEstimator createTripEstimator(List<DiscreteModeChoiceTrip> trips,
+				List<Integer> numberOfPreviousTrips) {
+			TripEstimator delegate = TestEstimator.createTripEstimator(trips);
+
+			return (person, mode, trip, previousTrips) -> {
+				numberOfPreviousTrips.set(trips.indexOf(trip), previousTrips.size());
+
+				double utility = delegate.estimateTrip(person, mode, trip, previousTrips).getUtility();
+
+				if (previousTrips.size() > 0 && previousTrips.get(previousTrips.size() - 1).getMode().equals(mode)) {
+					utility += 0.5;
+				}
+
+				return new DefaultTripCandidate(utility, mode);
+			};
+		}
+	}
+
+	/**
+	 * Utility of a chain if the bonus of the PathDependentEstimator is given with
+	 * respect to the previous own trip of the innermost sub-tour.
+	 */
+	private double calculateNestedUtility(Person person, List<DiscreteModeChoiceTrip> trips, List<String> chain,
+			AdditiveTourEstimator baseEstimator) {
+		double utility = baseEstimator.estimateTour(person, chain, trips, new ArrayList<>()).getUtility();
+
+		for (int index = 0; index < chain.size(); index++) {
+			int previousIndex = PREVIOUS_OWN_TRIPS[index];
+
+			if (previousIndex >= 0 && chain.get(previousIndex).equals(chain.get(index))) {
+				utility += 0.5;
+			}
+		}
+
+		return utility;
+	}
+
+	@Test
+	public void testNestedSubtours() throws NoFeasibleChoiceException {
+		PlanBuilder planBuilder = createNestedPlanBuilder();
+		List<DiscreteModeChoiceTrip> trips = planBuilder.buildDiscreteModeChoiceTrips();
+		Person person = planBuilder.buildPlan().getPerson();
+
+		AdditiveTourEstimator baseEstimator = new TestEstimator(trips);
+		Map<List<String>, Double> utilities = new HashMap<>();
+
+		for (List<String> chain : enumerateUtilities(person, trips, baseEstimator).keySet()) {
+			utilities.put(chain, calculateNestedUtility(person, trips, chain, baseEstimator));
+		}
+
+		double maximumUtility = utilities.values().stream().mapToDouble(d -> d).max().getAsDouble();
+
+		List<Integer> numberOfPreviousTrips = new ArrayList<>(Collections.nCopies(trips.size(), -1));
+		AdditiveTourEstimator estimator = new PathDependentEstimator(trips, numberOfPreviousTrips);
+
+		SubtourFactorizedTourModel model = createModel(estimator, Objective.MAXIMUM);
+		List<TripCandidate> candidates = model.chooseModes(person, trips, new Random(0));
+		List<String> chain = getModes(candidates);
+
+		Assertions.assertTrue(utilities.containsKey(chain));
+		Assertions.assertEquals(maximumUtility, utilities.get(chain), 1e-9);
+
+		// Only the previous own trips of the innermost sub-tour are passed on
+		Assertions.assertEquals(Arrays.asList(0, 0, 0, 1, 1, 1), numberOfPreviousTrips);
+	}
+
+	@Test
+	public void testNestedSubtoursMultinomialLogit() throws NoFeasibleChoiceException {
+		PlanBuilder planBuilder = createNestedPlanBuilder();
+		List<DiscreteModeChoiceTrip> trips = planBuilder.buildDiscreteModeChoiceTrips();
+		Person person = planBuilder.buildPlan().getPerson();
+
+		AdditiveTourEstimator baseEstimator = new TestEstimator(trips);
+		Map<List<String>, Double> utilities = new HashMap<>();
+
+		for (List<String> chain : enumerateUtilities(person, trips, baseEstimator).keySet()) {
+			utilities.put(chain, calculateNestedUtility(person, trips, chain, baseEstimator));
+		}
+
+		double denominator = utilities.values().stream().mapToDouble(Math::exp).sum();
+
+		AdditiveTourEstimator estimator = new PathDependentEstimator(trips,
+				new ArrayList<>(Collections.nCopies(trips.size(), -1)));
+		SubtourFactorizedTourModel model = createModel(estimator, Objective.MULTINOMIAL_LOGIT);
+
+		Map<List<String>, Integer> counts = new HashMap<>();
+		Random random = new Random(0);
+		int numberOfSamples = 20000;
+
+		for (int k = 0; k < numberOfSamples; k++) {
+			List<String> chain = getModes(model.chooseModes(person, trips, random));
+			Assertions.assertTrue(utilities.containsKey(chain));
+			counts.put(chain, counts.getOrDefault(chain, 0) + 1);
+		}
+
+		for (Map.Entry<List<String>, Integer> entry : counts.entrySet()) {
+			double expectedShare = Math.exp(utilities.get(entry.getKey())) / denominator;
+			double actualShare = (double) entry.getValue() / numberOfSamples;
+			Assertions.assertEquals(expectedShare, actualShare, 0.01);
+		}
+	}
+}
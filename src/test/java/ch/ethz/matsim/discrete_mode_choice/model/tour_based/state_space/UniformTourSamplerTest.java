@@ -0,0 +1,107 @@
+package ch.ethz.matsim.discrete_mode_choice.model.tour_based.state_space;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.facilities.ActivityFacility;
+
+import ch.ethz.matsim.discrete_mode_choice.components.constraints.SubtourModeConstraint;
+import ch.ethz.matsim.discrete_mode_choice.components.constraints.VehicleTourConstraint;
+import ch.ethz.matsim.discrete_mode_choice.components.utils.home_finder.HomeFinder;
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.constraints.CompositeTourConstraintFactory;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.DefaultModeChainGenerator;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeChainGenerator;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeRegistry;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.TourConstraint;
+import ch.ethz.matsim.discrete_mode_choice.test_utils.PlanBuilder;
+
+public class UniformTourSamplerTest {
+	private PlanBuilder createPlanBuilder() {
+		return new PlanBuilder() //
+				.addActivityWithFacilityId("home", "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", "B") //
+				.addLeg() //
+				.addActivityWithFacilityId("other", "C") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", "B") //
+				.addLeg() //
+				.addActivityWithFacilityId("home", "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("other", "D") //
+				.addLeg() //
+				.addActivityWithFacilityId("home", "A");
+	}
+
+	private void compareWithEnumeration(HomeFinder homeFinder, Collection<String> restrictedModes,
+			Collection<String> constrainedModes) {
+		List<String> modes = Arrays.asList("car", "pt", "walk");
+
+		PlanBuilder planBuilder = createPlanBuilder();
+		List<DiscreteModeChoiceTrip> trips = planBuilder.buildDiscreteModeChoiceTrips();
+		Person person = planBuilder.buildPlan().getPerson();
+
+		// Enumeration
+		CompositeTourConstraintFactory constraintFactory = new CompositeTourConstraintFactory();
+		constraintFactory.addFactory(new VehicleTourConstraint.Factory(restrictedModes, homeFinder));
+		constraintFactory.addFactory(new SubtourModeConstraint.Factory(constrainedModes));
+		TourConstraint constraint = constraintFactory.createConstraint(person, trips, modes);
+
+		Set<List<String>> feasibleChains = new HashSet<>();
+		ModeChainGenerator generator = new DefaultModeChainGenerator(modes, trips.size());
+
+		while (generator.hasNext()) {
+			List<String> chain = generator.next();
+
+			if (constraint.validateBeforeEstimation(trips, chain, new ArrayList<>())) {
+				feasibleChains.add(chain);
+			}
+		}
+
+		// Sampling
+		TourStateSpace stateSpace = new TourStateSpace.Factory(restrictedModes, homeFinder, constrainedModes)
+				.createStateSpace(person, trips, trips, new ModeRegistry(modes));
+		UniformTourSampler sampler = new UniformTourSampler(stateSpace);
+
+		Assertions.assertEquals(feasibleChains.size(), sampler.getNumberOfChains(), 1e-6);
+
+		Random random = new Random(0);
+		Set<List<String>> sampledChains = new HashSet<>();
+
+		for (int k = 0; k < 2000; k++) {
+			Optional<List<String>> chain = sampler.sample(random);
+			Assertions.assertTrue(chain.isPresent());
+			Assertions.assertTrue(feasibleChains.contains(chain.get()));
+			sampledChains.add(chain.get());
+		}
+
+		Assertions.assertEquals(feasibleChains, sampledChains);
+	}
+
+	@Test
+	public void testSameChainsAsEnumeration() {
+		HomeFinder homeFinder = (List<DiscreteModeChoiceTrip> trips) -> Id.create("A", ActivityFacility.class);
+		compareWithEnumeration(homeFinder, Arrays.asList("car"), Arrays.asList("car"));
+		compareWithEnumeration(homeFinder, Arrays.asList("car"), Arrays.asList("car", "pt", "walk"));
+		compareWithEnumeration(homeFinder, Arrays.asList("car", "pt"), Arrays.asList());
+		compareWithEnumeration(homeFinder, Arrays.asList(), Arrays.asList("pt"));
+	}
+
+	@Test
+	public void testSameChainsAsEnumerationWithoutHome() {
+		HomeFinder homeFinder = (List<DiscreteModeChoiceTrip> trips) -> null;
+		compareWithEnumeration(homeFinder, Arrays.asList("car"), Arrays.asList("car"));
+		compareWithEnumeration(homeFinder, Arrays.asList("car", "pt"), Arrays.asList("car"));
+	}
+}
@@ -0,0 +1,108 @@
+package ch.ethz.matsim.discrete_mode_choice.model.tour_based.state_space;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.facilities.ActivityFacility;
+
+import ch.ethz.matsim.discrete_mode_choice.components.constraints.SubtourModeConstraint;
+import ch.ethz.matsim.discrete_mode_choice.components.constraints.VehicleTourConstraint;
+import ch.ethz.matsim.discrete_mode_choice.components.utils.home_finder.HomeFinder;
+import ch.ethz.matsim.discrete_mode_choice.model.DiscreteModeChoiceTrip;
+import ch.ethz.matsim.discrete_mode_choice.model.constraints.CompositeTourConstraintFactory;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.DefaultModeChainGenerator;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeChainGenerator;
+import ch.ethz.matsim.discrete_mode_choice.model.mode_chain.ModeRegistry;
+import ch.ethz.matsim.discrete_mode_choice.model.tour_based.TourConstraint;
+import ch.ethz.matsim.discrete_mode_choice.test_utils.PlanBuilder;
+
+public class WeightedTourSamplerTest {
+	@Test
+	public void testProbabilities() {
+		List<String> modes = Arrays.asList("car", "pt", "walk");
+		List<String> restrictedModes = Arrays.asList("car");
+		HomeFinder homeFinder = (List<DiscreteModeChoiceTrip> trips) -> Id.create("A", ActivityFacility.class);
+
+		PlanBuilder planBuilder = new PlanBuilder() //
+				.addActivityWithFacilityId("home", "A") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", "B") //
+				.addLeg() //
+				.addActivityWithFacilityId("other", "C") //
+				.addLeg() //
+				.addActivityWithFacilityId("work", "B") //
+				.addLeg() //
+				.addActivityWithFacilityId("home", "A");
+		List<DiscreteModeChoiceTrip> trips = planBuilder.buildDiscreteModeChoiceTrips();
+		Person person = planBuilder.buildPlan().getPerson();
+
+		Random random = new Random(0);
+		double[][] logWeights = new double[trips.size()][modes.size()];
+
+		for (int tripIndex = 0; tripIndex < trips.size(); tripIndex++) {
+			for (int modeIndex = 0; modeIndex < modes.size(); modeIndex++) {
+				logWeights[tripIndex][modeIndex] = 2.0 * random.nextDouble();
+			}
+		}
+
+		// Walk is excluded for the first trip
+		logWeights[0][2] = Double.NEGATIVE_INFINITY;
+
+		// Enumeration
+		CompositeTourConstraintFactory constraintFactory = new CompositeTourConstraintFactory();
+		constraintFactory.addFactory(new VehicleTourConstraint.Factory(restrictedModes, homeFinder));
+		constraintFactory.addFactory(new SubtourModeConstraint.Factory(restrictedModes));
+		TourConstraint constraint = constraintFactory.createConstraint(person, trips, modes);
+
+		Map<List<String>, Double> weights = new HashMap<>();
+		ModeChainGenerator generator = new DefaultModeChainGenerator(modes, trips.size());
+		double totalWeight = 0.0;
+
+		while (generator.hasNext()) {
+			List<String> chain = generator.next();
+
+			if (constraint.validateBeforeEstimation(trips, chain, new ArrayList<>())) {
+				double logWeight = 0.0;
+
+				for (int tripIndex = 0; tripIndex < trips.size(); tripIndex++) {
+					logWeight += logWeights[tripIndex][modes.indexOf(chain.get(tripIndex))];
+				}
+
+				weights.put(chain, Math.exp(logWeight));
+				totalWeight += Math.exp(logWeight);
+			}
+		}
+
+		// Sampling
+		TourStateSpace stateSpace = new TourStateSpace.Factory(restrictedModes, homeFinder, restrictedModes)
+				.createStateSpace(person, trips, trips, new ModeRegistry(modes));
+		WeightedTourSampler sampler = new WeightedTourSampler(stateSpace, logWeights);
+
+		for (Map.Entry<List<String>, Double> entry : weights.entrySet()) {
+			Assertions.assertEquals(entry.getValue() / totalWeight, Math.exp(sampler.getLogProbability(entry.getKey())),
+					1e-9);
+		}
+
+		Map<List<String>, Integer> counts = new HashMap<>();
+		int numberOfSamples = 50000;
+
+		for (int k = 0; k < numberOfSamples; k++) {
+			List<String> chain = sampler.sample(random).get();
+			Assertions.assertTrue(weights.containsKey(chain));
+			counts.put(chain, counts.getOrDefault(chain, 0) + 1);
+		}
+
+		for (Map.Entry<List<String>, Integer> entry : counts.entrySet()) {
+			Assertions.assertEquals(weights.get(entry.getKey()) / totalWeight,
+					(double) entry.getValue() / numberOfSamples, 0.01);
+		}
+	}
+}
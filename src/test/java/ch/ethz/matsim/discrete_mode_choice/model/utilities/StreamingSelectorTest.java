@@ -0,0 +1,151 @@
+package ch.ethz.matsim.discrete_mode_choice.model.utilities;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class StreamingSelectorTest {
+	private final static double[] UTILITIES = new double[] { -1.0, 0.5, 0.0, 2.0 };
+
+	static private class TestCandidate implements UtilityCandidate {
+		final int index;
+
+		TestCandidate(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public double getUtility() {
+			return UTILITIES[index];
+		}
+	}
+
+	private double[] sampleShares(UtilitySelectorFactory factory, int numberOfSamples) {
+		Random random = new Random(0);
+		double[] shares = new double[UTILITIES.length];
+
+		for (int k = 0; k < numberOfSamples; k++) {
+			UtilitySelector selector = factory.createUtilitySelector(random);
+
+			for (int index = 0; index < UTILITIES.length; index++) {
+				selector.addCandidate(new TestCandidate(index));
+			}
+
+			shares[((TestCandidate) selector.select(random).get()).index] += 1.0 / numberOfSamples;
+		}
+
+		return shares;
+	}
+
+	/**
+	 * Distributes the candidates over the parts [0], [], [1, 2], [3].
+	 */
+	private double[] sampleMergedShares(UtilitySelectorFactory factory, int numberOfSamples) {
+		int[] partSizes = new int[] { 1, 0, 2, 1 };
+
+		Random random = new Random(0);
+		double[] shares = new double[UTILITIES.length];
+
+		for (int k = 0; k < numberOfSamples; k++) {
+			MergeableUtilitySelector selector = (MergeableUtilitySelector) factory.createUtilitySelector(random);
+			int index = 0;
+
+			for (int partSize : partSizes) {
+				MergeableUtilitySelector part = selector.createPart();
+
+				for (int i = 0; i < partSize; i++) {
+					part.addCandidate(new TestCandidate(index++));
+				}
+
+				selector.merge(part);
+			}
+
+			shares[((TestCandidate) selector.select(random).get()).index] += 1.0 / numberOfSamples;
+		}
+
+		return shares;
+	}
+
+	@Test
+	public void testMultinomialLogit() {
+		double[] shares = sampleShares(new StreamingMultinomialLogitSelector.Factory(-700.0, 700.0, false), 100000);
+
+		double denominator = 0.0;
+
+		for (double utility : UTILITIES) {
+			denominator += Math.exp(utility);
+		}
+
+		for (int index = 0; index < UTILITIES.length; index++) {
+			Assertions.assertEquals(Math.exp(UTILITIES[index]) / denominator, shares[index], 0.01);
+		}
+	}
+
+	@Test
+	public void testMultinomialLogitUtilityBounds() {
+		// Candidates below the minimum utility are ignored
+		double[] shares = sampleShares(new StreamingMultinomialLogitSelector.Factory(0.2, 700.0, true), 1000);
+		Assertions.assertEquals(0.0, shares[0]);
+		Assertions.assertEquals(0.0, shares[2]);
+
+		// Utilities above the maximum are cut off, so both remaining ones are equal
+		shares = sampleShares(new StreamingMultinomialLogitSelector.Factory(0.2, 0.5, true), 100000);
+		Assertions.assertEquals(0.5, shares[1], 0.01);
+		Assertions.assertEquals(0.5, shares[3], 0.01);
+
+		UtilitySelector selector = new StreamingMultinomialLogitSelector.Factory(5.0, 700.0, true)
+				.createUtilitySelector(new Random(0));
+		selector.addCandidate(new TestCandidate(3));
+		Assertions.assertFalse(selector.select(new Random(0)).isPresent());
+	}
+
+	@Test
+	public void testRandom() {
+		double[] shares = sampleShares(new StreamingRandomSelector.Factory(), 100000);
+
+		for (int index = 0; index < UTILITIES.length; index++) {
+			Assertions.assertEquals(1.0 / UTILITIES.length, shares[index], 0.01);
+		}
+
+		Assertions.assertFalse(new StreamingRandomSelector(new Random(0)).select(new Random(0)).isPresent());
+	}
+
+	@Test
+	public void testMergedMultinomialLogit() {
+		double[] shares = sampleShares(new StreamingMultinomialLogitSelector.Factory(-700.0, 700.0, false), 100000);
+		double[] mergedShares = sampleMergedShares(
+				new StreamingMultinomialLogitSelector.Factory(-700.0, 700.0, false), 100000);
+
+		for (int index = 0; index < UTILITIES.length; index++) {
+			Assertions.assertEquals(shares[index], mergedShares[index], 0.01);
+		}
+	}
+
+	@Test
+	public void testMergedRandom() {
+		double[] shares = sampleMergedShares(new StreamingRandomSelector.Factory(), 100000);
+
+		for (int index = 0; index < UTILITIES.length; index++) {
+			Assertions.assertEquals(1.0 / UTILITIES.length, shares[index], 0.01);
+		}
+	}
+
+	@Test
+	public void testMergedMaximum() {
+		MaximumSelector selector = new MaximumSelector();
+
+		MergeableUtilitySelector part = selector.createPart();
+		part.addCandidate(new TestCandidate(3));
+		selector.merge(part);
+
+		// Equal utility, but added later
+		part = selector.createPart();
+		part.addCandidate(new TestCandidate(3));
+		UtilityCandidate laterCandidate = part.select(new Random(0)).get();
+		selector.merge(part);
+
+		Assertions.assertNotSame(laterCandidate, selector.select(new Random(0)).get());
+		Assertions.assertEquals(2.0, selector.select(new Random(0)).get().getUtility());
+	}
+}
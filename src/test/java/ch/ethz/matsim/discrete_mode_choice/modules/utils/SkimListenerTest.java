@@ -0,0 +1,130 @@
+package ch.ethz.matsim.discrete_mode_choice.modules.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.events.StartupEvent;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.core.scenario.ScenarioUtils;
+
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.skims.SkimMatrix;
+import ch.ethz.matsim.discrete_mode_choice.components.estimators.skims.SkimRepository;
+import ch.ethz.matsim.discrete_mode_choice.modules.EstimatorModule;
+import ch.ethz.matsim.discrete_mode_choice.modules.config.DiscreteModeChoiceConfigGroup;
+import ch.ethz.matsim.discrete_mode_choice.modules.config.SkimEstimatorConfigGroup;
+
+public class SkimListenerTest {
+	@TempDir
+	Path temporaryDirectory;
+
+	private Scenario createScenario() {
+		Config config = ConfigUtils.createConfig();
+		config.controler().setOutputDirectory(temporaryDirectory.toString());
+
+		Scenario scenario = ScenarioUtils.createScenario(config);
+		Network network = scenario.getNetwork();
+
+		Node nodeA = NetworkUtils.createAndAddNode(network, Id.createNodeId("A"), new Coord(100.0, 100.0));
+		Node nodeB = NetworkUtils.createAndAddNode(network, Id.createNodeId("B"), new Coord(1100.0, 100.0));
+
+		NetworkUtils.createAndAddLink(network, Id.createLinkId("AB"), nodeA, nodeB, 1000.0, 10.0, 1000.0, 1.0)
+				.setAllowedModes(Collections.singleton(TransportMode.car));
+		NetworkUtils.createAndAddLink(network, Id.createLinkId("BA"), nodeB, nodeA, 1000.0, 10.0, 1000.0, 1.0)
+				.setAllowedModes(Collections.singleton(TransportMode.car));
+
+		return scenario;
+	}
+
+	private DiscreteModeChoiceConfigGroup createConfig(String... skimmedModes) {
+		DiscreteModeChoiceConfigGroup dmcConfig = new DiscreteModeChoiceConfigGroup();
+		dmcConfig.setTripEstimator(EstimatorModule.SKIMS);
+
+		SkimEstimatorConfigGroup skimConfig = dmcConfig.getSkimEstimatorConfigGroup();
+		skimConfig.setSkimmedModes(Arrays.asList(skimmedModes));
+		skimConfig.setNetworkModes(Collections.singleton(TransportMode.car));
+		skimConfig.setZoneSize(1000.0);
+		skimConfig.setNumberOfPeriods(1);
+		skimConfig.setPeriodDuration(3600.0);
+		skimConfig.setReskimInterval(2);
+		skimConfig.setNumberOfThreads(1);
+
+		return dmcConfig;
+	}
+
+	@Test
+	public void testReskimInPlace() {
+		Scenario scenario = createScenario();
+		SkimRepository repository = new SkimRepository();
+
+		double[] congestionFactor = new double[] { 1.0 };
+		TravelTime travelTime = (link, time, person, vehicle) -> congestionFactor[0] * link.getLength()
+				/ link.getFreespeed();
+
+		SkimListener listener = new SkimListener(createConfig(TransportMode.car), repository, scenario,
+				Collections.singletonMap(TransportMode.car, travelTime), null,
+				new OutputDirectoryHierarchy(scenario.getConfig().controler()));
+
+		listener.notifyStartup(new StartupEvent(null));
+
+		SkimMatrix matrix = repository.getMatrix(TransportMode.car);
+		assertEquals(2, matrix.getCentroids().size());
+		assertEquals(100.0, matrix.getValue(0, 0, 1, SkimMatrix.TRAVEL_TIME), 1e-3);
+
+		congestionFactor[0] = 2.0;
+
+		listener.notifyIterationStarts(new IterationStartsEvent(null, 1));
+		assertEquals(100.0, matrix.getValue(0, 0, 1, SkimMatrix.TRAVEL_TIME), 1e-3);
+
+		// The skims are updated in the existing mapping
+		listener.notifyIterationStarts(new IterationStartsEvent(null, 2));
+		assertSame(matrix, repository.getMatrix(TransportMode.car));
+		assertEquals(200.0, matrix.getValue(0, 0, 1, SkimMatrix.TRAVEL_TIME), 1e-3);
+	}
+
+	@Test
+	public void testInconsistentZones() throws IOException {
+		Scenario scenario = createScenario();
+
+		SkimMatrix.create(temporaryDirectory.resolve("car.skim").toFile(), Arrays.asList(new Coord(0.0, 0.0)), 1,
+				3600.0).flush();
+		SkimMatrix.create(temporaryDirectory.resolve("pt.skim").toFile(),
+				Arrays.asList(new Coord(0.0, 0.0), new Coord(1000.0, 0.0)), 1, 3600.0).flush();
+
+		DiscreteModeChoiceConfigGroup dmcConfig = createConfig(TransportMode.car, TransportMode.pt);
+		dmcConfig.getSkimEstimatorConfigGroup().setSkimDirectory(temporaryDirectory.toString());
+
+		SkimListener listener = new SkimListener(dmcConfig, new SkimRepository(), scenario, Collections.emptyMap(),
+				null, new OutputDirectoryHierarchy(scenario.getConfig().controler()));
+
+		assertThrows(IllegalStateException.class, () -> listener.notifyStartup(new StartupEvent(null)));
+	}
+
+	@Test
+	public void testUnsupportedMode() {
+		Scenario scenario = createScenario();
+
+		SkimListener listener = new SkimListener(createConfig(TransportMode.bike), new SkimRepository(), scenario,
+				Collections.emptyMap(), null, new OutputDirectoryHierarchy(scenario.getConfig().controler()));
+
+		assertThrows(IllegalStateException.class, () -> listener.notifyStartup(new StartupEvent(null)));
+	}
+}